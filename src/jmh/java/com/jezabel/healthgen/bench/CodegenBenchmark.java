@@ -0,0 +1,88 @@
+package com.jezabel.healthgen.bench;
+
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.FileSink;
+import com.jezabel.healthgen.codegen.template.CodegenTemplates;
+import com.jezabel.healthgen.service.CodegenService;
+import com.jezabel.healthgen.spec.ModelSpec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Generación del proyecto sobre specs sintéticos de 10 a 2.000 entidades.
+ * <ul>
+ *   <li>{@code render}: solo renderizado (sink que descarta), aísla la CPU del generador.</li>
+ *   <li>{@code generateEntities}: camino completo a carpeta temporal (incluye E/S de disco).</li>
+ *   <li>{@code writeZip}: ZIP en streaming sobre un stream nulo (render + DEFLATE).</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodegenBenchmark {
+
+    @Param({"10", "100", "500", "2000"})
+    int entities;
+
+    @Param({"SPARSE", "DENSE"})
+    SpecGenerator.Density density;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    private ModelSpec spec;
+    private CodegenService codegen;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        spec = SpecGenerator.generate(entities, density, 42L);
+        CodegenProperties props = new CodegenProperties();
+        props.getParallel().setEnabled(parallel);
+        props.getParallel().setMinEntities(1);
+        codegen = new CodegenService(props, CodegenTemplates.defaults(), new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        codegen.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, Object> render(Blackhole bh) throws IOException {
+        FileSink sink = (path, content) -> bh.consume(content);
+        return codegen.generate(spec, sink);
+    }
+
+    @Benchmark
+    public Map<String, Object> writeZip() throws IOException {
+        return codegen.writeZip(spec, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    public Map<String, Object> generateEntities() throws IOException {
+        Map<String, Object> out = codegen.generateEntities(spec);
+        deleteTree(Path.of((String) out.get("tmpDir")));
+        return out;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
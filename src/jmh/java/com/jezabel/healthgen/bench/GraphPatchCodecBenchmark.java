@@ -0,0 +1,151 @@
+package com.jezabel.healthgen.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jezabel.healthgen.collab.PatchCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Patches del grafo: trama JSON vs. trama binaria ({@link PatchCodec}).
+ * <ul>
+ *   <li>{@code *Frame}: codificar el lote que sale hacia los suscriptores.</li>
+ *   <li>{@code *Relay}: lo que hace el servidor por mensaje entrante: leerlo y volver a emitir el lote.</li>
+ * </ul>
+ * Los contadores {@code bytes} y {@code patches} (AuxCounters) dan los bytes por patch: bytes / patches.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GraphPatchCodecBenchmark {
+
+    @Param({"10", "100"})
+    int patchesPerFrame;
+
+    /** drag: solo "move" con desplazamientos cortos; mixed: add/update/move/remove. */
+    @Param({"drag", "mixed"})
+    String mix;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long bytes;
+        public long patches;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            patches = 0;
+        }
+    }
+
+    private final ObjectMapper om = new ObjectMapper();
+    private PatchCodec codec;
+    private List<JsonNode> patches;
+    private Map<String, long[]> positions;
+    private PatchCodec.StringTable table;
+    private byte[] inboundJson;
+    private byte[] inboundBinary;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        codec = new PatchCodec(om);
+        Random rnd = new Random(42L);
+        positions = new HashMap<>();
+        for (int i = 0; i < 200; i++) positions.put("cell-" + i, new long[] {rnd.nextInt(1600), rnd.nextInt(900)});
+
+        patches = new ArrayList<>(patchesPerFrame);
+        for (int i = 0; i < patchesPerFrame; i++) {
+            String id = "cell-" + rnd.nextInt(200);
+            long[] p = positions.get(id);
+            int kind = mix.equals("drag") ? 0 : rnd.nextInt(4);
+            ObjectNode patch = om.createObjectNode();
+            switch (kind) {
+                case 0 -> {
+                    patch.put("op", "move").put("id", id);
+                    patch.putObject("position").put("x", p[0] + rnd.nextInt(21) - 10).put("y", p[1] + rnd.nextInt(21) - 10);
+                }
+                case 1 -> {
+                    patch.put("op", "add").put("id", id).put("label", "Entidad " + i).put("shape", "uml.Class");
+                    patch.putObject("position").put("x", p[0]).put("y", p[1]);
+                }
+                case 2 -> patch.put("op", "update").put("id", id).put("label", "Paciente" + i);
+                default -> patch.put("op", "remove").put("id", id);
+            }
+            patches.add(patch);
+        }
+
+        // tabla ya caliente: los ids llevan tiempo en el documento
+        table = new PatchCodec.StringTable();
+        PatchCodec.FrameWriter warm = codec.writer(1, positions.size(), table);
+        for (String id : positions.keySet()) warm.write(om.createObjectNode().put("op", "remove").put("id", id), id2 -> null);
+        warm.finish();
+
+        inboundJson = om.writeValueAsBytes(patches);
+        PatchCodec.FrameWriter client = codec.clientWriter(patches.size(), table);
+        for (JsonNode p : patches) client.write(p, id -> null);
+        inboundBinary = client.finish();
+    }
+
+    @Benchmark
+    public byte[] jsonFrame(Sizes sizes) throws IOException {
+        byte[] out = om.writeValueAsBytes(jsonFrame(patches));
+        count(sizes, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] binaryFrame(Sizes sizes) {
+        byte[] out = binaryFrame(patches);
+        count(sizes, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] jsonRelay(Sizes sizes) throws IOException {
+        JsonNode in = om.readTree(inboundJson);
+        List<JsonNode> list = new ArrayList<>(in.size());
+        in.forEach(list::add);
+        byte[] out = om.writeValueAsBytes(jsonFrame(list));
+        count(sizes, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] binaryRelay(Sizes sizes) {
+        List<JsonNode> in = codec.decode(inboundBinary, table, false, id -> null);
+        byte[] out = binaryFrame(in);
+        count(sizes, out);
+        return out;
+    }
+
+    private ObjectNode jsonFrame(List<JsonNode> list) {
+        ObjectNode frame = om.createObjectNode();
+        frame.put("type", "patches");
+        frame.put("docId", "bench");
+        frame.put("fromSeq", 1000);
+        frame.put("toSeq", 1000 + list.size() - 1);
+        ArrayNode arr = frame.putArray("patches");
+        list.forEach(arr::add);
+        return frame;
+    }
+
+    private byte[] binaryFrame(List<JsonNode> list) {
+        PatchCodec.FrameWriter w = codec.writer(1000, list.size(), table);
+        for (JsonNode p : list) w.write(p, positions::get);
+        return w.finish();
+    }
+
+    private void count(Sizes sizes, byte[] frame) {
+        sizes.bytes += frame.length;
+        sizes.patches += patchesPerFrame;
+    }
+}
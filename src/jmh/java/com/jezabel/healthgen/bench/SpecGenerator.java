@@ -0,0 +1,107 @@
+package com.jezabel.healthgen.bench;
+
+import com.jezabel.healthgen.spec.ModelSpec;
+
+import java.util.*;
+
+/**
+ * Genera specs sintéticos reproducibles (misma semilla ⇒ mismo spec) con la forma del JSON del front.
+ * Densidad SPARSE ≈ 1.5 relaciones por entidad; DENSE ≈ 8 (incluye reflexivas y N–N), sin repetir
+ * par de entidades ni cerrar ciclos de composición; con pocas entidades DENSE queda limitado por
+ * los pares posibles.
+ */
+public final class SpecGenerator {
+
+    public enum Density {
+        SPARSE(1.5), DENSE(8.0);
+
+        final double relationsPerEntity;
+
+        Density(double relationsPerEntity) { this.relationsPerEntity = relationsPerEntity; }
+    }
+
+    private static final String[] TYPES = {"STRING", "INT", "LONG", "BOOLEAN", "DECIMAL", "LOCAL_DATE", "LOCAL_DATE_TIME"};
+    private static final String[] REL_TYPES = {"uml.Association", "uml.Association", "uml.Aggregation", "uml.Composition", "uml.Generalization"};
+    private static final String[] MULTS = {"1", "0..1", "*", "0..*", "1..*"};
+    private static final String[] WORDS = {"Paciente", "Cita", "Medico", "Sala", "Receta", "Historia", "Turno", "Factura",
+            "Seguro", "Examen", "Resultado", "Servicio", "Area", "Cama", "Insumo", "Proveedor"};
+
+    private SpecGenerator() { }
+
+    public static Map<String, Object> generateMap(int entities, Density density, long seed) {
+        Random rnd = new Random(seed);
+        List<String> names = new ArrayList<>(entities);
+        List<Map<String, Object>> es = new ArrayList<>(entities);
+        for (int i = 0; i < entities; i++) {
+            String name = WORDS[i % WORDS.length] + (i / WORDS.length == 0 ? "" : String.valueOf(i / WORDS.length));
+            names.add(name);
+
+            List<Map<String, Object>> attrs = new ArrayList<>();
+            attrs.add(attr("id", "LONG", true, "IDENTITY"));
+            int n = 3 + rnd.nextInt(6);
+            for (int a = 0; a < n; a++) {
+                attrs.add(attr("campo" + a, TYPES[rnd.nextInt(TYPES.length)], false, null));
+            }
+            Map<String, Object> e = new LinkedHashMap<>();
+            e.put("name", name);
+            e.put("attributes", attrs);
+            es.add(e);
+        }
+
+        int relCount = (int) Math.round(entities * density.relationsPerEntity);
+        List<Map<String, Object>> rels = new ArrayList<>(relCount);
+        // como mucho una relación por par de entidades: varias entre el mismo par no pasan SpecValidator
+        Set<Long> pairs = new HashSet<>();
+        for (int i = 0, attempts = 0; i < relCount && entities > 0 && attempts < relCount * 4; attempts++) {
+            int a = rnd.nextInt(entities), b = rnd.nextInt(entities);
+            if (!pairs.add((long) Math.min(a, b) * entities + Math.max(a, b))) continue;
+            i++;
+            String type = REL_TYPES[rnd.nextInt(REL_TYPES.length)];
+            // la composición siempre va de la entidad de menor índice a la de mayor: sin ciclos todo/parte
+            if (type.equals("uml.Composition") && a > b) { int t = a; a = b; b = t; }
+            Map<String, Object> r = new LinkedHashMap<>();
+            r.put("type", type);
+            r.put("source", names.get(a));
+            r.put("target", names.get(b));
+            r.put("multSource", MULTS[rnd.nextInt(MULTS.length)]);
+            r.put("multTarget", MULTS[rnd.nextInt(MULTS.length)]);
+            rels.add(r);
+        }
+
+        Map<String, Object> spec = new LinkedHashMap<>();
+        spec.put("name", "bench-" + entities + "-" + density.name().toLowerCase(Locale.ROOT));
+        spec.put("version", "0.0.1");
+        spec.put("packageBase", "com.jezabel.bench");
+        spec.put("entities", es);
+        spec.put("relations", rels);
+        return spec;
+    }
+
+    public static ModelSpec generate(int entities, Density density, long seed) {
+        return ModelSpec.fromMap(generateMap(entities, density, seed));
+    }
+
+    /** Markdown con la forma de la documentación que devuelve el LLM (~{@code sections} secciones). */
+    public static String markdown(int sections, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder("# Documentación del proyecto\n\n");
+        for (int s = 0; s < sections; s++) {
+            sb.append("## ").append(WORDS[s % WORDS.length]).append(" ").append(s).append("\n\n");
+            sb.append("La entidad **").append(WORDS[rnd.nextInt(WORDS.length)])
+                    .append("** se persiste con JPA y expone un CRUD en `/api/...`.\n\n");
+            for (int i = 0; i < 4; i++) sb.append("- punto ").append(i).append(": `campo").append(i).append("`\n");
+            sb.append("\n```java\n@Entity\npublic class X").append(s).append(" { @Id private Long id; }\n```\n\n");
+            sb.append("| Campo | Tipo |\n|---|---|\n| id | Long |\n| nombre | String |\n\n");
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, Object> attr(String name, String type, boolean pk, String generated) {
+        Map<String, Object> a = new LinkedHashMap<>();
+        a.put("name", name);
+        a.put("type", type);
+        if (pk) a.put("pk", true);
+        if (generated != null) a.put("generated", generated);
+        return a;
+    }
+}
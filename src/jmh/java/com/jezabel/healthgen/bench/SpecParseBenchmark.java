@@ -0,0 +1,68 @@
+package com.jezabel.healthgen.bench;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.spec.CompressedJson;
+import com.jezabel.healthgen.spec.ModelSpec;
+import com.jezabel.healthgen.spec.ModelSpecReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compilación de specs grandes (de ~0,5 a ~10 MB de JSON) desde los bytes guardados.
+ * <ul>
+ *   <li>{@code mapThenFromMap}: camino anterior, JSON → Map/List de Jackson → {@link ModelSpec#fromMap}.</li>
+ *   <li>{@code streaming}: {@link ModelSpecReader} sobre los tokens, sin árbol intermedio.</li>
+ *   <li>{@code streamingCompressed}: igual, leyendo del blob de {@link CompressedJson} (como findById + compile).</li>
+ * </ul>
+ * La presión sobre el heap se ve con {@code -prof gc} (gc.alloc.rate.norm = bytes asignados por operación).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpecParseBenchmark {
+
+    @Param({"1000", "5000", "20000"})
+    int entities;
+
+    @Param({"SPARSE", "DENSE"})
+    SpecGenerator.Density density;
+
+    private final ObjectMapper om = new ObjectMapper();
+    private byte[] json;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        json = om.writeValueAsBytes(SpecGenerator.generateMap(entities, density, 42L));
+        compressed = CompressedJson.encode(om.writeValueAsString(SpecGenerator.generateMap(entities, density, 42L)));
+    }
+
+    @Benchmark
+    public ModelSpec mapThenFromMap() throws IOException {
+        Map<String, Object> raw = om.readValue(json, new TypeReference<Map<String, Object>>() {});
+        return ModelSpec.fromMap(raw);
+    }
+
+    @Benchmark
+    public ModelSpec streaming() throws IOException {
+        try (JsonParser p = om.createParser(json)) {
+            return ModelSpecReader.read(p);
+        }
+    }
+
+    @Benchmark
+    public ModelSpec streamingCompressed() throws IOException {
+        try (InputStream in = CompressedJson.open(compressed); JsonParser p = om.createParser(in)) {
+            return ModelSpecReader.read(p);
+        }
+    }
+}
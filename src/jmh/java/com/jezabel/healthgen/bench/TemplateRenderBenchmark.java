@@ -0,0 +1,230 @@
+package com.jezabel.healthgen.bench;
+
+import com.jezabel.healthgen.codegen.template.CodegenTemplates;
+import com.jezabel.healthgen.codegen.template.TemplateKind;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plantillas precompiladas vs. los renderers originales por concatenación.
+ * Cada operación renderiza los archivos "planos" de una entidad (repository, service, controller)
+ * más pom/Application/properties, igual que el generador.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateRenderBenchmark {
+
+    @Param({"com.jezabel.hospital"})
+    String packageBase;
+
+    @Param({"Paciente", "HistoriaClinicaDetallada"})
+    String entity;
+
+    private CodegenTemplates templates;
+    private final StringBuilder buffer = new StringBuilder(4096);
+
+    @Setup
+    public void setup() {
+        templates = CodegenTemplates.defaults();
+    }
+
+    @Benchmark
+    public void legacyConcat(Blackhole bh) {
+        bh.consume(Legacy.renderRepository(packageBase, entity));
+        bh.consume(Legacy.renderService(packageBase, entity));
+        bh.consume(Legacy.renderController(packageBase, entity));
+        bh.consume(Legacy.renderPom(packageBase, "hospital"));
+        bh.consume(Legacy.renderApplication(packageBase));
+        bh.consume(Legacy.renderProperties("hospital"));
+    }
+
+    @Benchmark
+    public void compiledTemplates(Blackhole bh) {
+        String var = Character.toLowerCase(entity.charAt(0)) + entity.substring(1);
+        bh.consume(render(TemplateKind.REPOSITORY, packageBase, entity));
+        bh.consume(render(TemplateKind.SERVICE, packageBase, entity));
+        bh.consume(render(TemplateKind.CONTROLLER, packageBase, entity, var));
+        bh.consume(render(TemplateKind.POM, packageBase, "hospital"));
+        bh.consume(render(TemplateKind.APPLICATION, packageBase));
+        bh.consume(render(TemplateKind.PROPERTIES, "hospital"));
+    }
+
+    /** Sin copiar a String: mide solo la emisión sobre el Appendable reutilizado. */
+    @Benchmark
+    public void compiledTemplatesIntoBuffer(Blackhole bh) {
+        String var = Character.toLowerCase(entity.charAt(0)) + entity.substring(1);
+        StringBuilder sb = buffer;
+        sb.setLength(0);
+        templates.get(TemplateKind.REPOSITORY).render(sb, packageBase, entity);
+        templates.get(TemplateKind.SERVICE).render(sb, packageBase, entity);
+        templates.get(TemplateKind.CONTROLLER).render(sb, packageBase, entity, var);
+        templates.get(TemplateKind.POM).render(sb, packageBase, "hospital");
+        templates.get(TemplateKind.APPLICATION).render(sb, packageBase);
+        templates.get(TemplateKind.PROPERTIES).render(sb, "hospital");
+        bh.consume(sb.length());
+    }
+
+    private String render(TemplateKind kind, String... values) {
+        StringBuilder sb = buffer;
+        sb.setLength(0);
+        templates.get(kind).render(sb, values);
+        return sb.toString();
+    }
+
+    /** Copia literal de los renderers previos a las plantillas (línea base). */
+    static final class Legacy {
+        private static String lower(String s) {
+            return (s == null || s.isEmpty()) ? s : Character.toLowerCase(s.charAt(0)) + s.substring(1);
+        }
+
+        static String renderRepository(String packageBase, String entityName) {
+            return "package " + packageBase + ".repository;\n\n" +
+                    "import " + packageBase + ".domain." + entityName + ";\n" +
+                    "import org.springframework.data.jpa.repository.JpaRepository;\n\n" +
+                    "public interface " + entityName + "Repository extends JpaRepository<" + entityName + ", Long> {\n}\n";
+        }
+
+        static String renderService(String packageBase, String entityName) {
+            return "package " + packageBase + ".service;\n\n" +
+                    "import " + packageBase + ".domain." + entityName + ";\n" +
+                    "import " + packageBase + ".repository." + entityName + "Repository;\n" +
+                    "import org.springframework.stereotype.Service;\n" +
+                    "import java.util.*;\n\n" +
+                    "@Service\n" +
+                    "public class " + entityName + "Service {\n" +
+                    "    private final " + entityName + "Repository repo;\n\n" +
+                    "    public " + entityName + "Service(" + entityName + "Repository repo) { this.repo = repo; }\n\n" +
+                    "    public " + entityName + " save(" + entityName + " e) { return repo.save(e); }\n" +
+                    "    public Optional<" + entityName + "> findById(Long id) { return repo.findById(id); }\n" +
+                    "    public List<" + entityName + "> findAll() { return repo.findAll(); }\n" +
+                    "    public void delete(Long id) { repo.deleteById(id); }\n" +
+                    "}\n";
+        }
+
+        static String renderController(String packageBase, String entityName) {
+            String var = lower(entityName);
+            return ""
+                    + "package " + packageBase + ".controller;\n\n"
+                    + "import " + packageBase + ".domain." + entityName + ";\n"
+                    + "import " + packageBase + ".service." + entityName + "Service;\n"
+                    + "import org.springframework.http.ResponseEntity;\n"
+                    + "import org.springframework.web.bind.annotation.*;\n"
+                    + "import java.net.URI;\n"
+                    + "import java.util.*;\n\n"
+                    + "@RestController\n"
+                    + "@RequestMapping(\"/api/" + var + "s\")\n"
+                    + "public class " + entityName + "Controller {\n"
+                    + "    private final " + entityName + "Service service;\n\n"
+                    + "    public " + entityName + "Controller(" + entityName + "Service service) { this.service = service; }\n\n"
+                    + "    @PostMapping\n"
+                    + "    public ResponseEntity<" + entityName + "> create(@RequestBody " + entityName + " body){\n"
+                    + "        " + entityName + " saved = service.save(body);\n"
+                    + "        return ResponseEntity.created(URI.create(\"/api/" + var + "s/\" + saved.getId())).body(saved);\n"
+                    + "    }\n\n"
+                    + "    @GetMapping\n"
+                    + "    public List<" + entityName + "> all(){\n"
+                    + "        return service.findAll();\n"
+                    + "    }\n\n"
+                    + "    @GetMapping(\"/{id}\")\n"
+                    + "    public " + entityName + " one(@PathVariable Long id){\n"
+                    + "        return service.findById(id).orElseThrow();\n"
+                    + "    }\n\n"
+                    + "    @PutMapping(\"/{id}\")\n"
+                    + "    public " + entityName + " update(@PathVariable Long id, @RequestBody " + entityName + " body){\n"
+                    + "        " + entityName + " existing = service.findById(id).orElseThrow();\n"
+                    + "        body.setId(existing.getId());\n"
+                    + "        return service.save(body);\n"
+                    + "    }\n\n"
+                    + "    @DeleteMapping(\"/{id}\")\n"
+                    + "    public ResponseEntity<Void> delete(@PathVariable Long id){\n"
+                    + "        service.delete(id);\n"
+                    + "        return ResponseEntity.noContent().build();\n"
+                    + "    }\n"
+                    + "}\n";
+        }
+
+        static String renderPom(String packageBase, String artifactId) {
+            return "<project xmlns=\"http://maven.apache.org/POM/4.0.0\"\n" +
+                    "         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+                    "         xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n" +
+                    "  <modelVersion>4.0.0</modelVersion>\n" +
+                    "  <groupId>" + packageBase + "</groupId>\n" +
+                    "  <artifactId>" + artifactId + "</artifactId>\n" +
+                    "  <version>0.0.1-SNAPSHOT</version>\n" +
+                    "  <properties>\n" +
+                    "    <java.version>21</java.version>\n" +
+                    "    <spring-boot.version>3.3.3</spring-boot.version>\n" +
+                    "  </properties>\n" +
+                    "  <dependencyManagement>\n" +
+                    "    <dependencies>\n" +
+                    "      <dependency>\n" +
+                    "        <groupId>org.springframework.boot</groupId>\n" +
+                    "        <artifactId>spring-boot-dependencies</artifactId>\n" +
+                    "        <version>${spring-boot.version}</version>\n" +
+                    "        <type>pom</type>\n" +
+                    "        <scope>import</scope>\n" +
+                    "      </dependency>\n" +
+                    "    </dependencies>\n" +
+                    "  </dependencyManagement>\n" +
+                    "  <dependencies>\n" +
+                    "    <dependency>\n" +
+                    "      <groupId>org.springframework.boot</groupId>\n" +
+                    "      <artifactId>spring-boot-starter-web</artifactId>\n" +
+                    "    </dependency>\n" +
+                    "    <dependency>\n" +
+                    "      <groupId>org.springframework.boot</groupId>\n" +
+                    "      <artifactId>spring-boot-starter-data-jpa</artifactId>\n" +
+                    "    </dependency>\n" +
+                    "    <dependency>\n" +
+                    "      <groupId>com.mysql</groupId>\n" +
+                    "      <artifactId>mysql-connector-j</artifactId>\n" +
+                    "      <scope>runtime</scope>\n" +
+                    "    </dependency>\n" +
+                    "    <dependency>\n" +
+                    "      <groupId>org.springframework.boot</groupId>\n" +
+                    "      <artifactId>spring-boot-starter-validation</artifactId>\n" +
+                    "    </dependency>\n" +
+                    "    <dependency>\n" +
+                    "      <groupId>org.springdoc</groupId>\n" +
+                    "      <artifactId>springdoc-openapi-starter-webmvc-ui</artifactId>\n" +
+                    "      <version>2.5.0</version>\n" +
+                    "    </dependency>\n" +
+                    "  </dependencies>\n" +
+                    "  <build>\n" +
+                    "    <plugins>\n" +
+                    "      <plugin>\n" +
+                    "        <groupId>org.springframework.boot</groupId>\n" +
+                    "        <artifactId>spring-boot-maven-plugin</artifactId>\n" +
+                    "      </plugin>\n" +
+                    "    </plugins>\n" +
+                    "  </build>\n" +
+                    "</project>\n";
+        }
+
+        static String renderApplication(String packageBase) {
+            return "package " + packageBase + ";\n\n" +
+                    "import org.springframework.boot.SpringApplication;\n" +
+                    "import org.springframework.boot.autoconfigure.SpringBootApplication;\n\n" +
+                    "@SpringBootApplication\n" +
+                    "public class Application {\n" +
+                    "  public static void main(String[] args) {\n" +
+                    "    SpringApplication.run(Application.class, args);\n" +
+                    "  }\n" +
+                    "}\n";
+        }
+
+        static String renderProperties(String artifactId) {
+            return "spring.datasource.url=jdbc:mysql://localhost:3306/" + artifactId + "?useSSL=false&serverTimezone=UTC\n" +
+                    "spring.datasource.username=root\n" +
+                    "spring.datasource.password=secret\n" +
+                    "spring.jpa.hibernate.ddl-auto=update\n" +
+                    "spring.jpa.show-sql=true\n";
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.jezabel.healthgen.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.bench.SpecGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Post-proceso de la respuesta del LLM: extracción del JSON y normalización del spec. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AiDiagramBenchmark {
+
+    @Param({"10", "100", "500"})
+    int entities;
+
+    private AiDiagramService svc;
+    private Map<String, Object> rawSpec;
+    private String llmAnswer;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper om = new ObjectMapper();
+        svc = new AiDiagramService(null, om, new SimpleMeterRegistry());
+        rawSpec = SpecGenerator.generateMap(entities, SpecGenerator.Density.SPARSE, 7L);
+        // respuesta típica: texto + bloque ```json ... ``` + cierre
+        llmAnswer = "```json\n" + om.writerWithDefaultPrettyPrinter().writeValueAsString(rawSpec) + "\n```";
+    }
+
+    @Benchmark
+    public String extractJson() {
+        return svc.extractJson(llmAnswer);
+    }
+
+    @Benchmark
+    public Map<String, Object> normalizeSpec() {
+        return svc.normalizeSpec(rawSpec, "hospital con pacientes y citas");
+    }
+}
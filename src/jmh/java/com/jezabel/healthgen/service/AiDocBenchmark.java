@@ -0,0 +1,43 @@
+package com.jezabel.healthgen.service;
+
+import com.jezabel.healthgen.ai.DocsProperties;
+import com.jezabel.healthgen.bench.SpecGenerator;
+import com.jezabel.healthgen.trace.Tracer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Render de la documentación: Markdown → HTML (flexmark) y HTML → PDF (openhtmltopdf). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AiDocBenchmark {
+
+    @Param({"5", "40"})
+    int sections;
+
+    private AiDocService svc;
+    private String markdown;
+    private String html;
+
+    @Setup
+    public void setup() {
+        svc = new AiDocService(null, null, null, new SimpleMeterRegistry(), Tracer.disabled(), new DocsProperties());
+        markdown = SpecGenerator.markdown(sections, 11L);
+        html = svc.mdToHtml(markdown);
+    }
+
+    @Benchmark
+    public String mdToHtml() {
+        return svc.mdToHtml(markdown);
+    }
+
+    @Benchmark
+    public byte[] htmlToPdf() throws Exception {
+        return svc.htmlToPdf(html);
+    }
+}
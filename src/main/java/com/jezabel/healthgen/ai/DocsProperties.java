@@ -0,0 +1,14 @@
+package com.jezabel.healthgen.ai;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "docs")
+public class DocsProperties {
+    private int pdfThreads = 2;          // renders Markdown → PDF a la vez (CPU)
+    private int pdfQueueCapacity = 16;   // en espera; si se llena, 503
+
+    public int getPdfThreads() { return pdfThreads; }
+    public void setPdfThreads(int pdfThreads) { this.pdfThreads = pdfThreads; }
+    public int getPdfQueueCapacity() { return pdfQueueCapacity; }
+    public void setPdfQueueCapacity(int pdfQueueCapacity) { this.pdfQueueCapacity = pdfQueueCapacity; }
+}
@@ -2,65 +2,468 @@ package com.jezabel.healthgen.ai;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.exception.ServiceBusyException;
+import com.jezabel.healthgen.trace.Span;
+import com.jezabel.healthgen.trace.Tracer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.net.http.*;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+/**
+ * Cliente de Gemini sobre {@link HttpClient#sendAsync}: ningún hilo queda bloqueado durante la llamada.
+ * <ul>
+ *   <li>Respuestas ya vistas salen de {@link LlmResponseCache} sin llamar al proveedor.</li>
+ *   <li>Prompts idénticos en vuelo comparten una sola llamada al proveedor.</li>
+ *   <li>Como mucho {@code gemini.max-concurrent} llamadas a la vez; el resto espera en cola
+ *       (sin hilos) hasta {@code gemini.max-queued}, y a partir de ahí se rechaza.</li>
+ * </ul>
+ * Métricas por operación (docs, diagram, chat...): {@code healthgen.llm.requests} (de dónde salió la respuesta),
+ * {@code healthgen.llm.call} (latencia HTTP real) y {@code healthgen.llm.tokens} (usageMetadata de Gemini).
+ * Cada consulta es un span {@code llm.generate} (hijo del span activo de la petición) y la llamada real,
+ * un hijo {@code llm.http}: el hueco entre ambos es la espera por un permiso.
+ * <p>
+ * {@link #streamTextAsync} usa {@code streamGenerateContent} (SSE) y entrega el texto según llega,
+ * cortando la llamada en cuanto se alcanza el tope de caracteres/palabras.
+ */
 @Service
 public class GeminiClient {
 
     private final GeminiProperties props;
     private final ObjectMapper om;
     private final HttpClient http;
+    private final LlmResponseCache cache;
+    private final MeterRegistry metrics;
+    private final Tracer tracer;
 
-    public GeminiClient(GeminiProperties props, ObjectMapper om) {
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger streaming = new AtomicInteger();
+    private final AtomicLong capped = new AtomicLong();
+
+    /** Resultado de un stream: texto entregado (con "…" si se cortó) y si se alcanzó el tope. */
+    public record StreamResult(String text, boolean capped, String finishReason) { }
+
+    public GeminiClient(GeminiProperties props, ObjectMapper om, LlmResponseCache cache, MeterRegistry metrics,
+                        Tracer tracer) {
         this.props = props;
         this.om = om;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.tracer = tracer;
         this.http = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofMillis(props.getTimeoutMs()))
                 .build();
+        this.permits = new Semaphore(Math.max(1, props.getMaxConcurrent()));
     }
 
-    public String generateText(String prompt) {
+    /** Versión bloqueante (para hilos de trabajo propios, p.ej. los jobs de PDF). */
+    public String generateText(String prompt, String operation) {
+        try {
+            return generateTextAsync(prompt, operation).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    public CompletableFuture<String> generateTextAsync(String prompt) {
+        return generateTextAsync(prompt, "other");
+    }
+
+    /**
+     * Texto generado para {@code prompt}. Cada llamador recibe su propia copia del futuro:
+     * cancelarla no cancela la llamada compartida con otros. {@code operation} solo etiqueta las métricas.
+     */
+    public CompletableFuture<String> generateTextAsync(String prompt, String operation) {
         String apiKey = props.getApiKey();
         if (apiKey == null || apiKey.isBlank()) {
-            throw new IllegalStateException("Falta gemini.api.key (o env var GEMINI_API_KEY/GOOGLE_API_KEY).");
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Falta gemini.api.key (o env var GEMINI_API_KEY/GOOGLE_API_KEY)."));
+        }
+
+        // misma clave para caché y coalescencia: prompts que solo difieren en espacios también se agrupan
+        String key = cache.keyFor(prompt, props.getModel(), props.getTemperature());
+        Span span = tracer.startSpan("llm.generate").attr("operation", operation);
+        String cached = cache.get(key);
+        if (cached != null) {
+            count(operation, "cache");
+            span.attr("result", "cache").end();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> shared = inFlight.putIfAbsent(key, mine);
+        if (shared != null) {
+            coalesced.incrementAndGet();
+            count(operation, "coalesced");
+            span.attr("result", "coalesced").endWhenDone(shared);
+            return shared.copy();
+        }
+        mine.whenComplete((r, e) -> inFlight.remove(key, mine));
+        span.attr("result", "call").endWhenDone(mine);
+        schedule(() -> call(apiKey, prompt, key, operation, mine, span), operation, mine);
+        return mine.copy();
+    }
+
+    /**
+     * Texto generado para {@code prompt}, entregado a {@code onText} por trozos a medida que llega
+     * (todos desde el mismo hilo, en orden). Al llegar a {@code maxChars} o {@code maxWords} se corta la
+     * respuesta de Gemini, se entrega "…" y el futuro termina con {@code capped=true}. Cancelar el futuro
+     * (p.ej. el navegador se fue) también corta la llamada. Respuestas en caché se entregan de una vez;
+     * solo se guardan en caché las respuestas completas.
+     */
+    public CompletableFuture<StreamResult> streamTextAsync(String prompt, String operation, int maxChars, int maxWords,
+                                                           Consumer<String> onText) {
+        String apiKey = props.getApiKey();
+        if (apiKey == null || apiKey.isBlank()) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Falta gemini.api.key (o env var GEMINI_API_KEY/GOOGLE_API_KEY)."));
+        }
+
+        String key = cache.keyFor(prompt, props.getModel(), props.getTemperature());
+        Span span = tracer.startSpan("llm.stream").attr("operation", operation);
+        CompletableFuture<StreamResult> result = new CompletableFuture<>();
+        span.endWhenDone(result);
+        String cached = cache.get(key);
+        if (cached != null) {
+            count(operation, "cache");
+            span.attr("result", "cache");
+            try {
+                result.complete(deliver(cached, new TextCap(maxChars, maxWords), onText, "CACHED"));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
         }
+        span.attr("result", "call");
+        schedule(() -> stream(apiKey, prompt, key, operation, new TextCap(maxChars, maxWords), onText, result, span),
+                operation, result);
+        return result;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("calls", calls.get());
+        out.put("coalesced", coalesced.get());
+        out.put("rejected", rejected.get());
+        out.put("inFlight", inFlight.size());
+        out.put("waiting", waitingCount.get());
+        out.put("streaming", streaming.get());
+        out.put("capped", capped.get());
+        out.put("availablePermits", permits.availablePermits());
+        return out;
+    }
 
+    public int inFlight() { return inFlight.size(); }
+    public int waiting() { return waitingCount.get(); }
+
+    // ===================== Llamada HTTP =====================
+    private void call(String apiKey, String prompt, String key, String operation, CompletableFuture<String> result,
+                      Span parent) {
         // endpoint típico: https://generativelanguage.googleapis.com/v1beta/models
         String url = props.getEndpoint() + "/" + props.getModel() + ":generateContent?key=" + apiKey;
-
+        calls.incrementAndGet();
+        count(operation, "call");
+        Timer.Sample sample = Timer.start(metrics);
+        Span span = parent.child("llm.http").attr("model", props.getModel()).attr("prompt.chars", prompt.length());
         try {
-            String json = om.writeValueAsString(Map.of(
-                    "contents", new Object[] {
-                            Map.of("parts", new Object[] { Map.of("text", prompt) })
-                    },
-                    "generationConfig", Map.of("temperature", props.getTemperature())
-            ));
-
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofMillis(props.getTimeoutMs()))
-                    .header("Content-Type", "application/json")
-                    .header("Accept", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(json))
-                    .build();
-
-            HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
-            if (res.statusCode() < 200 || res.statusCode() >= 300) {
-                throw new RuntimeException("Gemini HTTP " + res.statusCode() + ": " + res.body());
-            }
+            HttpRequest req = request(url, prompt, "application/json");
+            http.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+                    .thenApply(res -> parse(res, operation, span))
+                    .whenComplete((text, e) -> {
+                        release();
+                        sample.stop(callTimer(operation, e == null ? "success" : "error"));
+                        span.error(e).end();
+                        if (e == null) {
+                            cache.put(key, text);
+                            result.complete(text);
+                        } else {
+                            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                            result.completeExceptionally(
+                                    new RuntimeException("Error llamando a Gemini: " + cause.getMessage(), cause));
+                        }
+                    });
+        } catch (Exception e) {
+            release();
+            sample.stop(callTimer(operation, "error"));
+            span.error(e).end();
+            result.completeExceptionally(new RuntimeException("Error llamando a Gemini: " + e.getMessage(), e));
+        }
+    }
 
+    private HttpRequest request(String url, String prompt, String accept) throws Exception {
+        String json = om.writeValueAsString(Map.of(
+                "contents", new Object[] {
+                        Map.of("parts", new Object[] { Map.of("text", prompt) })
+                },
+                "generationConfig", Map.of("temperature", props.getTemperature())
+        ));
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofMillis(props.getTimeoutMs()))
+                .header("Content-Type", "application/json")
+                .header("Accept", accept)
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private String parse(HttpResponse<String> res, String operation, Span span) {
+        span.attr("http.status", res.statusCode());
+        if (res.statusCode() < 200 || res.statusCode() >= 300) {
+            throw new RuntimeException("Gemini HTTP " + res.statusCode() + ": " + res.body());
+        }
+        try {
             JsonNode root = om.readTree(res.body());
+            JsonNode usage = root.path("usageMetadata");
+            if (usage.has("promptTokenCount")) {
+                tokens(operation, "prompt").record(usage.get("promptTokenCount").asLong());
+                span.attr("tokens.prompt", usage.get("promptTokenCount").asLong());
+            }
+            if (usage.has("candidatesTokenCount")) {
+                tokens(operation, "output").record(usage.get("candidatesTokenCount").asLong());
+                span.attr("tokens.output", usage.get("candidatesTokenCount").asLong());
+            }
             JsonNode textNode = root.path("candidates").path(0).path("content").path("parts").path(0).path("text");
             String text = textNode.asText("");
             return text.isBlank() ? res.body() : text;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
 
+    // ===================== Streaming (SSE) =====================
+    private void stream(String apiKey, String prompt, String key, String operation, TextCap cap, Consumer<String> onText,
+                        CompletableFuture<StreamResult> result, Span parent) {
+        if (result.isDone()) {   // cancelado mientras esperaba permiso
+            release();
+            return;
+        }
+        String url = props.getEndpoint() + "/" + props.getModel() + ":streamGenerateContent?alt=sse&key=" + apiKey;
+        calls.incrementAndGet();
+        streaming.incrementAndGet();
+        count(operation, "call");
+        Timer.Sample sample = Timer.start(metrics);
+        Span span = parent.child("llm.http").attr("model", props.getModel()).attr("prompt.chars", prompt.length());
+        SseStream sse = new SseStream(operation, cap, onText, result, span);
+        // único punto de salida: permiso, métricas y corte de la conexión si seguía abierta
+        result.whenComplete((r, e) -> {
+            sse.cancel();
+            release();
+            streaming.decrementAndGet();
+            String outcome = e instanceof CancellationException ? "cancelled"
+                    : e != null ? "error" : r.capped() ? "capped" : "success";
+            sample.stop(callTimer(operation, outcome));
+            if (r != null) {
+                span.attr("chars", cap.chars()).attr("capped", r.capped());
+                if (r.capped()) capped.incrementAndGet();
+                else if (!r.text().isBlank()) cache.put(key, r.text());
+            }
+            span.error(e).end();
+        });
+        // la llamada entera (no solo las cabeceras) no puede pasar de gemini.timeout-ms
+        result.orTimeout(props.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        try {
+            HttpRequest req = request(url, prompt, "text/event-stream");
+            CompletableFuture<HttpResponse<String>> exchange = http.sendAsync(req, info -> {
+                span.attr("http.status", info.statusCode());
+                if (info.statusCode() >= 200 && info.statusCode() < 300) {
+                    return HttpResponse.BodySubscribers.fromLineSubscriber(sse, s -> "", StandardCharsets.UTF_8, null);
+                }
+                return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+            });
+            exchange.whenComplete((res, e) -> {
+                if (e != null) {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    result.completeExceptionally(new RuntimeException("Error llamando a Gemini: " + cause.getMessage(), cause));
+                } else if (res.statusCode() < 200 || res.statusCode() >= 300) {
+                    result.completeExceptionally(new RuntimeException("Gemini HTTP " + res.statusCode() + ": " + res.body()));
+                }
+            });
+            result.whenComplete((r, e) -> exchange.cancel(true));
         } catch (Exception e) {
-            throw new RuntimeException("Error llamando a Gemini: " + e.getMessage(), e);
+            result.completeExceptionally(new RuntimeException("Error llamando a Gemini: " + e.getMessage(), e));
+        }
+    }
+
+    // respuesta completa ya conocida (caché): se pasa por el mismo tope que el stream
+    private static StreamResult deliver(String text, TextCap cap, Consumer<String> onText, String finishReason) {
+        String part = cap.accept(text);
+        if (!part.isEmpty()) onText.accept(part);
+        if (!cap.reached()) return new StreamResult(part, false, finishReason);
+        onText.accept("…");
+        return new StreamResult(part + "…", true, "CAPPED");
+    }
+
+    /**
+     * Lee el SSE de Gemini línea a línea: cada evento ({@code data: {...}} + línea en blanco) es un
+     * GenerateContentResponse con el siguiente trozo de texto; el último trae usageMetadata y finishReason.
+     */
+    private final class SseStream implements Flow.Subscriber<String> {
+        private final String operation;
+        private final TextCap cap;
+        private final Consumer<String> onText;
+        private final CompletableFuture<StreamResult> result;
+        private final Span span;
+        private final long startNanos = System.nanoTime();
+        private final StringBuilder data = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+        private volatile Flow.Subscription subscription;
+        private String finishReason;
+        private boolean first = true;
+
+        SseStream(String operation, TextCap cap, Consumer<String> onText, CompletableFuture<StreamResult> result, Span span) {
+            this.operation = operation;
+            this.cap = cap;
+            this.onText = onText;
+            this.result = result;
+            this.span = span;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            if (result.isDone()) s.cancel();
+            else s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (result.isDone()) return;
+            try {
+                if (line.isEmpty()) dispatch();
+                else if (line.startsWith("data:")) data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            result.completeExceptionally(new RuntimeException("Error leyendo el stream de Gemini: " + t.getMessage(), t));
+        }
+
+        @Override
+        public void onComplete() {
+            if (result.isDone()) return;
+            try {
+                dispatch();
+                result.complete(new StreamResult(text.toString(), false, finishReason));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        void cancel() {
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+        }
+
+        private void dispatch() throws Exception {
+            if (data.isEmpty()) return;
+            JsonNode chunk = om.readTree(data.toString());
+            data.setLength(0);
+            if (chunk.has("error")) {
+                throw new RuntimeException("Gemini: " + chunk.path("error").path("message").asText(chunk.get("error").toString()));
+            }
+            JsonNode candidate = chunk.path("candidates").path(0);
+            if (candidate.has("finishReason")) finishReason = candidate.get("finishReason").asText();
+            JsonNode usage = chunk.path("usageMetadata");
+            if (usage.has("promptTokenCount")) span.attr("tokens.prompt", usage.get("promptTokenCount").asLong());
+            if (usage.has("candidatesTokenCount")) span.attr("tokens.output", usage.get("candidatesTokenCount").asLong());
+
+            StringBuilder delta = new StringBuilder();
+            for (JsonNode part : candidate.path("content").path("parts")) delta.append(part.path("text").asText(""));
+            String allowed = cap.accept(delta.toString());
+            if (!allowed.isEmpty()) {
+                if (first) {
+                    first = false;
+                    long ttfb = System.nanoTime() - startNanos;
+                    firstTextTimer(operation).record(ttfb, TimeUnit.NANOSECONDS);
+                    span.attr("first.text.ms", TimeUnit.NANOSECONDS.toMillis(ttfb));
+                }
+                text.append(allowed);
+                onText.accept(allowed);
+            }
+            if (cap.reached()) {
+                // tope alcanzado: se corta la conexión para que Gemini deje de generar (y de facturar) tokens
+                cancel();
+                onText.accept("…");
+                result.complete(new StreamResult(text.append('…').toString(), true, "CAPPED"));
+            } else if (usage.has("candidatesTokenCount") && finishReason != null) {
+                tokens(operation, "output").record(usage.get("candidatesTokenCount").asLong());
+                if (usage.has("promptTokenCount")) tokens(operation, "prompt").record(usage.get("promptTokenCount").asLong());
+            }
+        }
+    }
+
+    // ===================== Métricas =====================
+    private void count(String operation, String result) {
+        Counter.builder("healthgen.llm.requests").tag("operation", operation).tag("result", result)
+                .register(metrics).increment();
+    }
+
+    private Timer callTimer(String operation, String outcome) {
+        return Timer.builder("healthgen.llm.call").tag("operation", operation).tag("outcome", outcome)
+                .register(metrics);
+    }
+
+    private Timer firstTextTimer(String operation) {
+        return Timer.builder("healthgen.llm.first.text").tag("operation", operation).register(metrics);
+    }
+
+    private DistributionSummary tokens(String operation, String type) {
+        return DistributionSummary.builder("healthgen.llm.tokens").baseUnit("tokens")
+                .tag("operation", operation).tag("type", type).register(metrics);
+    }
+
+    // ===================== Permisos =====================
+    // Cola sin hilos: quien libera un permiso arranca la siguiente llamada pendiente.
+    private void schedule(Runnable start, String operation, CompletableFuture<?> result) {
+        if (waitingCount.incrementAndGet() > Math.max(0, props.getMaxQueued()) + permits.availablePermits()) {
+            waitingCount.decrementAndGet();
+            rejected.incrementAndGet();
+            count(operation, "rejected");
+            result.completeExceptionally(new ServiceBusyException("Demasiadas consultas a la IA en curso, intenta en unos segundos."));
+            return;
+        }
+        waiting.add(start);
+        drain();
+    }
+
+    private void release() {
+        permits.release();
+        drain();
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                continue;
+            }
+            waitingCount.decrementAndGet();
+            next.run();
         }
     }
 }
@@ -9,6 +9,9 @@ public class GeminiProperties {
     private String endpoint = "https://generativelanguage.googleapis.com/v1beta/models";
     private int timeoutMs = 15000;
     private Double temperature = 0.2; // opcional
+    private int maxConcurrent = 4;    // llamadas simultáneas al proveedor
+    private int maxQueued = 64;       // esperando permiso; por encima se rechaza (503)
+    private final Cache cache = new Cache();
 
     public String getApiKey() { return apiKey; }
     public void setApiKey(String apiKey) { this.apiKey = apiKey; }
@@ -20,4 +23,32 @@ public class GeminiProperties {
     public void setTimeoutMs(int timeoutMs) { this.timeoutMs = timeoutMs; }
     public Double getTemperature() { return temperature; }
     public void setTemperature(Double temperature) { this.temperature = temperature; }
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+    public int getMaxQueued() { return maxQueued; }
+    public void setMaxQueued(int maxQueued) { this.maxQueued = maxQueued; }
+    public Cache getCache() { return cache; }
+
+    /** Caché de respuestas por prompt normalizado + modelo + temperatura. */
+    public static class Cache {
+        private boolean enabled = true;
+        private long ttlMs = 24 * 60 * 60_000L; // 24 h
+        private int maxEntries = 1000;          // LRU en memoria
+        private String dir;                     // opcional: copia en disco que sobrevive reinicios
+        private long diskMaxBytes = 64L * 1024 * 1024; // tope de la carpeta; se borra lo menos usado
+        private long diskSweepMs = 10 * 60_000L;       // cada cuánto se barre lo caducado del disco
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public long getTtlMs() { return ttlMs; }
+        public void setTtlMs(long ttlMs) { this.ttlMs = ttlMs; }
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        public String getDir() { return dir; }
+        public void setDir(String dir) { this.dir = dir; }
+        public long getDiskMaxBytes() { return diskMaxBytes; }
+        public void setDiskMaxBytes(long diskMaxBytes) { this.diskMaxBytes = diskMaxBytes; }
+        public long getDiskSweepMs() { return diskSweepMs; }
+        public void setDiskSweepMs(long diskSweepMs) { this.diskSweepMs = diskSweepMs; }
+    }
 }
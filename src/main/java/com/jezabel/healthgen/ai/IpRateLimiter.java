@@ -1,22 +1,150 @@
 package com.jezabel.healthgen.ai;
 
-import org.springframework.stereotype.Component;
-import java.util.*;
-
-@Component
-public class IpRateLimiter {
-    // p.ej. 10 peticiones cada 3 minutos por IP
-    private static final int LIMIT = 10;
-    private static final long WINDOW_MS = 3 * 60_000L;
-
-    private final Map<String, Deque<Long>> hits = new HashMap<>();
-
-    public synchronized boolean allow(String ip) {
-        long now = System.currentTimeMillis();
-        Deque<Long> q = hits.computeIfAbsent(ip, k -> new ArrayDeque<>());
-        while (!q.isEmpty() && now - q.peekFirst() > WINDOW_MS) q.pollFirst();
-        if (q.size() >= LIMIT) return false;
-        q.addLast(now);
-        return true;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limitador por clave (IP) con GCRA: cada clave guarda un único {@code long} (TAT, instante teórico
+ * de la próxima llegada) en arrays primitivos; sin colas ni {@code Long} por petición.
+ * Permite {@code limit} peticiones de golpe y luego una cada {@code window / limit}.
+ * <p>
+ * Las claves se reparten en segmentos con su propio candado (no hay un candado global).
+ * Una clave con TAT vencido equivale a una clave nueva, así que se descarta al reconstruir el
+ * segmento; si aun así se llena, se descartan las más próximas a vencer. La memoria queda acotada
+ * a {@code maxKeys} claves aunque lleguen IPs nuevas sin parar.
+ */
+public final class IpRateLimiter {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final long intervalNanos;   // T: separación entre peticiones en régimen estable
+    private final long toleranceNanos;  // τ: ráfaga permitida por encima del ritmo
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int maxKeysPerSegment;
+    private final LongAdder rejected = new LongAdder();
+
+    public IpRateLimiter(int limit, long windowMs, int stripes, int maxKeys) {
+        if (limit <= 0 || windowMs <= 0) throw new IllegalArgumentException("limit y windowMs deben ser > 0");
+        this.intervalNanos = Math.max(1, windowMs * 1_000_000L / limit);
+        this.toleranceNanos = intervalNanos * (limit - 1);
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1) << 1);
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; i++) segments[i] = new Segment();
+        this.segmentMask = n - 1;
+        this.maxKeysPerSegment = Math.max(4, maxKeys / n);
+    }
+
+    /** 0 si la petición entra; si no, milisegundos hasta que entraría la siguiente. */
+    public long tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    long tryAcquire(String key, long now) {
+        int h = spread(key.hashCode());
+        Segment s = segments[h & segmentMask];
+        synchronized (s) {
+            int slot = s.find(key, h);
+            long tat = slot >= 0 ? Math.max(s.tat[slot], now) : now;
+            long excess = tat - now - toleranceNanos;
+            if (excess > 0) {
+                rejected.increment();
+                return Math.max(1, excess / 1_000_000L);
+            }
+            long next = tat + intervalNanos;
+            if (slot >= 0) {
+                s.tat[slot] = next;
+            } else {
+                s.insert(key, h, next, now, maxKeysPerSegment);
+            }
+            return 0;
+        }
+    }
+
+    /** Peticiones rechazadas desde que se creó el limitador. */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /** Claves retenidas (incluye las ya vencidas pendientes de limpieza). */
+    public int size() {
+        int total = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                total += s.size;
+            }
+        }
+        return total;
+    }
+
+    private static int spread(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    // ===================== Segmento: hash abierto con sondeo lineal =====================
+    private static final class Segment {
+        String[] keys = new String[MIN_CAPACITY];
+        long[] tat = new long[MIN_CAPACITY];
+        int size;
+
+        int find(String key, int h) {
+            int mask = keys.length - 1;
+            for (int i = (h >>> 8) & mask; ; i = (i + 1) & mask) {
+                String k = keys[i];
+                if (k == null) return -1;
+                if (k.equals(key)) return i;
+            }
+        }
+
+        void insert(String key, int h, long value, long now, int maxKeys) {
+            // carga ≤ 50%: al superarla se limpia lo vencido y, si hace falta, se crece o se poda
+            if ((size + 1) * 2 > keys.length || size >= maxKeys) rebuild(now, maxKeys);
+            put(key, h, value);
+        }
+
+        private void put(String key, int h, long value) {
+            int mask = keys.length - 1;
+            int i = (h >>> 8) & mask;
+            while (keys[i] != null) i = (i + 1) & mask;
+            keys[i] = key;
+            tat[i] = value;
+            size++;
+        }
+
+        private void rebuild(long now, int maxKeys) {
+            String[] oldKeys = keys;
+            long[] oldTat = tat;
+
+            int live = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null && oldTat[i] > now) live++;
+            }
+            // deja sitio para seguir insertando: como mucho 3/4 del tope tras la poda
+            int keep = Math.min(live, Math.max(1, maxKeys * 3 / 4));
+            long threshold = Long.MIN_VALUE;
+            if (keep < live) {
+                long[] live64 = new long[live];
+                int j = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null && oldTat[i] > now) live64[j++] = oldTat[i];
+                }
+                Arrays.sort(live64);
+                threshold = live64[live - keep];
+            }
+
+            // tope: maxKeys al 50% de carga; por debajo, 4× lo que queda para no reconstruir enseguida
+            int maxCapacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, maxKeys * 2 - 1)) << 1;
+            int capacity = MIN_CAPACITY;
+            while (capacity < keep * 4 && capacity < maxCapacity) capacity <<= 1;
+            keys = new String[capacity];
+            tat = new long[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length && size < keep; i++) {
+                String k = oldKeys[i];
+                if (k != null && oldTat[i] > now && oldTat[i] >= threshold) put(k, spread(k.hashCode()), oldTat[i]);
+            }
+        }
     }
 }
@@ -0,0 +1,267 @@
+package com.jezabel.healthgen.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Caché de respuestas del LLM delante de {@link GeminiClient}.
+ * Clave = SHA-256 de modelo + temperatura + prompt normalizado (NFC, espacios colapsados): el mismo
+ * contexto de chat con la misma pregunta, o el prompt de documentación de un spec idéntico, no vuelven
+ * a salir al proveedor. LRU acotado por entradas con TTL; si hay {@code gemini.cache.dir}
+ * cada respuesta se copia también a disco y sobrevive reinicios. La carpeta es LRU acotada por
+ * {@code gemini.cache.disk-max-bytes}; lo caducado se barre al arrancar y, cada
+ * {@code gemini.cache.disk-sweep-ms}, en la siguiente escritura.
+ */
+@Component
+public class LlmResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmResponseCache.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private record Entry(String text, long createdAt) { }
+    private record DiskEntry(long bytes, long createdAt) { }
+
+    private final GeminiProperties.Cache props;
+    private final Path dir;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    // Índice de la carpeta (orden de acceso); protegido por su propio monitor
+    private final LinkedHashMap<String, DiskEntry> onDisk = new LinkedHashMap<>(64, 0.75f, true);
+    private long diskBytes;
+    private volatile long lastSweep;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+
+    public LlmResponseCache(GeminiProperties props) {
+        this.props = props.getCache();
+        String d = this.props.getDir();
+        this.dir = (d == null || d.isBlank()) ? null : Path.of(d);
+        if (dir != null) scanDir();
+    }
+
+    public boolean isEnabled() { return props.isEnabled(); }
+
+    /** Clave de la respuesta: cambia si cambia el modelo, la temperatura o el contenido del prompt. */
+    public String keyFor(String prompt, String model, Double temperature) {
+        StringBuilder sb = new StringBuilder(prompt.length() + 32);
+        sb.append(model).append('\u0000').append(temperature).append('\u0000').append(normalize(prompt));
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Forma canónica: mismas letras y palabras ⇒ mismo prompt, aunque difieran espacios o la composición Unicode. */
+    static String normalize(String prompt) {
+        String nfc = Normalizer.normalize(prompt, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(nfc).replaceAll(" ").trim();
+    }
+
+    public String get(String key) {
+        if (!props.isEnabled()) return null;
+        long now = System.currentTimeMillis();
+        Entry e;
+        synchronized (this) {
+            e = entries.get(key);
+            if (e != null && isExpired(e, now)) {
+                entries.remove(key);
+                expired.incrementAndGet();
+                e = null;
+            }
+        }
+        if (e == null) e = readDisk(key, now);
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.text();
+    }
+
+    public void put(String key, String text) {
+        if (!props.isEnabled() || text == null || text.isBlank()) return;
+        Entry e = new Entry(text, System.currentTimeMillis());
+        store(key, e);
+        writeDisk(key, e);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        synchronized (this) {
+            out.put("entries", entries.size());
+        }
+        long h = hits.get(), m = misses.get();
+        out.put("maxEntries", props.getMaxEntries());
+        out.put("hits", h);
+        out.put("misses", m);
+        out.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        out.put("diskHits", diskHits.get());
+        out.put("evictions", evictions.get());
+        out.put("expired", expired.get());
+        synchronized (onDisk) {
+            out.put("diskEntries", onDisk.size());
+            out.put("diskBytes", diskBytes);
+            out.put("diskEvictions", diskEvictions.get());
+        }
+        return out;
+    }
+
+    public long hits() { return hits.get(); }
+    public long misses() { return misses.get(); }
+    public long evictions() { return evictions.get(); }
+
+    // ===================== LRU =====================
+    private boolean isExpired(Entry e, long now) {
+        return props.getTtlMs() > 0 && now - e.createdAt() > props.getTtlMs();
+    }
+
+    private synchronized void store(String key, Entry e) {
+        entries.put(key, e);
+        var it = entries.entrySet().iterator();
+        while (entries.size() > Math.max(1, props.getMaxEntries()) && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    // ===================== Disco =====================
+    // Formato: primera línea = epoch ms de creación; resto = texto de la respuesta.
+    private Entry readDisk(String key, long now) {
+        if (dir == null) return null;
+        synchronized (onDisk) {
+            if (onDisk.get(key) == null) return null;   // get: cuenta como uso en el LRU de disco
+        }
+        try {
+            String raw = Files.readString(dir.resolve(key + ".txt"), StandardCharsets.UTF_8);
+            int nl = raw.indexOf('\n');
+            if (nl < 0) throw new IOException("sin cabecera");
+            Entry e = new Entry(raw.substring(nl + 1), Long.parseLong(raw.substring(0, nl)));
+            if (isExpired(e, now)) {
+                deleteDisk(key);
+                expired.incrementAndGet();
+                return null;
+            }
+            diskHits.incrementAndGet();
+            store(key, e);
+            return e;
+        } catch (IOException | NumberFormatException ex) {
+            log.warn("Respuesta en disco ilegible {}: {}", key, ex.getMessage());
+            deleteDisk(key);
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, Entry e) {
+        if (dir == null) return;
+        try {
+            byte[] bytes = (e.createdAt() + "\n" + e.text()).getBytes(StandardCharsets.UTF_8);
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve(key + ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, dir.resolve(key + ".txt"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (onDisk) {
+                DiskEntry prev = onDisk.put(key, new DiskEntry(bytes.length, e.createdAt()));
+                if (prev != null) diskBytes -= prev.bytes();
+                diskBytes += bytes.length;
+            }
+        } catch (IOException ex) {
+            log.warn("No se pudo guardar en disco la respuesta {}: {}", key, ex.getMessage());
+            return;
+        }
+        // la carpeta solo crece al escribir: aquí basta para que lo caducado no se acumule
+        if (e.createdAt() - lastSweep >= props.getDiskSweepMs()) sweepExpired(e.createdAt());
+        trimDir();
+    }
+
+    /** Borra lo menos usado hasta quedar por debajo de {@code disk-max-bytes}. */
+    private void trimDir() {
+        while (true) {
+            String eldest;
+            synchronized (onDisk) {
+                if (diskBytes <= props.getDiskMaxBytes() || onDisk.isEmpty()) return;
+                eldest = onDisk.keySet().iterator().next();
+            }
+            deleteDisk(eldest);
+            diskEvictions.incrementAndGet();
+        }
+    }
+
+    /** Borra las respuestas con el TTL vencido aunque nadie las vuelva a pedir. */
+    private void sweepExpired(long now) {
+        List<String> old = new ArrayList<>();
+        synchronized (onDisk) {
+            lastSweep = now;
+            if (props.getTtlMs() <= 0) return;
+            onDisk.forEach((key, d) -> {
+                if (now - d.createdAt() > props.getTtlMs()) old.add(key);
+            });
+        }
+        for (String key : old) deleteDisk(key);
+        expired.addAndGet(old.size());
+    }
+
+    private void deleteDisk(String key) {
+        synchronized (onDisk) {
+            DiskEntry d = onDisk.remove(key);
+            if (d != null) diskBytes -= d.bytes();
+        }
+        try {
+            Files.deleteIfExists(dir.resolve(key + ".txt"));
+        } catch (IOException ex) {
+            log.warn("No se pudo borrar del disco la respuesta {}: {}", key, ex.getMessage());
+        }
+    }
+
+    /** Índice de lo que dejó una ejecución anterior, de la respuesta más antigua a la más reciente. */
+    private void scanDir() {
+        if (!Files.isDirectory(dir)) return;
+        List<Path> texts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(".tmp")) Files.deleteIfExists(f);   // escritura cortada a medias
+                else if (name.endsWith(".txt")) texts.add(f);
+            }
+            // la fecha del archivo es la de creación de la respuesta: se escribe una sola vez
+            texts.sort(Comparator.comparingLong(f -> f.toFile().lastModified()));
+            for (Path f : texts) {
+                String key = f.getFileName().toString().replaceFirst("\\.txt$", "");
+                long bytes = Files.size(f);
+                onDisk.put(key, new DiskEntry(bytes, f.toFile().lastModified()));
+                diskBytes += bytes;
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo leer la carpeta de la caché {}: {}", dir, e.getMessage());
+        }
+        sweepExpired(System.currentTimeMillis());
+        trimDir();
+    }
+}
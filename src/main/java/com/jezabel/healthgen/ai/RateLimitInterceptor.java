@@ -0,0 +1,96 @@
+package com.jezabel.healthgen.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aplica {@link IpRateLimiter} a los endpoints de IA antes de llegar al controller.
+ * Cada política tiene su propio limitador: agotar el chat no bloquea la generación de diagramas.
+ * Al rechazar responde 429 con {@code Retry-After} (segundos). Solo se cuenta el dispatch inicial:
+ * el dispatch ASYNC con que Spring entrega un CompletableFuture/SseEmitter ya pagó su turno (y a Gemini).
+ * Métricas por política: {@code healthgen.ratelimit.rejected} y {@code healthgen.ratelimit.keys}.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private record Rule(String name, String pattern, IpRateLimiter limiter) { }
+
+    private final RateLimitProperties props;
+    private final ObjectMapper om;
+    private final AntPathMatcher matcher = new AntPathMatcher();
+    private final List<Rule> rules = new ArrayList<>();
+    private final Rule fallback;
+
+    public RateLimitInterceptor(RateLimitProperties props, ObjectMapper om, MeterRegistry metrics) {
+        this.props = props;
+        this.om = om;
+        for (Map.Entry<String, RateLimitProperties.Policy> e : props.getPolicies().entrySet()) {
+            RateLimitProperties.Policy p = e.getValue();
+            if (p.getPath() == null || p.getPath().isBlank()) continue;
+            rules.add(new Rule(e.getKey(), p.getPath(), limiter(p)));
+        }
+        this.fallback = new Rule("default", "/**", limiter(props.getDefaults()));
+
+        List<Rule> all = new ArrayList<>(rules);
+        all.add(fallback);
+        for (Rule r : all) {
+            FunctionCounter.builder("healthgen.ratelimit.rejected", r.limiter(), IpRateLimiter::rejected)
+                    .tag("policy", r.name()).register(metrics);
+            Gauge.builder("healthgen.ratelimit.keys", r.limiter(), IpRateLimiter::size)
+                    .tag("policy", r.name()).register(metrics);
+        }
+    }
+
+    private IpRateLimiter limiter(RateLimitProperties.Policy p) {
+        return new IpRateLimiter(p.getRequests(), p.getWindowMs(), props.getStripes(), props.getMaxKeys());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) throws Exception {
+        if (!props.isEnabled() || "OPTIONS".equalsIgnoreCase(req.getMethod())) return true;
+        if (req.getDispatcherType() == DispatcherType.ASYNC) return true;
+
+        Rule rule = ruleFor(req.getRequestURI().substring(req.getContextPath().length()));
+        long waitMs = rule.limiter().tryAcquire(clientIp(req));
+        if (waitMs == 0) return true;
+
+        res.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        res.setHeader("Retry-After", String.valueOf((waitMs + 999) / 1000));
+        res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        res.setCharacterEncoding("UTF-8");
+        om.writeValue(res.getWriter(), Map.of(
+                "error", "Demasiadas solicitudes, intenta en unos minutos.",
+                "policy", rule.name()));
+        return false;
+    }
+
+    private Rule ruleFor(String path) {
+        for (Rule r : rules) {
+            if (matcher.match(r.pattern(), path)) return r;
+        }
+        return fallback;
+    }
+
+    private static String clientIp(HttpServletRequest req) {
+        String xf = req.getHeader("X-Forwarded-For");
+        if (xf != null && !xf.isBlank()) {
+            int comma = xf.indexOf(',');
+            return (comma < 0 ? xf : xf.substring(0, comma)).trim();
+        }
+        return req.getRemoteAddr();
+    }
+}
@@ -0,0 +1,41 @@
+package com.jezabel.healthgen.ai;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Límites por IP de los endpoints de IA. Cada política se aplica a un patrón de ruta
+ * (gana la primera que coincide, en orden de declaración); lo demás usa el límite por defecto.
+ */
+@ConfigurationProperties(prefix = "ratelimit")
+public class RateLimitProperties {
+    private boolean enabled = true;
+    private int stripes = 32;            // segmentos con candado propio
+    private int maxKeys = 20000;         // IPs retenidas por política (cota de memoria)
+    private final Policy defaults = new Policy();
+    private final Map<String, Policy> policies = new LinkedHashMap<>();
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public int getStripes() { return stripes; }
+    public void setStripes(int stripes) { this.stripes = stripes; }
+    public int getMaxKeys() { return maxKeys; }
+    public void setMaxKeys(int maxKeys) { this.maxKeys = maxKeys; }
+    public Policy getDefaults() { return defaults; }
+    public Map<String, Policy> getPolicies() { return policies; }
+
+    public static class Policy {
+        private String path;                 // patrón Ant, p.ej. /api/ai/chat/**
+        private int requests = 10;           // peticiones por ventana (y ráfaga máxima)
+        private long windowMs = 3 * 60_000L;
+
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+        public int getRequests() { return requests; }
+        public void setRequests(int requests) { this.requests = requests; }
+        public long getWindowMs() { return windowMs; }
+        public void setWindowMs(long windowMs) { this.windowMs = windowMs; }
+    }
+}
@@ -0,0 +1,46 @@
+package com.jezabel.healthgen.ai;
+
+/**
+ * Tope de caracteres y palabras para un texto que llega por trozos (streaming). {@link #accept} devuelve
+ * la parte del trozo que aún cabe; una vez alcanzado el tope ({@link #reached()}) ya no deja pasar nada.
+ * Una palabra es una racha de caracteres que no son espacio; el corte por palabras cae en el espacio
+ * que sigue a la última permitida. No es seguro entre hilos: un tope por stream.
+ */
+public final class TextCap {
+
+    private final int maxChars;
+    private final int maxWords;
+    private int chars;
+    private int words;
+    private boolean inWord;
+    private boolean reached;
+
+    /** {@code maxChars} / {@code maxWords} &lt;= 0 significa sin tope. */
+    public TextCap(int maxChars, int maxWords) {
+        this.maxChars = maxChars <= 0 ? Integer.MAX_VALUE : maxChars;
+        this.maxWords = maxWords <= 0 ? Integer.MAX_VALUE : maxWords;
+    }
+
+    public String accept(String chunk) {
+        if (reached || chunk == null || chunk.isEmpty()) return "";
+        int n = chunk.length();
+        for (int i = 0; i < n; i++) {
+            char c = chunk.charAt(i);
+            boolean space = Character.isWhitespace(c);
+            if (chars >= maxChars || (space && inWord && words >= maxWords)) {
+                reached = true;
+                // no partir un par sustituto (emoji, etc.)
+                if (i > 0 && Character.isLowSurrogate(c) && Character.isHighSurrogate(chunk.charAt(i - 1))) i--;
+                return chunk.substring(0, i);
+            }
+            if (!space && !inWord) words++;
+            inWord = !space;
+            chars++;
+        }
+        return chunk;
+    }
+
+    public boolean reached() { return reached; }
+    public int chars() { return chars; }
+    public int words() { return words; }
+}
@@ -0,0 +1,63 @@
+package com.jezabel.healthgen.codegen;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool de {@code byte[]} por clases de tamaño (potencias de 2, de 4 KB a 1 MB) compartido entre peticiones.
+ * Cada clase retiene como mucho {@code maxRetainedBytes / clases} bytes; lo que no cabe se deja al GC.
+ * Los arrays mayores de 1 MB no se reutilizan. Seguro entre hilos.
+ */
+public final class BufferPool {
+
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 20;
+
+    private final ArrayBlockingQueue<byte[]>[] classes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public BufferPool(long maxRetainedBytes) {
+        int n = MAX_SHIFT - MIN_SHIFT + 1;
+        long perClass = Math.max(0, maxRetainedBytes) / n;
+        classes = new ArrayBlockingQueue[n];
+        for (int i = 0; i < n; i++) {
+            long count = perClass >> (MIN_SHIFT + i);
+            classes[i] = count > 0 ? new ArrayBlockingQueue<>((int) Math.min(count, 1024)) : null;
+        }
+    }
+
+    /** Array de al menos {@code minLength} bytes (contenido sin limpiar). */
+    public byte[] acquire(int minLength) {
+        int c = classOf(minLength);
+        if (c < 0) {
+            misses.incrementAndGet();
+            return new byte[minLength];
+        }
+        byte[] buf = classes[c] == null ? null : classes[c].poll();
+        if (buf != null) {
+            hits.incrementAndGet();
+            return buf;
+        }
+        misses.incrementAndGet();
+        return new byte[1 << (MIN_SHIFT + c)];
+    }
+
+    /** Devuelve un array obtenido con {@link #acquire}; ya no se debe usar después. */
+    public void release(byte[] buf) {
+        if (buf == null) return;
+        int c = Integer.numberOfTrailingZeros(buf.length) - MIN_SHIFT;
+        if (Integer.bitCount(buf.length) != 1 || c < 0 || c >= classes.length || classes[c] == null) return;
+        classes[c].offer(buf);
+    }
+
+    public long hits() { return hits.get(); }
+    public long misses() { return misses.get(); }
+
+    private static int classOf(int length) {
+        if (length > 1 << MAX_SHIFT) return -1;
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, length) - 1));
+        return shift - MIN_SHIFT;
+    }
+}
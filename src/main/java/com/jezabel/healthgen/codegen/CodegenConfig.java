@@ -0,0 +1,8 @@
+package com.jezabel.healthgen.codegen;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(CodegenProperties.class)
+public class CodegenConfig { }
@@ -0,0 +1,95 @@
+package com.jezabel.healthgen.codegen;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "codegen")
+public class CodegenProperties {
+
+    private final Cache cache = new Cache();
+    private final Parallel parallel = new Parallel();
+    private final Templates templates = new Templates();
+    private final Batch batch = new Batch();
+    private final Zip zip = new Zip();
+
+    public Cache getCache() { return cache; }
+    public Parallel getParallel() { return parallel; }
+    public Templates getTemplates() { return templates; }
+    public Batch getBatch() { return batch; }
+    public Zip getZip() { return zip; }
+
+    /** Caché de artefactos generados (ZIP + listado) por hash del spec. */
+    public static class Cache {
+        private boolean enabled = true;
+        private long maxBytes = 64L * 1024 * 1024;      // total en memoria
+        private long maxEntryBytes = 16L * 1024 * 1024; // ZIPs más grandes no se cachean
+        private String spillDir;                        // opcional: carpeta para lo desalojado
+        private long spillMaxBytes = 512L * 1024 * 1024; // tope de la carpeta; se borra lo menos usado
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public long getMaxBytes() { return maxBytes; }
+        public void setMaxBytes(long maxBytes) { this.maxBytes = maxBytes; }
+        public long getMaxEntryBytes() { return maxEntryBytes; }
+        public void setMaxEntryBytes(long maxEntryBytes) { this.maxEntryBytes = maxEntryBytes; }
+        public String getSpillDir() { return spillDir; }
+        public void setSpillDir(String spillDir) { this.spillDir = spillDir; }
+        public long getSpillMaxBytes() { return spillMaxBytes; }
+        public void setSpillMaxBytes(long spillMaxBytes) { this.spillMaxBytes = spillMaxBytes; }
+    }
+
+    /** Render de entidades en paralelo (opt-in). La salida mantiene el orden del spec. */
+    public static class Parallel {
+        private boolean enabled = false;
+        private int threads = 0;          // 0 = núcleos disponibles
+        private int minEntities = 32;     // por debajo, secuencial (no compensa)
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getThreads() { return threads; }
+        public void setThreads(int threads) { this.threads = threads; }
+        public int getMinEntities() { return minEntities; }
+        public void setMinEntities(int minEntities) { this.minEntities = minEntities; }
+    }
+
+    /** Carpeta con plantillas propias (mismos nombres que classpath:codegen/templates). */
+    public static class Templates {
+        private String dir;
+
+        public String getDir() { return dir; }
+        public void setDir(String dir) { this.dir = dir; }
+    }
+
+    /** Generación de varios specs en una sola petición (POST /api/codegen/batch). */
+    public static class Batch {
+        private int maxSpecs = 100;       // ids por petición
+        private int threads = 4;          // proyectos generándose a la vez
+
+        public int getMaxSpecs() { return maxSpecs; }
+        public void setMaxSpecs(int maxSpecs) { this.maxSpecs = maxSpecs; }
+        public int getThreads() { return threads; }
+        public void setThreads(int threads) { this.threads = threads; }
+    }
+
+    /** Escritura de los ZIP generados. */
+    public static class Zip {
+        private int level = 6;                          // 0-9 (DEFLATE); 1 = rápido, 9 = más pequeño
+        private int storedBelow = 128;                  // archivos más pequeños van sin comprimir (STORED)
+        private long poolMaxBytes = 16L * 1024 * 1024;  // buffers retenidos entre peticiones
+        private boolean parallel = false;               // DEFLATE de varias entradas a la vez (opt-in)
+        private int threads = 0;                        // 0 = núcleos disponibles
+        private int parallelMinBytes = 2048;            // por debajo se comprime en el hilo que escribe
+
+        public int getLevel() { return level; }
+        public void setLevel(int level) { this.level = level; }
+        public int getStoredBelow() { return storedBelow; }
+        public void setStoredBelow(int storedBelow) { this.storedBelow = storedBelow; }
+        public long getPoolMaxBytes() { return poolMaxBytes; }
+        public void setPoolMaxBytes(long poolMaxBytes) { this.poolMaxBytes = poolMaxBytes; }
+        public boolean isParallel() { return parallel; }
+        public void setParallel(boolean parallel) { this.parallel = parallel; }
+        public int getThreads() { return threads; }
+        public void setThreads(int threads) { this.threads = threads; }
+        public int getParallelMinBytes() { return parallelMinBytes; }
+        public void setParallelMinBytes(int parallelMinBytes) { this.parallelMinBytes = parallelMinBytes; }
+    }
+}
@@ -0,0 +1,27 @@
+package com.jezabel.healthgen.codegen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Escribe los archivos generados bajo una carpeta raíz. */
+public class DirectorySink implements FileSink {
+
+    private final Path root;
+
+    public DirectorySink(Path root) {
+        this.root = root;
+    }
+
+    public Path getRoot() { return root; }
+
+    @Override
+    public void write(String path, String content) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,15 @@
+package com.jezabel.healthgen.codegen;
+
+import java.io.IOException;
+
+/**
+ * Destino de los archivos generados (carpeta, ZIP en streaming, ...).
+ * Las rutas son relativas a la raíz del proyecto y usan siempre "/".
+ */
+public interface FileSink {
+
+    void write(String path, String content) throws IOException;
+
+    /** Punto de corte natural (p.ej. al terminar una entidad) para empujar bytes al cliente. */
+    default void flush() throws IOException { }
+}
@@ -0,0 +1,9 @@
+package com.jezabel.healthgen.codegen;
+
+import java.util.List;
+
+/** Resultado cacheable de una generación: ZIP completo + listado de archivos. */
+public record GeneratedArtifact(String key, String artifactId, String packageBase, List<String> files, byte[] zip) {
+
+    public long sizeBytes() { return zip.length; }
+}
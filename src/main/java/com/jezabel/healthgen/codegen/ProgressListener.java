@@ -0,0 +1,13 @@
+package com.jezabel.healthgen.codegen;
+
+/**
+ * Avance de una generación larga (codegen, documentación). {@code total} es 0 cuando la etapa
+ * no tiene unidades contables (p.ej. "llm"). Se invoca en el hilo que hace el trabajo.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    ProgressListener NONE = (stage, done, total) -> { };
+
+    void onProgress(String stage, int done, int total);
+}
@@ -0,0 +1,388 @@
+package com.jezabel.healthgen.codegen;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Escribe cada archivo como entrada de un ZIP directamente sobre el stream de salida
+ * (p.ej. la respuesta HTTP), sin pasar por disco.
+ * <p>
+ * El formato se escribe a mano para poder comprimir cada entrada por separado: el contenido se codifica
+ * en UTF-8 sobre un buffer del {@link BufferPool} dimensionado por su longitud, se comprime entero con un
+ * {@link Deflater} reutilizado dentro del ZIP y se escribe con CRC y tamaños ya en la cabecera (sin data descriptor).
+ * Los archivos por debajo de {@code storedBelow}, o los que no ganan nada al comprimir, van STORED.
+ * Con un pool de DEFLATE, las entradas grandes se comprimen en paralelo y se escriben en el orden de llegada.
+ * ZIP64 solo cuando hace falta (más de 65.535 entradas o más de 4 GB).
+ */
+public class ZipStreamSink implements FileSink, AutoCloseable {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long MAX_U32 = 0xFFFFFFFFL;
+    private static final int MAX_U16 = 0xFFFF;
+
+    private final OutputStream out;
+    private final BufferPool buffers;
+    private final int level;
+    private final int storedBelow;
+    private final ExecutorService deflatePool;
+    private final int parallelMinBytes;
+    private final int window;
+
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final byte[] header = new byte[128];
+    private final int dosTime;
+    private final int dosDate;
+    private char[] chars = new char[0];
+
+    private final List<Central> central = new ArrayList<>();
+    private final Deque<Future<Packed>> pending = new ArrayDeque<>();
+    // Deflaters (raw, sin cabecera zlib) libres: crear uno por archivo reserva ~256 KB nativos cada vez.
+    // Como mucho uno por compresión simultánea; finish() libera su memoria nativa con end().
+    private final Deque<Deflater> deflaters = new ArrayDeque<>();
+    private boolean deflatersEnded;
+    private long offset;
+    private boolean finished;
+
+    /** Entrada lista para escribir; {@code pooled} = {@code data} vuelve al pool tras escribirla. */
+    private record Packed(byte[] name, int method, long crc, int size, byte[] data, int length, boolean pooled) { }
+
+    /** UTF-8 de un archivo: {@code data} es del pool y solo valen los primeros {@code length} bytes. */
+    private record Encoded(byte[] data, int length) { }
+
+    private record Central(byte[] name, int method, long crc, int compressedSize, int size, long offset) { }
+
+    /** Nivel por defecto, sin compresión paralela ni buffers retenidos entre ZIPs. */
+    public ZipStreamSink(OutputStream out) {
+        this(out, new CodegenProperties.Zip(), new BufferPool(0), null);
+    }
+
+    /** @param deflatePool pool para comprimir entradas en paralelo; null = todo en el hilo que escribe */
+    public ZipStreamSink(OutputStream out, CodegenProperties.Zip settings, BufferPool buffers, ExecutorService deflatePool) {
+        this.out = out;
+        this.buffers = buffers;
+        this.level = Math.max(0, Math.min(9, settings.getLevel()));
+        this.storedBelow = settings.getStoredBelow();
+        this.deflatePool = deflatePool;
+        this.parallelMinBytes = settings.getParallelMinBytes();
+        int threads = settings.getThreads() > 0 ? settings.getThreads() : Runtime.getRuntime().availableProcessors();
+        this.window = Math.max(2, threads * 4);
+        LocalDateTime now = LocalDateTime.now();
+        this.dosTime = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() >> 1;
+        this.dosDate = Math.max(0, now.getYear() - 1980) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+    }
+
+    @Override
+    public void write(String path, String content) throws IOException {
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        Encoded src = encode(content);
+        if (deflatePool != null && src.length() >= parallelMinBytes && src.length() >= storedBelow) {
+            pending.addLast(deflatePool.submit(() -> pack(name, src.data(), src.length())));
+            drain(pending.size() >= window);
+        } else {
+            enqueue(pack(name, src.data(), src.length()));
+        }
+    }
+
+    /** Entrada sin comprimir (STORED) para contenido que ya viene comprimido, p.ej. un ZIP dentro del ZIP. */
+    public void writeStored(String path, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        enqueue(new Packed(path.getBytes(StandardCharsets.UTF_8), STORED, crc.getValue(), data.length, data, data.length, false));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain(false);
+        out.flush();
+    }
+
+    /** Escribe el directorio central del ZIP; no cierra el stream subyacente. */
+    public void finish() throws IOException {
+        if (finished) return;
+        try {
+            while (!pending.isEmpty()) emit(await(pending.pollFirst()));
+        } finally {
+            for (Future<Packed> f : pending) f.cancel(true);
+            pending.clear();
+            endDeflaters();
+        }
+        finished = true;
+        writeCentralDirectory();
+        out.flush();
+    }
+
+    /**
+     * Para los caminos de error: cancela lo que se esté comprimiendo y libera los Deflaters sin escribir
+     * el directorio central. Tras {@link #finish()} no hace nada, así que puede ir en un {@code finally}.
+     */
+    public void release() {
+        for (Future<Packed> f : pending) f.cancel(true);
+        pending.clear();
+        endDeflaters();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    // ===================== Codificación y compresión =====================
+    private Encoded encode(String content) {
+        int n = content.length();
+        if (chars.length < n) chars = new char[Math.max(n, chars.length * 2)];
+        content.getChars(0, n, chars, 0);
+        CharBuffer in = CharBuffer.wrap(chars, 0, n);
+        // casi todo el código generado es ASCII: se empieza con ~1 byte por carácter y se crece si hace falta
+        byte[] dst = buffers.acquire(n + (n >> 4) + 16);
+        ByteBuffer bb = ByteBuffer.wrap(dst);
+        utf8.reset();
+        while (true) {
+            CoderResult r = utf8.encode(in, bb, true);
+            if (r.isUnderflow()) r = utf8.flush(bb);
+            if (r.isUnderflow()) break;
+            byte[] bigger = buffers.acquire(Math.max(dst.length * 2, n * 3));
+            int pos = bb.position();
+            System.arraycopy(dst, 0, bigger, 0, pos);
+            buffers.release(dst);
+            dst = bigger;
+            bb = ByteBuffer.wrap(dst);
+            bb.position(pos);
+        }
+        return new Encoded(dst, bb.position());
+    }
+
+    /** CRC + DEFLATE de una entrada completa; se ejecuta en el hilo que escribe o en el pool. */
+    private Packed pack(byte[] name, byte[] src, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(src, 0, len);
+        if (len < storedBelow || level == 0) {
+            return new Packed(name, STORED, crc.getValue(), len, src, len, true);
+        }
+        Deflater deflater = borrowDeflater();
+        byte[] dst = buffers.acquire(len + (len >> 3) + 64);
+        int n = 0;
+        try {
+            deflater.setInput(src, 0, len);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (n == dst.length) {
+                    byte[] bigger = buffers.acquire(dst.length * 2);
+                    System.arraycopy(dst, 0, bigger, 0, n);
+                    buffers.release(dst);
+                    dst = bigger;
+                }
+                n += deflater.deflate(dst, n, dst.length - n);
+            }
+        } finally {
+            returnDeflater(deflater);
+        }
+        if (n >= len) {
+            // texto que no se deja comprimir: mejor tal cual
+            buffers.release(dst);
+            return new Packed(name, STORED, crc.getValue(), len, src, len, true);
+        }
+        buffers.release(src);
+        return new Packed(name, DEFLATED, crc.getValue(), len, dst, n, true);
+    }
+
+    private Deflater borrowDeflater() {
+        synchronized (deflaters) {
+            Deflater d = deflaters.pollFirst();
+            if (d != null) return d;
+        }
+        return new Deflater(level, true);
+    }
+
+    private void returnDeflater(Deflater d) {
+        synchronized (deflaters) {
+            if (!deflatersEnded) {
+                d.reset();
+                deflaters.addLast(d);
+                return;
+            }
+        }
+        // una compresión cancelada que termina después de finish()
+        d.end();
+    }
+
+    private void endDeflaters() {
+        synchronized (deflaters) {
+            deflatersEnded = true;
+            for (Deflater d : deflaters) d.end();
+            deflaters.clear();
+        }
+    }
+
+    // ===================== Orden de salida =====================
+    private void enqueue(Packed p) throws IOException {
+        if (pending.isEmpty()) {
+            emit(p);
+        } else {
+            pending.addLast(CompletableFuture.completedFuture(p));
+            drain(pending.size() >= window);
+        }
+    }
+
+    /** Escribe las entradas ya terminadas de la cabeza de la cola; con {@code block}, al menos una. */
+    private void drain(boolean block) throws IOException {
+        while (!pending.isEmpty() && (block || pending.peekFirst().isDone())) {
+            emit(await(pending.pollFirst()));
+            block = false;
+        }
+    }
+
+    private static Packed await(Future<Packed> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compresión interrumpida");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IOException(cause);
+        }
+    }
+
+    // ===================== Formato ZIP =====================
+    private void emit(Packed p) throws IOException {
+        if (finished) throw new IOException("El ZIP ya está cerrado");
+        long start = offset;
+        int h = 0;
+        h = putInt(h, LOCAL_HEADER);
+        h = putShort(h, 20);
+        h = putShort(h, FLAG_UTF8);
+        h = putShort(h, p.method());
+        h = putShort(h, dosTime);
+        h = putShort(h, dosDate);
+        h = putInt(h, (int) p.crc());
+        h = putInt(h, p.length());
+        h = putInt(h, p.size());
+        h = putShort(h, p.name().length);
+        h = putShort(h, 0);
+        out.write(header, 0, h);
+        out.write(p.name());
+        out.write(p.data(), 0, p.length());
+        offset += h + p.name().length + p.length();
+        central.add(new Central(p.name(), p.method(), p.crc(), p.length(), p.size(), start));
+        if (p.pooled()) buffers.release(p.data());
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long cdStart = offset;
+        for (Central c : central) {
+            boolean zip64 = c.offset() >= MAX_U32;
+            int h = 0;
+            h = putInt(h, CENTRAL_HEADER);
+            h = putShort(h, zip64 ? 45 : 20);
+            h = putShort(h, zip64 ? 45 : 20);
+            h = putShort(h, FLAG_UTF8);
+            h = putShort(h, c.method());
+            h = putShort(h, dosTime);
+            h = putShort(h, dosDate);
+            h = putInt(h, (int) c.crc());
+            h = putInt(h, c.compressedSize());
+            h = putInt(h, c.size());
+            h = putShort(h, c.name().length);
+            h = putShort(h, zip64 ? 12 : 0);
+            h = putShort(h, 0);             // comentario
+            h = putShort(h, 0);             // disco
+            h = putShort(h, 0);             // atributos internos
+            h = putInt(h, 0);               // atributos externos
+            h = putInt(h, (int) (zip64 ? MAX_U32 : c.offset()));
+            out.write(header, 0, h);
+            out.write(c.name());
+            offset += h + c.name().length;
+            if (zip64) {
+                h = putShort(0, 0x0001);
+                h = putShort(h, 8);
+                h = putLong(h, c.offset());
+                out.write(header, 0, h);
+                offset += h;
+            }
+        }
+        long cdSize = offset - cdStart;
+        int count = central.size();
+
+        if (count >= MAX_U16 || cdStart >= MAX_U32 || cdSize >= MAX_U32) {
+            long zip64End = offset;
+            int h = 0;
+            h = putInt(h, ZIP64_END_OF_CENTRAL);
+            h = putLong(h, 44);
+            h = putShort(h, 45);
+            h = putShort(h, 45);
+            h = putInt(h, 0);
+            h = putInt(h, 0);
+            h = putLong(h, count);
+            h = putLong(h, count);
+            h = putLong(h, cdSize);
+            h = putLong(h, cdStart);
+            h = putInt(h, ZIP64_LOCATOR);
+            h = putInt(h, 0);
+            h = putLong(h, zip64End);
+            h = putInt(h, 1);
+            out.write(header, 0, h);
+            offset += h;
+        }
+        int h = 0;
+        h = putInt(h, END_OF_CENTRAL);
+        h = putShort(h, 0);
+        h = putShort(h, 0);
+        h = putShort(h, Math.min(count, MAX_U16));
+        h = putShort(h, Math.min(count, MAX_U16));
+        h = putInt(h, (int) Math.min(cdSize, MAX_U32));
+        h = putInt(h, (int) Math.min(cdStart, MAX_U32));
+        h = putShort(h, 0);
+        out.write(header, 0, h);
+        offset += h;
+    }
+
+    // little-endian, como todo el formato ZIP
+    private int putShort(int at, int v) {
+        header[at] = (byte) v;
+        header[at + 1] = (byte) (v >>> 8);
+        return at + 2;
+    }
+
+    private int putInt(int at, int v) {
+        putShort(at, v);
+        return putShort(at + 2, v >>> 16);
+    }
+
+    private int putLong(int at, long v) {
+        putInt(at, (int) v);
+        return putInt(at + 4, (int) (v >>> 32));
+    }
+}
@@ -0,0 +1,86 @@
+package com.jezabel.healthgen.codegen.template;
+
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Registro de plantillas del generador. Se cargan y compilan una vez al arrancar:
+ * primero desde {@code codegen.templates.dir} (plantillas propias del equipo) y, si no existe
+ * el archivo, desde {@code classpath:codegen/templates}. Un error de plantilla falla el arranque.
+ */
+@Component
+public class CodegenTemplates {
+
+    private static final Logger log = LoggerFactory.getLogger(CodegenTemplates.class);
+    private static final String CLASSPATH_DIR = "codegen/templates/";
+
+    private final Map<TemplateKind, Template> templates = new EnumMap<>(TemplateKind.class);
+    private final String fingerprint;
+
+    public CodegenTemplates(CodegenProperties props) {
+        String dir = props.getTemplates().getDir();
+        Path customDir = (dir == null || dir.isBlank()) ? null : Path.of(dir);
+        MessageDigest md = sha256();
+        for (TemplateKind kind : TemplateKind.values()) {
+            String source = load(kind, customDir);
+            md.update(kind.file().getBytes(StandardCharsets.UTF_8));
+            md.update(source.getBytes(StandardCharsets.UTF_8));
+            templates.put(kind, Template.compile(kind.file(), source, kind.variables()));
+        }
+        this.fingerprint = HexFormat.of().formatHex(md.digest()).substring(0, 12);
+    }
+
+    /** Plantillas por defecto (sin directorio propio); útil fuera de Spring. */
+    public static CodegenTemplates defaults() {
+        return new CodegenTemplates(new CodegenProperties());
+    }
+
+    public Template get(TemplateKind kind) {
+        return templates.get(kind);
+    }
+
+    /** Huella del conjunto de plantillas: entra en la clave de la caché de artefactos. */
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    private static String load(TemplateKind kind, Path customDir) {
+        try {
+            if (customDir != null) {
+                Path custom = customDir.resolve(kind.file());
+                if (Files.isRegularFile(custom)) {
+                    log.info("Plantilla propia para {}: {}", kind, custom);
+                    return Files.readString(custom, StandardCharsets.UTF_8);
+                }
+            }
+            try (InputStream in = CodegenTemplates.class.getClassLoader().getResourceAsStream(CLASSPATH_DIR + kind.file())) {
+                if (in == null) throw new IllegalStateException("Falta la plantilla " + CLASSPATH_DIR + kind.file());
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer la plantilla " + kind.file(), e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
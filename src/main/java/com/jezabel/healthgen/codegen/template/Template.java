@@ -0,0 +1,90 @@
+package com.jezabel.healthgen.codegen.template;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plantilla compilada: texto con marcadores {@code {{variable}}}.
+ * Se parsea una sola vez; cada marcador queda resuelto a un índice del arreglo de valores,
+ * así renderizar es solo concatenar literales y valores sobre el {@link Appendable} de destino.
+ */
+public final class Template {
+
+    private final String name;
+    private final String[] literals;   // literals[i] va antes de slots[i]; el último es la cola
+    private final int[] slots;
+    private final int literalLength;
+
+    private Template(String name, String[] literals, int[] slots) {
+        this.name = name;
+        this.literals = literals;
+        this.slots = slots;
+        int len = 0;
+        for (String l : literals) len += l.length();
+        this.literalLength = len;
+    }
+
+    /**
+     * @param variables nombres de variables admitidos; su posición es el índice en {@link #render}
+     * @throws IllegalArgumentException si hay un marcador sin cerrar o una variable desconocida
+     */
+    public static Template compile(String name, String source, List<String> variables) {
+        List<String> lits = new ArrayList<>();
+        List<Integer> refs = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("{{", pos);
+            if (open < 0) break;
+            int close = source.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException("Plantilla " + name + ": '{{' sin cerrar en posición " + open);
+            }
+            String var = source.substring(open + 2, close).trim();
+            int slot = variables.indexOf(var);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Plantilla " + name + ": variable desconocida '" + var
+                        + "' (admitidas: " + variables + ")");
+            }
+            lits.add(source.substring(pos, open));
+            refs.add(slot);
+            pos = close + 2;
+        }
+        lits.add(source.substring(pos));
+
+        int[] slots = new int[refs.size()];
+        for (int i = 0; i < slots.length; i++) slots[i] = refs.get(i);
+        return new Template(name, lits.toArray(String[]::new), slots);
+    }
+
+    public String name() { return name; }
+
+    /** Escribe la plantilla en {@code out} con los valores dados (en el orden de las variables). */
+    public void render(Appendable out, String... values) throws IOException {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]).append(values[slots[i]]);
+        }
+        out.append(literals[slots.length]);
+    }
+
+    /** Variante sin excepción comprobada para el caso habitual (StringBuilder reutilizado). */
+    public void render(StringBuilder out, String... values) {
+        out.ensureCapacity(out.length() + estimateLength(values));
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]).append(values[slots[i]]);
+        }
+        out.append(literals[slots.length]);
+    }
+
+    public String render(String... values) {
+        StringBuilder sb = new StringBuilder(estimateLength(values));
+        render(sb, values);
+        return sb.toString();
+    }
+
+    private int estimateLength(String[] values) {
+        int len = literalLength;
+        for (int slot : slots) len += values[slot].length();
+        return len;
+    }
+}
@@ -0,0 +1,24 @@
+package com.jezabel.healthgen.codegen.template;
+
+import java.util.List;
+
+/** Plantillas del proyecto generado, con el archivo que las define y sus variables (en orden). */
+public enum TemplateKind {
+    REPOSITORY("repository.java.tpl", "packageBase", "entity"),
+    SERVICE("service.java.tpl", "packageBase", "entity"),
+    CONTROLLER("controller.java.tpl", "packageBase", "entity", "var"),
+    POM("pom.xml.tpl", "packageBase", "artifactId"),
+    APPLICATION("application.java.tpl", "packageBase"),
+    PROPERTIES("application.properties.tpl", "artifactId");
+
+    private final String file;
+    private final List<String> variables;
+
+    TemplateKind(String file, String... variables) {
+        this.file = file;
+        this.variables = List.of(variables);
+    }
+
+    public String file() { return file; }
+    public List<String> variables() { return variables; }
+}
@@ -0,0 +1,29 @@
+package com.jezabel.healthgen.collab;
+
+import java.util.regex.Pattern;
+
+/**
+ * Ids de documento colaborativo. Llegan del cliente (URL, destino STOMP) y acaban en nombres de topic
+ * y en columnas de la base ({@code graph_session.doc_id}, 191 caracteres): solo letras, dígitos,
+ * '-' y '_' (sin '.', que separa el sufijo {@code .bin} del topic) y como mucho {@value #MAX_LENGTH}.
+ */
+public final class DocIds {
+
+    public static final int MAX_LENGTH = 128;
+
+    private static final Pattern VALID = Pattern.compile("[A-Za-z0-9_-]{1," + MAX_LENGTH + "}");
+
+    private DocIds() { }
+
+    public static boolean isValid(String docId) {
+        return docId != null && VALID.matcher(docId).matches();
+    }
+
+    /** El mismo id si es válido; si no, IllegalArgumentException (400 en REST). */
+    public static String require(String docId) {
+        if (!isValid(docId)) {
+            throw new IllegalArgumentException("docId inválido: se admiten letras, dígitos, '-' y '_' (máx. " + MAX_LENGTH + ")");
+        }
+        return docId;
+    }
+}
@@ -0,0 +1,40 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.repository.GraphPatchBatchRepository;
+import com.jezabel.healthgen.repository.GraphSessionRepository;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Configuration
+@EnableConfigurationProperties(GraphProperties.class)
+public class GraphConfig {
+
+    // graph.relay.mode=tcp reparte los documentos entre graph.relay.nodes; por defecto, un solo nodo
+    @Bean(destroyMethod = "close")
+    public GraphRelay graphRelay(GraphProperties props) {
+        GraphProperties.Relay r = props.getRelay();
+        if ("tcp".equalsIgnoreCase(r.getMode())) {
+            return new TcpPeerRelay(r.getNodeId(), r.getNodes(), r.getConnectTimeoutMs(), r.getQueueCapacity());
+        }
+        return LoopbackRelay.standalone(r.getNodeId());
+    }
+
+    // graph.persist.enabled=false deja los diagramas solo en memoria (close() del journal hace el último flush)
+    @Bean
+    public GraphJournal graphJournal(GraphProperties props, GraphSessionRepository sessions, GraphPatchBatchRepository batches,
+                                     PlatformTransactionManager txManager, ObjectMapper om) {
+        if (!props.getPersist().isEnabled()) return GraphJournal.NONE;
+        return new JpaGraphJournal(sessions, batches, new TransactionTemplate(txManager), om, props.getPersist());
+    }
+
+    // healthgen.graph.patches lleva el docId como tag: pasado graph.metrics-max-docs, los documentos nuevos no crean series
+    @Bean
+    public MeterFilter graphDocMetricsLimit(GraphProperties props) {
+        return MeterFilter.maximumAllowableTags("healthgen.graph.patches", "doc", props.getMetricsMaxDocs(), MeterFilter.deny());
+    }
+}
@@ -0,0 +1,253 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.*;
+
+/**
+ * Estado de un diagrama compartido: celdas actuales, log de patches numerados y
+ * patches pendientes de la ventana de coalescencia. Todos los métodos se llaman
+ * con el monitor del documento tomado (lo hace {@link GraphStore}).
+ * <p>
+ * Un patch es un objeto JSON con {@code op} e {@code id} (celda). Sus demás campos
+ * (o su campo {@code cell}, si lo trae) se funden sobre la celda. Los patches sin {@code op}/{@code id}
+ * se reenvían tal cual, sin fundirse ni tocar el estado.
+ * <p>
+ * En un nodo que no es el dueño ({@link GraphRelay}) el documento es una réplica: no tiene pendientes y
+ * avanza con los lotes ya numerados que difunde el dueño ({@link #replicate}).
+ */
+final class GraphDocument {
+
+    /** Patch ya numerado en el log. */
+    record Entry(long seq, JsonNode patch) { }
+
+    /** Trama binaria ya codificada (se guarda y reenvía tal cual). */
+    record BinaryFrame(long fromSeq, long toSeq, byte[] data) { }
+
+    /** Resultado de un flush: patches numerados y, si hay suscriptores binarios, su trama. */
+    record Batch(List<Entry> entries, byte[] binary) { }
+
+    private final String id;
+    private final Map<String, ObjectNode> cells = new LinkedHashMap<>();
+    private final ArrayDeque<Entry> log = new ArrayDeque<>();
+    private final LinkedHashMap<String, JsonNode> pending = new LinkedHashMap<>();
+    private final PatchCodec.StringTable strings = new PatchCodec.StringTable();
+    private final ArrayDeque<BinaryFrame> binaryLog = new ArrayDeque<>();
+    private int binaryLogPatches;
+    private boolean binary;      // algún cliente negoció el formato binario
+    private long seq;
+    private long opaque;         // clave única para patches que no se pueden fundir
+    private long lastActivity = System.currentTimeMillis();
+    private long syncRequestedAt;  // réplica: cuándo se pidió el último snapshot al dueño
+    private long persistedSnapshotSeq; // dueño: seq del último snapshot enviado al journal
+
+    GraphDocument(String id) {
+        this.id = id;
+    }
+
+    String id() { return id; }
+    long seq() { return seq; }
+    long lastActivity() { return lastActivity; }
+    boolean hasPending() { return !pending.isEmpty(); }
+    boolean binary() { return binary; }
+    void enableBinary() { binary = true; }
+    PatchCodec.StringTable strings() { return strings; }
+    long persistedSnapshotSeq() { return persistedSnapshotSeq; }
+    void markPersisted(long snapshotSeq) { persistedSnapshotSeq = snapshotSeq; }
+
+    /**
+     * Encola un patch. Si ya hay uno pendiente con el mismo (op, id), el nuevo se funde sobre él
+     * (p.ej. 30 "move" de la misma celda quedan en la última posición).
+     * Devuelve true si la cola pasó de vacía a no vacía (hay que programar un flush).
+     */
+    boolean offer(JsonNode patch) {
+        lastActivity = System.currentTimeMillis();
+        boolean wasEmpty = pending.isEmpty();
+
+        String op = op(patch), cellId = cellId(patch);
+        if (op == null || cellId == null) {
+            pending.put("\u0001" + (opaque++), patch);   // prefijo distinto: nunca choca con op\0id
+            return wasEmpty;
+        }
+        if (isRemove(op)) {
+            // lo pendiente de esa celda ya no importa
+            pending.keySet().removeIf(k -> k.endsWith("\u0000" + cellId));
+        }
+        String key = op + "\u0000" + cellId;
+        JsonNode prev = pending.get(key);
+        if (prev instanceof ObjectNode merged && patch instanceof ObjectNode next && !isRemove(op)) {
+            merged.setAll(next);
+        } else {
+            pending.put(key, patch.deepCopy());
+        }
+        return wasEmpty;
+    }
+
+    /**
+     * Numera los pendientes, los aplica al estado y los pasa al log. Si el documento es binario,
+     * cada patch se codifica justo antes de aplicarse (el delta de posición es contra el estado previo).
+     */
+    Batch drain(int maxLog, PatchCodec codec) {
+        List<Entry> out = new ArrayList<>(pending.size());
+        PatchCodec.FrameWriter w = binary ? codec.writer(seq + 1, pending.size(), strings) : null;
+        for (JsonNode p : pending.values()) {
+            Entry e = new Entry(++seq, p);
+            if (w != null) w.write(p, this::position);
+            apply(p);
+            log.addLast(e);
+            out.add(e);
+        }
+        pending.clear();
+        trimLog(maxLog);
+
+        byte[] frame = null;
+        if (w != null && !out.isEmpty()) {
+            frame = w.finish();
+            appendBinary(new BinaryFrame(out.get(0).seq(), seq, frame), maxLog);
+        }
+        return new Batch(out, frame);
+    }
+
+    /**
+     * Réplica: aplica un lote del dueño. Devuelve false si no encaja con el seq actual (hay que pedir snapshot);
+     * los lotes repetidos se ignoran. La trama binaria se decodifica solo para ampliar la tabla de strings
+     * igual que en el dueño; el estado se aplica con los patches JSON.
+     */
+    boolean replicate(long fromSeq, long toSeq, List<JsonNode> patches, byte[] frame, PatchCodec codec, int maxLog) {
+        lastActivity = System.currentTimeMillis();
+        if (toSeq <= seq) return true;
+        if (fromSeq != seq + 1 || toSeq - fromSeq + 1 != patches.size()) return false;
+        for (JsonNode p : patches) {
+            Entry e = new Entry(++seq, p);
+            apply(p);
+            log.addLast(e);
+        }
+        trimLog(maxLog);
+        if (frame != null) {
+            binary = true;
+            codec.decode(frame, strings, true, id -> null);
+            appendBinary(new BinaryFrame(fromSeq, toSeq, frame), maxLog);
+        }
+        return true;
+    }
+
+    /** Réplica: sustituye todo por el snapshot del dueño (el log empieza vacío en ese seq). */
+    void reset(long seq, List<ObjectNode> snapshotCells, List<String> snapshotStrings) {
+        lastActivity = System.currentTimeMillis();
+        this.seq = seq;
+        cells.clear();
+        for (ObjectNode c : snapshotCells) {
+            String cellId = PatchCodec.cellIdOf(c);
+            if (cellId != null) cells.put(cellId, c);
+        }
+        log.clear();
+        pending.clear();
+        binaryLog.clear();
+        binaryLogPatches = 0;
+        if (snapshotStrings != null) {
+            binary = true;
+            strings.reset(snapshotStrings);
+        }
+        syncRequestedAt = 0;
+    }
+
+    /** Dueño tras reiniciar o tras descartarse de memoria: snapshot del journal + sus lotes posteriores. */
+    void recover(GraphJournal.Recovered r, PatchCodec codec, int maxLog) {
+        reset(r.snapshotSeq(), r.cells(), null);
+        for (GraphJournal.Batch b : r.batches()) {
+            if (!replicate(b.fromSeq(), b.toSeq(), b.patches(), null, codec, maxLog)) break;
+        }
+        persistedSnapshotSeq = r.snapshotSeq();
+    }
+
+    /** Réplica: true si toca pedir snapshot (como mucho uno cada {@code minIntervalMs}). */
+    boolean shouldRequestSync(long minIntervalMs) {
+        long now = System.currentTimeMillis();
+        if (now - syncRequestedAt < minIntervalMs) return false;
+        syncRequestedAt = now;
+        return true;
+    }
+
+    private void trimLog(int maxLog) {
+        while (log.size() > Math.max(0, maxLog)) log.pollFirst();
+    }
+
+    private void appendBinary(BinaryFrame f, int maxLog) {
+        binaryLog.addLast(f);
+        binaryLogPatches += (int) (f.toSeq() - f.fromSeq() + 1);
+        while (binaryLogPatches > Math.max(0, maxLog) && binaryLog.size() > 1) {
+            BinaryFrame old = binaryLog.pollFirst();
+            binaryLogPatches -= (int) (old.toSeq() - old.fromSeq() + 1);
+        }
+    }
+
+    /** Copia: se serializa fuera del lock mientras el flush sigue aplicando patches. */
+    List<ObjectNode> cells() {
+        List<ObjectNode> out = new ArrayList<>(cells.size());
+        for (ObjectNode c : cells.values()) out.add(c.deepCopy());
+        return out;
+    }
+
+    /** Tramas binarias con patches posteriores a {@code since}; null si no empiezan justo ahí. */
+    List<BinaryFrame> binarySince(long since) {
+        if (since >= seq) return List.of();
+        List<BinaryFrame> out = new ArrayList<>();
+        for (BinaryFrame f : binaryLog) if (f.toSeq() > since) out.add(f);
+        return out.isEmpty() || out.get(0).fromSeq() != since + 1 ? null : out;
+    }
+
+    /** Posición entera actual de la celda (base de los MOVE binarios). */
+    long[] position(String cellId) {
+        ObjectNode cell = cells.get(cellId);
+        return cell == null ? null : PatchCodec.integralPosition(cell.get("position"));
+    }
+
+    /** Patches con seq &gt; {@code since}; null si el log ya no los tiene (el cliente debe pedir snapshot). */
+    List<Entry> since(long since) {
+        if (since >= seq) return List.of();
+        Entry first = log.peekFirst();
+        if (first == null || first.seq() > since + 1) return null;
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : log) if (e.seq() > since) out.add(e);
+        return out;
+    }
+
+    // ===================== Aplicación al estado =====================
+    private void apply(JsonNode patch) {
+        String op = op(patch), cellId = cellId(patch);
+        if (op == null || cellId == null) return;
+        if (isRemove(op)) {
+            cells.remove(cellId);
+            return;
+        }
+        ObjectNode cell = cells.get(cellId);
+        JsonNode body = patch.get("cell");
+        ObjectNode fields = body instanceof ObjectNode o ? o : (ObjectNode) patch;
+        if (cell == null) {
+            cell = fields.deepCopy();
+            cell.remove("op");
+            cell.put("id", cellId);
+            cells.put(cellId, cell);
+        } else {
+            for (Iterator<Map.Entry<String, JsonNode>> it = fields.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> f = it.next();
+                if (!"op".equals(f.getKey())) cell.set(f.getKey(), f.getValue().deepCopy());
+            }
+        }
+    }
+
+    private static String op(JsonNode patch) {
+        JsonNode op = patch.get("op");
+        if (op == null) op = patch.get("type");
+        return op != null && op.isTextual() ? op.asText().toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static String cellId(JsonNode patch) {
+        return PatchCodec.cellIdOf(patch);
+    }
+
+    private static boolean isRemove(String op) {
+        return op.equals("remove") || op.equals("delete");
+    }
+}
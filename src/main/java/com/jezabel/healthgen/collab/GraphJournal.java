@@ -0,0 +1,44 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistencia de los diagramas colaborativos: log de lotes numerados + snapshots periódicos.
+ * {@link GraphStore} lo llama desde el flush (nunca con el monitor de un documento tomado salvo en
+ * {@link #snapshot}, que solo encola); la escritura real puede ser diferida (write-behind).
+ */
+public interface GraphJournal {
+
+    /** Lote de patches [fromSeq, toSeq] en orden. */
+    record Batch(long fromSeq, long toSeq, List<JsonNode> patches) { }
+
+    /** Estado para reconstruir un documento: celdas en {@code snapshotSeq} y los lotes posteriores. */
+    record Recovered(long snapshotSeq, List<ObjectNode> cells, List<Batch> batches) { }
+
+    GraphJournal NONE = new GraphJournal() {
+        @Override
+        public void append(String docId, Batch batch) { }
+
+        @Override
+        public void snapshot(String docId, long seq, List<ObjectNode> cells) { }
+
+        @Override
+        public Recovered load(String docId) { return null; }
+    };
+
+    void append(String docId, Batch batch);
+
+    /** Las celdas ya son copias: el journal puede guardarlas tal cual. */
+    void snapshot(String docId, long seq, List<ObjectNode> cells);
+
+    /** null si el documento no tiene nada guardado. */
+    Recovered load(String docId);
+
+    default Map<String, Object> stats() {
+        return Map.of();
+    }
+}
@@ -0,0 +1,70 @@
+package com.jezabel.healthgen.collab;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "graph")
+public class GraphProperties {
+    private long coalesceWindowMs = 50;      // patches del mismo (op, id) dentro de la ventana se funden
+    private int logSize = 1000;              // patches retenidos por documento para reconexiones
+    private long idleMs = 60 * 60_000L;      // documentos sin actividad se descartan de memoria
+    private int metricsMaxDocs = 200;        // documentos distintos con métrica propia de patches
+    private final Relay relay = new Relay();
+    private final Persist persist = new Persist();
+
+    public long getCoalesceWindowMs() { return coalesceWindowMs; }
+    public void setCoalesceWindowMs(long coalesceWindowMs) { this.coalesceWindowMs = coalesceWindowMs; }
+    public int getLogSize() { return logSize; }
+    public void setLogSize(int logSize) { this.logSize = logSize; }
+    public long getIdleMs() { return idleMs; }
+    public void setIdleMs(long idleMs) { this.idleMs = idleMs; }
+    public int getMetricsMaxDocs() { return metricsMaxDocs; }
+    public void setMetricsMaxDocs(int metricsMaxDocs) { this.metricsMaxDocs = metricsMaxDocs; }
+    public Relay getRelay() { return relay; }
+    public Persist getPersist() { return persist; }
+
+    /** Journal en base de datos (write-behind): lotes de patches + snapshot cada tanto. */
+    public static class Persist {
+        private boolean enabled = true;
+        private long flushMs = 2000;        // cada cuánto se escribe lo acumulado (una transacción)
+        private int snapshotEvery = 500;    // patches desde el último snapshot antes de guardar otro
+        private int maxPending = 20_000;    // patches acumulados que adelantan el flush
+        private int maxQueued = 200_000;    // tope de patches en memoria sin escribir; por encima se descartan
+        private int maxAttempts = 5;        // flushes fallidos de un documento (con otros sí escritos) antes de descartarlo
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public long getFlushMs() { return flushMs; }
+        public void setFlushMs(long flushMs) { this.flushMs = flushMs; }
+        public int getSnapshotEvery() { return snapshotEvery; }
+        public void setSnapshotEvery(int snapshotEvery) { this.snapshotEvery = snapshotEvery; }
+        public int getMaxPending() { return maxPending; }
+        public void setMaxPending(int maxPending) { this.maxPending = maxPending; }
+        public int getMaxQueued() { return maxQueued; }
+        public void setMaxQueued(int maxQueued) { this.maxQueued = maxQueued; }
+        public int getMaxAttempts() { return maxAttempts; }
+        public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+    }
+
+    /** Reparto de documentos entre nodos (cada docId tiene un nodo dueño que coalesce y numera). */
+    public static class Relay {
+        private String mode = "local";                      // local (un solo nodo) | tcp
+        private String nodeId = "local";                    // id de este nodo; debe aparecer en nodes
+        private List<String> nodes = new ArrayList<>();     // "id@host:puerto" de todos los nodos; este escucha en su host y solo acepta a los demás
+        private int connectTimeoutMs = 2000;
+        private int queueCapacity = 10_000;                 // mensajes pendientes por peer; si se llena se descartan
+
+        public String getMode() { return mode; }
+        public void setMode(String mode) { this.mode = mode; }
+        public String getNodeId() { return nodeId; }
+        public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+        public List<String> getNodes() { return nodes; }
+        public void setNodes(List<String> nodes) { this.nodes = nodes; }
+        public int getConnectTimeoutMs() { return connectTimeoutMs; }
+        public void setConnectTimeoutMs(int connectTimeoutMs) { this.connectTimeoutMs = connectTimeoutMs; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jezabel.healthgen.collab;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transporte entre nodos para la colaboración. Cada documento tiene un nodo dueño (rendezvous hashing
+ * sobre {@code docId}): es el único que coalesce, numera y aplica patches. Los demás nodos reenvían al
+ * dueño lo que reciben de sus clientes y mantienen una réplica con los lotes que el dueño difunde.
+ * <p>
+ * {@link #send} es asíncrono y conserva el orden por destino. Si un nodo no responde, sus mensajes se
+ * descartan (se cuentan en {@link #stats()}); las réplicas se recuperan pidiendo snapshot.
+ */
+public interface GraphRelay extends AutoCloseable {
+
+    @FunctionalInterface
+    interface Handler {
+        void onMessage(RelayMessage message);
+    }
+
+    /** Id de este nodo. */
+    String nodeId();
+
+    /** Todos los nodos (incluido este), en el mismo orden en todos ellos. */
+    List<String> nodeIds();
+
+    /** Empieza a recibir; los mensajes de un mismo origen llegan en orden a {@code handler}. */
+    void start(Handler handler);
+
+    void send(String nodeId, RelayMessage message);
+
+    Map<String, Object> stats();
+
+    @Override
+    void close();
+
+    default String ownerOf(String docId) {
+        return rendezvous(docId, nodeIds());
+    }
+
+    default boolean owns(String docId) {
+        return nodeId().equals(ownerOf(docId));
+    }
+
+    /** A todos los nodos menos este. */
+    default void broadcast(RelayMessage message) {
+        for (String id : nodeIds()) {
+            if (!id.equals(nodeId())) send(id, message);
+        }
+    }
+
+    /**
+     * Highest random weight: cada documento va al nodo con mayor peso hash(docId, nodo).
+     * Al añadir o quitar un nodo solo se mueven los documentos que ganaba o que pasa a ganar ese nodo.
+     * Usa {@code String.hashCode}, que está especificado y da lo mismo en todas las JVM.
+     */
+    static String rendezvous(String docId, List<String> nodes) {
+        String best = null;
+        long bestWeight = Long.MIN_VALUE;
+        for (String node : nodes) {
+            long w = mix(((long) node.hashCode() << 32) ^ (docId.hashCode() & 0xFFFFFFFFL));
+            if (best == null || w > bestWeight) {
+                best = node;
+                bestWeight = w;
+            }
+        }
+        return best;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
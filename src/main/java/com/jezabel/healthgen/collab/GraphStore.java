@@ -0,0 +1,516 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jezabel.healthgen.exception.ResourceNotFoundException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Estado en memoria de los diagramas colaborativos.
+ * Los patches que llegan por STOMP se acumulan {@code graph.coalesce-window-ms}; al cerrar la ventana
+ * se numeran, se aplican al estado y salen en UNA sola trama por documento hacia {@code /topic/graph.{docId}}:
+ * <pre>{"type":"patches","docId":"..","fromSeq":41,"toSeq":43,"patches":[...]}</pre>
+ * Quien entra tarde pide el snapshot (celdas + seq) y, al reconectar, los patches desde su último seq.
+ * <p>
+ * Formato binario opcional ({@link PatchCodec}): en cuanto alguien se suscribe a
+ * {@code /topic/graph.{docId}.bin}, cada lote se codifica además UNA vez al hacer el flush; esa trama se
+ * difunde y se guarda tal cual, y la recuperación binaria devuelve los bytes guardados sin recodificar.
+ * El JSON sigue saliendo siempre por el topic normal.
+ * <p>
+ * Varios nodos ({@link GraphRelay}): cada documento tiene un dueño, que es el único que coalesce y numera.
+ * Los demás reenvían al dueño los mensajes de sus clientes sin decodificarlos, y reciben de él cada lote
+ * ya numerado para sus suscriptores locales y su réplica (de la que sirven snapshot y recuperación).
+ * <p>
+ * El dueño pasa cada lote a {@link GraphJournal} y, cada {@code graph.persist.snapshot-every} patches
+ * (o al descartar el documento por inactividad), un snapshot. Un documento que no está en memoria
+ * se reconstruye desde el journal la primera vez que se usa (p.ej. tras reiniciar); la lectura se hace fuera
+ * del mapa de documentos y, si varios hilos piden el mismo documento a la vez, solo uno la hace.
+ */
+@Service
+public class GraphStore {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphStore.class);
+    private static final long SYNC_RETRY_MS = 2000;
+
+    private final SimpMessagingTemplate bus;
+    private final ObjectMapper om;
+    private final GraphProperties props;
+    private final PatchCodec codec;
+    private final GraphRelay relay;
+    private final GraphJournal journal;
+    private final ConcurrentHashMap<String, GraphDocument> docs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<GraphJournal.Recovered>> loading = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong patchesIn = new AtomicLong();
+    private final AtomicLong patchesOut = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong binaryFrames = new AtomicLong();
+    private final AtomicLong jsonBytes = new AtomicLong();
+    private final AtomicLong binaryBytes = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong replicated = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+
+    public GraphStore(SimpMessagingTemplate bus, ObjectMapper om, GraphProperties props, GraphRelay relay, GraphJournal journal) {
+        this.bus = bus;
+        this.om = om;
+        this.props = props;
+        this.codec = new PatchCodec(om);
+        this.relay = relay;
+        this.journal = journal;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "graph-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long sweep = Math.max(1000, props.getIdleMs() / 4);
+        flusher.scheduleWithFixedDelay(this::evictIdle, sweep, sweep, TimeUnit.MILLISECONDS);
+        relay.start(this::onRelay);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flusher.shutdownNow();
+        try {
+            flusher.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // lo que quedó en la ventana de coalescencia también llega al journal
+        for (GraphDocument doc : docs.values()) {
+            boolean pending;
+            synchronized (doc) {
+                pending = doc.hasPending();
+            }
+            if (pending) flush(doc);
+        }
+    }
+
+    /** Recibe un patch (objeto) o un lote (array) tal como lo manda el front. */
+    public void submit(String docId, String patchJson) {
+        if (!relay.owns(docId)) {
+            forward(RelayMessage.patches(relay.nodeId(), docId, patchJson));
+            return;
+        }
+        submitLocal(docId, patchJson);
+    }
+
+    private void submitLocal(String docId, String patchJson) {
+        JsonNode node;
+        try {
+            node = om.readTree(patchJson);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Patch inválido para " + docId + ": " + e.getOriginalMessage());
+        }
+        List<JsonNode> patches = new ArrayList<>();
+        if (node instanceof ArrayNode arr) arr.forEach(patches::add);
+        else if (node != null) patches.add(node);
+        enqueue(docId, doc -> patches);
+    }
+
+    /**
+     * Recibe una trama binaria de un cliente. Se decodifica solo para poder fundir por (op, id);
+     * lo que se difunde y se guarda es la trama que el servidor codifica al hacer el flush.
+     */
+    public void submitBinary(String docId, byte[] frame) {
+        if (!relay.owns(docId)) {
+            forward(RelayMessage.binaryPatches(relay.nodeId(), docId, frame));
+            return;
+        }
+        submitBinaryLocal(docId, frame);
+    }
+
+    private void submitBinaryLocal(String docId, byte[] frame) {
+        enqueue(docId, doc -> {
+            doc.enableBinary();
+            // base 0: las tramas de cliente llevan posiciones absolutas
+            return codec.decode(frame, doc.strings(), false, id -> null);
+        });
+    }
+
+    private void enqueue(String docId, Function<GraphDocument, List<JsonNode>> patches) {
+        GraphDocument doc;
+        boolean schedule = false;
+        while (true) {
+            doc = document(docId);
+            synchronized (doc) {
+                // evictIdle pudo descartarlo justo entre el get y el lock: se reintenta con uno nuevo
+                if (docs.get(docId) != doc) continue;
+                List<JsonNode> list = patches.apply(doc);
+                for (JsonNode p : list) schedule |= doc.offer(p);
+                patchesIn.addAndGet(list.size());
+            }
+            break;
+        }
+        final GraphDocument target = doc;
+        if (schedule) flusher.schedule(() -> flush(target), props.getCoalesceWindowMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /** En memoria o nuevo (reconstruido del journal si es de este nodo). */
+    private GraphDocument document(String docId) {
+        GraphDocument doc = docs.get(docId);
+        if (doc != null) return doc;
+        GraphJournal.Recovered r = relay.owns(docId) ? load(docId) : null;
+        return docs.computeIfAbsent(docId, id -> newDocument(id, r));
+    }
+
+    /** En memoria o, si es de este nodo y está en el journal, reconstruido; null si no existe. */
+    private GraphDocument existing(String docId) {
+        GraphDocument doc = docs.get(docId);
+        if (doc != null || !relay.owns(docId)) return doc;
+        GraphJournal.Recovered r = load(docId);
+        return r == null ? null : docs.computeIfAbsent(docId, id -> newDocument(id, r));
+    }
+
+    private GraphDocument newDocument(String docId, GraphJournal.Recovered recovered) {
+        GraphDocument doc = new GraphDocument(docId);
+        if (recovered != null) doc.recover(recovered, codec, props.getLogSize());
+        return doc;
+    }
+
+    /**
+     * Lee el journal sin bloquear {@code docs} (computeIfAbsent retiene el lock de su cubeta durante toda
+     * la función): los que llegan mientras otro hilo carga el mismo documento esperan su resultado.
+     */
+    private GraphJournal.Recovered load(String docId) {
+        CompletableFuture<GraphJournal.Recovered> mine = new CompletableFuture<>();
+        CompletableFuture<GraphJournal.Recovered> other = loading.putIfAbsent(docId, mine);
+        if (other != null) {
+            try {
+                return other.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+        try {
+            GraphJournal.Recovered r = journal.load(docId);
+            mine.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(docId, mine);
+        }
+    }
+
+    /**
+     * Suscribirse a {@code /topic/graph.{docId}.bin} activa el formato binario en ese documento.
+     * En un nodo que no es el dueño, la primera suscripción a un documento pide además su estado al dueño.
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        String dest = StompHeaderAccessor.wrap(event.getMessage()).getDestination();
+        if (dest == null || !dest.startsWith("/topic/graph.")) return;
+        boolean bin = dest.endsWith(".bin");
+        String docId = dest.substring("/topic/graph.".length(), dest.length() - (bin ? ".bin".length() : 0));
+        if (!DocIds.isValid(docId)) return;
+        if (!relay.owns(docId) && !docs.containsKey(docId)) {
+            GraphDocument mirror = document(docId);
+            synchronized (mirror) {
+                if (mirror.shouldRequestSync(SYNC_RETRY_MS)) requestSync(docId);
+            }
+        }
+        if (bin) enableBinary(docId);
+    }
+
+    private void enableBinary(String docId) {
+        if (!relay.owns(docId)) {
+            forward(RelayMessage.enableBinary(relay.nodeId(), docId));
+            return;
+        }
+        // la marca vive en el documento (y se va con él al descartarlo): si no estaba en memoria, se carga
+        while (true) {
+            GraphDocument doc = document(docId);
+            synchronized (doc) {
+                if (docs.get(docId) != doc) continue;
+                doc.enableBinary();
+                return;
+            }
+        }
+    }
+
+    /** Celdas actuales + seq del último patch aplicado. */
+    public Map<String, Object> snapshot(String docId) {
+        GraphDocument doc = existing(docId);
+        if (doc == null && !relay.owns(docId)) {
+            // réplica aún sin estado: se pide al dueño; mientras tanto se responde vacío con seq 0
+            GraphDocument mirror = document(docId);
+            synchronized (mirror) {
+                if (mirror.shouldRequestSync(SYNC_RETRY_MS)) requestSync(docId);
+            }
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("docId", docId);
+        if (doc == null) {
+            out.put("seq", 0L);
+            out.put("cells", List.of());
+            return out;
+        }
+        synchronized (doc) {
+            out.put("seq", doc.seq());
+            out.put("cells", doc.cells());
+            // tabla de strings en el mismo seq: los clientes binarios la necesitan para las tramas siguientes
+            if (doc.binary()) out.put("strings", doc.strings().toList());
+        }
+        return out;
+    }
+
+    /** Patches posteriores a {@code since}; 404 si el log ya no llega tan atrás (hay que pedir snapshot). */
+    public Map<String, Object> since(String docId, long since) {
+        GraphDocument doc = existing(docId);
+        List<GraphDocument.Entry> entries;
+        long seq;
+        if (doc == null) {
+            entries = since == 0 ? List.of() : null;
+            seq = 0;
+        } else {
+            synchronized (doc) {
+                entries = doc.since(since);
+                seq = doc.seq();
+            }
+        }
+        if (entries == null) {
+            throw new ResourceNotFoundException("Patches desde " + since + " ya no disponibles para " + docId + ": pide el snapshot");
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("docId", docId);
+        out.put("seq", seq);
+        out.put("patches", entries.stream().map(GraphDocument.Entry::patch).toList());
+        return out;
+    }
+
+    /**
+     * Tramas binarias guardadas con patches posteriores a {@code since}, concatenadas con su longitud
+     * (int de 4 bytes big-endian) delante; 404 si no llegan tan atrás.
+     */
+    public byte[] sinceBinary(String docId, long since) {
+        GraphDocument doc = existing(docId);
+        List<GraphDocument.BinaryFrame> frames = null;
+        if (doc == null) {
+            if (since == 0) frames = List.of();
+        } else {
+            synchronized (doc) {
+                frames = doc.binarySince(since);
+            }
+        }
+        if (frames == null) {
+            throw new ResourceNotFoundException("Tramas desde " + since + " ya no disponibles para " + docId + ": pide el snapshot");
+        }
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buf)) {
+            for (GraphDocument.BinaryFrame f : frames) {
+                out.writeInt(f.data().length);
+                out.write(f.data());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buf.toByteArray();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("documents", docs.size());
+        out.put("patchesIn", patchesIn.get());
+        out.put("patchesOut", patchesOut.get());
+        out.put("frames", frames.get());
+        out.put("binaryFrames", binaryFrames.get());
+        out.put("jsonBytes", jsonBytes.get());
+        out.put("binaryBytes", binaryBytes.get());
+        out.put("forwarded", forwarded.get());
+        out.put("replicated", replicated.get());
+        out.put("syncs", syncs.get());
+        out.put("relay", relay.stats());
+        out.put("journal", journal.stats());
+        return out;
+    }
+
+    // ===================== Flush =====================
+    private void flush(GraphDocument doc) {
+        GraphDocument.Batch drained;
+        List<ObjectNode> snapshotCells = null;
+        long seq;
+        synchronized (doc) {
+            drained = doc.drain(props.getLogSize(), codec);
+            seq = doc.seq();
+            if (seq - doc.persistedSnapshotSeq() >= Math.max(1, props.getPersist().getSnapshotEvery())) {
+                snapshotCells = doc.cells();
+                doc.markPersisted(seq);
+            }
+        }
+        List<GraphDocument.Entry> batch = drained.entries();
+        if (!batch.isEmpty()) {
+            journal.append(doc.id(), new GraphJournal.Batch(batch.get(0).seq(), batch.get(batch.size() - 1).seq(),
+                    batch.stream().map(GraphDocument.Entry::patch).toList()));
+        }
+        if (snapshotCells != null) journal.snapshot(doc.id(), seq, snapshotCells);
+        if (batch.isEmpty()) return;
+
+        ObjectNode frame = om.createObjectNode();
+        frame.put("type", "patches");
+        frame.put("docId", doc.id());
+        frame.put("fromSeq", batch.get(0).seq());
+        frame.put("toSeq", batch.get(batch.size() - 1).seq());
+        ArrayNode patches = frame.putArray("patches");
+        for (GraphDocument.Entry e : batch) patches.add(e.patch());
+
+        try {
+            String json = om.writeValueAsString(frame);
+            bus.convertAndSend("/topic/graph." + doc.id(), json);
+            patchesOut.addAndGet(batch.size());
+            frames.incrementAndGet();
+            jsonBytes.addAndGet(json.length());
+        } catch (Exception e) {
+            log.warn("No se pudo difundir el lote de {}: {}", doc.id(), e.getMessage());
+        }
+        byte[] bin = drained.binary();
+        if (bin != null) {
+            try {
+                bus.convertAndSend("/topic/graph." + doc.id() + ".bin", bin);
+                binaryFrames.incrementAndGet();
+                binaryBytes.addAndGet(bin.length);
+            } catch (Exception e) {
+                log.warn("No se pudo difundir la trama binaria de {}: {}", doc.id(), e.getMessage());
+            }
+        }
+        if (relay.nodeIds().size() > 1) {
+            try {
+                relay.broadcast(RelayMessage.frame(relay.nodeId(), doc.id(), batch.get(0).seq(),
+                        batch.get(batch.size() - 1).seq(), om.writeValueAsString(frame), bin));
+            } catch (JsonProcessingException e) {
+                log.warn("No se pudo replicar el lote de {}: {}", doc.id(), e.getMessage());
+            }
+        }
+    }
+
+    // ===================== Relay entre nodos =====================
+    private void forward(RelayMessage m) {
+        relay.send(relay.ownerOf(m.docId()), m);
+        forwarded.incrementAndGet();
+    }
+
+    private void requestSync(String docId) {
+        relay.send(relay.ownerOf(docId), RelayMessage.sync(relay.nodeId(), docId));
+        syncs.incrementAndGet();
+    }
+
+    void onRelay(RelayMessage m) {
+        if (!DocIds.isValid(m.docId())) {
+            log.warn("Mensaje {} de {} con docId inválido descartado", m.kind(), m.origin());
+            return;
+        }
+        try {
+            switch (m.kind()) {
+                case PATCHES, BINARY_PATCHES, ENABLE_BINARY -> {
+                    // nunca se reenvía lo reenviado: si los nodos no coinciden en el reparto, se descarta
+                    if (!relay.owns(m.docId())) {
+                        log.warn("{} de {} para {}, que no es de este nodo: revisa graph.relay.nodes", m.kind(), m.origin(), m.docId());
+                    } else if (m.kind() == RelayMessage.Kind.PATCHES) {
+                        submitLocal(m.docId(), m.json());
+                    } else if (m.kind() == RelayMessage.Kind.BINARY_PATCHES) {
+                        submitBinaryLocal(m.docId(), m.binary());
+                    } else {
+                        enableBinary(m.docId());
+                    }
+                }
+                case FRAME -> replicate(m);
+                case SYNC -> sendSnapshot(m.docId(), m.origin());
+                case SNAPSHOT -> restore(m);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Mensaje {} de {} para {} descartado: {}", m.kind(), m.origin(), m.docId(), e.getMessage());
+        }
+    }
+
+    /** Réplica: aplica el lote del dueño y lo entrega a los suscriptores de este nodo. */
+    private void replicate(RelayMessage m) {
+        if (relay.owns(m.docId())) return;
+        List<JsonNode> patches = new ArrayList<>();
+        try {
+            om.readTree(m.json()).path("patches").forEach(patches::add);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Lote inválido: " + e.getOriginalMessage());
+        }
+        GraphDocument doc = document(m.docId());
+        boolean sync;
+        synchronized (doc) {
+            sync = !doc.replicate(m.fromSeq(), m.toSeq(), patches, m.binary(), codec, props.getLogSize())
+                    && doc.shouldRequestSync(SYNC_RETRY_MS);
+        }
+        if (sync) requestSync(m.docId());
+        replicated.addAndGet(patches.size());
+
+        // los clientes de este nodo detectan huecos por seq igual que con un solo nodo
+        bus.convertAndSend("/topic/graph." + m.docId(), m.json());
+        if (m.binary() != null) bus.convertAndSend("/topic/graph." + m.docId() + ".bin", m.binary());
+    }
+
+    /** Dueño: manda el estado completo a una réplica que se quedó atrás. */
+    private void sendSnapshot(String docId, String to) {
+        if (!relay.owns(docId)) return;
+        Map<String, Object> snap = snapshot(docId);
+        try {
+            relay.send(to, RelayMessage.snapshot(relay.nodeId(), docId, (Long) snap.get("seq"), om.writeValueAsString(snap)));
+        } catch (JsonProcessingException e) {
+            log.warn("No se pudo serializar el snapshot de {}: {}", docId, e.getMessage());
+        }
+    }
+
+    private void restore(RelayMessage m) {
+        if (relay.owns(m.docId())) return;
+        JsonNode snap;
+        try {
+            snap = om.readTree(m.json());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Snapshot inválido: " + e.getOriginalMessage());
+        }
+        List<ObjectNode> cells = new ArrayList<>();
+        for (JsonNode c : snap.path("cells")) if (c instanceof ObjectNode o) cells.add(o);
+        List<String> strings = null;
+        if (snap.get("strings") instanceof ArrayNode arr) {
+            strings = new ArrayList<>(arr.size());
+            for (JsonNode s : arr) strings.add(s.asText());
+        }
+        GraphDocument doc = document(m.docId());
+        synchronized (doc) {
+            doc.reset(m.fromSeq(), cells, strings);
+        }
+    }
+
+    void evictIdle() {
+        long cutoff = System.currentTimeMillis() - props.getIdleMs();
+        docs.values().removeIf(d -> {
+            synchronized (d) {
+                if (d.hasPending() || d.lastActivity() >= cutoff) return false;
+                // se guarda el estado final: al volver a usarse se carga sin repasar todo el log
+                if (relay.owns(d.id()) && d.seq() > d.persistedSnapshotSeq()) {
+                    journal.snapshot(d.id(), d.seq(), d.cells());
+                    d.markPersisted(d.seq());
+                }
+                return true;
+            }
+        });
+    }
+}
@@ -0,0 +1,330 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jezabel.healthgen.domain.GraphPatchBatchEntity;
+import com.jezabel.healthgen.domain.GraphSessionEntity;
+import com.jezabel.healthgen.repository.GraphPatchBatchRepository;
+import com.jezabel.healthgen.repository.GraphSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Journal en base de datos con escritura diferida. Los lotes y snapshots se acumulan en memoria y
+ * cada {@code graph.persist.flush-ms} se escriben todos en UNA transacción: una fila por lote en
+ * {@code graph_patch_batch} y, si hubo snapshot, un upsert en {@code graph_session} y el borrado de
+ * los lotes que ya cubre. Ningún cambio reescribe el diagrama completo salvo el snapshot periódico.
+ * <p>
+ * Si la transacción falla se reintenta documento a documento, para que una fila mala no bloquee al resto:
+ * lo que falla vuelve a la cola y, si sigue fallando {@code graph.persist.max-attempts} veces mientras otros
+ * documentos sí se escriben, se descarta. Si fallan todos (base caída) no cuenta como intento.
+ * Lo pendiente en memoria no pasa de {@code graph.persist.max-queued} patches: por encima, los lotes nuevos
+ * se descartan (el siguiente snapshot del documento vuelve a dejarlo completo).
+ * {@link #load} combina lo que hay en la base con lo que aún no se escribió.
+ */
+public class JpaGraphJournal implements GraphJournal, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JpaGraphJournal.class);
+
+    /** Lo acumulado de un documento desde el último flush. */
+    private static final class Pending {
+        final List<Batch> batches = new ArrayList<>();
+        long snapshotSeq = -1;
+        List<ObjectNode> snapshotCells;
+        int attempts;
+
+        int patches() {
+            int n = 0;
+            for (Batch b : batches) n += b.patches().size();
+            return n;
+        }
+
+        void takeSnapshot(long seq, List<ObjectNode> cells) {
+            if (seq > snapshotSeq) {
+                snapshotSeq = seq;
+                snapshotCells = cells;
+            }
+        }
+    }
+
+    private final GraphSessionRepository sessions;
+    private final GraphPatchBatchRepository batches;
+    private final TransactionTemplate tx;
+    private final ObjectMapper om;
+    private final GraphProperties.Persist props;
+    private final ScheduledExecutorService writer;
+
+    private final Object lock = new Object();
+    private Map<String, Pending> pending = new LinkedHashMap<>();
+    private Map<String, Pending> inFlight = Map.of();   // lo que se está escribiendo ahora mismo
+    private int pendingPatches;
+    private boolean flushRequested;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    public JpaGraphJournal(GraphSessionRepository sessions, GraphPatchBatchRepository batches,
+                           TransactionTemplate tx, ObjectMapper om, GraphProperties.Persist props) {
+        this.sessions = sessions;
+        this.batches = batches;
+        this.tx = tx;
+        this.om = om;
+        this.props = props;
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "graph-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        long every = Math.max(10, props.getFlushMs());
+        writer.scheduleWithFixedDelay(this::flush, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void append(String docId, Batch batch) {
+        synchronized (lock) {
+            if (pendingPatches + batch.patches().size() > props.getMaxQueued()) {
+                // la base no da abasto (o está caída): se acota la memoria en vez de crecer sin límite
+                if (dropped.getAndAdd(batch.patches().size()) == 0) {
+                    log.warn("Journal lleno ({} patches sin escribir): se descartan lotes nuevos", pendingPatches);
+                }
+                return;
+            }
+            pending.computeIfAbsent(docId, k -> new Pending()).batches.add(batch);
+            pendingPatches += batch.patches().size();
+            // demasiado acumulado: no se espera al siguiente ciclo
+            if (pendingPatches >= props.getMaxPending() && !flushRequested) {
+                flushRequested = true;
+                writer.execute(this::flush);
+            }
+        }
+    }
+
+    @Override
+    public void snapshot(String docId, long seq, List<ObjectNode> cells) {
+        synchronized (lock) {
+            pending.computeIfAbsent(docId, k -> new Pending()).takeSnapshot(seq, cells);
+        }
+    }
+
+    @Override
+    public Recovered load(String docId) {
+        // primero la memoria y después la base: lo que se confirme entre medias aparece repetido, no perdido
+        List<Pending> memory = new ArrayList<>(2);
+        synchronized (lock) {
+            if (inFlight.get(docId) != null) memory.add(inFlight.get(docId));
+            if (pending.get(docId) != null) memory.add(pending.get(docId));
+        }
+        long seq = 0;
+        List<ObjectNode> cells = List.of();
+        List<Batch> all = new ArrayList<>();
+
+        GraphSessionEntity session = sessions.findById(docId).orElse(null);
+        if (session != null) {
+            seq = session.getSeq();
+            cells = parseCells(session.getSnapshot());
+        }
+        for (GraphPatchBatchEntity b : batches.findByDocIdAndToSeqGreaterThanOrderByFromSeqAsc(docId, seq)) {
+            all.add(new Batch(b.getFromSeq(), b.getToSeq(), parsePatches(b.getPatches())));
+        }
+        for (Pending p : memory) {
+            if (p.snapshotCells != null && p.snapshotSeq > seq) {
+                seq = p.snapshotSeq;
+                cells = copy(p.snapshotCells);
+            }
+            all.addAll(p.batches);
+        }
+        if (session == null && all.isEmpty() && cells.isEmpty()) return null;
+
+        // en orden y sin repetidos ni lo que ya cubre el snapshot
+        all.sort(Comparator.comparingLong(Batch::fromSeq));
+        List<Batch> chain = new ArrayList<>();
+        long next = seq + 1;
+        for (Batch b : all) {
+            if (b.toSeq() < next) continue;
+            if (b.fromSeq() != next) {
+                log.warn("Journal de {}: falta el tramo {}..{}; se recupera hasta {}", docId, next, b.fromSeq() - 1, next - 1);
+                break;
+            }
+            chain.add(b);
+            next = b.toSeq() + 1;
+        }
+        recovered.incrementAndGet();
+        return new Recovered(seq, cells, chain);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        synchronized (lock) {
+            out.put("pendingDocuments", pending.size());
+            out.put("pendingPatches", pendingPatches);
+        }
+        out.put("flushes", flushes.get());
+        out.put("rows", rows.get());
+        out.put("snapshots", snapshots.get());
+        out.put("failures", failures.get());
+        out.put("recovered", recovered.get());
+        out.put("droppedPatches", dropped.get());
+        out.put("discardedDocuments", discarded.get());
+        return out;
+    }
+
+    /** Escribe lo pendiente en una sola transacción (también al apagar). */
+    public void flush() {
+        Map<String, Pending> batch;
+        synchronized (lock) {
+            flushRequested = false;
+            if (pending.isEmpty()) return;
+            batch = pending;
+            inFlight = batch;
+            pending = new LinkedHashMap<>();
+            pendingPatches = 0;
+        }
+        Map<String, Pending> failed;
+        try {
+            tx.executeWithoutResult(status -> write(batch));
+            flushes.incrementAndGet();
+            failed = Map.of();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            log.warn("No se pudo persistir el journal de {} documentos: {}", batch.size(), e.getMessage());
+            failed = batch.size() > 1 ? writeEach(batch) : batch;
+        }
+        synchronized (lock) {
+            requeue(failed);
+            inFlight = Map.of();
+        }
+    }
+
+    /** Una transacción por documento; devuelve los que siguen fallando (ya con el intento contado). */
+    private Map<String, Pending> writeEach(Map<String, Pending> batch) {
+        Map<String, Pending> failed = new LinkedHashMap<>();
+        for (Map.Entry<String, Pending> e : batch.entrySet()) {
+            try {
+                tx.executeWithoutResult(status -> write(Map.of(e.getKey(), e.getValue())));
+            } catch (RuntimeException ex) {
+                failed.put(e.getKey(), e.getValue());
+                log.warn("No se pudo persistir el journal de {}: {}", e.getKey(), ex.getMessage());
+            }
+        }
+        // si falló todo es la base, no los documentos: no cuenta como intento
+        if (failed.size() < batch.size()) {
+            flushes.incrementAndGet();
+            for (Pending p : failed.values()) p.attempts++;
+        }
+        return failed;
+    }
+
+    // lo que falló vuelve delante de lo que llegó mientras tanto, en el mismo orden
+    private void requeue(Map<String, Pending> failed) {
+        if (failed.isEmpty()) return;
+        Map<String, Pending> merged = new LinkedHashMap<>();
+        for (Map.Entry<String, Pending> e : failed.entrySet()) {
+            if (e.getValue().attempts >= Math.max(1, props.getMaxAttempts())) {
+                discarded.incrementAndGet();
+                log.error("Journal de {} descartado tras {} intentos: {} lotes no se guardarán",
+                        e.getKey(), e.getValue().attempts, e.getValue().batches.size());
+                continue;
+            }
+            merged.put(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, Pending> e : pending.entrySet()) {
+            Pending older = merged.get(e.getKey());
+            if (older == null) {
+                merged.put(e.getKey(), e.getValue());
+                continue;
+            }
+            older.batches.addAll(e.getValue().batches);
+            if (e.getValue().snapshotCells != null) older.takeSnapshot(e.getValue().snapshotSeq, e.getValue().snapshotCells);
+        }
+        pending = merged;
+        pendingPatches = 0;
+        for (Pending p : merged.values()) pendingPatches += p.patches();
+    }
+
+    private void write(Map<String, Pending> batch) {
+        Instant now = Instant.now();
+        List<GraphPatchBatchEntity> entities = new ArrayList<>();
+        for (Map.Entry<String, Pending> e : batch.entrySet()) {
+            for (Batch b : e.getValue().batches) {
+                entities.add(new GraphPatchBatchEntity(e.getKey(), b.fromSeq(), b.toSeq(), json(b.patches()), now));
+            }
+        }
+        batches.saveAll(entities);
+        rows.addAndGet(entities.size());
+
+        for (Map.Entry<String, Pending> e : batch.entrySet()) {
+            Pending p = e.getValue();
+            if (p.snapshotCells == null) continue;
+            ObjectNode snap = om.createObjectNode();
+            snap.putArray("cells").addAll(p.snapshotCells);
+            sessions.save(new GraphSessionEntity(e.getKey(), p.snapshotSeq, json(snap), now));
+            batches.deleteCovered(e.getKey(), p.snapshotSeq);
+            snapshots.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    // ===================== JSON =====================
+    private String json(Object value) {
+        try {
+            return om.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el journal: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private List<ObjectNode> parseCells(String snapshot) {
+        List<ObjectNode> out = new ArrayList<>();
+        if (snapshot == null) return out;
+        try {
+            for (JsonNode c : om.readTree(snapshot).path("cells")) if (c instanceof ObjectNode o) out.add(o);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Snapshot ilegible: " + e.getOriginalMessage(), e);
+        }
+        return out;
+    }
+
+    private List<JsonNode> parsePatches(String json) {
+        try {
+            JsonNode node = om.readTree(json);
+            List<JsonNode> out = new ArrayList<>(node.size());
+            if (node instanceof ArrayNode arr) arr.forEach(out::add);
+            return out;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Lote ilegible: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private static List<ObjectNode> copy(List<ObjectNode> cells) {
+        List<ObjectNode> out = new ArrayList<>(cells.size());
+        for (ObjectNode c : cells) out.add(c.deepCopy());
+        return out;
+    }
+}
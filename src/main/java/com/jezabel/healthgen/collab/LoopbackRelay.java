@@ -0,0 +1,101 @@
+package com.jezabel.healthgen.collab;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relay dentro de la misma JVM. Con un solo nodo ({@link #standalone}) es dueño de todo y no envía nada:
+ * es el modo por defecto. Con varios nodos de una misma {@link Network} simula un clúster para pruebas;
+ * cada nodo entrega sus mensajes en un hilo propio, en orden, como haría un socket.
+ */
+public final class LoopbackRelay implements GraphRelay {
+
+    /** Nodos conectados entre sí; hay que unirlos todos antes de empezar a usarlos. */
+    public static final class Network {
+        private final ConcurrentSkipListMap<String, LoopbackRelay> nodes = new ConcurrentSkipListMap<>();
+
+        public LoopbackRelay join(String nodeId) {
+            LoopbackRelay relay = new LoopbackRelay(this, nodeId);
+            if (nodes.putIfAbsent(nodeId, relay) != null) throw new IllegalArgumentException("Nodo repetido: " + nodeId);
+            return relay;
+        }
+    }
+
+    private final Network network;
+    private final String nodeId;
+    private final ExecutorService inbox;
+    private volatile Handler handler;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private LoopbackRelay(Network network, String nodeId) {
+        this.network = network;
+        this.nodeId = nodeId;
+        this.inbox = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "graph-relay-" + nodeId);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static LoopbackRelay standalone(String nodeId) {
+        return new Network().join(nodeId);
+    }
+
+    @Override
+    public String nodeId() { return nodeId; }
+
+    @Override
+    public List<String> nodeIds() {
+        return List.copyOf(network.nodes.keySet());
+    }
+
+    @Override
+    public void start(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void send(String target, RelayMessage message) {
+        LoopbackRelay node = network.nodes.get(target);
+        if (node == null || !node.deliver(message)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        sent.incrementAndGet();
+    }
+
+    private boolean deliver(RelayMessage message) {
+        Handler h = handler;
+        if (h == null) return false;
+        try {
+            inbox.execute(() -> {
+                received.incrementAndGet();
+                h.onMessage(message);
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("mode", "loopback");
+        out.put("nodeId", nodeId);
+        out.put("nodes", nodeIds());
+        out.put("sent", sent.get());
+        out.put("received", received.get());
+        out.put("dropped", dropped.get());
+        return out;
+    }
+
+    @Override
+    public void close() {
+        network.nodes.remove(nodeId, this);
+        inbox.shutdownNow();
+    }
+}
@@ -0,0 +1,362 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Formato binario compacto para los patches del grafo (alternativa al JSON por STOMP).
+ * <pre>
+ * trama    := 'G' versión(1) varint(fromSeq) varint(n) registro*n
+ * registro := op(1 byte) [ref(op) si OTHER] ref(id) cuerpo
+ *   RAW     varint(len) json        patch sin op/id, tal cual
+ *   ADD/UPDATE/OTHER  varint(len) json   resto de campos (sin op ni id)
+ *   MOVE    zigzag(dx) zigzag(dy)   delta respecto a la última posición conocida de la celda
+ *   REMOVE  (vacío)
+ * ref      := varint(índice &lt;&lt; 1) | varint(len &lt;&lt; 1 | 1) utf8   (literal; quien decodifica
+ *             una trama del servidor lo añade a su tabla, así todos comparten los mismos índices)
+ * </pre>
+ * La tabla de strings es por documento y solo la amplía el servidor al codificar sus tramas;
+ * los clientes reciben la inicial en el snapshot. En las tramas del servidor la posición base de un
+ * MOVE es la del estado del documento (todos los suscriptores avanzan igual); las tramas de los
+ * clientes usan base 0 (posición absoluta), porque su vista local va por delante del servidor.
+ */
+public final class PatchCodec {
+
+    public static final byte MAGIC = 'G';
+    public static final byte VERSION = 1;
+
+    private static final int RAW = 0, ADD = 1, UPDATE = 2, MOVE = 3, REMOVE = 4, OTHER = 5;
+
+    /** Posición actual (entera) de una celda, o null si no tiene / no es entera. */
+    @FunctionalInterface
+    public interface Positions {
+        long[] position(String cellId);
+    }
+
+    /** Tabla de strings internados de un documento (ids de celda, nombres de op). */
+    public static final class StringTable {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>();
+
+        public int size() { return strings.size(); }
+        public String get(int i) { return strings.get(i); }
+        public List<String> toList() { return List.copyOf(strings); }
+
+        int indexOf(String s) {
+            Integer i = index.get(s);
+            return i == null ? -1 : i;
+        }
+
+        void add(String s) {
+            if (index.putIfAbsent(s, strings.size()) == null) strings.add(s);
+        }
+
+        void reset(List<String> values) {
+            strings.clear();
+            index.clear();
+            values.forEach(this::add);
+        }
+    }
+
+    private final ObjectMapper om;
+
+    public PatchCodec(ObjectMapper om) {
+        this.om = om;
+    }
+
+    // ===================== Codificación =====================
+
+    /** Escritor de una trama; los registros se añaden en orden, intercalados con su aplicación al estado. */
+    public final class FrameWriter {
+        private final Buffer out = new Buffer(256);
+        private final Buffer scratch = new Buffer(128);
+        private final StringTable table;
+        private final boolean extendTable;
+
+        private FrameWriter(long fromSeq, int count, StringTable table, boolean extendTable) {
+            this.table = table;
+            this.extendTable = extendTable;
+            out.write(MAGIC);
+            out.write(VERSION);
+            out.varint(fromSeq);
+            out.varint(count);
+        }
+
+        /** {@code positions} debe reflejar el estado ANTES de aplicar este patch. */
+        public void write(JsonNode patch, Positions positions) {
+            String op = text(patch.get("op"));
+            String id = cellIdOf(patch);
+            if (op == null || id == null || !(patch instanceof ObjectNode obj)) {
+                out.write(RAW);
+                out.bytes(json(patch));
+                return;
+            }
+            switch (op) {
+                case "add" -> header(ADD, null, id);
+                case "update" -> header(UPDATE, null, id);
+                case "remove" -> {
+                    header(REMOVE, null, id);
+                    return;
+                }
+                case "move" -> {
+                    long[] to = onlyIntegralPosition(obj);
+                    if (to != null) {
+                        long[] from = positions.position(id);
+                        header(MOVE, null, id);
+                        out.varint(zigzag(to[0] - (from == null ? 0 : from[0])));
+                        out.varint(zigzag(to[1] - (from == null ? 0 : from[1])));
+                        return;
+                    }
+                    header(OTHER, op, id);
+                }
+                default -> header(OTHER, op, id);
+            }
+            writeRest(obj);
+        }
+
+        public byte[] finish() {
+            return out.toByteArray();
+        }
+
+        /** El patch sin op ni id, serializado directamente (sin copiar el nodo). */
+        private void writeRest(ObjectNode obj) {
+            scratch.reset();
+            try (JsonGenerator g = om.getFactory().createGenerator(scratch)) {
+                g.writeStartObject();
+                for (Iterator<Map.Entry<String, JsonNode>> it = obj.fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> f = it.next();
+                    if (f.getKey().equals("op") || f.getKey().equals("id")) continue;
+                    g.writeFieldName(f.getKey());
+                    om.writeTree(g, f.getValue());
+                }
+                g.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            out.varint(scratch.size());
+            out.append(scratch);
+        }
+
+        private void header(int code, String op, String id) {
+            out.write(code);
+            if (op != null) ref(op);
+            ref(id);
+        }
+
+        private void ref(String s) {
+            int i = table.indexOf(s);
+            if (i >= 0) {
+                out.varint((long) i << 1);
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.varint(((long) utf8.length << 1) | 1);
+            out.write(utf8, 0, utf8.length);
+            if (extendTable) table.add(s);
+        }
+    }
+
+    /** Trama del servidor: los literales amplían la tabla del documento. */
+    public FrameWriter writer(long fromSeq, int count, StringTable table) {
+        return new FrameWriter(fromSeq, count, table, true);
+    }
+
+    /** Trama de un cliente: usa la tabla pero no la amplía (solo el servidor asigna índices). */
+    public FrameWriter clientWriter(int count, StringTable table) {
+        return new FrameWriter(0, count, table, false);
+    }
+
+    // ===================== Decodificación =====================
+
+    /**
+     * Decodifica una trama a patches JSON (los MOVE vuelven con posición absoluta).
+     * {@code extendTable}: true al leer tramas del servidor (clientes), false al leer las de un cliente (servidor).
+     */
+    public List<JsonNode> decode(byte[] frame, StringTable table, boolean extendTable, Positions positions) {
+        Reader in = new Reader(frame);
+        if (in.u8() != MAGIC || in.u8() != VERSION) throw new IllegalArgumentException("Trama binaria desconocida");
+        in.varint(); // fromSeq
+        long n = in.varint();
+        if (n < 0 || n > frame.length) throw new IllegalArgumentException("Trama binaria corrupta");
+
+        // posiciones que cambian dentro de la misma trama (dos MOVE seguidos de la misma celda)
+        Map<String, long[]> local = new HashMap<>();
+        Positions view = id -> local.containsKey(id) ? local.get(id) : positions.position(id);
+
+        List<JsonNode> out = new ArrayList<>((int) n);
+        for (long r = 0; r < n; r++) {
+            int code = in.u8();
+            if (code == RAW) {
+                JsonNode raw = readJson(in);
+                track(local, raw);
+                out.add(raw);
+                continue;
+            }
+            String op = switch (code) {
+                case ADD -> "add";
+                case UPDATE -> "update";
+                case MOVE -> "move";
+                case REMOVE -> "remove";
+                case OTHER -> in.ref(table, extendTable);
+                default -> throw new IllegalArgumentException("Operación binaria desconocida: " + code);
+            };
+            String id = in.ref(table, extendTable);
+
+            ObjectNode patch = om.createObjectNode();
+            patch.put("op", op);
+            patch.put("id", id);
+            if (code == MOVE) {
+                long[] base = view.position(id);
+                long x = (base == null ? 0 : base[0]) + unzigzag(in.varint());
+                long y = (base == null ? 0 : base[1]) + unzigzag(in.varint());
+                patch.putObject("position").put("x", x).put("y", y);
+                local.put(id, new long[] {x, y});
+            } else {
+                if (code != REMOVE) {
+                    JsonNode rest = readJson(in);
+                    if (rest instanceof ObjectNode o) patch.setAll(o);
+                }
+                track(local, patch);
+            }
+            out.add(patch);
+        }
+        return out;
+    }
+
+    /**
+     * Sigue la posición de la celda como la dejará {@link GraphDocument} al aplicar el patch
+     * (null = sin posición entera: un remove no debe caer en la posición previa a la trama).
+     */
+    private static void track(Map<String, long[]> local, JsonNode patch) {
+        JsonNode opNode = patch.has("op") ? patch.get("op") : patch.get("type");
+        String op = text(opNode), id = cellIdOf(patch);
+        if (op == null || id == null) return;
+        op = op.toLowerCase(Locale.ROOT);
+        if (op.equals("remove") || op.equals("delete")) {
+            local.put(id, null);
+            return;
+        }
+        JsonNode fields = patch.get("cell") instanceof ObjectNode c ? c : patch;
+        if (fields.has("position")) local.put(id, integralPosition(fields.get("position")));
+    }
+
+    // ===================== Helpers =====================
+    static String cellIdOf(JsonNode patch) {
+        JsonNode id = patch.get("id");
+        if (id == null && patch.get("cell") instanceof ObjectNode c) id = c.get("id");
+        return id != null && (id.isTextual() || id.isNumber()) ? id.asText() : null;
+    }
+
+    static long[] integralPosition(JsonNode pos) {
+        if (pos == null) return null;
+        JsonNode x = pos.get("x"), y = pos.get("y");
+        if (x == null || y == null || !x.canConvertToExactIntegral() || !y.canConvertToExactIntegral()) return null;
+        return new long[] {x.asLong(), y.asLong()};
+    }
+
+    /** Un "move" puro: solo op, id y position con x/y enteros (si no, va como OTHER con JSON). */
+    private static long[] onlyIntegralPosition(ObjectNode patch) {
+        for (Iterator<String> it = patch.fieldNames(); it.hasNext(); ) {
+            String f = it.next();
+            if (!f.equals("op") && !f.equals("id") && !f.equals("position")) return null;
+        }
+        JsonNode pos = patch.get("position");
+        return pos != null && pos.size() == 2 ? integralPosition(pos) : null;
+    }
+
+    private static String text(JsonNode n) {
+        return n != null && n.isTextual() ? n.asText() : null;
+    }
+
+    private byte[] json(JsonNode node) {
+        try {
+            return om.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JsonNode readJson(Reader in) {
+        int len = (int) in.varint();
+        try {
+            return om.readTree(in.buf, in.take(len), len);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON inválido en trama binaria: " + e.getMessage());
+        }
+    }
+
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+    private static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+    /** ByteArrayOutputStream con varints y bloques con longitud. */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) { super(size); }
+
+        void varint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void bytes(byte[] b) {
+            varint(b.length);
+            write(b, 0, b.length);
+        }
+
+        void append(Buffer other) {
+            write(other.buf, 0, other.count);
+        }
+    }
+
+    private static final class Reader {
+        final byte[] buf;
+        int pos;
+
+        Reader(byte[] buf) { this.buf = buf; }
+
+        int u8() {
+            if (pos >= buf.length) throw new IllegalArgumentException("Trama binaria truncada");
+            return buf[pos++] & 0xFF;
+        }
+
+        long varint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = u8();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("Varint demasiado largo");
+        }
+
+        int take(int len) {
+            if (len < 0 || len > buf.length - pos) throw new IllegalArgumentException("Trama binaria truncada");
+            int start = pos;
+            pos += len;
+            return start;
+        }
+
+        String ref(StringTable table, boolean extend) {
+            long v = varint();
+            if ((v & 1) == 0) {
+                long i = v >>> 1;
+                if (i >= table.size()) throw new IllegalArgumentException("Referencia a string desconocida: " + i);
+                return table.get((int) i);
+            }
+            int len = (int) (v >>> 1);
+            String s = new String(buf, take(len), len, StandardCharsets.UTF_8);
+            if (extend) table.add(s);
+            return s;
+        }
+    }
+}
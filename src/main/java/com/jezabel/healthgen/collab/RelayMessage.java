@@ -0,0 +1,88 @@
+package com.jezabel.healthgen.collab;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mensaje entre nodos de colaboración.
+ * <ul>
+ *   <li>{@code PATCHES} / {@code BINARY_PATCHES}: lo que mandó un cliente, reenviado tal cual al dueño del documento.</li>
+ *   <li>{@code ENABLE_BINARY}: alguien se suscribió al topic binario en otro nodo.</li>
+ *   <li>{@code FRAME}: lote ya numerado que el dueño difunde (JSON y, si aplica, la trama binaria).</li>
+ *   <li>{@code SYNC} / {@code SNAPSHOT}: una réplica detectó un hueco y pide el estado completo al dueño.</li>
+ * </ul>
+ */
+public record RelayMessage(Kind kind, String origin, String docId, long fromSeq, long toSeq, String json, byte[] binary) {
+
+    public enum Kind { PATCHES, BINARY_PATCHES, ENABLE_BINARY, FRAME, SYNC, SNAPSHOT }
+
+    private static final int MAX_BLOCK = 64 * 1024 * 1024;
+
+    public static RelayMessage patches(String origin, String docId, String json) {
+        return new RelayMessage(Kind.PATCHES, origin, docId, 0, 0, json, null);
+    }
+
+    public static RelayMessage binaryPatches(String origin, String docId, byte[] frame) {
+        return new RelayMessage(Kind.BINARY_PATCHES, origin, docId, 0, 0, null, frame);
+    }
+
+    public static RelayMessage enableBinary(String origin, String docId) {
+        return new RelayMessage(Kind.ENABLE_BINARY, origin, docId, 0, 0, null, null);
+    }
+
+    public static RelayMessage frame(String origin, String docId, long fromSeq, long toSeq, String json, byte[] binary) {
+        return new RelayMessage(Kind.FRAME, origin, docId, fromSeq, toSeq, json, binary);
+    }
+
+    public static RelayMessage sync(String origin, String docId) {
+        return new RelayMessage(Kind.SYNC, origin, docId, 0, 0, null, null);
+    }
+
+    public static RelayMessage snapshot(String origin, String docId, long seq, String json) {
+        return new RelayMessage(Kind.SNAPSHOT, origin, docId, seq, seq, json, null);
+    }
+
+    // ===================== Formato en el socket =====================
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(kind.ordinal());
+        out.writeUTF(origin);
+        out.writeUTF(docId);
+        out.writeLong(fromSeq);
+        out.writeLong(toSeq);
+        writeBlock(out, json == null ? null : json.getBytes(StandardCharsets.UTF_8));
+        writeBlock(out, binary);
+    }
+
+    static RelayMessage readFrom(DataInputStream in) throws IOException {
+        int k = in.readUnsignedByte();
+        if (k >= Kind.values().length) throw new IOException("Tipo de mensaje desconocido: " + k);
+        String origin = in.readUTF();
+        String docId = in.readUTF();
+        long from = in.readLong();
+        long to = in.readLong();
+        byte[] json = readBlock(in);
+        byte[] binary = readBlock(in);
+        return new RelayMessage(Kind.values()[k], origin, docId, from, to,
+                json == null ? null : new String(json, StandardCharsets.UTF_8), binary);
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] b) throws IOException {
+        if (b == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) return null;
+        if (len > MAX_BLOCK) throw new IOException("Bloque demasiado grande: " + len);
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return b;
+    }
+}
@@ -0,0 +1,287 @@
+package com.jezabel.healthgen.collab;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relay por TCP entre una lista fija de nodos ({@code id@host:puerto}). Cada nodo escucha en su puerto y
+ * abre una conexión de salida por peer, con su cola acotada y un hilo escritor que agrupa en un solo flush
+ * todo lo que haya encolado. Varios nodos pueden correr en la misma máquina con puertos distintos.
+ * <p>
+ * Si un peer no está disponible se descarta el mensaje y se reintenta la conexión con el siguiente.
+ * <p>
+ * El puerto no lleva autenticación: se escucha solo en el host configurado para este nodo, se cierran las
+ * conexiones que no vienen de la dirección de algún peer y se descartan los mensajes cuyo {@code origin}
+ * no es un peer conocido o no corresponde a la dirección desde la que llegan.
+ */
+public final class TcpPeerRelay implements GraphRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpPeerRelay.class);
+    private static final long RECONNECT_BACKOFF_MS = 500;
+
+    private final String nodeId;
+    private final List<String> nodeIds;
+    private final Map<String, InetSocketAddress> addresses = new LinkedHashMap<>();
+    private final Map<String, Peer> peers = new HashMap<>();
+    private final int connectTimeoutMs;
+    private final List<Socket> inbound = Collections.synchronizedList(new ArrayList<>());
+    private volatile Handler handler;
+    private volatile boolean closed;
+    private ServerSocket server;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public TcpPeerRelay(String nodeId, List<String> nodes, int connectTimeoutMs, int queueCapacity) {
+        for (String spec : nodes) {
+            int at = spec.indexOf('@'), colon = spec.lastIndexOf(':');
+            if (at <= 0 || colon < at) throw new IllegalArgumentException("Nodo inválido (se espera id@host:puerto): " + spec);
+            String id = spec.substring(0, at).trim();
+            String host = spec.substring(at + 1, colon).trim();
+            int port = Integer.parseInt(spec.substring(colon + 1).trim());
+            addresses.put(id, new InetSocketAddress(host, port));
+        }
+        if (!addresses.containsKey(nodeId)) throw new IllegalArgumentException("graph.relay.node-id '" + nodeId + "' no está en graph.relay.nodes");
+        this.nodeId = nodeId;
+        this.nodeIds = addresses.keySet().stream().sorted().toList();
+        this.connectTimeoutMs = connectTimeoutMs;
+        for (String id : nodeIds) {
+            if (!id.equals(nodeId)) peers.put(id, new Peer(id, addresses.get(id), Math.max(1, queueCapacity)));
+        }
+    }
+
+    @Override
+    public String nodeId() { return nodeId; }
+
+    @Override
+    public List<String> nodeIds() { return nodeIds; }
+
+    @Override
+    public synchronized void start(Handler handler) {
+        this.handler = handler;
+        if (server != null) return;
+        try {
+            server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(addresses.get(nodeId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escuchar en " + addresses.get(nodeId), e);
+        }
+        daemon("graph-relay-accept", this::acceptLoop).start();
+        for (Peer p : peers.values()) {
+            p.writer = daemon("graph-relay-out-" + p.id, p::writeLoop);
+            p.writer.start();
+        }
+        log.info("Relay TCP {} escuchando en {} (nodos: {})", nodeId, server.getLocalSocketAddress(), nodeIds);
+    }
+
+    @Override
+    public void send(String target, RelayMessage message) {
+        if (target.equals(nodeId)) {
+            Handler h = handler;
+            if (h != null) h.onMessage(message);
+            return;
+        }
+        Peer p = peers.get(target);
+        if (p == null || closed || !p.queue.offer(message)) dropped.incrementAndGet();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("mode", "tcp");
+        out.put("nodeId", nodeId);
+        out.put("nodes", nodeIds);
+        out.put("sent", sent.get());
+        out.put("received", received.get());
+        out.put("dropped", dropped.get());
+        out.put("rejected", rejected.get());
+        Map<String, Object> queues = new LinkedHashMap<>();
+        for (Peer p : peers.values()) queues.put(p.id, p.queue.size());
+        out.put("queued", queues);
+        return out;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeQuietly(server);
+        for (Peer p : peers.values()) p.close();
+        synchronized (inbound) {
+            inbound.forEach(TcpPeerRelay::closeQuietly);
+            inbound.clear();
+        }
+    }
+
+    // ===================== Entrada =====================
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket s = server.accept();
+                if (!fromPeer(s.getInetAddress(), null)) {
+                    rejected.incrementAndGet();
+                    log.warn("Relay {}: conexión rechazada de {} (no está en graph.relay.nodes)", nodeId, s.getRemoteSocketAddress());
+                    closeQuietly(s);
+                    continue;
+                }
+                s.setTcpNoDelay(true);
+                inbound.add(s);
+                daemon("graph-relay-in-" + s.getRemoteSocketAddress(), () -> readLoop(s)).start();
+            } catch (IOException e) {
+                if (!closed) log.warn("Relay {}: fallo aceptando conexión: {}", nodeId, e.getMessage());
+            }
+        }
+    }
+
+    private void readLoop(Socket s) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024))) {
+            while (!closed) {
+                RelayMessage m = RelayMessage.readFrom(in);
+                if (!fromPeer(s.getInetAddress(), m.origin())) {
+                    rejected.incrementAndGet();
+                    log.warn("Relay {}: mensaje descartado, origen '{}' desconocido desde {}", nodeId, m.origin(), s.getRemoteSocketAddress());
+                    continue;
+                }
+                received.incrementAndGet();
+                Handler h = handler;
+                if (h == null) continue;
+                try {
+                    h.onMessage(m);
+                } catch (RuntimeException e) {
+                    log.warn("Relay {}: error procesando {} de {}: {}", nodeId, m.kind(), m.origin(), e.getMessage());
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // el peer cerró la conexión
+        } catch (IOException e) {
+            if (!closed) log.warn("Relay {}: conexión de entrada rota: {}", nodeId, e.getMessage());
+        } finally {
+            inbound.remove(s);
+            closeQuietly(s);
+        }
+    }
+
+    /** Si {@code remote} es la dirección de un peer (de {@code origin} en concreto, si no es null). */
+    private boolean fromPeer(InetAddress remote, String origin) {
+        for (Peer p : peers.values()) {
+            if (origin != null && !origin.equals(p.id)) continue;
+            if (p.matches(remote)) return true;
+        }
+        return false;
+    }
+
+    // ===================== Salida: una conexión por peer =====================
+    private final class Peer {
+        final String id;
+        final InetSocketAddress address;
+        final BlockingQueue<RelayMessage> queue;
+        Thread writer;
+        private Socket socket;
+        private DataOutputStream out;
+        private long retryAt;
+
+        Peer(String id, InetSocketAddress address, int capacity) {
+            this.id = id;
+            this.address = address;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        boolean matches(InetAddress remote) {
+            if (!address.isUnresolved()) return address.getAddress().equals(remote);
+            // el DNS no respondía al arrancar: se vuelve a intentar
+            try {
+                for (InetAddress a : InetAddress.getAllByName(address.getHostString())) if (a.equals(remote)) return true;
+            } catch (IOException e) {
+                log.debug("Relay {}: no se resuelve {} ({})", nodeId, address.getHostString(), e.getMessage());
+            }
+            return false;
+        }
+
+        void writeLoop() {
+            while (!closed) {
+                RelayMessage m;
+                try {
+                    m = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!connected()) {
+                    dropped.incrementAndGet();
+                    continue;
+                }
+                try {
+                    m.writeTo(out);
+                    sent.incrementAndGet();
+                    // lo que ya esté en cola sale en el mismo flush
+                    while ((m = queue.poll()) != null) {
+                        m.writeTo(out);
+                        sent.incrementAndGet();
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    if (!closed) log.warn("Relay {} -> {}: envío fallido: {}", nodeId, id, e.getMessage());
+                    dropped.incrementAndGet();
+                    disconnect();
+                }
+            }
+        }
+
+        private boolean connected() {
+            if (socket != null) return true;
+            long now = System.currentTimeMillis();
+            if (now < retryAt) return false;
+            Socket s = new Socket();
+            try {
+                s.connect(address, connectTimeoutMs);
+                s.setTcpNoDelay(true);
+                socket = s;
+                out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 64 * 1024));
+                return true;
+            } catch (IOException e) {
+                closeQuietly(s);
+                retryAt = now + RECONNECT_BACKOFF_MS;
+                log.debug("Relay {} -> {}: sin conexión ({})", nodeId, id, e.getMessage());
+                return false;
+            }
+        }
+
+        private void disconnect() {
+            closeQuietly(socket);
+            socket = null;
+            out = null;
+        }
+
+        void close() {
+            queue.clear();
+            if (writer != null) writer.interrupt();
+            closeQuietly(socket);
+        }
+    }
+
+    private static Thread daemon(String name, Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.jezabel.healthgen.config;
+
+import com.jezabel.healthgen.ai.GeminiClient;
+import com.jezabel.healthgen.ai.LlmResponseCache;
+import com.jezabel.healthgen.service.CodegenCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Publica como métricas los contadores que ya llevaban las cachés y el cliente de Gemini
+ * (los mismos que devuelven sus endpoints de stats). Los tiempos por etapa los registra cada servicio.
+ * Todo sale en /actuator/metrics y, en formato Prometheus, en /actuator/prometheus.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder codegenCacheMetrics(CodegenCache cache) {
+        return registry -> {
+            FunctionCounter.builder("healthgen.codegen.cache.requests", cache, CodegenCache::hits)
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("healthgen.codegen.cache.requests", cache, CodegenCache::misses)
+                    .tag("result", "miss").register(registry);
+            FunctionCounter.builder("healthgen.codegen.cache.evictions", cache, CodegenCache::evictions)
+                    .register(registry);
+            Gauge.builder("healthgen.codegen.cache.size", cache, CodegenCache::bytes)
+                    .baseUnit("bytes").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder llmCacheMetrics(LlmResponseCache cache) {
+        return registry -> {
+            FunctionCounter.builder("healthgen.llm.cache.requests", cache, LlmResponseCache::hits)
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("healthgen.llm.cache.requests", cache, LlmResponseCache::misses)
+                    .tag("result", "miss").register(registry);
+            FunctionCounter.builder("healthgen.llm.cache.evictions", cache, LlmResponseCache::evictions)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder geminiMetrics(GeminiClient gemini) {
+        return registry -> {
+            Gauge.builder("healthgen.llm.in.flight", gemini, GeminiClient::inFlight).register(registry);
+            Gauge.builder("healthgen.llm.waiting", gemini, GeminiClient::waiting).register(registry);
+        };
+    }
+}
@@ -1,12 +1,20 @@
 package com.jezabel.healthgen.config;
 
+import com.jezabel.healthgen.ai.RateLimitInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final RateLimitInterceptor rateLimit;
+
+    public WebConfig(RateLimitInterceptor rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry reg) {
         reg.addMapping("/api/**")
@@ -15,4 +23,12 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedHeaders("*")
                 .allowCredentials(true);
     }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry reg) {
+        // Todo lo que acaba llamando al LLM (también el PDF asíncrono); las estadísticas no cuentan
+        reg.addInterceptor(rateLimit)
+                .addPathPatterns("/api/ai/**", "/api/jobs/docs")
+                .excludePathPatterns("/api/ai/stats");
+    }
 }
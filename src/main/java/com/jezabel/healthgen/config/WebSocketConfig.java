@@ -16,6 +16,9 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("http://localhost:5173")
                 .withSockJS();
+        // WebSocket nativo (sin SockJS, que solo transporta texto): lo usan los clientes del formato binario
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("http://localhost:5173");
     }
 
     @Override
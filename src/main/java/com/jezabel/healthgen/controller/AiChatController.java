@@ -1,33 +1,90 @@
 package com.jezabel.healthgen.controller;
 
 import com.jezabel.healthgen.ai.GeminiClient;
-import com.jezabel.healthgen.ai.IpRateLimiter;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/ai/chat")
 public class AiChatController {
 
+    // tope de la respuesta del asistente (el prompt pide como mucho 120 palabras)
+    private static final int MAX_CHARS = 1200;
+    private static final int MAX_WORDS = 120;
+
     private final GeminiClient gemini;
-    private final IpRateLimiter limiter;
 
-    public AiChatController(GeminiClient gemini, IpRateLimiter limiter) {
+    // El límite por IP lo aplica RateLimitInterceptor (ratelimit.policies.chat)
+    public AiChatController(GeminiClient gemini) {
         this.gemini = gemini;
-        this.limiter = limiter;
     }
 
+    // POST /api/ai/chat  body: { "question": "..." } -> { "answer": "..." } cuando la respuesta está completa
     @PostMapping
-    public Map<String, Object> chat(@RequestBody Map<String, Object> body, HttpServletRequest req) {
-        String ip = clientIp(req);
-        if (!limiter.allow(ip)) {
-            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Demasiadas solicitudes, intenta en unos minutos.");
+    public CompletableFuture<Map<String, Object>> chat(@RequestBody Map<String, Object> body) {
+        return gemini.generateTextAsync(prompt(body), "chat").thenApply(answer -> {
+            // recorte de seguridad por si el modelo se pasa
+            if (answer.length() > MAX_CHARS) answer = answer.substring(0, MAX_CHARS) + "…";
+            return Map.of("answer", answer);
+        });
+    }
+
+    // POST /api/ai/chat/stream  body: { "question": "..." } -> text/event-stream
+    // Eventos: "chunk" {"text"} según llega de Gemini, al final "done" {"capped","finishReason"} o "error" {"message"}.
+    // Al llegar al tope (MAX_CHARS / MAX_WORDS) se corta la llamada a Gemini; si el navegador se desconecta, también.
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody Map<String, Object> body) {
+        String prompt = prompt(body);
+        SseEmitter emitter = new SseEmitter(0L);   // sin timeout propio: lo acota gemini.timeout-ms
+        CompletableFuture<GeminiClient.StreamResult> stream = gemini.streamTextAsync(prompt, "chat", MAX_CHARS, MAX_WORDS,
+                text -> send(emitter, "chunk", Map.of("text", text)));
+        if (stream.isCompletedExceptionally()) {
+            // rechazo inmediato (sin API key, cola llena): mejor un 5xx normal que un stream con un solo error
+            try {
+                stream.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
         }
+        emitter.onCompletion(() -> stream.cancel(true));
+        emitter.onTimeout(() -> stream.cancel(true));
+        emitter.onError(e -> stream.cancel(true));
+        stream.whenComplete((r, e) -> {
+            try {
+                if (e == null) {
+                    send(emitter, "done", Map.of("capped", r.capped(), "finishReason", String.valueOf(r.finishReason())));
+                } else if (!(e instanceof CancellationException)) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    send(emitter, "error", Map.of("message", String.valueOf(cause.getMessage())));
+                }
+                emitter.complete();
+            } catch (RuntimeException ex) {
+                emitter.completeWithError(ex);
+            }
+        });
+        return emitter;
+    }
 
+    private static void send(SseEmitter emitter, String event, Map<String, Object> data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);   // cliente desconectado: GeminiClient corta la llamada
+        }
+    }
+
+    private static String prompt(Map<String, Object> body) {
         String question = String.valueOf(body.getOrDefault("question", "")).trim();
         if (question.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Falta 'question'.");
@@ -54,18 +111,6 @@ public class AiChatController {
                 Da respuestas breves y prácticas; evita texto irrelevante.
                 """;
 
-        String prompt = context + "\nUsuario: " + question + "\nAsistente (máx. 120 palabras, claro y concreto):";
-
-        String answer = gemini.generateText(prompt);
-        // recorte de seguridad por si el modelo se pasa
-        if (answer.length() > 1200) answer = answer.substring(0, 1200) + "…";
-
-        return Map.of("answer", answer);
-    }
-
-    private static String clientIp(HttpServletRequest req) {
-        String xf = req.getHeader("X-Forwarded-For");
-        if (xf != null && !xf.isBlank()) return xf.split(",")[0].trim();
-        return req.getRemoteAddr();
+        return context + "\nUsuario: " + question + "\nAsistente (máx. 120 palabras, claro y concreto):";
     }
 }
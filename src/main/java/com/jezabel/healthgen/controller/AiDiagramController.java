@@ -1,26 +1,38 @@
 package com.jezabel.healthgen.controller;
 
 import com.jezabel.healthgen.service.AiDiagramService;
+import com.jezabel.healthgen.trace.Span;
+import com.jezabel.healthgen.trace.Tracer;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/ai")
 public class AiDiagramController {
 
     private final AiDiagramService svc;
+    private final Tracer tracer;
 
-    public AiDiagramController(AiDiagramService svc) {
+    public AiDiagramController(AiDiagramService svc, Tracer tracer) {
         this.svc = svc;
+        this.tracer = tracer;
     }
 
+    // Traza "ai.diagram": llm.generate (Gemini) y, hasta el final del span, extracción y normalización del JSON
     @PostMapping(value="/diagram", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Map<String,Object> diagram(@RequestBody Map<String,Object> body) {
+    public CompletableFuture<Map<String,Object>> diagram(@RequestBody Map<String,Object> body) {
         String prompt = Objects.toString(body.get("prompt"), "");
         if (prompt.isBlank()) throw new IllegalArgumentException("prompt requerido");
-        return svc.generateModelSpecFromPrompt(prompt);
+        Span span = tracer.startSpan("ai.diagram").attr("prompt.chars", prompt.length());
+        try (Tracer.Scope scope = tracer.activate(span)) {
+            return span.endWhenDone(svc.generateModelSpecFromPrompt(prompt));
+        } catch (RuntimeException e) {
+            span.error(e).end();
+            throw e;
+        }
     }
 }
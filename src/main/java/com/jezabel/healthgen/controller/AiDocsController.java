@@ -2,12 +2,15 @@ package com.jezabel.healthgen.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jezabel.healthgen.service.AiDocService;
+import com.jezabel.healthgen.trace.Span;
+import com.jezabel.healthgen.trace.Tracer;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/ai/docs")
@@ -15,32 +18,43 @@ public class AiDocsController {
 
     private final AiDocService service;
     private final ObjectMapper om;
+    private final Tracer tracer;
 
-    public AiDocsController(AiDocService service, ObjectMapper om) {
+    public AiDocsController(AiDocService service, ObjectMapper om, Tracer tracer) {
         this.service = service;
         this.om = om;
+        this.tracer = tracer;
     }
 
     // Body puede ser { "id": 123 }  o  { "spec": { ...modelSpec... }, "filename":"opcional.pdf" }
+    // Traza "ai.docs": carga del spec, llm.generate (Gemini), docs.markdown y docs.pdf.
     @PostMapping
-    public ResponseEntity<byte[]> generate(@RequestBody Map<String,Object> body) throws Exception {
-        byte[] pdf;
+    public CompletableFuture<ResponseEntity<byte[]>> generate(@RequestBody Map<String,Object> body) throws Exception {
+        CompletableFuture<byte[]> pdf;
         String filename = String.valueOf(body.getOrDefault("filename", "documentacion.pdf"));
 
-        if (body.containsKey("id")) {
-            Long id = Long.valueOf(String.valueOf(body.get("id")));
-            pdf = service.generatePdfFromId(id);
-        } else if (body.containsKey("spec")) {
-            @SuppressWarnings("unchecked") Map<String,Object> spec = (Map<String,Object>) body.get("spec");
-            pdf = service.generatePdfFromSpec(spec);
-        } else {
-            return ResponseEntity.badRequest().body(null);
+        Span span = tracer.startSpan("ai.docs");
+        try (Tracer.Scope scope = tracer.activate(span)) {
+            if (body.containsKey("id")) {
+                Long id = Long.valueOf(String.valueOf(body.get("id")));
+                span.attr("spec.id", id);
+                pdf = service.generatePdfFromId(id);
+            } else if (body.containsKey("spec")) {
+                @SuppressWarnings("unchecked") Map<String,Object> spec = (Map<String,Object>) body.get("spec");
+                pdf = service.generatePdfFromSpec(spec);
+            } else {
+                span.attr("status", 400).end();
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
+            }
+        } catch (Exception e) {
+            span.error(e).end();
+            throw e;
         }
 
-        return ResponseEntity.ok()
+        return span.endWhenDone(pdf).thenApply(bytes -> ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
                 .contentType(MediaType.APPLICATION_PDF)
-                .contentLength(pdf.length)
-                .body(pdf);
+                .contentLength(bytes.length)
+                .body(bytes));
     }
 }
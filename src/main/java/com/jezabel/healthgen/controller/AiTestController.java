@@ -1,25 +1,34 @@
 package com.jezabel.healthgen.controller;
 
 import com.jezabel.healthgen.ai.GeminiClient;
+import com.jezabel.healthgen.ai.LlmResponseCache;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/ai")
 public class AiTestController {
 
     private final GeminiClient gemini;
+    private final LlmResponseCache cache;
 
-    public AiTestController(GeminiClient gemini) {
+    public AiTestController(GeminiClient gemini, LlmResponseCache cache) {
         this.gemini = gemini;
+        this.cache = cache;
     }
 
     @PostMapping("/test")
-    public ResponseEntity<Map<String, Object>> test(@RequestBody Map<String, Object> body) throws Exception {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> test(@RequestBody Map<String, Object> body) {
         String prompt = String.valueOf(body.getOrDefault("prompt", "Di 'hola mundo' en una frase"));
-        String text = gemini.generateText(prompt);
-        return ResponseEntity.ok(Map.of("text", text));
+        return gemini.generateTextAsync(prompt, "test").thenApply(text -> ResponseEntity.ok(Map.of("text", text)));
+    }
+
+    // GET /api/ai/stats -> caché de respuestas (aciertos/fallos) y estado del cliente (permisos, coalescencia)
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return Map.of("cache", cache.stats(), "client", gemini.stats());
     }
 }
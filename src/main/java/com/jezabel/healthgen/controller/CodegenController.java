@@ -1,49 +1,205 @@
 package com.jezabel.healthgen.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.codegen.ZipStreamSink;
 import com.jezabel.healthgen.domain.ModelSpecEntity;
-import com.jezabel.healthgen.repository.ModelSpecRepository;
+import com.jezabel.healthgen.service.CodegenBatchService;
+import com.jezabel.healthgen.service.CodegenCache;
 import com.jezabel.healthgen.service.CodegenService;
+import com.jezabel.healthgen.service.ModelSpecService;
+import com.jezabel.healthgen.spec.ModelSpec;
+import com.jezabel.healthgen.trace.Span;
+import com.jezabel.healthgen.trace.Tracer;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.nio.file.Path;   // 👈 ESTE IMPORT
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/codegen")
 public class CodegenController {
 
-    private final ModelSpecRepository specRepo;
+    private final ModelSpecService specs;
     private final CodegenService codegen;
+    private final CodegenCache cache;
+    private final CodegenBatchService batch;
+    private final ObjectMapper om;
+    private final Tracer tracer;
 
-    public CodegenController(ModelSpecRepository specRepo, CodegenService codegen) {
-        this.specRepo = specRepo;
+    private static final String DELTA_MANIFEST = ".healthgen-delta.json";
+
+    public CodegenController(ModelSpecService specs, CodegenService codegen, CodegenCache cache,
+                             CodegenBatchService batch, ObjectMapper om, Tracer tracer) {
+        this.specs = specs;
         this.codegen = codegen;
+        this.cache = cache;
+        this.batch = batch;
+        this.om = om;
+        this.tracer = tracer;
     }
 
     // GET /api/codegen/{id}/entities -> genera SOLO Entities en carpeta temporal
     @GetMapping("/{id}/entities")
     public ResponseEntity<Map<String, Object>> generateEntities(@PathVariable Long id) throws Exception {
-        ModelSpecEntity spec = specRepo.findById(id).orElseThrow();
-        Map<String, Object> result = codegen.generateEntities(spec);
+        Map<String, Object> result = codegen.generateEntities(specs.load(id));
         return ResponseEntity.ok(result);
     }
 
     // GET /api/codegen/{id}/zip -> genera proyecto completo en un ZIP descargable
+    // El ZIP se escribe en streaming sobre la respuesta: sin carpeta ni archivo temporal.
+    // Si el mismo spec (por hash de contenido) ya se generó, se sirve desde la caché.
+    // Un spec inválido responde 422 con los diagnósticos antes de empezar el stream.
+    // Traza "codegen.zip": spec.load, spec.parse, codegen.validate y codegen.write (hasta el último byte).
     @GetMapping("/{id}/zip")
-    public ResponseEntity<Resource> generateZip(@PathVariable Long id) throws Exception {
-        ModelSpecEntity spec = specRepo.findById(id).orElseThrow();
-        Path zipFile = codegen.generateZip(spec);
+    public ResponseEntity<StreamingResponseBody> generateZip(@PathVariable Long id) throws Exception {
+        Span span = tracer.startSpan("codegen.zip").attr("spec.id", id);
+        ModelSpecEntity entity;
+        ModelSpec spec;
+        try {
+            entity = load(span, id);
+            spec = parse(span, entity);
+            validate(span, spec);
+        } catch (Exception e) {
+            span.error(e).end();
+            throw e;
+        }
+        StreamingResponseBody body = out -> stream(span, () -> cache.writeZip(spec, out));
+
+        return ResponseEntity.ok()
+                .header("Content-Disposition", "attachment; filename=" + entity.getName() + ".zip")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    // POST /api/codegen/batch  body: [id, id, ...] -> un ZIP con un ZIP por proyecto + manifest.json
+    // Los specs se cargan en una consulta y se generan en paralelo (codegen.batch.threads).
+    // Un spec inexistente o inválido queda en el manifiesto con su estado; el resto se genera igual.
+    @PostMapping("/batch")
+    public ResponseEntity<StreamingResponseBody> generateBatch(@RequestBody List<Long> ids) {
+        Span span = tracer.startSpan("codegen.batch").attr("ids", ids == null ? 0 : ids.size());
+        CodegenBatchService.Batch prepared;
+        try (Span s = span.child("spec.load")) {
+            prepared = batch.prepare(ids);
+            s.attr("found", prepared.rows().size());
+        } catch (RuntimeException e) {
+            span.error(e).end();
+            throw e;
+        }
+        StreamingResponseBody body = out -> stream(span, () -> batch.write(prepared, out));
 
-        Resource resource = new FileSystemResource(zipFile);
+        return ResponseEntity.ok()
+                .header("Content-Disposition", "attachment; filename=healthgen-batch.zip")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    // GET /api/codegen/{id}/delta?from={prevId} -> ZIP solo con lo que cambió respecto a otra versión
+    // Incluye ".healthgen-delta.json" con archivos añadidos/modificados/eliminados.
+    @GetMapping("/{id}/delta")
+    public ResponseEntity<StreamingResponseBody> generateDelta(@PathVariable Long id, @RequestParam Long from) throws Exception {
+        Span span = tracer.startSpan("codegen.delta").attr("spec.id", id).attr("from", from);
+        ModelSpecEntity entity;
+        ModelSpec current;
+        ModelSpec previous;
+        try {
+            entity = load(span, id);
+            current = parse(span, entity);
+            previous = parse(span, load(span, from));
+            validate(span, current);
+        } catch (Exception e) {
+            span.error(e).end();
+            throw e;
+        }
+
+        StreamingResponseBody body = out -> stream(span, () -> {
+            ZipStreamSink zip = codegen.zipSink(out);
+            try {
+                Map<String, Object> delta = codegen.writeDelta(previous, current, zip);
+                delta.put("from", from);
+                delta.put("to", id);
+                zip.write(DELTA_MANIFEST, om.writerWithDefaultPrettyPrinter().writeValueAsString(delta));
+                zip.finish();
+            } finally {
+                zip.release();
+            }
+        });
 
         return ResponseEntity.ok()
-                .header("Content-Disposition", "attachment; filename=" + spec.getName() + ".zip")
-                .contentLength(zipFile.toFile().length())
+                .header("Content-Disposition", "attachment; filename=" + entity.getName() + "-delta.zip")
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
+                .body(body);
+    }
+
+    // GET /api/codegen/{id}/delta/files?from={prevId} -> solo el listado del parche (sin ZIP)
+    // Mismos pasos y errores que /delta (404 si falta una versión, 422 si la nueva es inválida).
+    // Traza "codegen.delta.files": spec.load, spec.parse, codegen.validate y codegen.diff.
+    @GetMapping("/{id}/delta/files")
+    public Map<String, Object> deltaFiles(@PathVariable Long id, @RequestParam Long from) throws Exception {
+        Span span = tracer.startSpan("codegen.delta.files").attr("spec.id", id).attr("from", from);
+        try {
+            ModelSpec current = parse(span, load(span, id));
+            ModelSpec previous = parse(span, load(span, from));
+            validate(span, current);
+            Map<String, Object> delta;
+            try (Span s = span.child("codegen.diff")) {
+                delta = codegen.writeDelta(previous, current, (path, content) -> { });
+                s.attr("added", ((List<?>) delta.get("added")).size())
+                        .attr("modified", ((List<?>) delta.get("modified")).size())
+                        .attr("removed", ((List<?>) delta.get("removed")).size());
+            }
+            delta.put("from", from);
+            delta.put("to", id);
+            return delta;
+        } catch (Exception e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    // GET /api/codegen/cache/stats -> aciertos/fallos/desalojos de la caché de artefactos
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return cache.stats();
+    }
+
+    // ===================== Spans =====================
+    private ModelSpecEntity load(Span parent, Long id) {
+        try (Span s = parent.child("spec.load").attr("spec.id", id)) {
+            return specs.find(id);
+        }
+    }
+
+    private ModelSpec parse(Span parent, ModelSpecEntity entity) throws IOException {
+        try (Span s = parent.child("spec.parse")) {
+            ModelSpec spec = specs.compile(entity);
+            s.attr("entities", spec.entities().size()).attr("relations", spec.relations().size());
+            return spec;
+        }
+    }
+
+    private void validate(Span parent, ModelSpec spec) {
+        try (Span s = parent.child("codegen.validate")) {
+            codegen.requireValid(spec);
+        }
+    }
+
+    private interface Body { void write() throws IOException; }
+
+    // el stream corre en otro hilo: la traza se cierra cuando termina (o falla) la escritura
+    private static void stream(Span span, Body body) throws IOException {
+        try (Span s = span.child("codegen.write")) {
+            body.write();
+        } catch (IOException | RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
     }
 }
@@ -3,29 +3,31 @@ package com.jezabel.healthgen.controller;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jezabel.healthgen.domain.ModelSpecEntity;
-import com.jezabel.healthgen.repository.ModelSpecRepository;
+import com.jezabel.healthgen.service.ModelSpecService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.Instant;
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
 public class GenerateController {
 
-    private final ModelSpecRepository repo;
+    private final ModelSpecService specs;
     private final ObjectMapper objectMapper;
 
     // Constructor manual (sin Lombok)
-    public GenerateController(ModelSpecRepository repo, ObjectMapper objectMapper) {
-        this.repo = repo;
+    public GenerateController(ModelSpecService specs, ObjectMapper objectMapper) {
+        this.specs = specs;
         this.objectMapper = objectMapper;
     }
 
-    // POST /api/generate -> guarda el JSON del modelo
+    // POST /api/generate -> guarda el JSON del modelo como nueva versión de su nombre
+    // Si el contenido es idéntico a una versión ya guardada, devuelve esa (status UNCHANGED).
     @PostMapping("/generate")
-    public ResponseEntity<Map<String, Object>> saveSpec(@RequestBody Map<String, Object> spec) {
+    public ResponseEntity<Map<String, Object>> saveSpec(@RequestBody Map<String, Object> spec) throws IOException {
         String name = (String) spec.getOrDefault("name", "UnnamedModel");
         String version = (String) spec.getOrDefault("version", "0.0.1");
         String json;
@@ -38,14 +40,16 @@ public class GenerateController {
             ));
         }
 
-        ModelSpecEntity entity = new ModelSpecEntity(null, name, version, json, Instant.now());
-        entity = repo.save(entity);
-
-        return ResponseEntity.ok(Map.of(
-                "id", entity.getId(),
-                "name", entity.getName(),
-                "version", entity.getVersion(),
-                "status", "SAVED"
-        ));
+        ModelSpecService.Saved saved = specs.save(name, version, json);
+        ModelSpecEntity entity = saved.entity();
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("id", entity.getId());
+        out.put("name", entity.getName());
+        out.put("version", entity.getVersion());
+        out.put("revision", entity.getRevision());
+        out.put("storage", entity.isDelta() ? "delta" : "snapshot");
+        out.put("status", saved.duplicate() ? "UNCHANGED" : "SAVED");
+        return ResponseEntity.ok(out);
     }
 }
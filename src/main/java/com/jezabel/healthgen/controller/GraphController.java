@@ -0,0 +1,43 @@
+package com.jezabel.healthgen.controller;
+
+import com.jezabel.healthgen.collab.DocIds;
+import com.jezabel.healthgen.collab.GraphStore;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/graph")
+public class GraphController {
+
+    private final GraphStore store;
+
+    public GraphController(GraphStore store) {
+        this.store = store;
+    }
+
+    // GET /api/graph/{docId} -> celdas actuales + seq (para quien se une tarde)
+    @GetMapping("/{docId}")
+    public Map<String, Object> snapshot(@PathVariable String docId) {
+        return store.snapshot(DocIds.require(docId));
+    }
+
+    // GET /api/graph/{docId}/patches?since=N -> lo que se perdió al reconectar (404 si hay que pedir snapshot)
+    @GetMapping("/{docId}/patches")
+    public Map<String, Object> since(@PathVariable String docId, @RequestParam long since) {
+        return store.since(DocIds.require(docId), since);
+    }
+
+    // GET /api/graph/{docId}/patches.bin?since=N -> las tramas binarias guardadas, tal cual (longitud + trama)
+    @GetMapping(value = "/{docId}/patches.bin", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] sinceBinary(@PathVariable String docId, @RequestParam long since) {
+        return store.sinceBinary(DocIds.require(docId), since);
+    }
+
+    // GET /api/graph/stats -> documentos vivos y patches recibidos vs difundidos
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return store.stats();
+    }
+}
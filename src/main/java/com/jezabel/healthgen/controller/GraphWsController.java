@@ -1,17 +1,48 @@
 package com.jezabel.healthgen.controller;
 
+import com.jezabel.healthgen.collab.DocIds;
+import com.jezabel.healthgen.collab.GraphStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.messaging.handler.annotation.*;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 @Controller
 public class GraphWsController {
-    private final SimpMessagingTemplate bus;
-    public GraphWsController(SimpMessagingTemplate bus){ this.bus = bus; }
+    private final GraphStore store;
+    private final MeterRegistry metrics;
+    private final DistributionSummary jsonBytes;
+    private final DistributionSummary binBytes;
 
-    // Recibe un "patch" del grafo y lo reenvía al topic del documento
+    public GraphWsController(GraphStore store, MeterRegistry metrics){
+        this.store = store;
+        this.metrics = metrics;
+        this.jsonBytes = DistributionSummary.builder("healthgen.graph.patch.size").baseUnit("bytes").tag("format", "json").register(metrics);
+        this.binBytes = DistributionSummary.builder("healthgen.graph.patch.size").baseUnit("bytes").tag("format", "bin").register(metrics);
+    }
+
+    // Recibe un "patch" (o un array de patches) del grafo; GraphStore lo funde con los de la
+    // ventana actual y difunde el lote numerado en /topic/graph.{docId}
     @MessageMapping("/graph.update.{docId}")
     public void update(@DestinationVariable String docId, @Payload String patchJson) {
-        bus.convertAndSend("/topic/graph."+docId, patchJson);
+        DocIds.require(docId);
+        received(docId, "json");
+        jsonBytes.record(patchJson.length());
+        store.submit(docId, patchJson);
+    }
+
+    // Igual, en formato binario (PatchCodec); la difusión va a /topic/graph.{docId}.bin
+    @MessageMapping("/graph.bin.{docId}")
+    public void updateBinary(@DestinationVariable String docId, @Payload byte[] frame) {
+        DocIds.require(docId);
+        received(docId, "bin");
+        binBytes.record(frame.length);
+        store.submitBinary(docId, frame);
+    }
+
+    // Mensajes por documento (rate() en Prometheus = patches/s); el número de docs etiquetados lo acota GraphConfig
+    private void received(String docId, String format) {
+        Counter.builder("healthgen.graph.patches").tag("doc", docId).tag("format", format).register(metrics).increment();
     }
 }
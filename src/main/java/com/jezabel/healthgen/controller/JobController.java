@@ -0,0 +1,112 @@
+package com.jezabel.healthgen.controller;
+
+import com.jezabel.healthgen.domain.ModelSpecEntity;
+import com.jezabel.healthgen.job.Job;
+import com.jezabel.healthgen.job.JobService;
+import com.jezabel.healthgen.service.AiDocService;
+import com.jezabel.healthgen.service.CodegenCache;
+import com.jezabel.healthgen.service.ModelSpecService;
+import com.jezabel.healthgen.spec.ModelSpec;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+/**
+ * Versión asíncrona de /api/codegen/{id}/zip y /api/ai/docs.
+ * POST devuelve 202 con el jobId; el avance llega por STOMP en /topic/jobs.{jobId}
+ * y el resultado se baja con GET /api/jobs/{jobId}/artifact.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final JobService jobs;
+    private final ModelSpecService specs;
+    private final CodegenCache cache;
+    private final AiDocService docs;
+
+    public JobController(JobService jobs, ModelSpecService specs, CodegenCache cache, AiDocService docs) {
+        this.jobs = jobs;
+        this.specs = specs;
+        this.cache = cache;
+        this.docs = docs;
+    }
+
+    // POST /api/jobs/codegen/{id} -> ZIP del proyecto generado
+    @PostMapping("/codegen/{id}")
+    public ResponseEntity<Map<String, Object>> codegen(@PathVariable Long id) {
+        ModelSpecEntity entity = specs.find(id); // 404 inmediato si no existe
+        Job job = jobs.submit("codegen", progress -> {
+            ModelSpec spec = specs.compile(entity);
+            progress.onProgress("parsed", spec.entities().size(), spec.entities().size());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cache.writeZip(spec, out, progress);
+            return new Job.Artifact(out.toByteArray(), "application/zip", entity.getName() + ".zip");
+        });
+        return accepted(job);
+    }
+
+    // POST /api/jobs/docs -> PDF de documentación. Body igual que /api/ai/docs: { "id": 123 } o { "spec": {...} }
+    @PostMapping("/docs")
+    public ResponseEntity<Map<String, Object>> docs(@RequestBody Map<String, Object> body) throws Exception {
+        String filename = String.valueOf(body.getOrDefault("filename", "documentacion.pdf"));
+        ModelSpecEntity entity;
+        Map<String, Object> rawSpec;
+        if (body.containsKey("id")) {
+            entity = specs.find(Long.valueOf(String.valueOf(body.get("id"))));
+            rawSpec = null;
+        } else if (body.get("spec") instanceof Map<?, ?>) {
+            entity = null;
+            @SuppressWarnings("unchecked") Map<String, Object> s = (Map<String, Object>) body.get("spec");
+            rawSpec = s;
+        } else {
+            return ResponseEntity.badRequest().body(Map.of("error", "Se requiere 'id' o 'spec'"));
+        }
+
+        Job job = jobs.submit("docs", progress -> {
+            ModelSpec spec = entity != null ? specs.compile(entity) : ModelSpec.fromMap(rawSpec);
+            progress.onProgress("parsed", spec.entities().size(), spec.entities().size());
+            byte[] pdf = docs.generatePdf(spec, progress);
+            return new Job.Artifact(pdf, MediaType.APPLICATION_PDF_VALUE, filename);
+        });
+        return accepted(job);
+    }
+
+    // GET /api/jobs/{jobId} -> estado y avance
+    @GetMapping("/{jobId}")
+    public Map<String, Object> status(@PathVariable String jobId) {
+        return jobs.get(jobId).toMap();
+    }
+
+    // GET /api/jobs/{jobId}/artifact -> resultado (409 mientras no esté listo)
+    @GetMapping("/{jobId}/artifact")
+    public ResponseEntity<?> artifact(@PathVariable String jobId) {
+        Job job = jobs.get(jobId);
+        Job.Artifact a = job.getArtifact();
+        if (a == null) return ResponseEntity.status(HttpStatus.CONFLICT).body(job.toMap());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + a.filename())
+                .contentType(MediaType.parseMediaType(a.contentType()))
+                .contentLength(a.data().length)
+                .body(a.data());
+    }
+
+    // GET /api/jobs/stats -> ocupación del pool y de la cola
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return jobs.stats();
+    }
+
+    private static ResponseEntity<Map<String, Object>> accepted(Job job) {
+        Map<String, Object> out = job.toMap();
+        out.put("topic", JobService.topic(job.getId()));
+        out.put("statusUrl", "/api/jobs/" + job.getId());
+        out.put("artifactUrl", "/api/jobs/" + job.getId() + "/artifact");
+        return ResponseEntity.accepted().body(out);
+    }
+}
@@ -0,0 +1,77 @@
+package com.jezabel.healthgen.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.jezabel.healthgen.domain.ModelSpecEntity;
+import com.jezabel.healthgen.repository.ModelSpecRepository;
+import com.jezabel.healthgen.service.ModelSpecService;
+import com.jezabel.healthgen.spec.SpecValidator;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/specs")
+public class SpecController {
+
+    private final ModelSpecService specs;
+
+    public SpecController(ModelSpecService specs) {
+        this.specs = specs;
+    }
+
+    // GET /api/specs?q=&from=yyyy-MM-dd&to=yyyy-MM-dd&page=&size=&sort= -> catálogo paginado
+    // (id, nombre, versión, fecha, nº de entidades y relaciones); no lee el JSON de ningún spec
+    @GetMapping
+    public Page<ModelSpecRepository.SummaryView> catalog(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @PageableDefault(size = 20, sort = "id", direction = Sort.Direction.DESC) Pageable pageable
+    ) {
+        return specs.catalog(q, from, to, pageable);
+    }
+
+    // GET /api/specs/{id} -> JSON completo del spec (reconstruido si esa versión se guardó como delta)
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String json(@PathVariable Long id) throws IOException {
+        return specs.json(specs.find(id));
+    }
+
+    // GET /api/specs/{id}/validate -> diagnósticos del spec guardado (errores que romperían el proyecto generado + avisos)
+    @GetMapping("/{id}/validate")
+    public Map<String, Object> validate(@PathVariable Long id) throws IOException {
+        return specs.load(id).validation().toMap();
+    }
+
+    // POST /api/specs/validate -> igual, para un spec sin guardar (body = JSON del diagrama)
+    @PostMapping(value = "/validate", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> validate(@RequestBody String json) throws IOException {
+        try {
+            return SpecValidator.validate(specs.parse(json)).toMap();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("JSON inválido: " + e.getOriginalMessage());
+        }
+    }
+
+    // GET /api/specs/{name}/versions -> historial de versiones (id, revision, fecha, snapshot/delta)
+    @GetMapping("/{name}/versions")
+    public List<Map<String, Object>> versions(@PathVariable String name) {
+        return specs.versions(name);
+    }
+
+    // GET /api/specs/{name}/versions/{revision} -> JSON completo de una versión concreta
+    @GetMapping(value = "/{name}/versions/{revision}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String version(@PathVariable String name, @PathVariable int revision) throws IOException {
+        ModelSpecEntity entity = specs.find(name, revision);
+        return specs.json(entity);
+    }
+}
@@ -0,0 +1,39 @@
+package com.jezabel.healthgen.controller;
+
+import com.jezabel.healthgen.exception.ResourceNotFoundException;
+import com.jezabel.healthgen.trace.TraceRecord;
+import com.jezabel.healthgen.trace.Tracer;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Visor local de trazas: las últimas peticiones trazadas (codegen, docs, diagramas, llamadas a Gemini)
+ * y, para cada una, su árbol de spans con desfase y duración en ms.
+ */
+@RestController
+@RequestMapping("/api/traces")
+public class TraceController {
+
+    private final Tracer tracer;
+
+    public TraceController(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    // GET /api/traces?limit=50 -> resumen de las trazas más recientes (y estado del muestreo/exportación)
+    @GetMapping
+    public Map<String, Object> recent(@RequestParam(defaultValue = "50") int limit) {
+        Map<String, Object> out = tracer.stats();
+        out.put("traces", tracer.recent(limit).stream().map(TraceRecord::summary).toList());
+        return out;
+    }
+
+    // GET /api/traces/{traceId} -> árbol de spans de una traza
+    @GetMapping("/{traceId}")
+    public Map<String, Object> trace(@PathVariable String traceId) {
+        return tracer.find(traceId)
+                .map(TraceRecord::toMap)
+                .orElseThrow(() -> new ResourceNotFoundException("Traza no encontrada (o ya descartada): " + traceId));
+    }
+}
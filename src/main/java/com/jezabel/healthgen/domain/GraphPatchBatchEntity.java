@@ -0,0 +1,55 @@
+package com.jezabel.healthgen.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/** Patches [fromSeq, toSeq] de un diagrama, tal como se escribieron en un flush (array JSON). */
+@Entity
+@Table(name = "graph_patch_batch", indexes = @Index(name = "ix_graph_patch_doc_seq", columnList = "docId,toSeq"))
+public class GraphPatchBatchEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 191)
+    private String docId;
+
+    private long fromSeq;
+    private long toSeq;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String patches;
+
+    private Instant createdAt;
+
+    public GraphPatchBatchEntity() {
+    }
+
+    public GraphPatchBatchEntity(String docId, long fromSeq, long toSeq, String patches, Instant createdAt) {
+        this.docId = docId;
+        this.fromSeq = fromSeq;
+        this.toSeq = toSeq;
+        this.patches = patches;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getDocId() { return docId; }
+    public void setDocId(String docId) { this.docId = docId; }
+
+    public long getFromSeq() { return fromSeq; }
+    public void setFromSeq(long fromSeq) { this.fromSeq = fromSeq; }
+
+    public long getToSeq() { return toSeq; }
+    public void setToSeq(long toSeq) { this.toSeq = toSeq; }
+
+    public String getPatches() { return patches; }
+    public void setPatches(String patches) { this.patches = patches; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
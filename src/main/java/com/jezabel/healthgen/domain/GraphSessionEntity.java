@@ -0,0 +1,44 @@
+package com.jezabel.healthgen.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/** Último snapshot persistido de un diagrama colaborativo (celdas en el seq indicado). */
+@Entity
+@Table(name = "graph_session")
+public class GraphSessionEntity {
+
+    @Id
+    @Column(length = 191)
+    private String docId;
+
+    private long seq;  // los patches con seq <= este ya están dentro del snapshot
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String snapshot;  // {"cells":[...]}
+
+    private Instant updatedAt;
+
+    public GraphSessionEntity() {
+    }
+
+    public GraphSessionEntity(String docId, long seq, String snapshot, Instant updatedAt) {
+        this.docId = docId;
+        this.seq = seq;
+        this.snapshot = snapshot;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getDocId() { return docId; }
+    public void setDocId(String docId) { this.docId = docId; }
+
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    public String getSnapshot() { return snapshot; }
+    public void setSnapshot(String snapshot) { this.snapshot = snapshot; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
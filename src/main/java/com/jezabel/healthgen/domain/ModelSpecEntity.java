@@ -1,10 +1,26 @@
 package com.jezabel.healthgen.domain;
 
+import com.jezabel.healthgen.spec.CompressedJson;
 import jakarta.persistence.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Arrays;
 
 @Entity
-@Table(name = "model_spec")
+@Table(name = "model_spec", indexes = {
+        @Index(name = "ix_model_spec_name", columnList = "name,id"),
+        @Index(name = "ix_model_spec_hash", columnList = "contentHash"),
+        @Index(name = "ix_model_spec_created", columnList = "createdAt")
+}, uniqueConstraints = {
+        // varios nodos guardando a la vez: ni dos revisiones iguales ni el mismo contenido dos veces
+        @UniqueConstraint(name = "uk_model_spec_revision", columnNames = {"name", "revision"}),
+        @UniqueConstraint(name = "uk_model_spec_content", columnNames = {"name", "contentHash"})
+})
 public class ModelSpecEntity {
 
     @Id
@@ -15,11 +31,33 @@ public class ModelSpecEntity {
     private String version;
 
     @Lob
-    @Column(columnDefinition = "LONGTEXT")
-    private String json;  // guardamos el JSON completo
+    @Column(name = "json_z", columnDefinition = "LONGBLOB")
+    private byte[] jsonData;  // JSON completo (snapshot) en formato CompressedJson; null si la versión es un delta
+
+    @Lob
+    @Column(name = "json", columnDefinition = "LONGTEXT")
+    private String legacyJson;  // formato anterior (texto plano); se migra a jsonData al arrancar
+
+    @Transient
+    private String jsonText;  // JSON ya descomprimido en esta instancia
 
     private Instant createdAt;
 
+    // ===== Versionado (por nombre) =====
+    private Integer revision;      // 1, 2, 3... dentro del mismo nombre; null en filas antiguas
+    @Column(length = 64)
+    private String contentHash;    // SHA-256 del JSON canónico: mismo contenido ⇒ misma fila
+    private Long baseId;           // versión sobre la que se aplica el delta
+    private Integer depth;         // deltas encadenados desde el último snapshot (0 = snapshot)
+
+    @Lob
+    @Column(columnDefinition = "LONGBLOB")
+    private byte[] delta;          // JsonDelta comprimido (DEFLATE)
+
+    // ===== Resumen para el catálogo (se calcula al guardar; el listado no lee json) =====
+    private Integer entityCount;   // null en filas antiguas hasta que pasa el backfill
+    private Integer relationCount;
+
     public ModelSpecEntity() {
     }
 
@@ -27,7 +65,8 @@ public class ModelSpecEntity {
         this.id = id;
         this.name = name;
         this.version = version;
-        this.json = json;
+        this.jsonText = json;
+        this.jsonData = json == null ? null : CompressedJson.encode(json);
         this.createdAt = createdAt;
     }
 
@@ -41,9 +80,69 @@ public class ModelSpecEntity {
     public String getVersion() { return version; }
     public void setVersion(String version) { this.version = version; }
 
-    public String getJson() { return json; }
-    public void setJson(String json) { this.json = json; }
+    /** JSON completo (descomprimido la primera vez); null si la versión es un delta. */
+    public String getJson() {
+        if (jsonText == null && jsonData != null) {
+            try {
+                jsonText = CompressedJson.decode(jsonData);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Spec " + id + " ilegible", e);
+            }
+        }
+        return jsonText != null ? jsonText : legacyJson;
+    }
+
+    public void setJson(String json) {
+        this.jsonText = json;
+        this.jsonData = json == null ? null : CompressedJson.encode(json);
+        this.legacyJson = null;
+    }
+
+    /** El JSON como stream, para parsear sin crear el String completo; null si la versión es un delta. */
+    public InputStream openJson() throws IOException {
+        if (jsonText != null) return new ByteArrayInputStream(jsonText.getBytes(StandardCharsets.UTF_8));
+        if (jsonData != null) return CompressedJson.open(jsonData);
+        if (legacyJson != null) return new ByteArrayInputStream(legacyJson.getBytes(StandardCharsets.UTF_8));
+        return null;
+    }
+
+    public byte[] getJsonData() { return jsonData; }
+
+    /** true si la fila sigue en el formato de texto plano. */
+    public boolean hasLegacyJson() { return legacyJson != null; }
+
+    /** Huella del contenido sin descomprimir nada (para invalidar cachés). */
+    public String contentStamp() {
+        if (contentHash != null) return contentHash;
+        if (jsonData != null) return "z" + jsonData.length + ":" + Arrays.hashCode(jsonData);
+        if (legacyJson != null) return legacyJson.length() + ":" + legacyJson.hashCode();
+        return "d" + Arrays.hashCode(delta);
+    }
 
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Integer getRevision() { return revision; }
+    public void setRevision(Integer revision) { this.revision = revision; }
+
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
+    public Long getBaseId() { return baseId; }
+    public void setBaseId(Long baseId) { this.baseId = baseId; }
+
+    public Integer getDepth() { return depth; }
+    public void setDepth(Integer depth) { this.depth = depth; }
+
+    public byte[] getDelta() { return delta; }
+    public void setDelta(byte[] delta) { this.delta = delta; }
+
+    public Integer getEntityCount() { return entityCount; }
+    public void setEntityCount(Integer entityCount) { this.entityCount = entityCount; }
+
+    public Integer getRelationCount() { return relationCount; }
+    public void setRelationCount(Integer relationCount) { this.relationCount = relationCount; }
+
+    /** true si la fila guarda un delta y hay que reconstruir el JSON desde su base. */
+    public boolean isDelta() { return jsonData == null && legacyJson == null && delta != null; }
 }
@@ -18,6 +18,20 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
     }
 
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<?> handleBusy(ServiceBusyException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").body(body);
+    }
+
+    @ExceptionHandler(InvalidSpecException.class)
+    public ResponseEntity<?> handleInvalidSpec(InvalidSpecException ex) {
+        Map<String, Object> body = new HashMap<>(ex.getReport().toMap());
+        body.put("error", ex.getMessage());
+        return ResponseEntity.unprocessableEntity().body(body);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<?> handleValidation(MethodArgumentNotValidException ex) {
         Map<String, Object> errors = new HashMap<>();
@@ -0,0 +1,23 @@
+package com.jezabel.healthgen.exception;
+
+import com.jezabel.healthgen.spec.SpecValidator;
+
+/** El spec tiene errores que harían fallar el proyecto generado; lleva los diagnósticos completos. */
+public class InvalidSpecException extends RuntimeException {
+
+    private final transient SpecValidator.Report report;
+
+    public InvalidSpecException(SpecValidator.Report report) {
+        super("Spec inválido: " + report.errors() + " error(es); primero: " + firstError(report));
+        this.report = report;
+    }
+
+    public SpecValidator.Report getReport() { return report; }
+
+    private static String firstError(SpecValidator.Report report) {
+        return report.diagnostics().stream()
+                .filter(d -> d.severity() == SpecValidator.Severity.ERROR)
+                .map(d -> d.path() + ": " + d.message())
+                .findFirst().orElse("-");
+    }
+}
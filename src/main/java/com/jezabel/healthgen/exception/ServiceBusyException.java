@@ -0,0 +1,6 @@
+package com.jezabel.healthgen.exception;
+
+/** El servicio no admite más trabajo por ahora (cola llena): el cliente debe reintentar. */
+public class ServiceBusyException extends RuntimeException {
+    public ServiceBusyException(String msg) { super(msg); }
+}
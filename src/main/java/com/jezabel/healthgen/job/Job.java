@@ -0,0 +1,74 @@
+package com.jezabel.healthgen.job;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Estado de un trabajo asíncrono. Lo escribe el hilo del pool y lo leen los controllers. */
+public class Job {
+
+    /** Resultado descargable de un trabajo terminado. */
+    public record Artifact(byte[] data, String contentType, String filename) { }
+
+    private final String id;
+    private final String kind;
+    private final long createdAt = System.currentTimeMillis();
+
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile String stage = "queued";
+    private volatile int done;
+    private volatile int total;
+    private volatile String error;
+    private volatile Artifact artifact;
+    private volatile long finishedAt;
+
+    Job(String id, String kind) {
+        this.id = id;
+        this.kind = kind;
+    }
+
+    public String getId() { return id; }
+    public String getKind() { return kind; }
+    public JobStatus getStatus() { return status; }
+    public Artifact getArtifact() { return artifact; }
+    public long getFinishedAt() { return finishedAt; }
+
+    void progress(String stage, int done, int total) {
+        this.stage = stage;
+        this.done = done;
+        this.total = total;
+    }
+
+    void running() { status = JobStatus.RUNNING; stage = "started"; }
+
+    void succeeded(Artifact artifact) {
+        this.artifact = artifact;
+        this.stage = "done";
+        this.finishedAt = System.currentTimeMillis();
+        this.status = JobStatus.DONE;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        this.finishedAt = System.currentTimeMillis();
+        this.status = JobStatus.FAILED;
+    }
+
+    /** Vista JSON: es lo que devuelve GET /api/jobs/{id} y lo que se publica en el topic. */
+    public Map<String, Object> toMap() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("jobId", id);
+        out.put("kind", kind);
+        out.put("status", status);
+        out.put("stage", stage);
+        out.put("done", done);
+        out.put("total", total);
+        out.put("createdAt", createdAt);
+        if (error != null) out.put("error", error);
+        Artifact a = artifact;
+        if (a != null) {
+            out.put("filename", a.filename());
+            out.put("sizeBytes", a.data().length);
+        }
+        return out;
+    }
+}
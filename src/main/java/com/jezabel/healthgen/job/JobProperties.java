@@ -0,0 +1,23 @@
+package com.jezabel.healthgen.job;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "jobs")
+public class JobProperties {
+    private int threads = 2;                 // trabajos ejecutándose a la vez
+    private int queueCapacity = 16;          // en espera; si se llena, 503
+    private long retentionMs = 30 * 60_000L; // cuánto se guarda un resultado ya terminado
+    private int maxFinished = 100;           // tope de trabajos terminados retenidos en memoria
+    private long progressIntervalMs = 250;   // mínimo entre avisos "render" por WebSocket
+
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+    public long getRetentionMs() { return retentionMs; }
+    public void setRetentionMs(long retentionMs) { this.retentionMs = retentionMs; }
+    public int getMaxFinished() { return maxFinished; }
+    public void setMaxFinished(int maxFinished) { this.maxFinished = maxFinished; }
+    public long getProgressIntervalMs() { return progressIntervalMs; }
+    public void setProgressIntervalMs(long progressIntervalMs) { this.progressIntervalMs = progressIntervalMs; }
+}
@@ -0,0 +1,148 @@
+package com.jezabel.healthgen.job;
+
+import com.jezabel.healthgen.codegen.ProgressListener;
+import com.jezabel.healthgen.exception.ResourceNotFoundException;
+import com.jezabel.healthgen.exception.ServiceBusyException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trabajos largos (ZIP, PDF) fuera del hilo de la petición.
+ * Pool fijo con cola acotada: si está llena se rechaza con 503 en vez de acumular.
+ * El avance se publica en {@code /topic/jobs.{jobId}}; el resultado se descarga aparte y
+ * se conserva {@code jobs.retention-ms} (o hasta que haya más de {@code jobs.max-finished}).
+ */
+@Service
+public class JobService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+
+    /** Trabajo a ejecutar: recibe el listener de avance y devuelve el artefacto final. */
+    @FunctionalInterface
+    public interface Task {
+        Job.Artifact run(ProgressListener progress) throws Exception;
+    }
+
+    private final SimpMessagingTemplate bus;
+    private final JobProperties props;
+    private final ThreadPoolExecutor pool;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public JobService(SimpMessagingTemplate bus, JobProperties props) {
+        this.bus = bus;
+        this.props = props;
+        AtomicInteger seq = new AtomicInteger();
+        int threads = Math.max(1, props.getThreads());
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, props.getQueueCapacity())),
+                r -> {
+                    Thread t = new Thread(r, "job-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public Job submit(String kind, Task task) {
+        purgeFinished();
+        Job job = new Job(UUID.randomUUID().toString(), kind);
+        jobs.put(job.getId(), job);
+        try {
+            pool.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new ServiceBusyException("Demasiados trabajos en cola, reintenta en unos segundos");
+        }
+        // el estado QUEUED viaja en la respuesta del POST: nadie puede estar suscrito todavía
+        return job;
+    }
+
+    public Job get(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) throw new ResourceNotFoundException("Trabajo no encontrado: " + jobId);
+        return job;
+    }
+
+    public static String topic(String jobId) {
+        return "/topic/jobs." + jobId;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("active", pool.getActiveCount());
+        out.put("queued", pool.getQueue().size());
+        out.put("queueCapacity", props.getQueueCapacity());
+        out.put("retained", jobs.size());
+        out.put("completed", pool.getCompletedTaskCount());
+        return out;
+    }
+
+    // ===================== Ejecución =====================
+    private void run(Job job, Task task) {
+        job.running();
+        publish(job);
+        try {
+            Job.Artifact artifact = task.run(throttled(job));
+            job.succeeded(artifact);
+        } catch (Exception e) {
+            log.warn("Trabajo {} ({}) falló: {}", job.getId(), job.getKind(), e.toString());
+            job.failed(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        }
+        publish(job);
+    }
+
+    /**
+     * Las etapas nuevas se publican siempre; las repeticiones de la misma etapa (N/M entidades)
+     * como mucho cada {@code progress-interval-ms}, y siempre la última (N == M).
+     */
+    private ProgressListener throttled(Job job) {
+        long interval = TimeUnit.MILLISECONDS.toNanos(props.getProgressIntervalMs());
+        return new ProgressListener() {
+            private String lastStage;
+            private long lastSent;
+
+            @Override
+            public void onProgress(String stage, int done, int total) {
+                job.progress(stage, done, total);
+                long now = System.nanoTime();
+                if (stage.equals(lastStage) && done < total && now - lastSent < interval) return;
+                lastStage = stage;
+                lastSent = now;
+                publish(job);
+            }
+        };
+    }
+
+    private void publish(Job job) {
+        try {
+            bus.convertAndSend(topic(job.getId()), job.toMap());
+        } catch (RuntimeException e) {
+            // el avance es informativo: un fallo del broker no debe tumbar el trabajo
+            log.debug("No se pudo publicar el avance de {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private void purgeFinished() {
+        long cutoff = System.currentTimeMillis() - props.getRetentionMs();
+        jobs.values().removeIf(j -> j.getStatus().isFinished() && j.getFinishedAt() < cutoff);
+
+        List<Job> finished = new ArrayList<>();
+        for (Job j : jobs.values()) if (j.getStatus().isFinished()) finished.add(j);
+        int excess = finished.size() - props.getMaxFinished();
+        if (excess <= 0) return;
+        finished.sort(Comparator.comparingLong(Job::getFinishedAt));
+        for (int i = 0; i < excess; i++) jobs.remove(finished.get(i).getId());
+    }
+}
@@ -0,0 +1,7 @@
+package com.jezabel.healthgen.job;
+
+public enum JobStatus {
+    QUEUED, RUNNING, DONE, FAILED;
+
+    public boolean isFinished() { return this == DONE || this == FAILED; }
+}
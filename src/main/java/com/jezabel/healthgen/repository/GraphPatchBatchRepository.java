@@ -0,0 +1,19 @@
+package com.jezabel.healthgen.repository;
+
+import com.jezabel.healthgen.domain.GraphPatchBatchEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface GraphPatchBatchRepository extends JpaRepository<GraphPatchBatchEntity, Long> {
+
+    List<GraphPatchBatchEntity> findByDocIdAndToSeqGreaterThanOrderByFromSeqAsc(String docId, long seq);
+
+    // lotes ya cubiertos por el snapshot (borrado directo, sin cargar las filas)
+    @Modifying
+    @Query("delete from GraphPatchBatchEntity b where b.docId = :docId and b.toSeq <= :seq")
+    int deleteCovered(@Param("docId") String docId, @Param("seq") long seq);
+}
@@ -0,0 +1,7 @@
+package com.jezabel.healthgen.repository;
+
+import com.jezabel.healthgen.domain.GraphSessionEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface GraphSessionRepository extends JpaRepository<GraphSessionEntity, String> {
+}
@@ -1,7 +1,69 @@
 package com.jezabel.healthgen.repository;
 
 import com.jezabel.healthgen.domain.ModelSpecEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 
 public interface ModelSpecRepository extends JpaRepository<ModelSpecEntity, Long> {
+
+    /** Solo metadatos de una versión: la consulta no lee json ni delta. */
+    interface VersionView {
+        Long getId();
+        Integer getRevision();
+        String getVersion();
+        Instant getCreatedAt();
+        Long getBaseId();
+        Integer getDepth();
+    }
+
+    /** Fila del catálogo: metadatos + conteos, sin json ni delta. */
+    interface SummaryView {
+        Long getId();
+        String getName();
+        String getVersion();
+        Integer getRevision();
+        Instant getCreatedAt();
+        Integer getEntityCount();
+        Integer getRelationCount();
+    }
+
+    Optional<ModelSpecEntity> findFirstByNameAndContentHash(String name, String contentHash);
+    Optional<ModelSpecEntity> findFirstByNameOrderByIdDesc(String name);
+    Optional<ModelSpecEntity> findFirstByNameAndRevision(String name, Integer revision);
+    long countByName(String name);
+
+    List<VersionView> findByNameOrderByIdAsc(String name);
+
+    // ===== Catálogo =====
+    // q ya viene en minúsculas y con comodines ("%texto%"); null = sin filtro
+    @Query(value = """
+            select s.id as id, s.name as name, s.version as version, s.revision as revision,
+                   s.createdAt as createdAt, s.entityCount as entityCount, s.relationCount as relationCount
+            from ModelSpecEntity s
+            where (:q is null or lower(s.name) like :q or lower(s.version) like :q)
+              and (:from is null or s.createdAt >= :from)
+              and (:to is null or s.createdAt < :to)
+            """,
+            countQuery = """
+            select count(s) from ModelSpecEntity s
+            where (:q is null or lower(s.name) like :q or lower(s.version) like :q)
+              and (:from is null or s.createdAt >= :from)
+              and (:to is null or s.createdAt < :to)
+            """)
+    Page<SummaryView> catalog(@Param("q") String q, @Param("from") Instant from, @Param("to") Instant to, Pageable pageable);
+
+    /** Filas sin resumen (anteriores al catálogo), de a un lote y en orden de id. */
+    @Query("select s.id from ModelSpecEntity s where s.entityCount is null and s.id > :after order by s.id")
+    List<Long> findIdsWithoutSummary(@Param("after") long after, Pageable pageable);
+
+    /** Filas aún en el formato de texto plano (columna json), de a un lote y en orden de id. */
+    @Query("select s.id from ModelSpecEntity s where s.legacyJson is not null and s.id > :after order by s.id")
+    List<Long> findIdsWithLegacyJson(@Param("after") long after, Pageable pageable);
 }
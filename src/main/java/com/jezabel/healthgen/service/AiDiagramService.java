@@ -3,9 +3,15 @@ package com.jezabel.healthgen.service;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jezabel.healthgen.ai.GeminiClient;
+import com.jezabel.healthgen.spec.AttrSpec;
+import com.jezabel.healthgen.spec.ModelSpec;
+import com.jezabel.healthgen.spec.SpecValidator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,13 +21,25 @@ public class AiDiagramService {
     private final GeminiClient gemini;
     private final ObjectMapper om;
 
-    public AiDiagramService(GeminiClient gemini, ObjectMapper om) {
+    // healthgen.ai.diagram.stage: llm (hasta tener la respuesta), extract (JSON de la respuesta), normalize
+    private final Timer llmTimer;
+    private final Timer extractTimer;
+    private final Timer normalizeTimer;
+
+    public AiDiagramService(GeminiClient gemini, ObjectMapper om, MeterRegistry metrics) {
         this.gemini = gemini;
         this.om = om;
+        this.llmTimer = stage(metrics, "llm");
+        this.extractTimer = stage(metrics, "extract");
+        this.normalizeTimer = stage(metrics, "normalize");
+    }
+
+    private static Timer stage(MeterRegistry metrics, String stage) {
+        return Timer.builder("healthgen.ai.diagram.stage").tag("stage", stage).register(metrics);
     }
 
-    /** Entrada: prompt libre del usuario. Salida: ModelSpec normalizado (Map). */
-    public Map<String, Object> generateModelSpecFromPrompt(String userPrompt) {
+    /** Entrada: prompt libre del usuario. Salida: ModelSpec normalizado (Map), sin bloquear el hilo llamador. */
+    public CompletableFuture<Map<String, Object>> generateModelSpecFromPrompt(String userPrompt) {
         String system = """
 Eres un generador de diagramas UML a JSON. 
 Devuelve SOLO JSON **válido** (sin backticks, sin comentarios), con este esquema:
@@ -59,12 +77,13 @@ Devuelve exclusivamente el JSON.
 """;
 
         String fullPrompt = system + "\n\nUsuario:\n" + userPrompt;
-        String raw = gemini.generateText(fullPrompt);       // texto de Gemini
-        String json = extractJson(raw);                     // remueve ``` o texto extra
-        Map<String,Object> spec = readMap(json);            // parse
-
-        Map<String,Object> normalized = normalizeSpec(spec, userPrompt);
-        return normalized;
+        Timer.Sample llm = Timer.start();
+        return gemini.generateTextAsync(fullPrompt, "diagram")
+                .whenComplete((raw, e) -> llm.stop(llmTimer))
+                .thenApply(raw -> {   // texto de Gemini
+                    Map<String,Object> spec = extractTimer.record(() -> readMap(extractJson(raw)));  // quita ``` o texto extra y parsea
+                    return normalizeTimer.record(() -> normalizeSpec(spec, userPrompt));
+                });
     }
 
     // ---------- Helpers ----------
@@ -76,7 +95,8 @@ Devuelve exclusivamente el JSON.
         }
     }
 
-    private String extractJson(String s) {
+    // package-private: lo miden los benchmarks (src/jmh)
+    String extractJson(String s) {
         if (s == null) return "{}";
         String t = s.trim();
         // quita fences ```json ... ```
@@ -96,20 +116,23 @@ Devuelve exclusivamente el JSON.
         return t;
     }
 
+    /** Limpia la salida del LLM y la compila al {@link ModelSpec} tipado; se devuelve en formato JSON del front. */
     @SuppressWarnings("unchecked")
-    private Map<String,Object> normalizeSpec(Map<String,Object> spec, String userPrompt) {
-        Map<String,Object> out = new LinkedHashMap<>();
+    Map<String,Object> normalizeSpec(Map<String,Object> spec, String userPrompt) {
+        ModelSpec.Builder b = ModelSpec.builder();
 
         String name = optStr(spec.get("name"));
         if (name.isBlank()) name = guessNameFromPrompt(userPrompt);
         String version = optStr(spec.get("version")); if (version.isBlank()) version = "0.0.1";
         String pkg = optStr(spec.get("packageBase")); if (pkg.isBlank()) pkg = "com.jezabel.healthgen";
+        b.name(name).version(version).packageBase(pkg);
 
         List<Map<String,Object>> entities = (List<Map<String,Object>>) spec.getOrDefault("entities", List.of());
         List<Map<String,Object>> relations = (List<Map<String,Object>>) spec.getOrDefault("relations", List.of());
 
-        // Normalizar entidades
-        Map<String, Map<String,Object>> entitiesByName = new LinkedHashMap<>();
+        // Normalizar entidades (clave en minúsculas para resolver los extremos de las relaciones)
+        Map<String, String> classByKey = new LinkedHashMap<>();
+        Map<String, List<AttrSpec>> attrsByKey = new LinkedHashMap<>();
         for (Map<String,Object> e : entities) {
             String rawName = optStr(e.get("name"));
             String className = toPascal(rawName.isBlank() ? "Entity" : rawName);
@@ -117,7 +140,7 @@ Devuelve exclusivamente el JSON.
 
             // attrs
             List<Map<String,Object>> attrs = (List<Map<String,Object>>) e.getOrDefault("attributes", new ArrayList<>());
-            List<Map<String,Object>> normAttrs = new ArrayList<>();
+            List<AttrSpec> normAttrs = new ArrayList<>();
             boolean hasPk = false;
             for (Map<String,Object> a : attrs) {
                 String an = toCamel(optStr(a.get("name")));
@@ -126,29 +149,25 @@ Devuelve exclusivamente el JSON.
                 boolean pk = Boolean.TRUE.equals(a.get("pk"));
                 String gen = optStr(a.get("generated"));
                 if (pk) hasPk = true;
-
-                Map<String,Object> na = new LinkedHashMap<>();
-                na.put("name", an);
-                na.put("type", type);
-                if (pk) na.put("pk", true);
-                if (!gen.isBlank()) na.put("generated", gen.toUpperCase(Locale.ROOT));
-                normAttrs.add(na);
+                normAttrs.add(b.attr(an, type, pk, gen.isBlank() ? null : gen.toUpperCase(Locale.ROOT)));
             }
             if (!hasPk) {
-                Map<String,Object> id = new LinkedHashMap<>();
-                id.put("name","id"); id.put("type","LONG"); id.put("pk",true); id.put("generated","IDENTITY");
-                normAttrs.add(0, id);
+                normAttrs.add(0, b.attr("id", "LONG", true, "IDENTITY"));
             }
 
-            Map<String,Object> ne = new LinkedHashMap<>();
-            ne.put("name", className);
-            ne.put("attributes", normAttrs);
-            entitiesByName.put(className.toLowerCase(Locale.ROOT), ne);
+            String key = className.toLowerCase(Locale.ROOT);
+            classByKey.put(key, className);
+            attrsByKey.put(key, normAttrs);
+        }
+        for (Map.Entry<String, String> e : classByKey.entrySet()) {
+            b.entity(e.getValue(), attrsByKey.get(e.getKey()));
         }
 
-        // Normalizar relaciones
-        List<Map<String,Object>> normRels = new ArrayList<>();
+        // Normalizar relaciones (se descartan las que apuntan a entidades inexistentes, con aviso)
+        List<SpecValidator.Diagnostic> diagnostics = new ArrayList<>();
+        int index = -1;
         for (Map<String,Object> r : relations) {
+            index++;
             String type = normalizeRelType(optStr(r.get("type")));
             if (type == null) continue;
 
@@ -156,29 +175,26 @@ Devuelve exclusivamente el JSON.
             String t = optStr(r.get("target"));
             if (s.isBlank() || t.isBlank()) continue;
 
-            String sKey = toPascal(s).toLowerCase(Locale.ROOT);
-            String tKey = toPascal(t).toLowerCase(Locale.ROOT);
-            if (!entitiesByName.containsKey(sKey) || !entitiesByName.containsKey(tKey)) continue;
-
-            String m0 = normalizeMult(optStr(r.get("multSource")));
-            String m1 = normalizeMult(optStr(r.get("multTarget")));
-
-            Map<String,Object> nr = new LinkedHashMap<>();
-            nr.put("type", type);
-            nr.put("source", ((Map<String,Object>)entitiesByName.get(sKey)).get("name"));
-            nr.put("target", ((Map<String,Object>)entitiesByName.get(tKey)).get("name"));
-            if (type.equals("association") || type.equals("aggregation") || type.equals("composition")) {
-                nr.put("multSource", m0);
-                nr.put("multTarget", m1);
+            String source = classByKey.get(toPascal(s).toLowerCase(Locale.ROOT));
+            String target = classByKey.get(toPascal(t).toLowerCase(Locale.ROOT));
+            if (source == null || target == null) {
+                diagnostics.add(new SpecValidator.Diagnostic(SpecValidator.Severity.WARNING, "UNKNOWN_ENTITY",
+                        "relations[" + index + "]", "Relación " + s + " → " + t + " descartada: "
+                        + (source == null ? s : t) + " no es una entidad del diagrama"));
+                continue;
             }
-            normRels.add(nr);
+
+            boolean withMults = type.equals("association") || type.equals("aggregation") || type.equals("composition");
+            b.relation(type, source, target,
+                    withMults ? normalizeMult(optStr(r.get("multSource"))) : null,
+                    withMults ? normalizeMult(optStr(r.get("multTarget"))) : null);
         }
 
-        out.put("name", name);
-        out.put("version", version);
-        out.put("packageBase", pkg);
-        out.put("entities", new ArrayList<>(entitiesByName.values()));
-        if (!normRels.isEmpty()) out.put("relations", normRels);
+        // lo que el generador no podría compilar se devuelve junto al spec, sin bloquear la respuesta
+        ModelSpec built = b.build();
+        Map<String,Object> out = built.toMap();
+        diagnostics.addAll(SpecValidator.validate(built).diagnostics());
+        if (!diagnostics.isEmpty()) out.put("diagnostics", diagnostics);
         return out;
     }
 
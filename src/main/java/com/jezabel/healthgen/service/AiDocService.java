@@ -1,83 +1,176 @@
 package com.jezabel.healthgen.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.ai.DocsProperties;
 import com.jezabel.healthgen.ai.GeminiClient;
-import com.jezabel.healthgen.domain.ModelSpecEntity;
-import com.jezabel.healthgen.repository.ModelSpecRepository;
+import com.jezabel.healthgen.codegen.ProgressListener;
+import com.jezabel.healthgen.exception.ServiceBusyException;
+import com.jezabel.healthgen.spec.AttrSpec;
+import com.jezabel.healthgen.spec.EntitySpec;
+import com.jezabel.healthgen.spec.ModelSpec;
+import com.jezabel.healthgen.spec.RelSpec;
+import com.jezabel.healthgen.trace.Span;
+import com.jezabel.healthgen.trace.Tracer;
 import com.vladsch.flexmark.html2md.converter.FlexmarkHtmlConverter;
 import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.util.ast.Node;
 import com.vladsch.flexmark.util.data.MutableDataSet;
 import com.vladsch.flexmark.html.HtmlRenderer;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Documentación PDF del proyecto generado: prompt → Gemini (Markdown) → HTML → PDF.
+ * Cada etapa se mide en {@code healthgen.ai.docs.stage} (prompt, llm, markdown, pdf) y, si la petición
+ * se traza, queda como span hijo del activo ({@code docs.files}, {@code docs.markdown}, {@code docs.pdf};
+ * la llamada a Gemini la traza el propio cliente).
+ * El render a PDF de la variante asíncrona corre en un pool propio ({@code docs.pdf-threads} hilos y
+ * {@code docs.pdf-queue-capacity} en espera; lleno → 503), nunca en el ForkJoinPool común.
+ */
 @Service
 public class AiDocService {
 
-    private final ModelSpecRepository specRepo;
+    private final ModelSpecService specs;
     private final CodegenService codegen;
     private final GeminiClient gemini;
-    private final ObjectMapper om;
+    private final Tracer tracer;
+    private final ThreadPoolExecutor pdfPool;
 
-    public AiDocService(ModelSpecRepository specRepo, CodegenService codegen, GeminiClient gemini, ObjectMapper om) {
-        this.specRepo = specRepo;
+    private final Timer promptTimer;
+    private final Timer llmTimer;
+    private final Timer markdownTimer;
+    private final Timer pdfTimer;
+
+    public AiDocService(ModelSpecService specs, CodegenService codegen, GeminiClient gemini, MeterRegistry metrics,
+                        Tracer tracer, DocsProperties props) {
+        this.specs = specs;
         this.codegen = codegen;
         this.gemini = gemini;
-        this.om = om;
+        this.tracer = tracer;
+        AtomicInteger seq = new AtomicInteger();
+        int threads = Math.max(1, props.getPdfThreads());
+        this.pdfPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, props.getPdfQueueCapacity())),
+                r -> {
+                    Thread t = new Thread(r, "docs-pdf-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, pool) -> {
+                    throw new ServiceBusyException("Demasiados PDF en curso, reintenta en unos segundos");
+                });
+        this.promptTimer = stage(metrics, "prompt");
+        this.llmTimer = stage(metrics, "llm");
+        this.markdownTimer = stage(metrics, "markdown");
+        this.pdfTimer = stage(metrics, "pdf");
+    }
+
+    private static Timer stage(MeterRegistry metrics, String stage) {
+        return Timer.builder("healthgen.ai.docs.stage").tag("stage", stage).register(metrics);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pdfPool.shutdownNow();
+    }
+
+    public CompletableFuture<byte[]> generatePdfFromId(Long id) throws Exception {
+        return generatePdfAsync(specs.load(id));
+    }
+
+    public CompletableFuture<byte[]> generatePdfFromSpec(Map<String,Object> spec) throws Exception {
+        return generatePdfAsync(ModelSpec.fromMap(spec));
+    }
+
+    /**
+     * Igual que {@link #generatePdf(ModelSpec)} sin retener el hilo llamador durante la llamada a Gemini.
+     * El render Markdown → PDF (CPU) se hace en el pool acotado de PDF, no en los hilos del cliente HTTP.
+     */
+    public CompletableFuture<byte[]> generatePdfAsync(ModelSpec spec) throws Exception {
+        Span parent = tracer.current();
+        List<String> files = files(parent, spec);
+        String prompt = promptTimer.record(() -> buildPrompt(spec, spec.name(), files));
+        Timer.Sample llm = Timer.start();
+        return gemini.generateTextAsync(prompt, "docs")
+                .whenComplete((md, e) -> llm.stop(llmTimer))
+                .thenApplyAsync(md -> renderPdf(md, parent), pdfPool);
     }
 
-    public byte[] generatePdfFromId(Long id) throws Exception {
-        ModelSpecEntity specEntity = specRepo.findById(id).orElseThrow();
-        Map<String, Object> spec = om.readValue(specEntity.getJson(), new TypeReference<>() {});
-        return generatePdfFromSpec(spec);
+    public byte[] generatePdf(ModelSpec spec) throws Exception {
+        return generatePdf(spec, ProgressListener.NONE);
     }
 
-    public byte[] generatePdfFromSpec(Map<String,Object> spec) throws Exception {
-        // 1) Ejecuta codegen solo para listar archivos (temporal)
-        ModelSpecEntity fake = new ModelSpecEntity(null,
-                String.valueOf(spec.getOrDefault("name","generated-app")),
-                String.valueOf(spec.getOrDefault("version","0.0.1")),
-                om.writeValueAsString(spec),
-                null);
-        Map<String,Object> gen = codegen.generateEntities(fake);
-        String artifactId = String.valueOf(gen.get("artifactId"));
-        @SuppressWarnings("unchecked")
-        List<String> files = (List<String>) gen.getOrDefault("files", List.of());
+    /** Etapas: "files" (listado del proyecto), "llm" (respuesta de Gemini), "pdf" (documento listo). */
+    public byte[] generatePdf(ModelSpec spec, ProgressListener progress) throws Exception {
+        // 1) Listado de archivos que generaría el proyecto (sin renderizar ni validar)
+        Span parent = tracer.current();
+        String artifactId = spec.name();
+        List<String> files = files(parent, spec);
+        progress.onProgress("files", files.size(), files.size());
 
         // 2) Construir prompt compacto (evita payload gigante)
-        String prompt = buildPrompt(spec, artifactId, files);
+        String prompt = promptTimer.record(() -> buildPrompt(spec, artifactId, files));
 
         // 3) Llamar Gemini → Markdown
-        String markdown = gemini.generateText(prompt);
-        if (markdown == null || markdown.isBlank()) markdown = "# Documentación\nNo se recibió contenido.";
-
-        // 4) Markdown → HTML
-        String html = mdToHtml(markdown);
+        Timer.Sample llm = Timer.start();
+        String markdown;
+        try {
+            markdown = gemini.generateText(prompt, "docs");
+        } finally {
+            llm.stop(llmTimer);
+        }
+        progress.onProgress("llm", 1, 1);
 
-        // 5) HTML → PDF
-        return htmlToPdf(html);
+        // 4) Markdown → HTML → PDF
+        byte[] pdf = renderPdf(markdown, parent);
+        progress.onProgress("pdf", 1, 1);
+        return pdf;
     }
 
-    private String buildPrompt(Map<String,Object> spec, String artifactId, List<String> files) {
-        String name = String.valueOf(spec.getOrDefault("name", "generated-app"));
-        String pkg  = String.valueOf(spec.getOrDefault("packageBase", "com.example.demo"));
+    /** Solo hacen falta las rutas: un spec aún incompleto (p.ej. sin PK) también se puede documentar. */
+    private List<String> files(Span parent, ModelSpec spec) {
+        try (Span s = parent.child("docs.files")) {
+            List<String> files = codegen.fileList(spec);
+            s.attr("files", files.size());
+            return files;
+        }
+    }
 
-        @SuppressWarnings("unchecked")
-        List<Map<String,Object>> entities = (List<Map<String,Object>>) spec.getOrDefault("entities", List.of());
-        @SuppressWarnings("unchecked")
-        List<Map<String,Object>> relations = (List<Map<String,Object>>) spec.getOrDefault("relations", List.of());
+    private byte[] renderPdf(String markdown, Span parent) {
+        if (markdown == null || markdown.isBlank()) markdown = "# Documentación\nNo se recibió contenido.";
+        String md = markdown;
+        try {
+            String html;
+            try (Span s = parent.child("docs.markdown").attr("markdown.chars", md.length())) {
+                html = markdownTimer.record(() -> mdToHtml(md));
+            }
+            try (Span s = parent.child("docs.pdf")) {
+                byte[] pdf = pdfTimer.recordCallable(() -> htmlToPdf(html));
+                s.attr("pdf.bytes", pdf.length);
+                return pdf;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo generar el PDF: " + e.getMessage(), e);
+        }
+    }
 
+    private String buildPrompt(ModelSpec spec, String artifactId, List<String> files) {
         StringBuilder sb = new StringBuilder();
         sb.append("Eres un asistente técnico. Genera una documentación clara en **Markdown** para un proyecto Spring Boot generado automáticamente.\n\n");
         sb.append("## Metadatos\n");
-        sb.append("- Proyecto: ").append(name).append("\n");
-        sb.append("- Package base: ").append(pkg).append("\n");
+        sb.append("- Proyecto: ").append(spec.name()).append("\n");
+        sb.append("- Package base: ").append(spec.packageBase()).append("\n");
         sb.append("- ArtifactId: ").append(artifactId).append("\n\n");
 
         sb.append("## Estructura de archivos generados (resumen)\n");
@@ -86,24 +179,22 @@ public class AiDocService {
         sb.append("\n");
 
         sb.append("## Modelo (entidades y atributos)\n");
-        for (var e : entities) {
-            sb.append("- **").append(e.get("name")).append("**\n");
-            @SuppressWarnings("unchecked")
-            List<Map<String,Object>> attrs = (List<Map<String,Object>>) e.getOrDefault("attributes", List.of());
-            for (var a : attrs) {
-                sb.append("  - ").append(a.get("name")).append(": ").append(a.getOrDefault("type","STRING"));
-                if (Boolean.TRUE.equals(a.get("pk"))) sb.append(" (PK)");
+        for (EntitySpec e : spec.entities()) {
+            sb.append("- **").append(e.name()).append("**\n");
+            for (AttrSpec a : e.attributes()) {
+                sb.append("  - ").append(a.name()).append(": ").append(a.type() == null ? "STRING" : a.type());
+                if (a.pk()) sb.append(" (PK)");
                 sb.append("\n");
             }
         }
         sb.append("\n");
 
-        if (!relations.isEmpty()) {
+        if (!spec.relations().isEmpty()) {
             sb.append("## Relaciones (según diagrama)\n");
-            for (var r : relations) {
-                sb.append("- ").append(r.get("type")).append(": ")
-                        .append(r.get("source")).append(" [").append(Objects.toString(r.get("multSource"),"")).append("]")
-                        .append(" → ").append(r.get("target")).append(" [").append(Objects.toString(r.get("multTarget"),"")).append("]\n");
+            for (RelSpec r : spec.relations()) {
+                sb.append("- ").append(r.type()).append(": ")
+                        .append(r.source()).append(" [").append(Objects.toString(r.multSource(),"")).append("]")
+                        .append(" → ").append(r.target()).append(" [").append(Objects.toString(r.multTarget(),"")).append("]\n");
             }
             sb.append("\n");
         }
@@ -125,7 +216,8 @@ public class AiDocService {
         return sb.toString();
     }
 
-    private String mdToHtml(String markdown) {
+    // mdToHtml/htmlToPdf son package-private: los miden los benchmarks (src/jmh)
+    String mdToHtml(String markdown) {
         MutableDataSet opts = new MutableDataSet();
         Parser parser = Parser.builder(opts).build();
         HtmlRenderer renderer = HtmlRenderer.builder(opts).build();
@@ -153,7 +245,7 @@ public class AiDocService {
                <body>""" + body + "</body></html>";
     }
 
-    private byte[] htmlToPdf(String html) throws Exception {
+    byte[] htmlToPdf(String html) throws Exception {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         PdfRendererBuilder b = new PdfRendererBuilder();
         b.useFastMode();
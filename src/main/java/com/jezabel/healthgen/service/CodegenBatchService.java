@@ -0,0 +1,176 @@
+package com.jezabel.healthgen.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.GeneratedArtifact;
+import com.jezabel.healthgen.codegen.ZipStreamSink;
+import com.jezabel.healthgen.domain.ModelSpecEntity;
+import com.jezabel.healthgen.exception.InvalidSpecException;
+import com.jezabel.healthgen.spec.ModelSpec;
+import com.jezabel.healthgen.spec.SpecValidator;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Genera varios specs guardados en una sola pasada y los entrega en un único ZIP:
+ * un {@code <nombre>-r<revisión>-<id>.zip} por proyecto (guardado sin recomprimir) y al final
+ * {@code manifest.json} con el estado de cada id. Un spec que no existe, no compila o es inválido
+ * queda marcado en el manifiesto sin tumbar el resto del lote.
+ * <p>
+ * Las filas se leen en una sola consulta; la generación va en un pool propio y acotado
+ * ({@code codegen.batch.threads}) y, como mucho, el doble de proyectos espera en memoria a ser escrito,
+ * en el mismo orden en que llegaron los ids. Cada proyecto pasa por {@link CodegenCache}.
+ */
+@Service
+public class CodegenBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(CodegenBatchService.class);
+
+    public static final String MANIFEST = "manifest.json";
+
+    private final ModelSpecService specs;
+    private final CodegenService codegen;
+    private final CodegenCache cache;
+    private final ObjectMapper om;
+    private final CodegenProperties.Batch props;
+    private final ExecutorService pool;
+
+    /** Ids pedidos (sin repetidos, en orden) + las filas encontradas. */
+    public record Batch(List<Long> ids, Map<Long, ModelSpecEntity> rows) { }
+
+    private record Result(String entry, byte[] zip, Map<String, Object> status) { }
+
+    public CodegenBatchService(ModelSpecService specs, CodegenService codegen, CodegenCache cache, ObjectMapper om,
+                               CodegenProperties props) {
+        this.specs = specs;
+        this.codegen = codegen;
+        this.cache = cache;
+        this.om = om;
+        this.props = props.getBatch();
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, this.props.getThreads()), r -> {
+            Thread t = new Thread(r, "codegen-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /** Valida la petición y carga las filas; se llama antes de abrir el stream para poder responder 400. */
+    public Batch prepare(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) throw new IllegalArgumentException("La lista de ids está vacía");
+        List<Long> unique = new ArrayList<>(new LinkedHashSet<>(ids));
+        unique.remove(null);
+        if (unique.isEmpty()) throw new IllegalArgumentException("La lista de ids está vacía");
+        if (unique.size() > props.getMaxSpecs()) {
+            throw new IllegalArgumentException("Demasiados specs en el lote: " + unique.size() + " (máximo " + props.getMaxSpecs() + ")");
+        }
+        return new Batch(List.copyOf(unique), specs.findAll(unique));
+    }
+
+    /** Escribe el ZIP del lote en {@code out} (no lo cierra) y devuelve el manifiesto. */
+    public Map<String, Object> write(Batch batch, OutputStream out) throws IOException {
+        ZipStreamSink zip = codegen.zipSink(out);
+        List<Map<String, Object>> statuses = new ArrayList<>(batch.ids().size());
+        int window = Math.max(1, props.getThreads()) * 2;
+        Deque<Future<Result>> pending = new ArrayDeque<>();
+        Iterator<Long> next = batch.ids().iterator();
+        int ok = 0;
+        try {
+            while (next.hasNext() || !pending.isEmpty()) {
+                while (next.hasNext() && pending.size() < window) {
+                    Long id = next.next();
+                    ModelSpecEntity row = batch.rows().get(id);
+                    pending.add(pool.submit(() -> build(id, row)));
+                }
+                Result r = await(pending.poll());
+                if (r.zip() != null) {
+                    zip.writeStored(r.entry(), r.zip());
+                    ok++;
+                }
+                statuses.add(r.status());
+                zip.flush();
+            }
+
+            Map<String, Object> manifest = new LinkedHashMap<>();
+            manifest.put("count", statuses.size());
+            manifest.put("ok", ok);
+            manifest.put("failed", statuses.size() - ok);
+            manifest.put("specs", statuses);
+            zip.write(MANIFEST, om.writerWithDefaultPrettyPrinter().writeValueAsString(manifest));
+            zip.finish();
+            return manifest;
+        } finally {
+            // cliente desconectado o fallo de escritura: lo que queda en cola ya no sirve
+            for (Future<Result> f : pending) f.cancel(true);
+            zip.release();
+        }
+    }
+
+    // ===================== Un spec =====================
+    private Result build(Long id, ModelSpecEntity row) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", id);
+        if (row == null) {
+            status.put("status", "NOT_FOUND");
+            return new Result(null, null, status);
+        }
+        status.put("name", row.getName());
+        status.put("revision", row.getRevision());
+        try {
+            ModelSpec spec = specs.compile(row);
+            GeneratedArtifact artifact = cache.get(spec);
+            String entry = entryName(row);
+            status.put("status", "OK");
+            status.put("entry", entry);
+            status.put("files", artifact.files().size());
+            status.put("bytes", artifact.sizeBytes());
+            return new Result(entry, artifact.zip(), status);
+        } catch (InvalidSpecException e) {
+            status.put("status", "INVALID");
+            status.put("message", e.getMessage());
+            status.put("errors", e.getReport().diagnostics().stream()
+                    .filter(d -> d.severity() == SpecValidator.Severity.ERROR).toList());
+        } catch (IOException | IllegalArgumentException e) {
+            status.put("status", "ERROR");
+            status.put("message", "No se pudo leer el spec: " + e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Fallo generando el spec {} del lote", id, e);
+            status.put("status", "ERROR");
+            status.put("message", e.getMessage());
+        }
+        return new Result(null, null, status);
+    }
+
+    private static String entryName(ModelSpecEntity row) {
+        String name = row.getName() == null ? "spec" : row.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return name + "-r" + (row.getRevision() == null ? 0 : row.getRevision()) + "-" + row.getId() + ".zip";
+    }
+
+    private static Result await(Future<Result> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lote interrumpido");
+        } catch (ExecutionException e) {
+            // build() ya convierte los fallos en estado; aquí solo llegan Errors
+            Throwable cause = e.getCause();
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.jezabel.healthgen.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.GeneratedArtifact;
+import com.jezabel.healthgen.codegen.ProgressListener;
+import com.jezabel.healthgen.spec.ModelSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de artefactos generados delante de {@link CodegenService}.
+ * Clave = huella de contenido del spec compilado ({@link ModelSpec#fingerprint()}) + versión del
+ * generador y de las plantillas activas, así dos specs iguales comparten el mismo ZIP aunque vengan de filas distintas.
+ * LRU acotado por bytes; lo desalojado puede bajar a disco si hay {@code codegen.cache.spill-dir}.
+ * <p>
+ * En disco cada artefacto son dos archivos, {@code <clave>.zip} y {@code <clave>.json}; los dos se escriben
+ * en un temporal y se renombran (atómico), primero el ZIP y al final los metadatos, que marcan la entrada
+ * como completa. La carpeta también es LRU, acotada por {@code codegen.cache.spill-max-bytes}.
+ */
+@Service
+public class CodegenCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CodegenCache.class);
+
+    private final CodegenService codegen;
+    private final ObjectMapper om;
+    private final CodegenProperties.Cache props;
+    private final Path spillDir;
+
+    private final LinkedHashMap<String, GeneratedArtifact> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong spillHits = new AtomicLong();
+
+    // índice de lo que hay en disco (clave -> bytes), en orden de uso; se reconstruye al arrancar
+    private final LinkedHashMap<String, Long> spilled = new LinkedHashMap<>(64, 0.75f, true);
+    private long spilledBytes;
+
+    public CodegenCache(CodegenService codegen, ObjectMapper om, CodegenProperties props) {
+        this.codegen = codegen;
+        this.om = om;
+        this.props = props.getCache();
+        String dir = this.props.getSpillDir();
+        this.spillDir = (dir == null || dir.isBlank()) ? null : Path.of(dir);
+        if (spillDir != null) scanSpillDir();
+    }
+
+    /** Escribe el ZIP del spec en {@code out}: desde caché si existe, si no genera en streaming y lo guarda. */
+    public GeneratedArtifact writeZip(ModelSpec spec, OutputStream out) throws IOException {
+        return writeZip(spec, out, ProgressListener.NONE);
+    }
+
+    /** Como {@link #writeZip(ModelSpec, OutputStream)}; un acierto de caché salta directo a "zipped". */
+    public GeneratedArtifact writeZip(ModelSpec spec, OutputStream out, ProgressListener progress) throws IOException {
+        if (!props.isEnabled()) {
+            return toArtifact(null, codegen.writeZip(spec, out, progress), null);
+        }
+        String key = keyFor(spec);
+        GeneratedArtifact cached = lookup(key);
+        if (cached != null) {
+            out.write(cached.zip());
+            out.flush();
+            progress.onProgress("zipped", 1, 1);
+            return cached;
+        }
+
+        CapturingOutputStream tee = new CapturingOutputStream(out, props.getMaxEntryBytes());
+        Map<String, Object> meta = codegen.writeZip(spec, tee, progress);
+        GeneratedArtifact artifact = toArtifact(key, meta, tee.captured());
+        if (artifact.zip() != null) put(artifact);
+        return artifact;
+    }
+
+    /** Devuelve el artefacto completo (ZIP en memoria + listado), generándolo si hace falta. */
+    public GeneratedArtifact get(ModelSpec spec) throws IOException {
+        String key = props.isEnabled() ? keyFor(spec) : null;
+        GeneratedArtifact cached = key == null ? null : lookup(key);
+        if (cached != null) return cached;
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Map<String, Object> meta = codegen.writeZip(spec, buf);
+        GeneratedArtifact artifact = toArtifact(key, meta, buf.toByteArray());
+        if (key != null && artifact.sizeBytes() <= props.getMaxEntryBytes()) put(artifact);
+        return artifact;
+    }
+
+    /** Clave de contenido: independiente del orden de claves y espacios del JSON guardado. */
+    public String keyFor(ModelSpec spec) {
+        return "v" + codegen.outputVersion() + "-" + spec.fingerprint();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        synchronized (this) {
+            out.put("entries", entries.size());
+            out.put("bytes", totalBytes);
+        }
+        out.put("maxBytes", props.getMaxBytes());
+        out.put("hits", hits.get());
+        out.put("misses", misses.get());
+        out.put("evictions", evictions.get());
+        out.put("spillHits", spillHits.get());
+        synchronized (spilled) {
+            out.put("spilledEntries", spilled.size());
+            out.put("spilledBytes", spilledBytes);
+        }
+        return out;
+    }
+
+    public long hits() { return hits.get(); }
+    public long misses() { return misses.get(); }
+    public long evictions() { return evictions.get(); }
+    public synchronized long bytes() { return totalBytes; }
+
+    // ===================== LRU =====================
+    private GeneratedArtifact lookup(String key) {
+        GeneratedArtifact a;
+        synchronized (this) {
+            a = entries.get(key);
+        }
+        if (a == null) a = readSpilled(key);
+        if (a == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return a;
+    }
+
+    private void put(GeneratedArtifact a) {
+        if (a.sizeBytes() > props.getMaxEntryBytes()) return;
+        List<GeneratedArtifact> evicted = new ArrayList<>();
+        synchronized (this) {
+            GeneratedArtifact prev = entries.put(a.key(), a);
+            if (prev != null) totalBytes -= prev.sizeBytes();
+            totalBytes += a.sizeBytes();
+            Iterator<GeneratedArtifact> it = entries.values().iterator();
+            while (totalBytes > props.getMaxBytes() && it.hasNext()) {
+                GeneratedArtifact eldest = it.next();
+                if (eldest == a) break;
+                it.remove();
+                totalBytes -= eldest.sizeBytes();
+                evicted.add(eldest);
+            }
+        }
+        evictions.addAndGet(evicted.size());
+        for (GeneratedArtifact e : evicted) spill(e);
+    }
+
+    // ===================== Spill a disco =====================
+    private void spill(GeneratedArtifact a) {
+        if (spillDir == null) return;
+        synchronized (spilled) {
+            if (spilled.containsKey(a.key())) return;
+        }
+        try {
+            Map<String, Object> meta = new LinkedHashMap<>();
+            meta.put("artifactId", a.artifactId());
+            meta.put("packageBase", a.packageBase());
+            meta.put("files", a.files());
+            byte[] json = om.writeValueAsBytes(meta);
+            Files.createDirectories(spillDir);
+            // los metadatos van al final: sin ellos la entrada no existe para readSpilled
+            writeAtomically(spillDir.resolve(a.key() + ".zip"), a.zip());
+            writeAtomically(spillDir.resolve(a.key() + ".json"), json);
+            synchronized (spilled) {
+                Long prev = spilled.put(a.key(), (long) a.zip().length + json.length);
+                if (prev != null) spilledBytes -= prev;
+                spilledBytes += a.zip().length + json.length;
+            }
+            trimSpillDir();
+        } catch (IOException e) {
+            log.warn("No se pudo volcar a disco el artefacto {}: {}", a.key(), e.getMessage());
+        }
+    }
+
+    private void writeAtomically(Path target, byte[] data) throws IOException {
+        Path tmp = Files.createTempFile(spillDir, target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, data);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private GeneratedArtifact readSpilled(String key) {
+        if (spillDir == null) return null;
+        synchronized (spilled) {
+            if (spilled.get(key) == null) return null;   // get: cuenta como uso en el LRU de disco
+        }
+        try {
+            Map<String, Object> meta = om.readValue(Files.readAllBytes(spillDir.resolve(key + ".json")), new TypeReference<>() {});
+            GeneratedArtifact a = toArtifact(key, meta, Files.readAllBytes(spillDir.resolve(key + ".zip")));
+            spillHits.incrementAndGet();
+            put(a);
+            return a;
+        } catch (IOException e) {
+            log.warn("Artefacto en disco ilegible {}: {}", key, e.getMessage());
+            deleteSpilled(key);
+            return null;
+        }
+    }
+
+    /** Borra lo menos usado hasta quedar por debajo de {@code spill-max-bytes}. */
+    private void trimSpillDir() {
+        while (true) {
+            String eldest;
+            synchronized (spilled) {
+                if (spilledBytes <= props.getSpillMaxBytes() || spilled.isEmpty()) return;
+                eldest = spilled.keySet().iterator().next();
+            }
+            deleteSpilled(eldest);
+        }
+    }
+
+    private void deleteSpilled(String key) {
+        synchronized (spilled) {
+            Long bytes = spilled.remove(key);
+            if (bytes != null) spilledBytes -= bytes;
+        }
+        try {
+            // al revés que al escribir: sin metadatos ya no se lee aunque el ZIP tarde en borrarse
+            Files.deleteIfExists(spillDir.resolve(key + ".json"));
+            Files.deleteIfExists(spillDir.resolve(key + ".zip"));
+        } catch (IOException e) {
+            log.warn("No se pudo borrar del disco el artefacto {}: {}", key, e.getMessage());
+        }
+    }
+
+    /** Índice de lo que dejó una ejecución anterior: entradas completas, de la más antigua a la más reciente. */
+    private void scanSpillDir() {
+        if (!Files.isDirectory(spillDir)) return;
+        List<Path> metas = new ArrayList<>();
+        List<Path> zips = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDir)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(".tmp")) Files.deleteIfExists(f);   // escritura cortada a medias
+                else if (name.endsWith(".json")) metas.add(f);
+                else if (name.endsWith(".zip")) zips.add(f);
+            }
+            // ZIP sin metadatos: se cortó entre los dos renombrados
+            for (Path zip : zips) {
+                String key = zip.getFileName().toString().replaceFirst("\\.zip$", "");
+                if (!Files.exists(spillDir.resolve(key + ".json"))) Files.deleteIfExists(zip);
+            }
+            metas.sort(Comparator.comparingLong(f -> f.toFile().lastModified()));
+            for (Path meta : metas) {
+                String key = meta.getFileName().toString().replaceFirst("\\.json$", "");
+                Path zip = spillDir.resolve(key + ".zip");
+                if (!Files.exists(zip)) {
+                    Files.deleteIfExists(meta);
+                    continue;
+                }
+                long bytes = Files.size(zip) + Files.size(meta);
+                spilled.put(key, bytes);
+                spilledBytes += bytes;
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo leer la carpeta de la caché {}: {}", spillDir, e.getMessage());
+        }
+        trimSpillDir();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static GeneratedArtifact toArtifact(String key, Map<String, Object> meta, byte[] zip) {
+        return new GeneratedArtifact(key,
+                String.valueOf(meta.get("artifactId")),
+                String.valueOf(meta.get("packageBase")),
+                List.copyOf((List<String>) meta.getOrDefault("files", List.of())),
+                zip);
+    }
+
+    /** Reenvía a {@code out} y se queda una copia mientras no supere {@code limit}. */
+    private static final class CapturingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final long limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        CapturingOutputStream(OutputStream out, long limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                if (copy.size() > limit) copy = null;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                if (copy.size() > limit) copy = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException { out.flush(); }
+
+        byte[] captured() { return copy == null ? null : copy.toByteArray(); }
+    }
+}
@@ -1,222 +1,426 @@
 package com.jezabel.healthgen.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.codegen.BufferPool;
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.DirectorySink;
+import com.jezabel.healthgen.codegen.FileSink;
+import com.jezabel.healthgen.codegen.ProgressListener;
 import com.jezabel.healthgen.codegen.TypeMapper;
-import com.jezabel.healthgen.domain.ModelSpecEntity;
+import com.jezabel.healthgen.codegen.ZipStreamSink;
+import com.jezabel.healthgen.codegen.template.CodegenTemplates;
+import com.jezabel.healthgen.codegen.template.TemplateKind;
+import com.jezabel.healthgen.exception.InvalidSpecException;
+import com.jezabel.healthgen.spec.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.*;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
-import java.io.UncheckedIOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Generador: Entities + Repository + Service + Controller + pom + Application + properties
  * Con relaciones JPA (Association/Aggregation/Composition).
+ * Tiempos en {@code healthgen.codegen.stage}: validate, render (por entidad), write (sus archivos al sink;
+ * en un ZIP incluye el DEFLATE) y zip (cierre del ZIP).
  */
 @Service
 public class CodegenService {
 
-    private final ObjectMapper objectMapper;
+    /** Subirla cuando cambie la salida de los renderers: invalida los artefactos cacheados. */
+    public static final String GENERATOR_VERSION = "2";
+
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private final CodegenProperties.Parallel parallel;
+    private final CodegenProperties.Zip zip;
+    private final CodegenTemplates templates;
+    private final BufferPool zipBuffers;
+    private volatile ExecutorService renderPool;
+    private volatile ExecutorService deflatePool;
+
+    private final Timer validateTimer;
+    private final Timer renderTimer;
+    private final Timer writeTimer;
+    private final Timer zipTimer;
+
+    /** Buffer reutilizado por hilo: cada archivo se renderiza sobre él y se copia una sola vez. */
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    public CodegenService(CodegenProperties props, CodegenTemplates templates, MeterRegistry metrics) {
+        this.parallel = props.getParallel();
+        this.zip = props.getZip();
+        this.templates = templates;
+        this.zipBuffers = new BufferPool(zip.getPoolMaxBytes());
+        this.validateTimer = stage(metrics, "validate");
+        this.renderTimer = stage(metrics, "render");
+        this.writeTimer = stage(metrics, "write");
+        this.zipTimer = stage(metrics, "zip");
+    }
 
-    public CodegenService(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+    private static Timer stage(MeterRegistry metrics, String stage) {
+        return Timer.builder("healthgen.codegen.stage").tag("stage", stage).register(metrics);
     }
 
-    /** Crea un zip del proyecto generado. */
-    public Path generateZip(ModelSpecEntity specEntity) throws IOException {
-        Map<String, Object> result = generateEntities(specEntity);
-        Path root = Path.of((String) result.get("tmpDir"));
-        Path zipFile = Files.createTempFile("healthgen-", ".zip");
+    /** Versión efectiva de la salida: generador + huella de las plantillas activas. */
+    public String outputVersion() {
+        return GENERATOR_VERSION + "-" + templates.fingerprint();
+    }
 
-        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFile))) {
-            Files.walk(root)
-                    .filter(Files::isRegularFile)
-                    .forEach(p -> {
-                        try {
-                            String entryName = root.relativize(p).toString().replace("\\", "/");
-                            zos.putNextEntry(new ZipEntry(entryName));
-                            Files.copy(p, zos);
-                            zos.closeEntry();
-                        } catch (IOException e) {
-                            throw new UncheckedIOException(e);
-                        }
-                    });
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService pool : new ExecutorService[]{renderPool, deflatePool}) {
+            if (pool != null) pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Falla antes de escribir nada si el spec generaría un proyecto que no compila o no arranca
+     * (ver {@link SpecValidator}). Lineal en el tamaño del spec y solo la primera vez: el informe queda
+     * en el spec ({@link ModelSpec#validation()}).
+     * Cada método público valida una vez al entrar; lo que llama por debajo ya recibe el spec validado.
+     */
+    public void requireValid(ModelSpec spec) {
+        SpecValidator.Report report = validateTimer.record(spec::validation);
+        if (!report.valid()) throw new InvalidSpecException(report);
+    }
+
+    /** Crea un zip del proyecto generado (archivo temporal, sin carpeta intermedia). */
+    public Path generateZip(ModelSpec spec) throws IOException {
+        requireValid(spec);
+        Path zipFile = Files.createTempFile("healthgen-", ".zip");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(zipFile))) {
+            zipValid(spec, out, ProgressListener.NONE);
         }
         return zipFile;
     }
 
-    // ===== Tipos de relación y cardinalidad =====
-    enum RelKind { ASSOCIATION, AGGREGATION, COMPOSITION, GENERALIZATION, DEPENDENCY, REALIZATION, UNKNOWN }
-    enum Card { ONE, MANY }
+    /**
+     * Genera el proyecto escribiendo cada archivo directamente como entrada ZIP en {@code out}.
+     * No toca disco; {@code out} no se cierra.
+     */
+    public Map<String, Object> writeZip(ModelSpec spec, OutputStream out) throws IOException {
+        return writeZip(spec, out, ProgressListener.NONE);
+    }
 
-    static class Attr {
-        String name;
-        String type;   // STRING, INT, LONG...
-        boolean pk;
-        String generated; // e.g. IDENTITY
+    public Map<String, Object> writeZip(ModelSpec spec, OutputStream out, ProgressListener progress) throws IOException {
+        requireValid(spec);
+        return zipValid(spec, out, progress);
     }
 
-    static class Rel {
-        RelKind kind;
-        String source;
-        String target;
-        String multSource;  // "1", "0..1", "0..*", "1..*", "*", etc
-        String multTarget;
+    private Map<String, Object> zipValid(ModelSpec spec, OutputStream out, ProgressListener progress) throws IOException {
+        ZipStreamSink zip = zipSink(out);
+        try {
+            Map<String, Object> result = renderValid(spec, zip, progress);
+            long t0 = System.nanoTime();
+            zip.finish();
+            zipTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+            progress.onProgress("zipped", 1, 1);
+            return result;
+        } finally {
+            zip.release();
+        }
     }
 
-    static class EntitySpec {
-        String name;
-        List<Attr> attrs = new ArrayList<>();
+    /** ZIP en streaming sobre {@code out} con la configuración {@code codegen.zip.*} (nivel, STORED, buffers, paralelo). */
+    public ZipStreamSink zipSink(OutputStream out) {
+        return new ZipStreamSink(out, zip, zipBuffers, zip.isParallel() ? deflatePool() : null);
     }
 
-    /** Genera estructura de proyecto en carpeta temporal. */
-    public Map<String, Object> generateEntities(ModelSpecEntity specEntity) throws IOException {
-        Map<String, Object> spec = objectMapper.readValue(
-                specEntity.getJson(), new TypeReference<Map<String, Object>>() {});
-
-        String packageBase = (String) spec.getOrDefault("packageBase", "com.example.demo");
-        String artifactId = (String) spec.getOrDefault("name", "generated-app");
-
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> rawEntities =
-                (List<Map<String, Object>>) spec.getOrDefault("entities", List.of());
-
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> rawRelations =
-                (List<Map<String, Object>>) spec.getOrDefault("relations", List.of());
-
-        // Parse entidades
-        Map<String, EntitySpec> entities = new LinkedHashMap<>();
-        for (Map<String, Object> e : rawEntities) {
-            String entityName = (String) e.get("name");
-            if (entityName == null || entityName.isBlank()) continue;
-
-            EntitySpec es = new EntitySpec();
-            es.name = entityName;
-
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> attrs =
-                    (List<Map<String, Object>>) e.getOrDefault("attributes", List.of());
-            for (Map<String, Object> a : attrs) {
-                Attr at = new Attr();
-                at.name = (String) a.get("name");
-                at.type = (String) a.get("type");
-                at.pk = Boolean.TRUE.equals(a.get("pk"));
-                Object gen = a.get("generated");
-                at.generated = gen == null ? null : gen.toString();
-                if (at.name != null && !at.name.isBlank()) {
-                    es.attrs.add(at);
-                }
+    /**
+     * Generación incremental: escribe en {@code sink} solo lo que cambia de {@code previous} a {@code current}.
+     * Entidades nuevas → sus cuatro archivos; entidades modificadas → solo su clase de dominio
+     * (repository/service/controller dependen únicamente del nombre y el package, que no cambiaron).
+     * Una relación que cambia también vuelve a renderizar la clase del otro extremo; cada candidata se
+     * compara con el render de la versión anterior y solo se emite si difiere, así el parche coincide
+     * con los archivos que cambian entre dos generaciones completas.
+     * Devuelve el listado de archivos añadidos, modificados y eliminados.
+     */
+    public Map<String, Object> writeDelta(ModelSpec previous, ModelSpec current, FileSink sink) throws IOException {
+        requireValid(current);
+        SpecDiff diff = SpecDiff.between(previous, current);
+        String packageBase = current.packageBase();
+        String srcMainJava = srcMainJava(packageBase);
+
+        List<String> added = new ArrayList<>();
+        List<String> modified = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+
+        // candidatas: las modificadas y el otro extremo de toda relación que toca algo que cambió
+        Set<String> touched = new HashSet<>(diff.modified());
+        for (String name : diff.modified()) {
+            partners(previous.relationsOf(name), touched);
+            partners(current.relationsOf(name), touched);
+        }
+        for (String name : diff.added()) partners(current.relationsOf(name), touched);
+        for (String name : diff.removed()) partners(previous.relationsOf(name), touched);
+
+        int unchanged = 0;
+        for (EntitySpec es : current.entities()) {
+            if (diff.added().contains(es.name())) {
+                writeEntity(renderTimed(current, es), sink, added, srcMainJava);
+            } else if (touched.contains(es.name())) {
+                String now = renderEntity(packageBase, es, current.relationsOf(es.name()));
+                String before = renderEntity(packageBase, previous.entity(es.name()), previous.relationsOf(es.name()));
+                if (now.equals(before)) unchanged++;
+                else emit(sink, modified, srcMainJava + "domain/" + es.name() + ".java", now);
+            } else {
+                unchanged++;
             }
-            entities.put(es.name, es);
         }
+        String oldSrc = srcMainJava(previous.packageBase());
+        for (String name : diff.removed()) entityPaths(oldSrc, name, removed);
 
-        // Parse relaciones
-        List<Rel> rels = new ArrayList<>();
-        for (Map<String, Object> r : rawRelations) {
-            Rel rel = new Rel();
-            rel.kind = toRelKind((String) r.get("type"));
-            rel.source = (String) r.get("source");
-            rel.target = (String) r.get("target");
-            rel.multSource = optString(r.get("multSource"));
-            rel.multTarget = optString(r.get("multTarget"));
-            if (rel.source != null && rel.target != null) {
-                rels.add(rel);
-            }
+        if (diff.packageChanged()) {
+            removed.add(oldSrc + "Application.java");
+            emit(sink, added, srcMainJava + "Application.java", renderApplication(packageBase));
+        }
+        if (diff.packageChanged() || diff.nameChanged()) {
+            emitIfChanged(sink, modified, "pom.xml", renderPom(previous.packageBase(), previous.name()),
+                    renderPom(packageBase, current.name()));
+        }
+        if (diff.nameChanged()) {
+            emitIfChanged(sink, modified, "src/main/resources/application.properties", renderProperties(previous.name()),
+                    renderProperties(current.name()));
         }
 
-        // FS salida
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("packageBase", packageBase);
+        out.put("artifactId", current.name());
+        out.put("added", added);
+        out.put("modified", modified);
+        out.put("removed", removed);
+        out.put("unchangedEntities", unchanged);
+        return out;
+    }
+
+    private static void partners(List<RelSpec> rels, Set<String> into) {
+        for (RelSpec r : rels) {
+            into.add(r.source());
+            into.add(r.target());
+        }
+    }
+
+    private static void emitIfChanged(FileSink sink, List<String> modified, String path, String before, String now) throws IOException {
+        if (!now.equals(before)) emit(sink, modified, path, now);
+    }
+
+    /**
+     * Rutas que escribiría {@link #generate(ModelSpec, FileSink)}, en el mismo orden, sin validar ni
+     * renderizar: solo dependen de los nombres de las entidades, el package y el nombre del proyecto.
+     */
+    public List<String> fileList(ModelSpec spec) {
+        String srcMainJava = srcMainJava(spec.packageBase());
+        List<String> out = new ArrayList<>(spec.entities().size() * 4 + 3);
+        for (EntitySpec es : spec.entities()) entityPaths(srcMainJava, es.name(), out);
+        out.add("pom.xml");
+        out.add(srcMainJava + "Application.java");
+        out.add("src/main/resources/application.properties");
+        return out;
+    }
+
+    /** Genera estructura de proyecto en carpeta temporal. */
+    public Map<String, Object> generateEntities(ModelSpec spec) throws IOException {
+        requireValid(spec);
         Path root = Files.createTempDirectory("healthgen-");
-        Path srcMainJava = root.resolve("src/main/java/" + packageBase.replace('.', '/'));
-        Path domainDir = srcMainJava.resolve("domain");
-        Files.createDirectories(domainDir);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("tmpDir", root.toString());
+        out.putAll(renderValid(spec, new DirectorySink(root), ProgressListener.NONE));
+        return out;
+    }
+
+    /** Renderiza el proyecto completo sobre el {@link FileSink} indicado. */
+    public Map<String, Object> generate(ModelSpec spec, FileSink sink) throws IOException {
+        return generate(spec, sink, ProgressListener.NONE);
+    }
 
+    /** Igual que {@link #generate(ModelSpec, FileSink)}, avisando "render" N/M tras cada entidad escrita. */
+    public Map<String, Object> generate(ModelSpec spec, FileSink sink, ProgressListener progress) throws IOException {
+        requireValid(spec);
+        return renderValid(spec, sink, progress);
+    }
+
+    private Map<String, Object> renderValid(ModelSpec spec, FileSink sink, ProgressListener progress) throws IOException {
+        String packageBase = spec.packageBase();
+        String artifactId = spec.name();
+
+        // Salida
+        String srcMainJava = srcMainJava(packageBase);
         List<String> created = new ArrayList<>();
 
         // Entities + repo + service + controller
-        for (EntitySpec es : entities.values()) {
-            Path entityFile = domainDir.resolve(es.name + ".java");
-            Files.createDirectories(entityFile.getParent());
-            Files.writeString(entityFile, renderEntity(packageBase, es, rels, entities),
-                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            created.add(rel(root, entityFile));
-
-            Path repoFile = srcMainJava.resolve("repository/" + es.name + "Repository.java");
-            Files.createDirectories(repoFile.getParent());
-            Files.writeString(repoFile, renderRepository(packageBase, es.name),
-                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            created.add(rel(root, repoFile));
-
-            Path serviceFile = srcMainJava.resolve("service/" + es.name + "Service.java");
-            Files.createDirectories(serviceFile.getParent());
-            Files.writeString(serviceFile, renderService(packageBase, es.name),
-                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            created.add(rel(root, serviceFile));
-
-            Path controllerFile = srcMainJava.resolve("controller/" + es.name + "Controller.java");
-            Files.createDirectories(controllerFile.getParent());
-            Files.writeString(controllerFile, renderController(packageBase, es.name),
-                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            created.add(rel(root, controllerFile));
+        // (las relaciones de cada entidad vienen del índice del spec: O(grado), no O(total))
+        List<EntitySpec> ordered = spec.entities();
+        if (parallel.isEnabled() && ordered.size() >= parallel.getMinEntities()) {
+            renderParallel(spec, sink, created, srcMainJava, progress);
+        } else {
+            int done = 0;
+            for (EntitySpec es : ordered) {
+                writeEntity(renderTimed(spec, es), sink, created, srcMainJava);
+                progress.onProgress("render", ++done, ordered.size());
+            }
         }
 
         // POM, Application, properties
-        Path pomFile = root.resolve("pom.xml");
-        Files.writeString(pomFile, renderPom(packageBase, artifactId),
-                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        created.add(rel(root, pomFile));
-
-        Path appFile = srcMainJava.resolve("Application.java");
-        Files.createDirectories(appFile.getParent());
-        Files.writeString(appFile, renderApplication(packageBase),
-                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        created.add(rel(root, appFile));
-
-        Path resDir = root.resolve("src/main/resources");
-        Files.createDirectories(resDir);
-        Path propsFile = resDir.resolve("application.properties");
-        Files.writeString(propsFile, renderProperties(artifactId),
-                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        created.add(rel(root, propsFile));
+        emit(sink, created, "pom.xml", renderPom(packageBase, artifactId));
+        emit(sink, created, srcMainJava + "Application.java", renderApplication(packageBase));
+        emit(sink, created, "src/main/resources/application.properties", renderProperties(artifactId));
 
         Map<String, Object> out = new LinkedHashMap<>();
-        out.put("tmpDir", root.toString());
         out.put("packageBase", packageBase);
         out.put("artifactId", artifactId);
         out.put("files", created);
         return out;
     }
 
-    private static String rel(Path root, Path p) {
-        return root.relativize(p).toString().replace("\\", "/");
+    /** Los cuatro archivos de una entidad, ya renderizados. */
+    private record RenderedEntity(String name, String entity, String repository, String service, String controller) { }
+
+    private RenderedEntity renderAll(ModelSpec spec, EntitySpec es) {
+        String packageBase = spec.packageBase();
+        return new RenderedEntity(es.name(),
+                renderEntity(packageBase, es, spec.relationsOf(es.name())),
+                renderRepository(packageBase, es.name()),
+                renderService(packageBase, es.name()),
+                renderController(packageBase, es.name()));
+    }
+
+    private RenderedEntity renderTimed(ModelSpec spec, EntitySpec es) {
+        return renderTimer.record(() -> renderAll(spec, es));
+    }
+
+    private void writeEntity(RenderedEntity r, FileSink sink, List<String> created, String srcMainJava) throws IOException {
+        long t0 = System.nanoTime();
+        emit(sink, created, srcMainJava + "domain/" + r.name() + ".java", r.entity());
+        emit(sink, created, srcMainJava + "repository/" + r.name() + "Repository.java", r.repository());
+        emit(sink, created, srcMainJava + "service/" + r.name() + "Service.java", r.service());
+        emit(sink, created, srcMainJava + "controller/" + r.name() + "Controller.java", r.controller());
+        sink.flush();
+        writeTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Renderiza en el pool acotado y escribe en el hilo llamador respetando el orden del spec.
+     * Solo se adelantan {@code 4 × hilos} entidades para no acumular todo el proyecto en memoria.
+     */
+    private void renderParallel(ModelSpec spec, FileSink sink, List<String> created, String srcMainJava,
+                                ProgressListener progress) throws IOException {
+        ExecutorService pool = renderPool();
+        int total = spec.entities().size(), done = 0;
+        int window = Math.max(1, threads() * 4);
+        Deque<Future<RenderedEntity>> inFlight = new ArrayDeque<>(window);
+        Iterator<EntitySpec> it = spec.entities().iterator();
+        try {
+            while (it.hasNext() || !inFlight.isEmpty()) {
+                while (it.hasNext() && inFlight.size() < window) {
+                    EntitySpec es = it.next();
+                    inFlight.addLast(pool.submit(() -> renderTimed(spec, es)));
+                }
+                writeEntity(await(inFlight.pollFirst()), sink, created, srcMainJava);
+                progress.onProgress("render", ++done, total);
+            }
+        } finally {
+            for (Future<RenderedEntity> f : inFlight) f.cancel(true);
+        }
+    }
+
+    private static RenderedEntity await(Future<RenderedEntity> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Generación interrumpida");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private int threads() {
+        int n = parallel.getThreads();
+        return n > 0 ? n : Runtime.getRuntime().availableProcessors();
+    }
+
+    private ExecutorService renderPool() {
+        ExecutorService pool = renderPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = renderPool;
+                if (pool == null) renderPool = pool = newPool("codegen-render-", threads());
+            }
+        }
+        return pool;
+    }
+
+    private ExecutorService deflatePool() {
+        ExecutorService pool = deflatePool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = deflatePool;
+                if (pool == null) {
+                    int n = zip.getThreads() > 0 ? zip.getThreads() : Runtime.getRuntime().availableProcessors();
+                    deflatePool = pool = newPool("codegen-deflate-", n);
+                }
+            }
+        }
+        return pool;
+    }
+
+    private static ExecutorService newPool(String prefix, int threads) {
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static void entityPaths(String srcMainJava, String name, List<String> into) {
+        into.add(srcMainJava + "domain/" + name + ".java");
+        into.add(srcMainJava + "repository/" + name + "Repository.java");
+        into.add(srcMainJava + "service/" + name + "Service.java");
+        into.add(srcMainJava + "controller/" + name + "Controller.java");
+    }
+
+    private static String srcMainJava(String packageBase) {
+        return "src/main/java/" + packageBase.replace('.', '/') + "/";
+    }
+
+    private static void emit(FileSink sink, List<String> created, String path, String content) throws IOException {
+        sink.write(path, content);
+        created.add(path);
     }
 
     // ===================== ENTITY con relaciones =====================
-    private String renderEntity(String packageBase, EntitySpec es, List<Rel> allRels, Map<String, EntitySpec> entities) {
-        StringBuilder sb = new StringBuilder();
+    private String renderEntity(String packageBase, EntitySpec es, List<RelSpec> relsHere) {
+        StringBuilder sb = buffer();
         sb.append("package ").append(packageBase).append(".domain;\n\n")
                 .append("import jakarta.persistence.*;\n")
                 .append("import java.io.Serializable;\n")
                 .append("import java.util.*;\n")
                 .append("import com.fasterxml.jackson.annotation.*;\n\n")
                 .append("@Entity\n")
-                .append("@Table(name = \"").append(toTableName(es.name)).append("\")\n")
+                .append("@Table(name = \"").append(toTableName(es.name())).append("\")\n")
                 .append("@JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = \"id\")\n")
-                .append("public class ").append(es.name).append(" implements Serializable {\n\n");
+                .append("public class ").append(es.name()).append(" implements Serializable {\n\n");
 
         // campos simples
-        for (Attr a : es.attrs) {
-            String name = a.name;
+        for (AttrSpec a : es.attributes()) {
+            String name = a.name();
             if (name == null || name.isBlank()) continue;
-            String type = TypeMapper.toJavaType(a.type);
-            if (a.pk) {
+            String type = TypeMapper.toJavaType(a.type());
+            if (a.pk()) {
                 sb.append("    @Id\n");
-                if ("IDENTITY".equalsIgnoreCase(a.generated)) {
+                if ("IDENTITY".equalsIgnoreCase(a.generated())) {
                     sb.append("    @GeneratedValue(strategy = GenerationType.IDENTITY)\n");
                 }
             }
@@ -224,27 +428,21 @@ public class CodegenService {
             sb.append("    private ").append(type).append(" ").append(name).append(";\n\n");
         }
 
-        // relaciones
-        List<Rel> relsHere = new ArrayList<>();
-        for (Rel r : allRels) {
-            if (es.name.equals(r.source) || es.name.equals(r.target)) relsHere.add(r);
-        }
-
+        // relaciones (ya filtradas por el índice)
         Set<String> used = new HashSet<>();
-        for (Attr a : es.attrs) used.add(a.name);
+        for (AttrSpec a : es.attributes()) used.add(a.name());
 
-        for (Rel r : relsHere) {
-            RelKind kind = r.kind;
-            if (!(kind == RelKind.ASSOCIATION || kind == RelKind.AGGREGATION || kind == RelKind.COMPOSITION)) continue;
+        for (RelSpec r : relsHere) {
+            RelKind kind = r.kind();
+            if (!kind.isStructural()) continue;
 
-            boolean self = r.source.equals(r.target);
-            Card[] cc = cardsFor(r);
-            Card cSrc = cc[0], cTgt = cc[1];
+            boolean self = r.isSelf();
+            Card cSrc = r.sourceCard(), cTgt = r.targetCard();
 
-            boolean iAmSource = es.name.equals(r.source);
-            String other = iAmSource ? r.target : r.source;
+            boolean iAmSource = es.name().equals(r.source());
+            String other = iAmSource ? r.target() : r.source();
 
-            String me = es.name, otherLower = lower(other);
+            String me = es.name(), otherLower = lower(other);
 
             boolean dashedIsComposition = (kind == RelKind.COMPOSITION);
             boolean dashedIsAggregation = (kind == RelKind.AGGREGATION);
@@ -273,7 +471,8 @@ public class CodegenService {
                             .append("    @JoinColumn(name = \"").append(otherLower).append("_id\")\n")
                             .append("    private ").append(other).append(" ").append(fieldName).append(";\n\n");
                 } else {
-                    String mappedBy = lower(other);
+                    // el dueño guarda el campo con el nombre de esta entidad
+                    String mappedBy = lower(me);
                     sb.append("    @OneToOne(mappedBy = \"").append(mappedBy).append("\")\n")
                             .append("    private ").append(other).append(" ").append(fieldName).append(";\n\n");
                 }
@@ -309,7 +508,7 @@ public class CodegenService {
                             .append("        inverseJoinColumns = @JoinColumn(name = \"").append(otherLower).append("_id\"))\n")
                             .append("    private Set<").append(other).append("> ").append(fieldName).append(" = new HashSet<>();\n\n");
                 } else {
-                    String mappedBy = plural(lower(ownerByLex.equals(me) ? other : ownerByLex));
+                    String mappedBy = plural(lower(me));
                     sb.append("    @ManyToMany(mappedBy = \"").append(mappedBy).append("\")\n")
                             .append("    private Set<").append(other).append("> ").append(fieldName).append(" = new HashSet<>();\n\n");
                 }
@@ -318,10 +517,10 @@ public class CodegenService {
         }
 
         // getters/setters simples (para campos básicos)
-        for (Attr a : es.attrs) {
-            String name = a.name;
+        for (AttrSpec a : es.attributes()) {
+            String name = a.name();
             if (name == null || name.isBlank()) continue;
-            String type = TypeMapper.toJavaType(a.type);
+            String type = TypeMapper.toJavaType(a.type());
             String Cap = cap(name);
             sb.append("    public ").append(type).append(" get").append(Cap).append("() { return ").append(name).append("; }\n");
             sb.append("    public void set").append(Cap).append("(").append(type).append(" ").append(name).append(") { this.")
@@ -329,189 +528,53 @@ public class CodegenService {
         }
 
         sb.append("}\n");
-        return sb.toString();
+        return release(sb);
     }
 
+    // ===================== Plantillas =====================
     private String renderRepository(String packageBase, String entityName) {
-        return "package " + packageBase + ".repository;\n\n" +
-                "import " + packageBase + ".domain." + entityName + ";\n" +
-                "import org.springframework.data.jpa.repository.JpaRepository;\n\n" +
-                "public interface " + entityName + "Repository extends JpaRepository<" + entityName + ", Long> {\n}\n";
+        return render(TemplateKind.REPOSITORY, packageBase, entityName);
     }
 
     private String renderService(String packageBase, String entityName) {
-        return "package " + packageBase + ".service;\n\n" +
-                "import " + packageBase + ".domain." + entityName + ";\n" +
-                "import " + packageBase + ".repository." + entityName + "Repository;\n" +
-                "import org.springframework.stereotype.Service;\n" +
-                "import java.util.*;\n\n" +
-                "@Service\n" +
-                "public class " + entityName + "Service {\n" +
-                "    private final " + entityName + "Repository repo;\n\n" +
-                "    public " + entityName + "Service(" + entityName + "Repository repo) { this.repo = repo; }\n\n" +
-                "    public " + entityName + " save(" + entityName + " e) { return repo.save(e); }\n" +
-                "    public Optional<" + entityName + "> findById(Long id) { return repo.findById(id); }\n" +
-                "    public List<" + entityName + "> findAll() { return repo.findAll(); }\n" +
-                "    public void delete(Long id) { repo.deleteById(id); }\n" +
-                "}\n";
+        return render(TemplateKind.SERVICE, packageBase, entityName);
     }
 
     private String renderController(String packageBase, String entityName) {
-        String var = lower(entityName);
-        return ""
-                + "package " + packageBase + ".controller;\n\n"
-                + "import " + packageBase + ".domain." + entityName + ";\n"
-                + "import " + packageBase + ".service." + entityName + "Service;\n"
-                + "import org.springframework.http.ResponseEntity;\n"
-                + "import org.springframework.web.bind.annotation.*;\n"
-                + "import java.net.URI;\n"
-                + "import java.util.*;\n\n"
-                + "@RestController\n"
-                + "@RequestMapping(\"/api/" + var + "s\")\n"
-                + "public class " + entityName + "Controller {\n"
-                + "    private final " + entityName + "Service service;\n\n"
-                + "    public " + entityName + "Controller(" + entityName + "Service service) { this.service = service; }\n\n"
-                + "    @PostMapping\n"
-                + "    public ResponseEntity<" + entityName + "> create(@RequestBody " + entityName + " body){\n"
-                + "        " + entityName + " saved = service.save(body);\n"
-                + "        return ResponseEntity.created(URI.create(\"/api/" + var + "s/\" + saved.getId())).body(saved);\n"
-                + "    }\n\n"
-                + "    @GetMapping\n"
-                + "    public List<" + entityName + "> all(){\n"
-                + "        return service.findAll();\n"
-                + "    }\n\n"
-                + "    @GetMapping(\"/{id}\")\n"
-                + "    public " + entityName + " one(@PathVariable Long id){\n"
-                + "        return service.findById(id).orElseThrow();\n"
-                + "    }\n\n"
-                + "    @PutMapping(\"/{id}\")\n"
-                + "    public " + entityName + " update(@PathVariable Long id, @RequestBody " + entityName + " body){\n"
-                + "        " + entityName + " existing = service.findById(id).orElseThrow();\n"
-                + "        body.setId(existing.getId());\n"
-                + "        return service.save(body);\n"
-                + "    }\n\n"
-                + "    @DeleteMapping(\"/{id}\")\n"
-                + "    public ResponseEntity<Void> delete(@PathVariable Long id){\n"
-                + "        service.delete(id);\n"
-                + "        return ResponseEntity.noContent().build();\n"
-                + "    }\n"
-                + "}\n";
+        return render(TemplateKind.CONTROLLER, packageBase, entityName, lower(entityName));
     }
 
     private String renderPom(String packageBase, String artifactId) {
-        return "<project xmlns=\"http://maven.apache.org/POM/4.0.0\"\n" +
-                "         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
-                "         xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n" +
-                "  <modelVersion>4.0.0</modelVersion>\n" +
-                "  <groupId>" + packageBase + "</groupId>\n" +
-                "  <artifactId>" + artifactId + "</artifactId>\n" +
-                "  <version>0.0.1-SNAPSHOT</version>\n" +
-                "  <properties>\n" +
-                "    <java.version>21</java.version>\n" +
-                "    <spring-boot.version>3.3.3</spring-boot.version>\n" +
-                "  </properties>\n" +
-                "  <dependencyManagement>\n" +
-                "    <dependencies>\n" +
-                "      <dependency>\n" +
-                "        <groupId>org.springframework.boot</groupId>\n" +
-                "        <artifactId>spring-boot-dependencies</artifactId>\n" +
-                "        <version>${spring-boot.version}</version>\n" +
-                "        <type>pom</type>\n" +
-                "        <scope>import</scope>\n" +
-                "      </dependency>\n" +
-                "    </dependencies>\n" +
-                "  </dependencyManagement>\n" +
-                "  <dependencies>\n" +
-                "    <dependency>\n" +
-                "      <groupId>org.springframework.boot</groupId>\n" +
-                "      <artifactId>spring-boot-starter-web</artifactId>\n" +
-                "    </dependency>\n" +
-                "    <dependency>\n" +
-                "      <groupId>org.springframework.boot</groupId>\n" +
-                "      <artifactId>spring-boot-starter-data-jpa</artifactId>\n" +
-                "    </dependency>\n" +
-                "    <dependency>\n" +
-                "      <groupId>com.mysql</groupId>\n" +
-                "      <artifactId>mysql-connector-j</artifactId>\n" +
-                "      <scope>runtime</scope>\n" +
-                "    </dependency>\n" +
-                "    <dependency>\n" +
-                "      <groupId>org.springframework.boot</groupId>\n" +
-                "      <artifactId>spring-boot-starter-validation</artifactId>\n" +
-                "    </dependency>\n" +
-                "    <dependency>\n" +
-                "      <groupId>org.springdoc</groupId>\n" +
-                "      <artifactId>springdoc-openapi-starter-webmvc-ui</artifactId>\n" +
-                "      <version>2.5.0</version>\n" +
-                "    </dependency>\n" +
-                "  </dependencies>\n" +
-                "  <build>\n" +
-                "    <plugins>\n" +
-                "      <plugin>\n" +
-                "        <groupId>org.springframework.boot</groupId>\n" +
-                "        <artifactId>spring-boot-maven-plugin</artifactId>\n" +
-                "      </plugin>\n" +
-                "    </plugins>\n" +
-                "  </build>\n" +
-                "</project>\n";
+        return render(TemplateKind.POM, packageBase, artifactId);
     }
 
     private String renderApplication(String packageBase) {
-        return "package " + packageBase + ";\n\n" +
-                "import org.springframework.boot.SpringApplication;\n" +
-                "import org.springframework.boot.autoconfigure.SpringBootApplication;\n\n" +
-                "@SpringBootApplication\n" +
-                "public class Application {\n" +
-                "  public static void main(String[] args) {\n" +
-                "    SpringApplication.run(Application.class, args);\n" +
-                "  }\n" +
-                "}\n";
+        return render(TemplateKind.APPLICATION, packageBase);
     }
 
     private String renderProperties(String artifactId) {
-        return "spring.datasource.url=jdbc:mysql://localhost:3306/" + artifactId + "?useSSL=false&serverTimezone=UTC\n" +
-                "spring.datasource.username=root\n" +
-                "spring.datasource.password=secret\n" +
-                "spring.jpa.hibernate.ddl-auto=update\n" +
-                "spring.jpa.show-sql=true\n";
+        return render(TemplateKind.PROPERTIES, artifactId);
     }
 
-    // ===================== Helpers =====================
-    private static RelKind toRelKind(String raw) {
-        if (raw == null) return RelKind.UNKNOWN;
-        String s = raw.toLowerCase(Locale.ROOT).replace("uml.", "").replace("custom.", "");
-        return switch (s) {
-            case "association" -> RelKind.ASSOCIATION;
-            case "aggregation" -> RelKind.AGGREGATION;
-            case "composition" -> RelKind.COMPOSITION;
-            case "generalization" -> RelKind.GENERALIZATION;
-            case "dependency" -> RelKind.DEPENDENCY;
-            case "realization" -> RelKind.REALIZATION;
-            default -> RelKind.UNKNOWN;
-        };
-    }
-
-    private static boolean isBlank(String s) { return s == null || s.isBlank(); }
-
-    private static Card toCard(String mult) {
-        String m = (mult == null) ? "" : mult.trim();
-        if (m.equals("*") || m.equals("0..*") || m.equals("1..*")) return Card.MANY;
-        return Card.ONE; // también 0..1
-    }
-
-    private static Card[] cardsFor(Rel r) {
-        RelKind k = r.kind;
-        String ms = r.multSource, mt = r.multTarget;
-        if (k == RelKind.ASSOCIATION) {
-            return new Card[]{ toCard(ms), toCard(mt) };
-        }
-        if (k == RelKind.AGGREGATION || k == RelKind.COMPOSITION) {
-            if (isBlank(ms) && isBlank(mt)) return new Card[]{ Card.ONE, Card.MANY };
-            return new Card[]{ toCard(ms), toCard(mt) };
-        }
-        return new Card[]{ Card.ONE, Card.ONE };
+    private String render(TemplateKind kind, String... values) {
+        StringBuilder sb = buffer();
+        templates.get(kind).render(sb, values);
+        return release(sb);
+    }
+
+    private StringBuilder buffer() {
+        StringBuilder sb = buffers.get();
+        sb.setLength(0);
+        return sb;
     }
 
+    private String release(StringBuilder sb) {
+        String out = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) buffers.set(new StringBuilder(4096));
+        return out;
+    }
+
+    // ===================== Helpers =====================
     private static String toTableName(String entityName) {
         return entityName == null ? "tabla" : entityName.toLowerCase(Locale.ROOT) + "s";
     }
@@ -532,5 +595,4 @@ public class CodegenService {
         while (used.contains(b)) { b = base + i; i++; }
         return b;
     }
-    private static String optString(Object o) { return o == null ? null : o.toString(); }
 }
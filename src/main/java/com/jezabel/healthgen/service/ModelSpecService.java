@@ -0,0 +1,376 @@
+package com.jezabel.healthgen.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jezabel.healthgen.domain.ModelSpecEntity;
+import com.jezabel.healthgen.exception.ResourceNotFoundException;
+import com.jezabel.healthgen.repository.ModelSpecRepository;
+import com.jezabel.healthgen.spec.CompressedJson;
+import com.jezabel.healthgen.spec.JsonDelta;
+import com.jezabel.healthgen.spec.ModelSpec;
+import com.jezabel.healthgen.spec.ModelSpecReader;
+import com.jezabel.healthgen.spec.SpecProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Carga, guarda y compila ModelSpecs. El JSON de cada fila se parsea una sola vez:
+ * el {@link ModelSpec} resultante queda cacheado por id (LRU pequeño).
+ * <p>
+ * Versionado: los specs con el mismo nombre forman una línea de versiones. Cada versión nueva se guarda
+ * como {@link JsonDelta} comprimido contra la anterior, con el JSON completo cada
+ * {@code specs.snapshot-every} versiones (o si el delta no compensa). Un spec idéntico (mismo hash
+ * del JSON canónico: claves ordenadas, sin espacios) no crea fila: se devuelve la existente.
+ * (nombre, revisión) y (nombre, hash) son únicos en la tabla; si otro nodo guarda a la vez, el
+ * INSERT perdedor se reintenta sobre la versión que acaba de aparecer.
+ * <p>
+ * Catálogo: cada fila guarda sus conteos de entidades y relaciones al guardarse, así el listado
+ * paginado se resuelve con una proyección que nunca lee el JSON.
+ */
+@Service
+public class ModelSpecService {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelSpecService.class);
+    private static final int MAX_CACHED = 256;
+    private static final int BACKFILL_BATCH = 200;
+    private static final int SAVE_ATTEMPTS = 3;
+
+    private final ModelSpecRepository repo;
+    private final ObjectMapper om;
+    private final ObjectMapper canonical;   // claves de objeto ordenadas: mismo contenido ⇒ mismo hash
+    private final SpecProperties props;
+    private final Object[] saveLocks = new Object[32];
+
+    private final Map<Long, Compiled> compiled = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Compiled> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    // árboles ya reconstruidos: la base del siguiente delta casi siempre es la última versión guardada
+    private final Map<Long, JsonNode> trees;
+
+    /** Huella de la fila (hash del contenido, o longitud + hash del JSON en filas antiguas) + spec compilado. */
+    private record Compiled(String stamp, ModelSpec spec) { }
+
+    /** Resultado de guardar: la fila (nueva o la idéntica que ya existía). */
+    public record Saved(ModelSpecEntity entity, boolean duplicate) { }
+
+    // healthgen.spec.parse: compilación real (los aciertos de la caché de compilados no cuentan)
+    private final Timer parseSnapshot;
+    private final Timer parseDelta;
+
+    public ModelSpecService(ModelSpecRepository repo, ObjectMapper om, SpecProperties props, MeterRegistry metrics) {
+        this.repo = repo;
+        this.om = om;
+        this.canonical = om.copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        this.props = props;
+        this.parseSnapshot = Timer.builder("healthgen.spec.parse").tag("storage", "snapshot").register(metrics);
+        this.parseDelta = Timer.builder("healthgen.spec.parse").tag("storage", "delta").register(metrics);
+        for (int i = 0; i < saveLocks.length; i++) saveLocks[i] = new Object();
+        int maxTrees = Math.max(1, props.getCachedTrees());
+        this.trees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, JsonNode> eldest) {
+                return size() > maxTrees;
+            }
+        };
+    }
+
+    public ModelSpecEntity find(Long id) {
+        return repo.findById(id).orElseThrow(() -> new ResourceNotFoundException("Spec no encontrado: " + id));
+    }
+
+    public ModelSpecEntity find(String name, int revision) {
+        return repo.findFirstByNameAndRevision(name, revision)
+                .orElseThrow(() -> new ResourceNotFoundException("Spec no encontrado: " + name + " v" + revision));
+    }
+
+    /** Varias filas en una sola consulta; los ids que no existen simplemente no aparecen. */
+    public Map<Long, ModelSpecEntity> findAll(Collection<Long> ids) {
+        Map<Long, ModelSpecEntity> out = new HashMap<>();
+        for (ModelSpecEntity e : repo.findAllById(ids)) out.put(e.getId(), e);
+        return out;
+    }
+
+    /** Spec compilado por id (desde caché si la fila no cambió). */
+    public ModelSpec load(Long id) throws IOException {
+        return compile(find(id));
+    }
+
+    public ModelSpec compile(ModelSpecEntity entity) throws IOException {
+        Long id = entity.getId();
+        String stamp = entity.contentStamp();
+        if (id != null) {
+            Compiled c;
+            synchronized (compiled) {
+                c = compiled.get(id);
+            }
+            if (c != null && c.stamp().equals(stamp)) return c.spec();
+        }
+
+        ModelSpec spec;
+        long t0 = System.nanoTime();
+        if (entity.isDelta()) {
+            try (JsonParser p = om.treeAsTokens(tree(entity))) {
+                spec = ModelSpecReader.read(p);
+            }
+            parseDelta.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        } else {
+            try (InputStream in = entity.openJson(); JsonParser p = om.createParser(in)) {
+                spec = ModelSpecReader.read(p);
+            }
+            parseSnapshot.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+        if (id != null) {
+            synchronized (compiled) {
+                compiled.put(id, new Compiled(stamp, spec));
+            }
+        }
+        return spec;
+    }
+
+    /** Compila en streaming (sin Map intermedio); mismos errores que {@link ModelSpec#fromMap}. */
+    public ModelSpec parse(String json) throws IOException {
+        try (JsonParser p = om.createParser(json)) {
+            return ModelSpecReader.read(p);
+        }
+    }
+
+    // ===================== Versiones =====================
+
+    /** JSON completo de la fila; si es un delta se reconstruye desde su snapshot. */
+    public String json(ModelSpecEntity entity) throws IOException {
+        return entity.isDelta() ? om.writeValueAsString(tree(entity)) : entity.getJson();
+    }
+
+    /** Metadatos de todas las versiones de un nombre (sin leer json ni deltas). */
+    public List<Map<String, Object>> versions(String name) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (ModelSpecRepository.VersionView v : repo.findByNameOrderByIdAsc(name)) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", v.getId());
+            m.put("revision", v.getRevision());
+            m.put("version", v.getVersion());
+            m.put("createdAt", v.getCreatedAt());
+            m.put("storage", v.getBaseId() == null ? "snapshot" : "delta");
+            if (v.getBaseId() != null) m.put("baseId", v.getBaseId());
+            out.add(m);
+        }
+        if (out.isEmpty()) throw new ResourceNotFoundException("No hay versiones de " + name);
+        return out;
+    }
+
+    /** Guarda el spec como nueva versión de su nombre (o devuelve la fila idéntica si ya existe). */
+    public Saved save(String name, String version, String json) throws IOException {
+        JsonNode target = om.readTree(json);
+        String hash = contentHash(target);
+        synchronized (saveLocks[Math.floorMod(name.hashCode(), saveLocks.length)]) {
+            for (int attempt = 1; ; attempt++) {
+                Optional<ModelSpecEntity> same = repo.findFirstByNameAndContentHash(name, hash);
+                if (same.isPresent()) return new Saved(same.get(), true);
+                try {
+                    return insert(name, version, json, target, hash);
+                } catch (DataIntegrityViolationException e) {
+                    // otro nodo guardó antes esa revisión (o ese mismo contenido): se relee la última y se reintenta
+                    if (attempt >= SAVE_ATTEMPTS) throw e;
+                    log.info("Spec {}: revisión ocupada por otro nodo, reintento {}", name, attempt);
+                }
+            }
+        }
+    }
+
+    private Saved insert(String name, String version, String json, JsonNode target, String hash) throws IOException {
+        ModelSpecEntity latest = repo.findFirstByNameOrderByIdDesc(name).orElse(null);
+        ModelSpecEntity entity = new ModelSpecEntity(null, name, version, null, Instant.now());
+        entity.setContentHash(hash);
+        entity.setRevision(latest == null ? 1
+                : latest.getRevision() != null ? latest.getRevision() + 1 : (int) repo.countByName(name) + 1);
+
+        summarize(entity, target);
+        int depth = latest == null ? 0 : (latest.getDepth() == null ? 0 : latest.getDepth()) + 1;
+        byte[] packed = depth > 0 && depth < props.getSnapshotEvery() ? delta(tree(latest), target, json) : null;
+        if (packed != null) {
+            entity.setDelta(packed);
+            entity.setBaseId(latest.getId());
+            entity.setDepth(depth);
+        } else {
+            entity.setJson(json);
+            entity.setDepth(0);
+        }
+        entity = repo.save(entity);
+        synchronized (trees) {
+            trees.put(entity.getId(), target);
+        }
+        return new Saved(entity, false);
+    }
+
+    // ===================== Catálogo =====================
+
+    /** Página del catálogo filtrada por texto (nombre o versión) y rango de fechas [from, to]; todo opcional. */
+    public Page<ModelSpecRepository.SummaryView> catalog(String q, LocalDate from, LocalDate to, Pageable pageable) {
+        String like = q == null || q.isBlank() ? null : "%" + q.trim().toLowerCase(Locale.ROOT) + "%";
+        Instant start = from == null ? null : from.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant end = to == null ? null : to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        return repo.catalog(like, start, end, pageable);
+    }
+
+    /** Tareas sobre filas antiguas (formato de texto plano, sin resumen), en segundo plano al arrancar. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        Thread t = new Thread(() -> {
+            migrateLegacyJson();
+            backfillSummaries();
+        }, "spec-backfill");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Pasa el JSON de texto plano (columna json) al formato comprimido (json_z), por lotes. */
+    public int migrateLegacyJson() {
+        int done = 0;
+        long before = 0, after = 0;
+        try {
+            List<Long> ids;
+            while (!(ids = repo.findIdsWithLegacyJson(after, PageRequest.of(0, BACKFILL_BATCH))).isEmpty()) {
+                for (Long id : ids) {
+                    after = id;
+                    ModelSpecEntity entity = repo.findById(id).orElse(null);
+                    if (entity == null || !entity.hasLegacyJson()) continue;
+                    String json = entity.getJson();
+                    before += json.length();
+                    entity.setJson(json);
+                    repo.save(entity);
+                    done++;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Migración de specs a json comprimido interrumpida tras {} filas: {}", done, e.getMessage());
+        }
+        if (done > 0) log.info("Specs migrados a json comprimido: {} filas ({} caracteres de texto plano)", done, before);
+        return done;
+    }
+
+    /** Rellena entityCount/relationCount donde falten, por lotes. Devuelve cuántas filas actualizó. */
+    public int backfillSummaries() {
+        int done = 0;
+        long after = 0;
+        try {
+            List<Long> ids;
+            while (!(ids = repo.findIdsWithoutSummary(after, PageRequest.of(0, BACKFILL_BATCH))).isEmpty()) {
+                for (Long id : ids) {
+                    after = id;
+                    ModelSpecEntity entity = repo.findById(id).orElse(null);
+                    if (entity == null) continue;
+                    try {
+                        summarize(entity, tree(entity));
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("Spec {} ilegible, se cataloga sin conteos: {}", id, e.getMessage());
+                        entity.setEntityCount(0);
+                        entity.setRelationCount(0);
+                    }
+                    repo.save(entity);
+                    done++;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Backfill del catálogo interrumpido tras {} filas: {}", done, e.getMessage());
+        }
+        if (done > 0) log.info("Catálogo de specs: {} filas antiguas resumidas", done);
+        return done;
+    }
+
+    /** Mismas reglas que {@link ModelSpec#fromMap}: entidades con nombre (sin repetir) y relaciones con ambos extremos. */
+    private static void summarize(ModelSpecEntity entity, JsonNode spec) {
+        Set<String> names = new HashSet<>();
+        for (JsonNode e : spec.path("entities")) {
+            String n = e.path("name").asText("");
+            if (!n.isBlank()) names.add(n);
+        }
+        int relations = 0;
+        for (JsonNode r : spec.path("relations")) {
+            if (r.hasNonNull("source") && r.hasNonNull("target")) relations++;
+        }
+        entity.setEntityCount(names.size());
+        entity.setRelationCount(relations);
+    }
+
+    /** Delta comprimido de base a target; null si no reproduce el JSON exacto o no compensa. */
+    private byte[] delta(JsonNode base, JsonNode target, String json) throws IOException {
+        JsonNode d = JsonDelta.diff(base, target);
+        if (d == null || !om.writeValueAsString(JsonDelta.apply(base, d)).equals(json)) return null;
+        byte[] packed = CompressedJson.deflate(om.writeValueAsBytes(d), Deflater.BEST_COMPRESSION, 0);
+        return packed.length > json.length() * props.getMaxDeltaRatio() ? null : packed;
+    }
+
+    /** Árbol JSON de una versión: sube por baseId hasta un snapshot (o una versión en caché) y aplica los deltas. */
+    private JsonNode tree(ModelSpecEntity entity) throws IOException {
+        JsonNode base = cachedTree(entity.getId());
+        if (base != null) return base;
+
+        Deque<ModelSpecEntity> chain = new ArrayDeque<>();
+        ModelSpecEntity cur = entity;
+        while (cur.isDelta()) {
+            chain.push(cur);
+            base = cachedTree(cur.getBaseId());
+            if (base != null) break;
+            cur = find(cur.getBaseId());
+        }
+        if (base == null) {
+            try (InputStream in = cur.openJson()) {
+                base = om.readTree(in);
+            }
+        }
+        while (!chain.isEmpty()) {
+            ModelSpecEntity d = chain.pop();
+            base = JsonDelta.apply(base, om.readTree(CompressedJson.inflate(d.getDelta(), 0, d.getDelta().length)));
+        }
+        if (entity.getId() != null) {
+            synchronized (trees) {
+                trees.put(entity.getId(), base);
+            }
+        }
+        return base;
+    }
+
+    private JsonNode cachedTree(Long id) {
+        if (id == null) return null;
+        synchronized (trees) {
+            return trees.get(id);
+        }
+    }
+
+    /** SHA-256 del JSON canónico: ni el orden de las claves ni los espacios cambian el hash (el de los arrays sí). */
+    private String contentHash(JsonNode spec) throws IOException {
+        byte[] bytes = canonical.writeValueAsBytes(canonical.treeToValue(spec, Object.class));
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
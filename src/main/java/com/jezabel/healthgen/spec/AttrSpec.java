@@ -0,0 +1,8 @@
+package com.jezabel.healthgen.spec;
+
+/**
+ * Atributo de una entidad.
+ * @param type tipo lógico (STRING, INT, LONG...); puede ser null (se trata como STRING)
+ * @param generated estrategia de generación (p.ej. IDENTITY) o null
+ */
+public record AttrSpec(String name, String type, boolean pk, String generated) { }
@@ -0,0 +1,13 @@
+package com.jezabel.healthgen.spec;
+
+/** Cardinalidad efectiva de un extremo de relación. */
+public enum Card {
+    ONE, MANY;
+
+    /** "*", "0..*", "1..*" son MANY; el resto (incluido "0..1" o vacío) es ONE. */
+    public static Card parse(String mult) {
+        String m = (mult == null) ? "" : mult.trim();
+        if (m.equals("*") || m.equals("0..*") || m.equals("1..*")) return MANY;
+        return ONE;
+    }
+}
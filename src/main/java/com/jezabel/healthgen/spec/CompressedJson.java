@@ -0,0 +1,114 @@
+package com.jezabel.healthgen.spec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Formato binario del JSON de un spec en base de datos. El primer byte es la versión del formato:
+ * <pre>
+ * 0  UTF-8 tal cual (specs muy pequeños, donde comprimir no compensa)
+ * 1  UTF-8 comprimido con DEFLATE (zlib)
+ * </pre>
+ * Un formato nuevo solo necesita otro número: las filas antiguas se siguen leyendo.
+ */
+public final class CompressedJson {
+
+    public static final byte RAW = 0;
+    public static final byte DEFLATE = 1;
+
+    private static final int MIN_DEFLATE = 256;
+
+    private CompressedJson() { }
+
+    public static byte[] encode(String json) {
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length >= MIN_DEFLATE) {
+            byte[] packed = deflate(utf8, Deflater.DEFAULT_COMPRESSION, 1);
+            if (packed.length < utf8.length + 1) {
+                packed[0] = DEFLATE;
+                return packed;
+            }
+        }
+        byte[] out = new byte[utf8.length + 1];
+        out[0] = RAW;
+        System.arraycopy(utf8, 0, out, 1, utf8.length);
+        return out;
+    }
+
+    public static String decode(byte[] data) throws IOException {
+        return switch (version(data)) {
+            case RAW -> new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+            case DEFLATE -> new String(inflate(data, 1, data.length - 1), StandardCharsets.UTF_8);
+            default -> throw unknown(data[0]);
+        };
+    }
+
+    /** Lectura en streaming (para Jackson) sin descomprimir a un String intermedio. */
+    public static InputStream open(byte[] data) throws IOException {
+        InputStream raw = new ByteArrayInputStream(data, 1, data.length - 1);
+        return switch (version(data)) {
+            case RAW -> raw;
+            case DEFLATE -> new InflaterInputStream(raw, new Inflater(), 8192) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end(); // el Inflater es nuestro: InflaterInputStream no lo libera
+                }
+            };
+            default -> throw unknown(data[0]);
+        };
+    }
+
+    // ===================== DEFLATE (también para los deltas de versiones) =====================
+
+    /** Comprime dejando {@code headroom} bytes libres al principio del resultado. */
+    public static byte[] deflate(byte[] data, int level, int headroom) {
+        Deflater d = new Deflater(level);
+        try {
+            d.setInput(data);
+            d.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            out.write(new byte[headroom], 0, headroom);
+            byte[] buf = new byte[8192];
+            while (!d.finished()) out.write(buf, 0, d.deflate(buf));
+            return out.toByteArray();
+        } finally {
+            d.end();
+        }
+    }
+
+    public static byte[] inflate(byte[] data, int off, int len) throws IOException {
+        Inflater inf = new Inflater();
+        try {
+            inf.setInput(data, off, len);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(len * 4);
+            byte[] buf = new byte[8192];
+            while (!inf.finished()) {
+                int n = inf.inflate(buf);
+                if (n == 0 && (inf.needsInput() || inf.needsDictionary())) throw new IOException("JSON comprimido truncado");
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("JSON comprimido corrupto: " + e.getMessage(), e);
+        } finally {
+            inf.end();
+        }
+    }
+
+    private static byte version(byte[] data) throws IOException {
+        if (data.length == 0) throw new IOException("JSON comprimido vacío");
+        return data[0];
+    }
+
+    private static IOException unknown(byte version) {
+        return new IOException("Formato de spec desconocido: " + version);
+    }
+}
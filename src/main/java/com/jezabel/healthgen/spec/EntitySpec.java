@@ -0,0 +1,11 @@
+package com.jezabel.healthgen.spec;
+
+import java.util.List;
+
+/** Entidad (clase UML) con sus atributos en el orden del diagrama. */
+public record EntitySpec(String name, List<AttrSpec> attributes) {
+
+    public EntitySpec {
+        attributes = List.copyOf(attributes);
+    }
+}
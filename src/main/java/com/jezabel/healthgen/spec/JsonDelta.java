@@ -0,0 +1,158 @@
+package com.jezabel.healthgen.spec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.*;
+
+/**
+ * Diferencia estructural entre dos JSON (el spec guardado), pensada para versiones consecutivas
+ * de un mismo diagrama: solo viaja lo que cambió.
+ * <pre>
+ * {"v": valor}                               reemplazo completo
+ * {"o": {campo: delta}, "d": [campos], "f": [orden]}   objeto: cambiados, borrados y (si cambia) orden de campos
+ * {"k": "name", "n": [nombres], "o": {nombre: delta}}  array de objetos con "name" único (entidades, atributos):
+ *                                                      orden final + solo los elementos nuevos o cambiados
+ * </pre>
+ * Aplicar un delta a su base reproduce exactamente el destino, orden de campos incluido.
+ */
+public final class JsonDelta {
+
+    private static final JsonNodeFactory NF = JsonNodeFactory.instance;
+    private static final String KEY = "name";
+
+    private JsonDelta() { }
+
+    /** Delta de {@code from} a {@code to}; null si son iguales. */
+    public static JsonNode diff(JsonNode from, JsonNode to) {
+        if (from.equals(to) && sameOrder(from, to)) return null;
+        if (from instanceof ObjectNode a && to instanceof ObjectNode b) return diffObject(a, b);
+        if (from instanceof ArrayNode a && to instanceof ArrayNode b && keyed(a) && keyed(b)) return diffKeyed(a, b);
+        return NF.objectNode().set("v", to.deepCopy());
+    }
+
+    /** Nuevo árbol (no modifica {@code base}). */
+    public static JsonNode apply(JsonNode base, JsonNode delta) {
+        if (delta == null) return base.deepCopy();
+        if (delta.has("v")) return delta.get("v").deepCopy();
+        if (delta.has("k")) return applyKeyed(base, delta);
+        return applyObject(base, delta);
+    }
+
+    // ===================== Objetos =====================
+    private static ObjectNode diffObject(ObjectNode a, ObjectNode b) {
+        ObjectNode out = NF.objectNode();
+        ObjectNode changed = NF.objectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> it = b.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> f = it.next();
+            JsonNode old = a.get(f.getKey());
+            if (old == null) {
+                changed.set(f.getKey(), NF.objectNode().set("v", f.getValue().deepCopy()));
+            } else {
+                JsonNode d = diff(old, f.getValue());
+                if (d != null) changed.set(f.getKey(), d);
+            }
+        }
+        if (!changed.isEmpty()) out.set("o", changed);
+
+        ArrayNode deleted = NF.arrayNode();
+        for (Iterator<String> it = a.fieldNames(); it.hasNext(); ) {
+            String name = it.next();
+            if (!b.has(name)) deleted.add(name);
+        }
+        if (!deleted.isEmpty()) out.set("d", deleted);
+
+        // orden que saldría al aplicar: los de la base que quedan y después los nuevos
+        List<String> natural = new ArrayList<>();
+        a.fieldNames().forEachRemaining(n -> { if (b.has(n)) natural.add(n); });
+        b.fieldNames().forEachRemaining(n -> { if (!a.has(n)) natural.add(n); });
+        List<String> wanted = new ArrayList<>();
+        b.fieldNames().forEachRemaining(wanted::add);
+        if (!natural.equals(wanted)) {
+            ArrayNode order = out.putArray("f");
+            wanted.forEach(order::add);
+        }
+        return out;
+    }
+
+    private static JsonNode applyObject(JsonNode base, JsonNode delta) {
+        ObjectNode out = base instanceof ObjectNode o ? o.deepCopy() : NF.objectNode();
+        for (JsonNode d : delta.path("d")) out.remove(d.asText());
+        for (Iterator<Map.Entry<String, JsonNode>> it = delta.path("o").fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> f = it.next();
+            JsonNode old = out.get(f.getKey());
+            out.set(f.getKey(), apply(old == null ? NF.nullNode() : old, f.getValue()));
+        }
+        if (delta.has("f")) {
+            ObjectNode ordered = NF.objectNode();
+            for (JsonNode n : delta.get("f")) ordered.set(n.asText(), out.get(n.asText()));
+            return ordered;
+        }
+        return out;
+    }
+
+    // ===================== Arrays con clave "name" =====================
+    private static boolean keyed(ArrayNode arr) {
+        if (arr.isEmpty()) return false;
+        Set<String> seen = new HashSet<>();
+        for (JsonNode e : arr) {
+            JsonNode k = e.get(KEY);
+            if (!(e instanceof ObjectNode) || k == null || !k.isTextual() || !seen.add(k.asText())) return false;
+        }
+        return true;
+    }
+
+    private static JsonNode diffKeyed(ArrayNode a, ArrayNode b) {
+        Map<String, JsonNode> old = new HashMap<>();
+        for (JsonNode e : a) old.put(e.get(KEY).asText(), e);
+
+        ObjectNode out = NF.objectNode();
+        out.put("k", KEY);
+        ArrayNode names = out.putArray("n");
+        ObjectNode changed = NF.objectNode();
+        for (JsonNode e : b) {
+            String name = e.get(KEY).asText();
+            names.add(name);
+            JsonNode prev = old.get(name);
+            JsonNode d = prev == null ? NF.objectNode().set("v", e.deepCopy()) : diff(prev, e);
+            if (d != null) changed.set(name, d);
+        }
+        if (!changed.isEmpty()) out.set("o", changed);
+        return out;
+    }
+
+    private static JsonNode applyKeyed(JsonNode base, JsonNode delta) {
+        String key = delta.get("k").asText();
+        Map<String, JsonNode> old = new HashMap<>();
+        for (JsonNode e : base) {
+            JsonNode k = e.get(key);
+            if (k != null) old.put(k.asText(), e);
+        }
+        JsonNode changed = delta.path("o");
+        ArrayNode out = NF.arrayNode();
+        for (JsonNode n : delta.get("n")) {
+            String name = n.asText();
+            JsonNode prev = old.get(name);
+            JsonNode d = changed.get(name);
+            out.add(d != null ? apply(prev == null ? NF.nullNode() : prev, d) : prev.deepCopy());
+        }
+        return out;
+    }
+
+    private static boolean sameOrder(JsonNode a, JsonNode b) {
+        if (a instanceof ObjectNode oa && b instanceof ObjectNode ob) {
+            Iterator<String> ia = oa.fieldNames(), ib = ob.fieldNames();
+            while (ia.hasNext() && ib.hasNext()) {
+                String na = ia.next();
+                if (!na.equals(ib.next()) || !sameOrder(oa.get(na), ob.get(na))) return false;
+            }
+            return !ia.hasNext() && !ib.hasNext();
+        }
+        if (a instanceof ArrayNode aa && b instanceof ArrayNode ab) {
+            for (int i = 0; i < aa.size(); i++) if (!sameOrder(aa.get(i), ab.get(i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,267 @@
+package com.jezabel.healthgen.spec;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Representación tipada e inmutable de un ModelSpec (el JSON del diagrama).
+ * Se compila una sola vez y la comparten codegen, documentación e IA:
+ * nombres canonicalizados (una sola instancia por nombre), RelKind/Card ya resueltos
+ * e índices por nombre de entidad.
+ */
+public final class ModelSpec {
+
+    public static final String DEFAULT_NAME = "generated-app";
+    public static final String DEFAULT_PACKAGE = "com.example.demo";
+
+    private final String name;
+    private final String version;
+    private final String packageBase;
+    private final List<EntitySpec> entities;
+    private final List<RelSpec> relations;
+
+    private final Map<String, EntitySpec> entitiesByName;
+    private final Map<String, List<RelSpec>> relationsByEntity;
+    private final List<String> duplicateEntities;
+    private volatile String fingerprint;
+    private volatile SpecValidator.Report validation;
+
+    private ModelSpec(String name, String version, String packageBase,
+                      Collection<EntitySpec> entities, List<RelSpec> relations, List<String> duplicateEntities) {
+        this.name = name;
+        this.version = version;
+        this.packageBase = packageBase;
+        this.entities = List.copyOf(entities);
+        this.relations = List.copyOf(relations);
+
+        Map<String, EntitySpec> byName = new LinkedHashMap<>();
+        for (EntitySpec e : this.entities) byName.put(e.name(), e);
+        this.entitiesByName = Collections.unmodifiableMap(byName);
+
+        Map<String, List<RelSpec>> byEntity = new HashMap<>();
+        for (RelSpec r : this.relations) {
+            byEntity.computeIfAbsent(r.source(), k -> new ArrayList<>()).add(r);
+            if (!r.isSelf()) byEntity.computeIfAbsent(r.target(), k -> new ArrayList<>()).add(r);
+        }
+        byEntity.replaceAll((k, v) -> List.copyOf(v));
+        this.relationsByEntity = byEntity;
+        this.duplicateEntities = List.copyOf(duplicateEntities);
+    }
+
+    public String name() { return name; }
+    public String version() { return version; }
+    public String packageBase() { return packageBase; }
+    public List<EntitySpec> entities() { return entities; }
+    public List<RelSpec> relations() { return relations; }
+
+    public EntitySpec entity(String entityName) { return entitiesByName.get(entityName); }
+
+    /** Nombres de entidad que aparecían más de una vez en el JSON (se quedó la última definición). */
+    public List<String> duplicateEntities() { return duplicateEntities; }
+
+    /** Relaciones donde participa la entidad, en el orden del spec (las reflexivas una sola vez). */
+    public List<RelSpec> relationsOf(String entityName) {
+        return relationsByEntity.getOrDefault(entityName, List.of());
+    }
+
+    /** SHA-256 (hex) de la forma canónica del spec: igual contenido ⇒ igual huella. */
+    public String fingerprint() {
+        String fp = fingerprint;
+        if (fp == null) {
+            fp = computeFingerprint();
+            fingerprint = fp;
+        }
+        return fp;
+    }
+
+    /**
+     * Diagnósticos de {@link SpecValidator}. El spec es inmutable, así que se validan una sola vez:
+     * el controlador que responde 422 y el generador que viene detrás comparten el mismo informe.
+     */
+    public SpecValidator.Report validation() {
+        SpecValidator.Report r = validation;
+        if (r == null) {
+            r = SpecValidator.validate(this);
+            validation = r;
+        }
+        return r;
+    }
+
+    private String computeFingerprint() {
+        StringBuilder sb = new StringBuilder(256);
+        field(sb, name); field(sb, version); field(sb, packageBase);
+        for (EntitySpec e : entities) {
+            sb.append('E'); field(sb, e.name());
+            for (AttrSpec a : e.attributes()) {
+                sb.append('A'); field(sb, a.name()); field(sb, a.type());
+                sb.append(a.pk() ? '1' : '0'); field(sb, a.generated());
+            }
+        }
+        for (RelSpec r : relations) {
+            sb.append('R'); field(sb, r.type()); field(sb, r.source()); field(sb, r.target());
+            field(sb, r.multSource()); field(sb, r.multTarget());
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // longitud + valor: evita colisiones entre "ab"+"c" y "a"+"bc"; null se distingue de ""
+    private static void field(StringBuilder sb, String v) {
+        if (v == null) { sb.append("-;"); return; }
+        sb.append(v.length()).append(':').append(v).append(';');
+    }
+
+    /** Vuelve al formato JSON del front (Map), p.ej. para responder desde la API. */
+    public Map<String, Object> toMap() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("name", name);
+        out.put("version", version);
+        out.put("packageBase", packageBase);
+        List<Map<String, Object>> es = new ArrayList<>(entities.size());
+        for (EntitySpec e : entities) {
+            List<Map<String, Object>> attrs = new ArrayList<>(e.attributes().size());
+            for (AttrSpec a : e.attributes()) {
+                Map<String, Object> am = new LinkedHashMap<>();
+                am.put("name", a.name());
+                am.put("type", a.type());
+                if (a.pk()) am.put("pk", true);
+                if (a.generated() != null) am.put("generated", a.generated());
+                attrs.add(am);
+            }
+            Map<String, Object> em = new LinkedHashMap<>();
+            em.put("name", e.name());
+            em.put("attributes", attrs);
+            es.add(em);
+        }
+        out.put("entities", es);
+        if (!relations.isEmpty()) {
+            List<Map<String, Object>> rs = new ArrayList<>(relations.size());
+            for (RelSpec r : relations) {
+                Map<String, Object> rm = new LinkedHashMap<>();
+                rm.put("type", r.type());
+                rm.put("source", r.source());
+                rm.put("target", r.target());
+                if (r.multSource() != null) rm.put("multSource", r.multSource());
+                if (r.multTarget() != null) rm.put("multTarget", r.multTarget());
+                rs.add(rm);
+            }
+            out.put("relations", rs);
+        }
+        return out;
+    }
+
+    // ===================== Construcción =====================
+
+    public static Builder builder() { return new Builder(); }
+
+    /**
+     * Compila el spec desde el Map que produce Jackson. Mismas reglas que el generador:
+     * entidades sin nombre y atributos sin nombre se ignoran, relaciones sin extremos también.
+     */
+    public static ModelSpec fromMap(Map<String, Object> spec) {
+        Builder b = builder()
+                .name(str(spec.get("name"), "name"))
+                .version(str(spec.get("version"), "version"))
+                .packageBase(str(spec.get("packageBase"), "packageBase"));
+
+        for (Map<String, Object> e : list(spec.get("entities"), "entities")) {
+            String entityName = str(e.get("name"), "entities[].name");
+            if (entityName == null || entityName.isBlank()) continue;
+            List<AttrSpec> attrs = new ArrayList<>();
+            for (Map<String, Object> a : list(e.get("attributes"), "entities[].attributes")) {
+                String an = str(a.get("name"), "attributes[].name");
+                if (an == null || an.isBlank()) continue;
+                attrs.add(b.attr(an, str(a.get("type"), "attributes[].type"),
+                        Boolean.TRUE.equals(a.get("pk")), opt(a.get("generated"))));
+            }
+            b.entity(entityName, attrs);
+        }
+
+        for (Map<String, Object> r : list(spec.get("relations"), "relations")) {
+            b.relation(str(r.get("type"), "relations[].type"),
+                    str(r.get("source"), "relations[].source"),
+                    str(r.get("target"), "relations[].target"),
+                    opt(r.get("multSource")), opt(r.get("multTarget")));
+        }
+        return b.build();
+    }
+
+    private static String str(Object o, String field) {
+        if (o == null || o instanceof String) return (String) o;
+        throw new IllegalArgumentException("Spec inválido: '" + field + "' debe ser texto");
+    }
+
+    private static String opt(Object o) { return o == null ? null : o.toString(); }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> list(Object o, String field) {
+        if (o == null) return List.of();
+        if (!(o instanceof List<?> l)) {
+            throw new IllegalArgumentException("Spec inválido: '" + field + "' debe ser una lista");
+        }
+        for (Object item : l) {
+            if (!(item instanceof Map)) {
+                throw new IllegalArgumentException("Spec inválido: '" + field + "' debe contener objetos");
+            }
+        }
+        return (List<Map<String, Object>>) l;
+    }
+
+    /**
+     * Builder que canonicaliza nombres: todas las apariciones de "Paciente" (entidad, extremos
+     * de relación) o de "id" (atributos) comparten la misma instancia de String.
+     */
+    public static final class Builder {
+        private final Map<String, String> names = new HashMap<>();
+        private String name;
+        private String version;
+        private String packageBase;
+        private final Map<String, EntitySpec> entities = new LinkedHashMap<>();
+        private final List<RelSpec> relations = new ArrayList<>();
+        private final List<String> duplicates = new ArrayList<>();
+
+        private Builder() { }
+
+        public Builder name(String name) { this.name = name; return this; }
+        public Builder version(String version) { this.version = version; return this; }
+        public Builder packageBase(String packageBase) { this.packageBase = packageBase; return this; }
+
+        public AttrSpec attr(String name, String type, boolean pk, String generated) {
+            return new AttrSpec(intern(name), intern(type), pk, intern(generated));
+        }
+
+        /** Una entidad repetida reemplaza a la anterior pero conserva su posición. */
+        public Builder entity(String entityName, List<AttrSpec> attrs) {
+            String n = intern(entityName);
+            if (entities.put(n, new EntitySpec(n, attrs)) != null) duplicates.add(n);
+            return this;
+        }
+
+        public Builder relation(String type, String source, String target, String multSource, String multTarget) {
+            if (source == null || target == null) return this;
+            relations.add(RelSpec.of(intern(type), intern(source), intern(target),
+                    intern(multSource), intern(multTarget)));
+            return this;
+        }
+
+        public ModelSpec build() {
+            return new ModelSpec(
+                    name == null ? DEFAULT_NAME : name,
+                    version,
+                    packageBase == null ? DEFAULT_PACKAGE : packageBase,
+                    entities.values(), relations, duplicates);
+        }
+
+        private String intern(String s) {
+            if (s == null) return null;
+            String prev = names.putIfAbsent(s, s);
+            return prev == null ? s : prev;
+        }
+    }
+}
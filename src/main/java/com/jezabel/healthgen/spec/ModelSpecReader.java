@@ -0,0 +1,227 @@
+package com.jezabel.healthgen.spec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compila un {@link ModelSpec} directamente desde los tokens de Jackson, en una sola pasada y sin
+ * construir el árbol de Map/List intermedio. Mismas reglas y mismos mensajes que
+ * {@link ModelSpec#fromMap}: si hay varios errores se informa el mismo que informaría fromMap
+ * (nombre, versión y paquete primero; después entidades y relaciones en orden), aunque en el
+ * JSON aparezcan en otro orden.
+ */
+public final class ModelSpecReader {
+
+    private final JsonParser p;
+    private final ModelSpec.Builder b = ModelSpec.builder();
+
+    // primer error de cada tramo, en el orden en que los comprueba fromMap
+    private String nameErr, versionErr, packageErr;
+    private String entitiesShapeErr, entityErr, relationsShapeErr, relationErr;
+
+    private record Entity(String name, List<AttrSpec> attrs) { }
+    private record Rel(String type, String source, String target, String multSource, String multTarget) { }
+
+    private List<Entity> entities = List.of();
+    private List<Rel> relations = List.of();
+
+    private ModelSpecReader(JsonParser p) {
+        this.p = p;
+    }
+
+    /** Lee un spec completo; el parser queda tras el objeto raíz (no se cierra). */
+    public static ModelSpec read(JsonParser p) throws IOException {
+        return new ModelSpecReader(p).readSpec();
+    }
+
+    private ModelSpec readSpec() throws IOException {
+        JsonToken t = p.currentToken() != null ? p.currentToken() : p.nextToken();
+        if (t != JsonToken.START_OBJECT) throw MismatchedInputException.from(p, ModelSpec.class, "El spec debe ser un objeto JSON");
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            // una clave repetida reemplaza a la anterior, como en el Map de Jackson
+            switch (field) {
+                case "name" -> { nameErr = null; b.name(str("name", e -> nameErr = e)); }
+                case "version" -> { versionErr = null; b.version(str("version", e -> versionErr = e)); }
+                case "packageBase" -> { packageErr = null; b.packageBase(str("packageBase", e -> packageErr = e)); }
+                case "entities" -> readEntities();
+                case "relations" -> readRelations();
+                default -> p.skipChildren();
+            }
+        }
+
+        String err = first(nameErr, versionErr, packageErr, entitiesShapeErr, entityErr, relationsShapeErr, relationErr);
+        if (err != null) throw new IllegalArgumentException(err);
+
+        for (Entity e : entities) b.entity(e.name(), e.attrs());
+        for (Rel r : relations) b.relation(r.type(), r.source(), r.target(), r.multSource(), r.multTarget());
+        return b.build();
+    }
+
+    // ===================== Entidades =====================
+    private void readEntities() throws IOException {
+        entitiesShapeErr = null;
+        entityErr = null;
+        entities = new ArrayList<>();
+        if (!list("entities", e -> entitiesShapeErr = e)) return;
+
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (p.currentToken() != JsonToken.START_OBJECT) {
+                if (entitiesShapeErr == null) entitiesShapeErr = objectsErr("entities");
+                p.skipChildren();
+                continue;
+            }
+            readEntity();
+        }
+    }
+
+    private void readEntity() throws IOException {
+        String[] nameErr = new String[1], shapeErr = new String[1], attrErr = new String[1];
+        String name = null;
+        List<AttrSpec> attrs = new ArrayList<>();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "name" -> { nameErr[0] = null; name = str("entities[].name", e -> nameErr[0] = e); }
+                case "attributes" -> {
+                    shapeErr[0] = null;
+                    attrErr[0] = null;
+                    attrs = new ArrayList<>();
+                    if (list("entities[].attributes", e -> shapeErr[0] = e)) readAttributes(attrs, shapeErr, attrErr);
+                }
+                default -> p.skipChildren();
+            }
+        }
+        // fromMap ignora la entidad sin nombre antes de mirar sus atributos
+        String err = nameErr[0] != null ? nameErr[0]
+                : name == null || name.isBlank() ? null
+                : first(shapeErr[0], attrErr[0]);
+        if (err != null) {
+            if (entityErr == null) entityErr = err;
+            return;
+        }
+        if (name != null && !name.isBlank()) entities.add(new Entity(name, attrs));
+    }
+
+    private void readAttributes(List<AttrSpec> attrs, String[] shapeErr, String[] attrErr) throws IOException {
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (p.currentToken() != JsonToken.START_OBJECT) {
+                if (shapeErr[0] == null) shapeErr[0] = objectsErr("entities[].attributes");
+                p.skipChildren();
+                continue;
+            }
+            String[] nameErr = new String[1], typeErr = new String[1];
+            String name = null, type = null, generated = null;
+            boolean pk = false;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "name" -> { nameErr[0] = null; name = str("attributes[].name", e -> nameErr[0] = e); }
+                    case "type" -> { typeErr[0] = null; type = str("attributes[].type", e -> typeErr[0] = e); }
+                    case "pk" -> { pk = p.currentToken() == JsonToken.VALUE_TRUE; p.skipChildren(); }
+                    case "generated" -> generated = opt();
+                    default -> p.skipChildren();
+                }
+            }
+            String err = nameErr[0] != null ? nameErr[0] : name == null || name.isBlank() ? null : typeErr[0];
+            if (err != null) {
+                if (attrErr[0] == null) attrErr[0] = err;
+            } else if (name != null && !name.isBlank()) {
+                attrs.add(b.attr(name, type, pk, generated));
+            }
+        }
+    }
+
+    // ===================== Relaciones =====================
+    private void readRelations() throws IOException {
+        relationsShapeErr = null;
+        relationErr = null;
+        relations = new ArrayList<>();
+        if (!list("relations", e -> relationsShapeErr = e)) return;
+
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (p.currentToken() != JsonToken.START_OBJECT) {
+                if (relationsShapeErr == null) relationsShapeErr = objectsErr("relations");
+                p.skipChildren();
+                continue;
+            }
+            String[] typeErr = new String[1], sourceErr = new String[1], targetErr = new String[1];
+            String type = null, source = null, target = null, multSource = null, multTarget = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "type" -> { typeErr[0] = null; type = str("relations[].type", e -> typeErr[0] = e); }
+                    case "source" -> { sourceErr[0] = null; source = str("relations[].source", e -> sourceErr[0] = e); }
+                    case "target" -> { targetErr[0] = null; target = str("relations[].target", e -> targetErr[0] = e); }
+                    case "multSource" -> multSource = opt();
+                    case "multTarget" -> multTarget = opt();
+                    default -> p.skipChildren();
+                }
+            }
+            String err = first(typeErr[0], sourceErr[0], targetErr[0]);
+            if (err != null) {
+                if (relationErr == null) relationErr = err;
+            } else {
+                relations.add(new Rel(type, source, target, multSource, multTarget));
+            }
+        }
+    }
+
+    // ===================== Valores =====================
+    private interface ErrorSink {
+        void accept(String message);
+    }
+
+    /** Texto o null; cualquier otro valor es error (y se salta). */
+    private String str(String field, ErrorSink err) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_STRING) return p.getText();
+        if (t != JsonToken.VALUE_NULL) {
+            err.accept("Spec inválido: '" + field + "' debe ser texto");
+            p.skipChildren();
+        }
+        return null;
+    }
+
+    /** true si el valor actual es un array (el parser queda en START_ARRAY); null cuenta como lista vacía. */
+    private boolean list(String field, ErrorSink err) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.START_ARRAY) return true;
+        if (t != JsonToken.VALUE_NULL) {
+            err.accept("Spec inválido: '" + field + "' debe ser una lista");
+            p.skipChildren();
+        }
+        return false;
+    }
+
+    /** Como {@code toString()} del valor que daría el Map de Jackson. */
+    private String opt() throws IOException {
+        return switch (p.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_STRING -> p.getText();
+            case VALUE_TRUE -> "true";
+            case VALUE_FALSE -> "false";
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> p.getNumberValue().toString();
+            default -> String.valueOf(p.readValueAs(Object.class));
+        };
+    }
+
+    private static String objectsErr(String field) {
+        return "Spec inválido: '" + field + "' debe contener objetos";
+    }
+
+    private static String first(String... errors) {
+        for (String e : errors) if (e != null) return e;
+        return null;
+    }
+}
@@ -0,0 +1,27 @@
+package com.jezabel.healthgen.spec;
+
+import java.util.Locale;
+
+/** Tipo de relación UML. Acepta los nombres de JointJS ("uml.Association", "custom.Composition"...). */
+public enum RelKind {
+    ASSOCIATION, AGGREGATION, COMPOSITION, GENERALIZATION, DEPENDENCY, REALIZATION, UNKNOWN;
+
+    public static RelKind parse(String raw) {
+        if (raw == null) return UNKNOWN;
+        String s = raw.toLowerCase(Locale.ROOT).replace("uml.", "").replace("custom.", "");
+        return switch (s) {
+            case "association" -> ASSOCIATION;
+            case "aggregation" -> AGGREGATION;
+            case "composition" -> COMPOSITION;
+            case "generalization" -> GENERALIZATION;
+            case "dependency" -> DEPENDENCY;
+            case "realization" -> REALIZATION;
+            default -> UNKNOWN;
+        };
+    }
+
+    /** Relaciones que se traducen a campos JPA. */
+    public boolean isStructural() {
+        return this == ASSOCIATION || this == AGGREGATION || this == COMPOSITION;
+    }
+}
@@ -0,0 +1,33 @@
+package com.jezabel.healthgen.spec;
+
+/**
+ * Relación entre dos entidades. {@code kind} y las cardinalidades se resuelven una sola vez
+ * al compilar el spec; {@code type} conserva el texto original para documentación.
+ */
+public record RelSpec(String type, RelKind kind, String source, String target,
+                      String multSource, String multTarget,
+                      Card sourceCard, Card targetCard) {
+
+    public static RelSpec of(String type, String source, String target, String multSource, String multTarget) {
+        RelKind kind = RelKind.parse(type);
+        Card cSrc, cTgt;
+        if (kind == RelKind.ASSOCIATION) {
+            cSrc = Card.parse(multSource);
+            cTgt = Card.parse(multTarget);
+        } else if (kind == RelKind.AGGREGATION || kind == RelKind.COMPOSITION) {
+            boolean noMults = isBlank(multSource) && isBlank(multTarget);
+            cSrc = noMults ? Card.ONE : Card.parse(multSource);
+            cTgt = noMults ? Card.MANY : Card.parse(multTarget);
+        } else {
+            cSrc = Card.ONE;
+            cTgt = Card.ONE;
+        }
+        return new RelSpec(type, kind, source, target, multSource, multTarget, cSrc, cTgt);
+    }
+
+    public boolean isSelf() { return source.equals(target); }
+
+    public boolean touches(String entity) { return source.equals(entity) || target.equals(entity); }
+
+    private static boolean isBlank(String s) { return s == null || s.isBlank(); }
+}
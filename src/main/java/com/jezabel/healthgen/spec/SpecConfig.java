@@ -0,0 +1,8 @@
+package com.jezabel.healthgen.spec;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(SpecProperties.class)
+public class SpecConfig { }
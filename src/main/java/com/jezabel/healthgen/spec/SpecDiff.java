@@ -0,0 +1,43 @@
+package com.jezabel.healthgen.spec;
+
+import java.util.*;
+
+/**
+ * Diferencia entre dos versiones de un spec a nivel de entidad.
+ * Una entidad está modificada si cambian sus atributos o cualquiera de las relaciones que la tocan
+ * (alta, baja, tipo o multiplicidad): es exactamente lo que lee el renderer de su clase de dominio.
+ */
+public record SpecDiff(Set<String> added, Set<String> modified, Set<String> removed, int unchanged,
+                       boolean packageChanged, boolean nameChanged) {
+
+    public static SpecDiff between(ModelSpec previous, ModelSpec current) {
+        boolean packageChanged = !Objects.equals(previous.packageBase(), current.packageBase());
+        boolean nameChanged = !Objects.equals(previous.name(), current.name());
+
+        Set<String> added = new LinkedHashSet<>();
+        Set<String> modified = new LinkedHashSet<>();
+        Set<String> removed = new LinkedHashSet<>();
+        int unchanged = 0;
+
+        for (EntitySpec e : current.entities()) {
+            EntitySpec old = previous.entity(e.name());
+            if (old == null || packageChanged) {
+                added.add(e.name());
+            } else if (!old.attributes().equals(e.attributes())
+                    || !previous.relationsOf(e.name()).equals(current.relationsOf(e.name()))) {
+                modified.add(e.name());
+            } else {
+                unchanged++;
+            }
+        }
+        for (EntitySpec e : previous.entities()) {
+            if (packageChanged || current.entity(e.name()) == null) removed.add(e.name());
+        }
+        return new SpecDiff(Collections.unmodifiableSet(added), Collections.unmodifiableSet(modified),
+                Collections.unmodifiableSet(removed), unchanged, packageChanged, nameChanged);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && modified.isEmpty() && removed.isEmpty() && !packageChanged && !nameChanged;
+    }
+}
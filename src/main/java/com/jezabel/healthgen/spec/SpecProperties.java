@@ -0,0 +1,17 @@
+package com.jezabel.healthgen.spec;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "specs")
+public class SpecProperties {
+    private int snapshotEvery = 10;     // como mucho N-1 deltas seguidos antes de guardar el JSON completo
+    private double maxDeltaRatio = 0.5; // si el delta comprimido pasa de esta fracción del JSON, se guarda snapshot
+    private int cachedTrees = 32;       // versiones reconstruidas en memoria (base de los siguientes deltas)
+
+    public int getSnapshotEvery() { return snapshotEvery; }
+    public void setSnapshotEvery(int snapshotEvery) { this.snapshotEvery = snapshotEvery; }
+    public double getMaxDeltaRatio() { return maxDeltaRatio; }
+    public void setMaxDeltaRatio(double maxDeltaRatio) { this.maxDeltaRatio = maxDeltaRatio; }
+    public int getCachedTrees() { return cachedTrees; }
+    public void setCachedTrees(int cachedTrees) { this.cachedTrees = cachedTrees; }
+}
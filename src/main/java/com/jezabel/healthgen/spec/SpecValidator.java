@@ -0,0 +1,332 @@
+package com.jezabel.healthgen.spec;
+
+import java.util.*;
+
+/**
+ * Validación de un {@link ModelSpec} antes de generar código. Recorre entidades, atributos y relaciones
+ * una sola vez apoyándose en los índices del spec (O(entidades + atributos + relaciones)) y devuelve
+ * diagnósticos estructurados:
+ * <ul>
+ *   <li>ERROR: el proyecto generado no compilaría o fallaría al arrancar (nombres inválidos o reservados,
+ *       duplicados, PK ausente o múltiple, extremos inexistentes, mappedBy ambiguo, ciclos de composición).</li>
+ *   <li>WARNING: se genera, pero algo del diagrama se ignora o se interpreta por defecto.</li>
+ * </ul>
+ * Los nombres de campo de las relaciones se calculan con las mismas reglas que {@code CodegenService}.
+ */
+public final class SpecValidator {
+
+    public enum Severity { ERROR, WARNING }
+
+    /** @param path ubicación en el spec, p.ej. {@code entities[Paciente].attributes[id]} o {@code relations[3]} */
+    public record Diagnostic(Severity severity, String code, String path, String message) { }
+
+    public record Report(List<Diagnostic> diagnostics) {
+
+        public boolean valid() {
+            for (Diagnostic d : diagnostics) if (d.severity() == Severity.ERROR) return false;
+            return true;
+        }
+
+        public long errors() {
+            return diagnostics.stream().filter(d -> d.severity() == Severity.ERROR).count();
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("valid", valid());
+            out.put("errors", errors());
+            out.put("warnings", diagnostics.size() - errors());
+            out.put("diagnostics", diagnostics);
+            return out;
+        }
+    }
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+            "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while",
+            "true", "false", "null", "_");
+
+    // tipos que usa la clase de dominio generada sin calificar: una entidad con ese nombre los taparía
+    private static final Set<String> SHADOWED_TYPES = Set.of(
+            "Object", "String", "Long", "Integer", "Boolean", "Set", "HashSet", "List", "Map", "Serializable",
+            "Entity", "Table", "Id", "Column", "GeneratedValue", "GenerationType", "CascadeType", "JoinColumn",
+            "JoinTable", "OneToOne", "OneToMany", "ManyToOne", "ManyToMany", "JsonIdentityInfo", "ObjectIdGenerators");
+
+    private static final Set<String> TYPES = Set.of("STRING", "LONG", "INT", "BOOLEAN", "DECIMAL", "LOCAL_DATE", "LOCAL_DATE_TIME");
+
+    private final ModelSpec spec;
+    private final List<Diagnostic> out = new ArrayList<>();
+    // campo que genera cada relación en cada extremo: [0] lado source, [1] lado target
+    private final Map<RelSpec, String[]> fieldsByRel = new IdentityHashMap<>();
+    private final Map<RelSpec, String[]> mappedByRel = new IdentityHashMap<>();
+
+    private SpecValidator(ModelSpec spec) {
+        this.spec = spec;
+    }
+
+    public static Report validate(ModelSpec spec) {
+        SpecValidator v = new SpecValidator(spec);
+        v.checkPackage();
+        v.checkEntities();
+        v.checkRelations();
+        v.checkMappedBy();
+        v.checkCompositionCycles();
+        return new Report(List.copyOf(v.out));
+    }
+
+    // ===================== Proyecto =====================
+    private void checkPackage() {
+        String pkg = spec.packageBase();
+        for (String part : pkg.split("\\.", -1)) {
+            if (!isIdentifier(part) || KEYWORDS.contains(part)) {
+                error("INVALID_PACKAGE", "packageBase", "El paquete '" + pkg + "' no es un nombre de paquete Java válido");
+                return;
+            }
+        }
+        if (spec.entities().isEmpty()) warn("EMPTY_SPEC", "entities", "El spec no tiene entidades: solo se generará el esqueleto");
+    }
+
+    // ===================== Entidades y atributos =====================
+    private void checkEntities() {
+        for (String dup : new LinkedHashSet<>(spec.duplicateEntities())) {
+            error("DUPLICATE_ENTITY", "entities[" + dup + "]", "La entidad '" + dup + "' está definida más de una vez");
+        }
+        Map<String, String> byTable = new HashMap<>();
+        for (EntitySpec e : spec.entities()) {
+            String name = e.name(), path = "entities[" + name + "]";
+            if (!isIdentifier(name)) {
+                error("INVALID_NAME", path, "'" + name + "' no es un nombre de clase Java válido");
+            } else if (KEYWORDS.contains(name) || KEYWORDS.contains(lower(name))) {
+                error("RESERVED_WORD", path, "'" + name + "' choca con una palabra reservada de Java (también se usa como '" + lower(name) + "')");
+            } else if (SHADOWED_TYPES.contains(name)) {
+                error("RESERVED_WORD", path, "La entidad '" + name + "' taparía el tipo " + name + " que usa el código generado");
+            }
+            String prev = byTable.putIfAbsent(name.toLowerCase(Locale.ROOT), name);
+            if (prev != null && !prev.equals(name)) {
+                error("NAME_CLASH", path, "'" + name + "' y '" + prev + "' solo difieren en mayúsculas: misma tabla y mismos archivos en sistemas sin distinción");
+            }
+            checkAttributes(e, path);
+            planRelationFields(e, path);
+        }
+    }
+
+    private void checkAttributes(EntitySpec e, String path) {
+        Set<String> seen = new HashSet<>();
+        int pks = 0;
+        boolean hasId = false;
+        for (AttrSpec a : e.attributes()) {
+            if (!isIdentifier(a.name())) {
+                error("INVALID_NAME", attrPath(path, a), "'" + a.name() + "' no es un nombre de campo Java válido");
+            } else if (KEYWORDS.contains(a.name())) {
+                error("RESERVED_WORD", attrPath(path, a), "'" + a.name() + "' es una palabra reservada de Java");
+            }
+            if (!seen.add(a.name())) error("DUPLICATE_ATTRIBUTE", attrPath(path, a), "Atributo '" + a.name() + "' repetido en " + e.name());
+            if (a.name().equals("id")) hasId = true;
+            if (a.type() != null && !TYPES.contains(a.type())) {
+                warn("UNKNOWN_TYPE", attrPath(path, a), "Tipo '" + a.type() + "' desconocido: se genera como String");
+            }
+            if (a.pk()) {
+                pks++;
+                if ("IDENTITY".equalsIgnoreCase(a.generated()) && !"LONG".equals(a.type()) && !"INT".equals(a.type())) {
+                    error("PK_GENERATED_TYPE", attrPath(path, a), "IDENTITY requiere una PK numérica (LONG o INT), no " + (a.type() == null ? "STRING" : a.type()));
+                }
+            }
+            if (a.generated() != null && (!a.pk() || !"IDENTITY".equalsIgnoreCase(a.generated()))) {
+                warn("IGNORED_GENERATED", attrPath(path, a), "generated='" + a.generated() + "' se ignora (solo se admite IDENTITY en la PK)");
+            }
+        }
+        if (pks == 0) error("MISSING_PK", path, "La entidad " + e.name() + " no tiene clave primaria (pk)");
+        if (pks > 1) error("MULTIPLE_PK", path, "La entidad " + e.name() + " tiene " + pks + " atributos pk; no se admiten claves compuestas");
+        if (!hasId) warn("MISSING_ID_PROPERTY", path, "Sin atributo 'id': @JsonIdentityInfo(property = \"id\") fallará al serializar " + e.name());
+    }
+
+    /**
+     * Campos que la clase de {@code e} tendrá por sus relaciones, con los mismos nombres que genera
+     * CodegenService (incluido el sufijo 2, 3... si el nombre ya estaba usado). Detecta campos duplicados
+     * y guarda, para cada relación, el campo de cada lado y el mappedBy esperado.
+     */
+    private void planRelationFields(EntitySpec e, String path) {
+        String me = e.name();
+        Set<String> used = new HashSet<>();
+        for (AttrSpec a : e.attributes()) used.add(a.name());
+        Set<String> fields = new HashSet<>(used);
+        Set<String> columns = new HashSet<>();
+        for (AttrSpec a : e.attributes()) columns.add(a.name().toLowerCase(Locale.ROOT));
+
+        for (RelSpec r : spec.relationsOf(me)) {
+            if (!r.kind().isStructural() || spec.entity(r.source()) == null || spec.entity(r.target()) == null) continue;
+            boolean iAmSource = me.equals(r.source());
+            String other = iAmSource ? r.target() : r.source();
+            Card cSrc = r.sourceCard(), cTgt = r.targetCard();
+            boolean oneToMany = (cSrc == Card.ONE && cTgt == Card.MANY) || (cSrc == Card.MANY && cTgt == Card.ONE);
+            boolean owner = me.compareTo(other) <= 0;
+
+            if (r.isSelf() && oneToMany) {
+                for (String f : List.of("parent", "children")) {
+                    if (!fields.add(f)) error("DUPLICATE_FIELD", path, me + " tendría dos campos '" + f + "' (más de una relación reflexiva 1-* o un atributo con ese nombre)");
+                }
+                joinColumn(columns, "parent_id", me, path);
+                continue;
+            }
+            String field, mappedBy = null;
+            if (cSrc == Card.ONE && cTgt == Card.ONE) {
+                field = safeVar(lower(other), used);
+                if (!owner) mappedBy = lower(me);
+                else joinColumn(columns, lower(other) + "_id", me, path);
+            } else if (oneToMany) {
+                boolean manySide = (iAmSource && cSrc == Card.MANY) || (!iAmSource && cTgt == Card.MANY);
+                field = safeVar(manySide ? lower(other) : plural(lower(other)), used);
+                if (!manySide) mappedBy = lower(me);
+                else joinColumn(columns, lower(other) + "_id", me, path);
+            } else {
+                field = safeVar(plural(lower(other)), used);
+                if (!owner) mappedBy = plural(lower(me));
+            }
+            used.add(field);
+            fields.add(field);
+            if (KEYWORDS.contains(field)) {
+                error("RESERVED_WORD", path, "El campo '" + field + "' de la relación con " + other + " es una palabra reservada de Java");
+            }
+            int side = iAmSource ? 0 : 1;
+            fieldsByRel.computeIfAbsent(r, k -> new String[2])[side] = field;
+            if (mappedBy != null) mappedByRel.computeIfAbsent(r, k -> new String[2])[side] = mappedBy;
+        }
+    }
+
+    private void joinColumn(Set<String> columns, String column, String entity, String path) {
+        if (!columns.add(column.toLowerCase(Locale.ROOT))) {
+            error("DUPLICATE_COLUMN", path, entity + " tendría dos columnas '" + column + "' (varias relaciones hacia la misma entidad o un atributo con ese nombre)");
+        }
+    }
+
+    // ===================== Relaciones =====================
+    private void checkRelations() {
+        List<RelSpec> rels = spec.relations();
+        for (int i = 0; i < rels.size(); i++) {
+            RelSpec r = rels.get(i);
+            String path = "relations[" + i + "]";
+            if (r.kind() == RelKind.UNKNOWN) {
+                warn("UNKNOWN_RELATION_TYPE", path, "Tipo de relación '" + r.type() + "' desconocido: se ignora");
+                continue;
+            }
+            for (int end = 0; end < (r.isSelf() ? 1 : 2); end++) {
+                String name = end == 0 ? r.source() : r.target();
+                if (spec.entity(name) != null) continue;
+                if (r.kind().isStructural()) {
+                    error("UNKNOWN_ENTITY", path, describe(r) + " apunta a la entidad inexistente '" + name + "'");
+                } else {
+                    warn("UNKNOWN_ENTITY", path, describe(r) + " apunta a la entidad inexistente '" + name + "': se ignora");
+                }
+            }
+            if (!r.kind().isStructural() && r.kind() != RelKind.UNKNOWN) {
+                warn("IGNORED_RELATION", path, describe(r) + ": las relaciones " + r.kind() + " no generan campos");
+            }
+        }
+    }
+
+    /** El mappedBy del lado inverso tiene que nombrar el campo que generó el lado dueño. */
+    private void checkMappedBy() {
+        List<RelSpec> rels = spec.relations();
+        for (int i = 0; i < rels.size(); i++) {
+            RelSpec r = rels.get(i);
+            String[] mappedBy = mappedByRel.get(r), fields = fieldsByRel.get(r);
+            if (mappedBy == null || fields == null) continue;
+            for (int side = 0; side < 2; side++) {
+                String expected = mappedBy[side], actual = fields[1 - side];
+                if (expected == null || expected.equals(actual)) continue;
+                String ownerEntity = side == 0 ? r.target() : r.source();
+                error("AMBIGUOUS_OWNER", "relations[" + i + "]",
+                        describe(r) + ": el lado inverso usa mappedBy=\"" + expected + "\" pero el campo en " + ownerEntity
+                                + " se llama '" + actual + "' (varias relaciones entre las mismas entidades o un atributo con ese nombre)");
+            }
+        }
+    }
+
+    /** Una parte no puede contener (directa o indirectamente) a su todo; la composición reflexiva (árbol) sí vale. */
+    private void checkCompositionCycles() {
+        Map<String, List<String>> parts = new HashMap<>();
+        for (RelSpec r : spec.relations()) {
+            if (r.kind() != RelKind.COMPOSITION || r.isSelf()) continue;
+            if (spec.entity(r.source()) == null || spec.entity(r.target()) == null) continue;
+            parts.computeIfAbsent(r.source(), k -> new ArrayList<>()).add(r.target());
+        }
+        if (parts.isEmpty()) return;
+
+        // DFS iterativo con tres colores: gris = en la pila actual
+        Map<String, Integer> color = new HashMap<>();
+        Map<String, String> parent = new HashMap<>();
+        for (String start : parts.keySet()) {
+            if (color.containsKey(start)) continue;
+            Deque<Map.Entry<String, Iterator<String>>> stack = new ArrayDeque<>();
+            color.put(start, 1);
+            stack.push(Map.entry(start, parts.getOrDefault(start, List.of()).iterator()));
+            while (!stack.isEmpty()) {
+                Map.Entry<String, Iterator<String>> top = stack.peek();
+                if (!top.getValue().hasNext()) {
+                    color.put(top.getKey(), 2);
+                    stack.pop();
+                    continue;
+                }
+                String next = top.getValue().next();
+                Integer c = color.get(next);
+                if (c == null) {
+                    color.put(next, 1);
+                    parent.put(next, top.getKey());
+                    stack.push(Map.entry(next, parts.getOrDefault(next, List.of()).iterator()));
+                } else if (c == 1) {
+                    List<String> cycle = new ArrayList<>();
+                    for (String n = top.getKey(); !n.equals(next); n = parent.get(n)) cycle.add(n);
+                    cycle.add(next);
+                    Collections.reverse(cycle);
+                    cycle.add(next);
+                    error("COMPOSITION_CYCLE", "relations", "Ciclo de composición: " + String.join(" → ", cycle));
+                }
+            }
+        }
+    }
+
+    // ===================== Helpers =====================
+    private void error(String code, String path, String message) {
+        out.add(new Diagnostic(Severity.ERROR, code, path, message));
+    }
+
+    private void warn(String code, String path, String message) {
+        out.add(new Diagnostic(Severity.WARNING, code, path, message));
+    }
+
+    // la ruta solo se construye si hay diagnóstico
+    private static String attrPath(String path, AttrSpec a) {
+        return path + ".attributes[" + a.name() + "]";
+    }
+
+    private static String describe(RelSpec r) {
+        return (r.type() == null ? "relación" : r.type()) + " " + r.source() + " → " + r.target();
+    }
+
+    private static boolean isIdentifier(String s) {
+        if (s == null || s.isEmpty() || !Character.isJavaIdentifierStart(s.charAt(0))) return false;
+        for (int i = 1; i < s.length(); i++) if (!Character.isJavaIdentifierPart(s.charAt(i))) return false;
+        return true;
+    }
+
+    // mismas reglas de nombres que CodegenService
+    private static String lower(String s) {
+        return (s == null || s.isEmpty()) ? s : Character.toLowerCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static String plural(String s) {
+        if (s == null || s.isEmpty()) return s;
+        if (s.endsWith("s")) return s + "es";
+        return s + "s";
+    }
+
+    private static String safeVar(String base, Set<String> used) {
+        String b = base;
+        int i = 2;
+        while (used.contains(b)) { b = base + i; i++; }
+        return b;
+    }
+}
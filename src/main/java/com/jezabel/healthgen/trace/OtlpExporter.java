@@ -0,0 +1,144 @@
+package com.jezabel.healthgen.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Envía las trazas terminadas a un collector OTLP/HTTP ({@code <endpoint>/v1/traces}, JSON) en lotes,
+ * desde un único hilo propio. Si el collector no está o va lento, la cola ({@code tracing.otlp.max-queued})
+ * se llena y lo nuevo se descarta: las peticiones nunca esperan al exportador.
+ */
+public class OtlpExporter implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OtlpExporter.class);
+
+    private final TraceProperties.Otlp props;
+    private final ObjectMapper om;
+    private final URI uri;
+    private final HttpClient http;
+    private final BlockingQueue<TraceRecord> queue;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public OtlpExporter(TraceProperties.Otlp props, ObjectMapper om) {
+        this.props = props;
+        this.om = om;
+        String base = props.getEndpoint().endsWith("/") ? props.getEndpoint() : props.getEndpoint() + "/";
+        this.uri = URI.create(base + "v1/traces");
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(props.getTimeoutMs())).build();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, props.getMaxQueued()));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "otlp-export");
+            t.setDaemon(true);
+            return t;
+        });
+        long every = Math.max(100, props.getFlushMs());
+        scheduler.scheduleWithFixedDelay(this::flush, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    void offer(TraceRecord trace) {
+        if (!queue.offer(trace)) dropped.incrementAndGet();
+    }
+
+    /** Vacía la cola en lotes de {@code tracing.otlp.batch-size}. */
+    void flush() {
+        List<TraceRecord> batch = new ArrayList<>();
+        while (queue.drainTo(batch, Math.max(1, props.getBatchSize())) > 0) {
+            try {
+                send(batch);
+                exported.addAndGet(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // un collector caído no debe llenar el log: se avisa la primera vez y luego solo se cuenta
+                if (failures.getAndIncrement() == 0) log.warn("No se pudieron exportar trazas a {}: {}", uri, e.getMessage());
+                dropped.addAndGet(batch.size());
+            }
+            batch.clear();
+        }
+    }
+
+    private void send(List<TraceRecord> batch) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(props.getTimeoutMs()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(om.writeValueAsBytes(payload(batch))))
+                .build();
+        HttpResponse<Void> res = http.send(req, HttpResponse.BodyHandlers.discarding());
+        if (res.statusCode() < 200 || res.statusCode() >= 300) {
+            throw new IllegalStateException("HTTP " + res.statusCode());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("endpoint", uri.toString());
+        out.put("exported", exported.get());
+        out.put("dropped", dropped.get());
+        out.put("failures", failures.get());
+        out.put("queued", queue.size());
+        return out;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.debug("Último envío OTLP fallido", e);
+        }
+    }
+
+    // ===================== ExportTraceServiceRequest (JSON) =====================
+    // traceId/spanId en hex y tiempos en ns como texto, según el mapeo JSON de OTLP
+    Map<String, Object> payload(List<TraceRecord> batch) {
+        List<Map<String, Object>> spans = new ArrayList<>();
+        for (TraceRecord trace : batch) {
+            String traceId = trace.traceId();
+            for (Span s : trace.spans()) spans.add(span(trace, traceId, s));
+        }
+        Map<String, Object> resource = Map.of("attributes", List.of(kv("service.name", props.getServiceName())));
+        Map<String, Object> scope = Map.of("scope", Map.of("name", "healthgen"), "spans", spans);
+        return Map.of("resourceSpans", List.of(Map.of("resource", resource, "scopeSpans", List.of(scope))));
+    }
+
+    private static Map<String, Object> span(TraceRecord trace, String traceId, Span s) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("traceId", traceId);
+        out.put("spanId", s.spanId());
+        if (s.parentSpanId() != null) out.put("parentSpanId", s.parentSpanId());
+        out.put("name", s.name());
+        out.put("kind", s.parentSpanId() == null ? 2 : 1);   // SERVER para la raíz, INTERNAL el resto
+        out.put("startTimeUnixNano", Long.toString(trace.epochNanos(s.startNanos())));
+        out.put("endTimeUnixNano", Long.toString(trace.epochNanos(s.endNanos())));
+        List<Map<String, Object>> attrs = new ArrayList<>();
+        s.attributes().forEach((k, v) -> attrs.add(kv(k, v)));
+        if (!attrs.isEmpty()) out.put("attributes", attrs);
+        if (s.errorMessage() != null) out.put("status", Map.of("code", 2, "message", s.errorMessage()));
+        return out;
+    }
+
+    private static Map<String, Object> kv(String key, Object value) {
+        Map<String, Object> v;
+        if (value instanceof Boolean b) v = Map.of("boolValue", b);
+        else if (value instanceof Integer || value instanceof Long) v = Map.of("intValue", value.toString());
+        else if (value instanceof Number n) v = Map.of("doubleValue", n.doubleValue());
+        else v = Map.of("stringValue", String.valueOf(value));
+        return Map.of("key", key, "value", v);
+    }
+}
@@ -0,0 +1,111 @@
+package com.jezabel.healthgen.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tramo de una traza: nombre, inicio/fin, padre y atributos. Se cierra con {@link #end()} (o try-with-resources)
+ * desde cualquier hilo; cerrar dos veces no hace nada.
+ * <p>
+ * Fuera de muestreo todo es {@link #NOOP}: un único objeto compartido cuyos métodos no hacen nada
+ * y devuelven el mismo NOOP, así que una petición no trazada no crea spans ni mapas.
+ */
+public final class Span implements AutoCloseable {
+
+    /** Span vacío: lo devuelve el tracer cuando la petición no se traza. */
+    public static final Span NOOP = new Span(null, 0, 0, null, 0);
+
+    private final TraceRecord trace;
+    private final long spanId;
+    private final long parentId;
+    private final String name;
+    private final long startNanos;
+    private long endNanos = -1;
+    private Map<String, Object> attributes;
+    private String error;
+
+    Span(TraceRecord trace, long spanId, long parentId, String name, long startNanos) {
+        this.trace = trace;
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.name = name;
+        this.startNanos = startNanos;
+    }
+
+    public boolean isSampled() { return trace != null; }
+
+    /** Hijo de este span (NOOP si este no se traza). */
+    public Span child(String name) {
+        if (trace == null) return this;
+        return new Span(trace, newId(), spanId, name, System.nanoTime());
+    }
+
+    public Span attr(String key, Object value) {
+        if (trace == null) return this;
+        synchronized (this) {
+            if (attributes == null) attributes = new LinkedHashMap<>();
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    // sobrecarga para no encajar el número cuando el span es NOOP
+    public Span attr(String key, long value) {
+        return trace == null ? this : attr(key, (Object) value);
+    }
+
+    public Span error(Throwable e) {
+        if (trace == null || e == null) return this;
+        if (e instanceof CompletionException && e.getCause() != null) e = e.getCause();
+        synchronized (this) {
+            error = e.getClass().getSimpleName() + (e.getMessage() == null ? "" : ": " + e.getMessage());
+        }
+        return this;
+    }
+
+    public void end() {
+        if (trace == null) return;
+        synchronized (this) {
+            if (endNanos >= 0) return;
+            endNanos = System.nanoTime();
+        }
+        trace.ended(this);
+    }
+
+    @Override
+    public void close() {
+        end();
+    }
+
+    /** Cierra el span (con el error, si lo hay) cuando termine {@code future}; sin muestreo no engancha nada. */
+    public <T> CompletableFuture<T> endWhenDone(CompletableFuture<T> future) {
+        if (trace != null) future.whenComplete((r, e) -> error(e).end());
+        return future;
+    }
+
+    // ===================== Lectura (traza ya terminada) =====================
+    public String traceId() { return trace == null ? null : trace.traceId(); }
+    public String spanId() { return hex(spanId); }
+    String parentSpanId() { return parentId == 0 ? null : hex(parentId); }
+    long parentRaw() { return parentId; }
+    long idRaw() { return spanId; }
+    public String name() { return name; }
+    long startNanos() { return startNanos; }
+    synchronized long endNanos() { return endNanos; }
+    synchronized String errorMessage() { return error; }
+    synchronized Map<String, Object> attributes() { return attributes == null ? Map.of() : new LinkedHashMap<>(attributes); }
+
+    static long newId() {
+        long id;
+        do { id = ThreadLocalRandom.current().nextLong(); } while (id == 0);
+        return id;
+    }
+
+    static String hex(long v) {
+        String s = Long.toHexString(v);
+        return "0".repeat(16 - s.length()) + s;
+    }
+}
@@ -0,0 +1,19 @@
+package com.jezabel.healthgen.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(TraceProperties.class)
+public class TraceConfig {
+
+    // tracing.otlp.endpoint vacío => solo el ring buffer local (GET /api/traces); close() hace el último envío
+    @Bean(destroyMethod = "close")
+    public Tracer tracer(TraceProperties props, ObjectMapper om) {
+        String endpoint = props.getOtlp().getEndpoint();
+        boolean export = props.isEnabled() && endpoint != null && !endpoint.isBlank();
+        return new Tracer(props, export ? new OtlpExporter(props.getOtlp(), om) : null);
+    }
+}
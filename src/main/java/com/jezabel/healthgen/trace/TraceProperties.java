@@ -0,0 +1,45 @@
+package com.jezabel.healthgen.trace;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "tracing")
+public class TraceProperties {
+    private boolean enabled = true;
+    private double sampleRate = 0.1;         // fracción de peticiones trazadas (0..1); el resto usa el span vacío
+    private int maxTraces = 200;             // trazas terminadas retenidas en memoria (ring buffer)
+    private int maxSpansPerTrace = 256;      // spans de más en una traza se descartan (y se cuentan)
+    private final Otlp otlp = new Otlp();
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public double getSampleRate() { return sampleRate; }
+    public void setSampleRate(double sampleRate) { this.sampleRate = sampleRate; }
+    public int getMaxTraces() { return maxTraces; }
+    public void setMaxTraces(int maxTraces) { this.maxTraces = maxTraces; }
+    public int getMaxSpansPerTrace() { return maxSpansPerTrace; }
+    public void setMaxSpansPerTrace(int maxSpansPerTrace) { this.maxSpansPerTrace = maxSpansPerTrace; }
+    public Otlp getOtlp() { return otlp; }
+
+    /** Exportación opcional a un collector OTLP/HTTP (JSON); sin endpoint no se exporta nada. */
+    public static class Otlp {
+        private String endpoint;                 // p.ej. http://localhost:4318 (se añade /v1/traces)
+        private String serviceName = "health-gen";
+        private long flushMs = 2000;             // cada cuánto se envía lo acumulado
+        private int batchSize = 100;             // trazas por envío
+        private int maxQueued = 2000;            // si el collector no responde, lo que no cabe se descarta
+        private long timeoutMs = 5000;
+
+        public String getEndpoint() { return endpoint; }
+        public void setEndpoint(String endpoint) { this.endpoint = endpoint; }
+        public String getServiceName() { return serviceName; }
+        public void setServiceName(String serviceName) { this.serviceName = serviceName; }
+        public long getFlushMs() { return flushMs; }
+        public void setFlushMs(long flushMs) { this.flushMs = flushMs; }
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        public int getMaxQueued() { return maxQueued; }
+        public void setMaxQueued(int maxQueued) { this.maxQueued = maxQueued; }
+        public long getTimeoutMs() { return timeoutMs; }
+        public void setTimeoutMs(long timeoutMs) { this.timeoutMs = timeoutMs; }
+    }
+}
@@ -0,0 +1,101 @@
+package com.jezabel.healthgen.trace;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Una traza: los spans ya cerrados (hasta {@code tracing.max-spans-per-trace}) y la hora de inicio.
+ * Cuando se cierra el span raíz pasa al ring buffer del {@link Tracer} (y al exportador OTLP, si hay).
+ */
+public final class TraceRecord {
+
+    private final Tracer tracer;
+    private final long idHigh;
+    private final long idLow;
+    private final long startEpochNanos;
+    private final long startNanos;
+    private final int maxSpans;
+    private final List<Span> spans = new ArrayList<>();
+    private int dropped;
+    private Span root;
+
+    TraceRecord(Tracer tracer, int maxSpans) {
+        this.tracer = tracer;
+        this.idHigh = Span.newId();
+        this.idLow = Span.newId();
+        this.startEpochNanos = System.currentTimeMillis() * 1_000_000L;
+        this.startNanos = System.nanoTime();
+        this.maxSpans = Math.max(1, maxSpans);
+    }
+
+    Span start(String name) {
+        root = new Span(this, Span.newId(), 0, name, startNanos);
+        return root;
+    }
+
+    void ended(Span span) {
+        synchronized (this) {
+            if (span != root && spans.size() >= maxSpans - 1) dropped++;
+            else spans.add(span);
+        }
+        if (span == root) tracer.completed(this);
+    }
+
+    public String traceId() { return Span.hex(idHigh) + Span.hex(idLow); }
+    public String name() { return root.name(); }
+
+    /** Hora (epoch, ns) de un instante de {@link System#nanoTime()} dentro de la traza. */
+    long epochNanos(long nanos) { return startEpochNanos + (nanos - startNanos); }
+
+    synchronized List<Span> spans() { return new ArrayList<>(spans); }
+
+    // ===================== JSON para /api/traces =====================
+    /** Resumen: nombre, inicio, duración, nº de spans y si alguno terminó con error. */
+    public Map<String, Object> summary() {
+        List<Span> all = spans();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("traceId", traceId());
+        out.put("name", root.name());
+        out.put("start", Instant.ofEpochSecond(0, startEpochNanos).toString());
+        out.put("durationMs", millis(root.endNanos() - root.startNanos()));
+        out.put("spans", all.size());
+        synchronized (this) {
+            if (dropped > 0) out.put("droppedSpans", dropped);
+        }
+        out.put("error", all.stream().anyMatch(s -> s.errorMessage() != null));
+        Map<String, Object> attrs = root.attributes();
+        if (!attrs.isEmpty()) out.put("attributes", attrs);
+        return out;
+    }
+
+    /** Árbol de spans: cada uno con su desfase respecto al inicio de la traza y su duración. */
+    public Map<String, Object> toMap() {
+        Map<Long, List<Span>> children = new HashMap<>();
+        for (Span s : spans()) children.computeIfAbsent(s.parentRaw(), k -> new ArrayList<>()).add(s);
+        Map<String, Object> out = summary();
+        out.put("root", node(root, children));
+        return out;
+    }
+
+    private Map<String, Object> node(Span s, Map<Long, List<Span>> children) {
+        Map<String, Object> n = new LinkedHashMap<>();
+        n.put("spanId", s.spanId());
+        n.put("name", s.name());
+        n.put("offsetMs", millis(s.startNanos() - startNanos));
+        n.put("durationMs", s.endNanos() < 0 ? null : millis(s.endNanos() - s.startNanos()));
+        Map<String, Object> attrs = s.attributes();
+        if (!attrs.isEmpty()) n.put("attributes", attrs);
+        if (s.errorMessage() != null) n.put("error", s.errorMessage());
+        List<Span> kids = children.getOrDefault(s.idRaw(), List.of());
+        if (!kids.isEmpty()) {
+            n.put("children", kids.stream()
+                    .sorted(Comparator.comparingLong(Span::startNanos))
+                    .map(k -> node(k, children)).toList());
+        }
+        return n;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
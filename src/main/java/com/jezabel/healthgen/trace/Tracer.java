@@ -0,0 +1,121 @@
+package com.jezabel.healthgen.trace;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Trazas por petición, en memoria. {@link #startSpan} abre un hijo del span activo en el hilo
+ * o, si no hay, una traza nueva (sujeta a {@code tracing.sample-rate}). {@link #activate} deja un span
+ * como activo mientras dura el bloque, para que lo que se llame dentro (p.ej. GeminiClient) cuelgue de él;
+ * en código asíncrono el span se pasa a mano y se cierra al completar el futuro.
+ * <p>
+ * Las últimas {@code tracing.max-traces} trazas terminadas quedan en un ring buffer (GET /api/traces).
+ */
+public class Tracer {
+
+    /** Bloque con un span activo; cerrarlo restaura el anterior. */
+    public interface Scope extends AutoCloseable {
+        Scope NOOP = () -> { };
+        @Override void close();
+    }
+
+    private final TraceProperties props;
+    private final OtlpExporter exporter;
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+
+    private final AtomicReferenceArray<TraceRecord> ring;
+    private final AtomicLong cursor = new AtomicLong();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder notSampled = new LongAdder();
+
+    public Tracer(TraceProperties props, OtlpExporter exporter) {
+        this.props = props;
+        this.exporter = exporter;
+        this.ring = new AtomicReferenceArray<>(Math.max(1, props.getMaxTraces()));
+    }
+
+    /** Tracer que nunca traza (tests y benchmarks). */
+    public static Tracer disabled() {
+        TraceProperties p = new TraceProperties();
+        p.setEnabled(false);
+        return new Tracer(p, null);
+    }
+
+    /** Hijo del span activo o, si no hay, raíz de una traza nueva (o {@link Span#NOOP} si queda fuera de muestreo). */
+    public Span startSpan(String name) {
+        Span parent = current.get();
+        if (parent != null) return parent.child(name);
+        if (!sampleNext()) {
+            notSampled.increment();
+            return Span.NOOP;
+        }
+        sampled.increment();
+        return new TraceRecord(this, props.getMaxSpansPerTrace()).start(name);
+    }
+
+    /** Span activo en este hilo ({@link Span#NOOP} si no hay). */
+    public Span current() {
+        Span s = current.get();
+        return s == null ? Span.NOOP : s;
+    }
+
+    public Scope activate(Span span) {
+        if (!span.isSampled()) return Scope.NOOP;
+        Span previous = current.get();
+        current.set(span);
+        return () -> {
+            if (previous == null) current.remove();
+            else current.set(previous);
+        };
+    }
+
+    private boolean sampleNext() {
+        if (!props.isEnabled()) return false;
+        double rate = props.getSampleRate();
+        return rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    // ===================== Ring buffer =====================
+    void completed(TraceRecord trace) {
+        ring.set((int) (cursor.getAndIncrement() % ring.length()), trace);
+        if (exporter != null) exporter.offer(trace);
+    }
+
+    /** Trazas terminadas, de la más reciente a la más antigua. */
+    public List<TraceRecord> recent(int limit) {
+        long end = cursor.get();
+        int n = (int) Math.min(Math.min(end, ring.length()), Math.max(0, limit));
+        List<TraceRecord> out = new ArrayList<>(n);
+        for (long i = end - 1; i >= end - n; i--) {
+            TraceRecord t = ring.get((int) (i % ring.length()));
+            if (t != null) out.add(t);
+        }
+        return out;
+    }
+
+    public Optional<TraceRecord> find(String traceId) {
+        for (int i = 0; i < ring.length(); i++) {
+            TraceRecord t = ring.get(i);
+            if (t != null && t.traceId().equals(traceId)) return Optional.of(t);
+        }
+        return Optional.empty();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", props.isEnabled());
+        out.put("sampleRate", props.getSampleRate());
+        out.put("sampled", sampled.sum());
+        out.put("notSampled", notSampled.sum());
+        out.put("stored", (int) Math.min(cursor.get(), ring.length()));
+        if (exporter != null) out.put("otlp", exporter.stats());
+        return out;
+    }
+
+    public void close() {
+        if (exporter != null) exporter.close();
+    }
+}
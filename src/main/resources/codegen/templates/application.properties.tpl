@@ -0,0 +1,5 @@
+spring.datasource.url=jdbc:mysql://localhost:3306/{{artifactId}}?useSSL=false&serverTimezone=UTC
+spring.datasource.username=root
+spring.datasource.password=secret
+spring.jpa.hibernate.ddl-auto=update
+spring.jpa.show-sql=true
@@ -0,0 +1,45 @@
+package {{packageBase}}.controller;
+
+import {{packageBase}}.domain.{{entity}};
+import {{packageBase}}.service.{{entity}}Service;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.net.URI;
+import java.util.*;
+
+@RestController
+@RequestMapping("/api/{{var}}s")
+public class {{entity}}Controller {
+    private final {{entity}}Service service;
+
+    public {{entity}}Controller({{entity}}Service service) { this.service = service; }
+
+    @PostMapping
+    public ResponseEntity<{{entity}}> create(@RequestBody {{entity}} body){
+        {{entity}} saved = service.save(body);
+        return ResponseEntity.created(URI.create("/api/{{var}}s/" + saved.getId())).body(saved);
+    }
+
+    @GetMapping
+    public List<{{entity}}> all(){
+        return service.findAll();
+    }
+
+    @GetMapping("/{id}")
+    public {{entity}} one(@PathVariable Long id){
+        return service.findById(id).orElseThrow();
+    }
+
+    @PutMapping("/{id}")
+    public {{entity}} update(@PathVariable Long id, @RequestBody {{entity}} body){
+        {{entity}} existing = service.findById(id).orElseThrow();
+        body.setId(existing.getId());
+        return service.save(body);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable Long id){
+        service.delete(id);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,7 @@
+package {{packageBase}}.repository;
+
+import {{packageBase}}.domain.{{entity}};
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface {{entity}}Repository extends JpaRepository<{{entity}}, Long> {
+}
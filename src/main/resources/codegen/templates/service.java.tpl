@@ -0,0 +1,18 @@
+package {{packageBase}}.service;
+
+import {{packageBase}}.domain.{{entity}};
+import {{packageBase}}.repository.{{entity}}Repository;
+import org.springframework.stereotype.Service;
+import java.util.*;
+
+@Service
+public class {{entity}}Service {
+    private final {{entity}}Repository repo;
+
+    public {{entity}}Service({{entity}}Repository repo) { this.repo = repo; }
+
+    public {{entity}} save({{entity}} e) { return repo.save(e); }
+    public Optional<{{entity}}> findById(Long id) { return repo.findById(id); }
+    public List<{{entity}}> findAll() { return repo.findAll(); }
+    public void delete(Long id) { repo.deleteById(id); }
+}
@@ -0,0 +1,155 @@
+package com.jezabel.healthgen.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.trace.Tracer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** streamGenerateContent contra un servidor SSE local que imita a Gemini. */
+class GeminiClientStreamTest {
+
+	private HttpServer server;
+	private GeminiClient client;
+	private final AtomicInteger chunksSent = new AtomicInteger();
+	private final CompletableFuture<Boolean> aborted = new CompletableFuture<>();
+	private volatile String lastPath;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/models", this::handle);
+		server.start();
+
+		GeminiProperties props = new GeminiProperties();
+		props.setApiKey("test");
+		props.setModel("stub");
+		props.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/models");
+		props.setTimeoutMs(10_000);
+		props.getCache().setEnabled(false);
+		client = new GeminiClient(props, new ObjectMapper(), new LlmResponseCache(props), new SimpleMeterRegistry(),
+				Tracer.disabled());
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop(0);
+	}
+
+	// El prompt elige el escenario: "short" (3 trozos), "long" (sin fin práctico), "error" (HTTP 500)
+	private void handle(HttpExchange ex) throws IOException {
+		lastPath = ex.getRequestURI().toString();
+		String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+		if (body.contains("error")) {
+			byte[] msg = "{\"error\":{\"message\":\"boom\"}}".getBytes(StandardCharsets.UTF_8);
+			ex.sendResponseHeaders(500, msg.length);
+			ex.getResponseBody().write(msg);
+			ex.close();
+			return;
+		}
+		ex.getResponseHeaders().add("Content-Type", "text/event-stream");
+		ex.sendResponseHeaders(200, 0);
+		OutputStream out = ex.getResponseBody();
+		try {
+			if (body.contains("short")) {
+				event(out, "Hola", null);
+				event(out, ", ¿qué", null);
+				event(out, " tal?", "STOP");
+			} else {
+				for (int i = 0; i < 2_000; i++) {
+					event(out, "palabra" + i + " ", null);
+					Thread.sleep(5);
+				}
+			}
+			ex.close();
+		} catch (IOException e) {
+			aborted.complete(true);   // el cliente cerró la conexión
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void event(OutputStream out, String text, String finishReason) throws IOException {
+		String candidate = "{\"content\":{\"parts\":[{\"text\":\"" + text + "\"}],\"role\":\"model\"}"
+				+ (finishReason == null ? "" : ",\"finishReason\":\"" + finishReason + "\"") + "}";
+		String json = "{\"candidates\":[" + candidate + "],\"usageMetadata\":{\"promptTokenCount\":7,\"candidatesTokenCount\":"
+				+ chunksSent.incrementAndGet() + "}}";
+		out.write(("data: " + json + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	@Test
+	void forwardsChunksInOrder() throws Exception {
+		List<String> chunks = new CopyOnWriteArrayList<>();
+		GeminiClient.StreamResult r = client.streamTextAsync("short", "chat", 1200, 120, chunks::add)
+				.get(5, TimeUnit.SECONDS);
+
+		assertThat(lastPath).startsWith("/models/stub:streamGenerateContent?alt=sse");
+		assertThat(chunks).containsExactly("Hola", ", ¿qué", " tal?");
+		assertThat(r.text()).isEqualTo("Hola, ¿qué tal?");
+		assertThat(r.capped()).isFalse();
+		assertThat(r.finishReason()).isEqualTo("STOP");
+	}
+
+	@Test
+	void cancelsUpstreamWhenWordCapIsReached() throws Exception {
+		List<String> chunks = new CopyOnWriteArrayList<>();
+		GeminiClient.StreamResult r = client.streamTextAsync("long", "chat", 1200, 10, chunks::add)
+				.get(5, TimeUnit.SECONDS);
+
+		assertThat(r.capped()).isTrue();
+		assertThat(r.text()).endsWith("…");
+		assertThat(r.text().replace("…", "").trim().split("\\s+")).hasSize(10);
+		assertThat(chunks.get(chunks.size() - 1)).isEqualTo("…");
+		// el servidor deja de poder escribir: la llamada se cortó en vez de consumir los 2000 trozos
+		assertThat(aborted.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(chunksSent.get()).isLessThan(2_000);
+	}
+
+	@Test
+	void cancelsUpstreamWhenCharCapIsReached() throws Exception {
+		StringBuilder seen = new StringBuilder();
+		GeminiClient.StreamResult r = client.streamTextAsync("long", "chat", 25, 0, seen::append)
+				.get(5, TimeUnit.SECONDS);
+
+		assertThat(r.capped()).isTrue();
+		assertThat(r.text()).hasSize(26).isEqualTo(seen.toString());
+		assertThat(aborted.get(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void cancellingTheFutureClosesTheConnection() throws Exception {
+		AtomicInteger received = new AtomicInteger();
+		CompletableFuture<GeminiClient.StreamResult> f = client.streamTextAsync("long", "chat", 0, 0,
+				t -> received.incrementAndGet());
+		while (received.get() < 3) Thread.sleep(5);
+		f.cancel(true);
+
+		assertThat(aborted.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(client.stats()).containsEntry("streaming", 0);
+	}
+
+	@Test
+	void httpErrorFailsTheFuture() {
+		assertThatThrownBy(() -> client.streamTextAsync("error", "chat", 1200, 120, t -> { }).get(5, TimeUnit.SECONDS))
+				.isInstanceOf(ExecutionException.class)
+				.hasMessageContaining("Gemini HTTP 500");
+	}
+}
@@ -0,0 +1,226 @@
+package com.jezabel.healthgen.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.exception.ServiceBusyException;
+import com.jezabel.healthgen.trace.Tracer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** generateContent contra un servidor local: coalescencia, tope de concurrencia y cola acotada. */
+class GeminiClientTest {
+
+	private HttpServer server;
+	private ExecutorService serverThreads;
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger maxActive = new AtomicInteger();
+
+	@BeforeEach
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/models", this::handle);
+		serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.start();
+	}
+
+	@AfterEach
+	void stop() {
+		release.countDown();
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	// El prompt elige el escenario: "error" responde 500; el resto espera a release y responde con el prompt
+	private void handle(HttpExchange ex) throws IOException {
+		requests.incrementAndGet();
+		int now = active.incrementAndGet();
+		maxActive.accumulateAndGet(now, Math::max);
+		try {
+			String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			String prompt = new ObjectMapper().readTree(body).path("contents").path(0).path("parts").path(0)
+					.path("text").asText();
+			if (prompt.contains("error")) {
+				reply(ex, 500, "{\"error\":{\"message\":\"boom\"}}");
+				return;
+			}
+			release.await(10, TimeUnit.SECONDS);
+			reply(ex, 200, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"eco: " + prompt.trim() + "\"}]}}],"
+					+ "\"usageMetadata\":{\"promptTokenCount\":3,\"candidatesTokenCount\":2}}");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			active.decrementAndGet();
+		}
+	}
+
+	private static void reply(HttpExchange ex, int status, String json) throws IOException {
+		byte[] msg = json.getBytes(StandardCharsets.UTF_8);
+		ex.sendResponseHeaders(status, msg.length);
+		ex.getResponseBody().write(msg);
+		ex.close();
+	}
+
+	private GeminiClient client(int maxConcurrent, int maxQueued) {
+		return client(maxConcurrent, maxQueued, "http://127.0.0.1:" + server.getAddress().getPort() + "/models");
+	}
+
+	private static GeminiClient client(int maxConcurrent, int maxQueued, String endpoint) {
+		GeminiProperties props = new GeminiProperties();
+		props.setApiKey("test");
+		props.setModel("stub");
+		props.setEndpoint(endpoint);
+		props.setTimeoutMs(10_000);
+		props.setMaxConcurrent(maxConcurrent);
+		props.setMaxQueued(maxQueued);
+		props.getCache().setEnabled(false);
+		return new GeminiClient(props, new ObjectMapper(), new LlmResponseCache(props), new SimpleMeterRegistry(),
+				Tracer.disabled());
+	}
+
+	private void awaitActive(int n) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (active.get() < n) {
+			assertThat(System.nanoTime()).as("%d llamadas en curso", n).isLessThan(deadline);
+			Thread.sleep(2);
+		}
+	}
+
+	// la entrada en vuelo se quita al completar la llamada, justo después de avisar a las copias
+	private static void awaitNoneInFlight(GeminiClient client) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (client.inFlight() > 0) {
+			assertThat(System.nanoTime()).as("llamadas en vuelo").isLessThan(deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	void identicalPromptsInFlightShareOneCall() throws Exception {
+		GeminiClient client = client(4, 16);
+		List<CompletableFuture<String>> all = new ArrayList<>();
+		all.add(client.generateTextAsync("hola mundo", "chat"));
+		awaitActive(1);
+		for (int i = 0; i < 3; i++) all.add(client.generateTextAsync("hola mundo", "chat"));
+		// misma clave normalizada: solo cambian los espacios
+		all.add(client.generateTextAsync("  hola   mundo ", "docs"));
+		// cancelar una copia no cancela la llamada compartida
+		all.get(1).cancel(true);
+
+		release.countDown();
+		for (int i = 0; i < all.size(); i++) {
+			if (i == 1) continue;
+			assertThat(all.get(i).get(5, TimeUnit.SECONDS)).isEqualTo("eco: hola mundo");
+		}
+		assertThat(requests.get()).isEqualTo(1);
+		assertThat(client.stats()).containsEntry("calls", 1L).containsEntry("coalesced", 4L);
+		awaitNoneInFlight(client);
+
+		// terminada la llamada, el mismo prompt vuelve a salir al proveedor (caché desactivada)
+		assertThat(client.generateTextAsync("hola mundo", "chat").get(5, TimeUnit.SECONDS)).isEqualTo("eco: hola mundo");
+		assertThat(requests.get()).isEqualTo(2);
+	}
+
+	@Test
+	void neverExceedsMaxConcurrentAndDrainsTheQueue() throws Exception {
+		GeminiClient client = client(2, 16);
+		List<CompletableFuture<String>> all = new ArrayList<>();
+		for (int i = 0; i < 6; i++) all.add(client.generateTextAsync("prompt " + i, "chat"));
+		awaitActive(2);
+		Thread.sleep(50);
+
+		assertThat(active.get()).isEqualTo(2);
+		assertThat(client.waiting()).isEqualTo(4);
+		assertThat(client.stats()).containsEntry("availablePermits", 0);
+
+		release.countDown();
+		for (int i = 0; i < 6; i++) assertThat(all.get(i).get(5, TimeUnit.SECONDS)).isEqualTo("eco: prompt " + i);
+		assertThat(maxActive.get()).isEqualTo(2);
+		assertThat(client.waiting()).isZero();
+		assertThat(client.stats()).containsEntry("availablePermits", 2);
+	}
+
+	@Test
+	void failedCallsReleaseTheirPermit() throws Exception {
+		GeminiClient client = client(1, 16);
+		List<CompletableFuture<String>> failures = new ArrayList<>();
+		for (int i = 0; i < 3; i++) failures.add(client.generateTextAsync("error " + i, "chat"));
+		CompletableFuture<String> ok = client.generateTextAsync("después", "chat");
+		release.countDown();
+
+		for (CompletableFuture<String> f : failures) {
+			assertThatThrownBy(() -> f.get(5, TimeUnit.SECONDS))
+					.isInstanceOf(ExecutionException.class)
+					.hasMessageContaining("Gemini HTTP 500");
+		}
+		assertThat(ok.get(5, TimeUnit.SECONDS)).isEqualTo("eco: después");
+		assertThat(client.stats()).containsEntry("availablePermits", 1).containsEntry("waiting", 0);
+		// la versión bloqueante propaga el error sin envolverlo en CompletionException
+		assertThatThrownBy(() -> client.generateText("error otra vez", "chat"))
+				.isInstanceOf(RuntimeException.class)
+				.hasMessageContaining("Gemini HTTP 500");
+	}
+
+	@Test
+	void connectionFailureReleasesThePermit() throws Exception {
+		int closedPort;
+		try (ServerSocket s = new ServerSocket(0)) {
+			closedPort = s.getLocalPort();
+		}
+		GeminiClient client = client(1, 4, "http://127.0.0.1:" + closedPort + "/models");
+
+		for (int i = 0; i < 3; i++) {
+			CompletableFuture<String> f = client.generateTextAsync("sin servidor " + i, "chat");
+			assertThatThrownBy(() -> f.get(5, TimeUnit.SECONDS))
+					.isInstanceOf(ExecutionException.class)
+					.hasMessageContaining("Error llamando a Gemini");
+		}
+		awaitNoneInFlight(client);
+		assertThat(client.stats()).containsEntry("availablePermits", 1);
+	}
+
+	@Test
+	void rejectsAboveMaxQueued() throws Exception {
+		GeminiClient client = client(1, 2);
+		CompletableFuture<String> running = client.generateTextAsync("uno", "chat");
+		awaitActive(1);
+		CompletableFuture<String> q1 = client.generateTextAsync("dos", "chat");
+		CompletableFuture<String> q2 = client.generateTextAsync("tres", "chat");
+
+		CompletableFuture<String> rejected = client.generateTextAsync("cuatro", "chat");
+		assertThat(rejected).isCompletedExceptionally();
+		assertThatThrownBy(rejected::join).hasCauseInstanceOf(ServiceBusyException.class);
+		assertThat(client.stats()).containsEntry("rejected", 1L).containsEntry("waiting", 2);
+		// un prompt igual a uno en vuelo no ocupa cola: se coalesce aunque esté llena
+		assertThat(client.generateTextAsync("dos", "chat")).isNotCompletedExceptionally();
+
+		release.countDown();
+		assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("eco: uno");
+		assertThat(q1.get(5, TimeUnit.SECONDS)).isEqualTo("eco: dos");
+		assertThat(q2.get(5, TimeUnit.SECONDS)).isEqualTo("eco: tres");
+		// con la cola vacía se vuelve a aceptar
+		assertThat(client.generateTextAsync("cinco", "chat").get(5, TimeUnit.SECONDS)).isEqualTo("eco: cinco");
+	}
+}
@@ -0,0 +1,74 @@
+package com.jezabel.healthgen.ai;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** GCRA con reloj explícito: 5 peticiones por segundo => ráfaga de 5 y luego una cada 200 ms. */
+class IpRateLimiterTest {
+
+	private static final long MS = 1_000_000L;
+
+	@Test
+	void allowsBurstThenRejects() {
+		IpRateLimiter limiter = new IpRateLimiter(5, 1000, 4, 1000);
+		long now = 1_000 * MS;
+		for (int i = 0; i < 5; i++) assertThat(limiter.tryAcquire("a", now)).isZero();
+
+		long wait = limiter.tryAcquire("a", now);
+		assertThat(wait).isBetween(1L, 200L);
+		assertThat(limiter.rejected()).isEqualTo(1);
+	}
+
+	@Test
+	void refillsOneRequestPerInterval() {
+		IpRateLimiter limiter = new IpRateLimiter(5, 1000, 4, 1000);
+		long now = 1_000 * MS;
+		for (int i = 0; i < 5; i++) limiter.tryAcquire("a", now);
+
+		assertThat(limiter.tryAcquire("a", now + 199 * MS)).isPositive();
+		assertThat(limiter.tryAcquire("a", now + 200 * MS)).isZero();
+		assertThat(limiter.tryAcquire("a", now + 200 * MS)).isPositive();
+		// tras una ventana completa sin tráfico vuelve a tener la ráfaga entera
+		long later = now + 2_000 * MS;
+		for (int i = 0; i < 5; i++) assertThat(limiter.tryAcquire("a", later)).isZero();
+		assertThat(limiter.tryAcquire("a", later)).isPositive();
+	}
+
+	@Test
+	void keysAreIndependent() {
+		IpRateLimiter limiter = new IpRateLimiter(1, 1000, 4, 1000);
+		long now = 1_000 * MS;
+		assertThat(limiter.tryAcquire("a", now)).isZero();
+		assertThat(limiter.tryAcquire("a", now)).isPositive();
+		assertThat(limiter.tryAcquire("b", now)).isZero();
+	}
+
+	@Test
+	void memoryStaysBoundedWithEndlessNewKeys() {
+		IpRateLimiter limiter = new IpRateLimiter(10, 60_000, 4, 400);
+		long now = 1_000 * MS;
+		for (int i = 0; i < 50_000; i++) {
+			assertThat(limiter.tryAcquire("10.0." + (i >> 8) + "." + (i & 255), now + i)).isZero();
+		}
+		assertThat(limiter.size()).isLessThanOrEqualTo(400);
+	}
+
+	@Test
+	void expiredKeysAreDroppedOnRebuild() {
+		IpRateLimiter limiter = new IpRateLimiter(2, 1000, 1, 1000);
+		long now = 1_000 * MS;
+		for (int i = 0; i < 8; i++) limiter.tryAcquire("old" + i, now);
+		// mucho después: las claves viejas ya vencieron y se limpian al crecer el segmento
+		long later = now + 60_000 * MS;
+		for (int i = 0; i < 20; i++) limiter.tryAcquire("new" + i, later);
+		assertThat(limiter.size()).isEqualTo(20);
+	}
+
+	@Test
+	void rejectsInvalidConfiguration() {
+		assertThatThrownBy(() -> new IpRateLimiter(0, 1000, 4, 100)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new IpRateLimiter(5, 0, 4, 100)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
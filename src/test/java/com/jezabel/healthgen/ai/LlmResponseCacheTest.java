@@ -0,0 +1,132 @@
+package com.jezabel.healthgen.ai;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Clave normalizada, TTL, LRU en memoria y copia en disco acotada que sobrevive reinicios. */
+class LlmResponseCacheTest {
+
+	@TempDir
+	Path dir;
+
+	private static GeminiProperties props(long ttlMs, int maxEntries) {
+		GeminiProperties p = new GeminiProperties();
+		p.getCache().setTtlMs(ttlMs);
+		p.getCache().setMaxEntries(maxEntries);
+		return p;
+	}
+
+	private GeminiProperties onDisk(long maxBytes) {
+		GeminiProperties p = props(60_000, 100);
+		p.getCache().setDir(dir.toString());
+		p.getCache().setDiskMaxBytes(maxBytes);
+		return p;
+	}
+
+	@Test
+	void equivalentPromptsShareTheKey() {
+		LlmResponseCache cache = new LlmResponseCache(props(60_000, 10));
+		// "é" precompuesta frente a "e" + acento combinable; espacios y saltos de línea colapsados
+		String key = cache.keyFor("Qué es\tun  paciente?\n", "gemini", 0.2);
+		assertThat(cache.keyFor("  Que\u0301 es un paciente? ", "gemini", 0.2)).isEqualTo(key);
+
+		assertThat(cache.keyFor("Qué es un paciente?", "otro", 0.2)).isNotEqualTo(key);
+		assertThat(cache.keyFor("Qué es un paciente?", "gemini", 0.7)).isNotEqualTo(key);
+		assertThat(cache.keyFor("Qué es un médico?", "gemini", 0.2)).isNotEqualTo(key);
+	}
+
+	@Test
+	void entriesExpireAfterTheTtl() throws InterruptedException {
+		LlmResponseCache cache = new LlmResponseCache(props(30, 10));
+		cache.put("k", "respuesta");
+		assertThat(cache.get("k")).isEqualTo("respuesta");
+
+		Thread.sleep(60);
+		assertThat(cache.get("k")).isNull();
+		assertThat(cache.stats()).containsEntry("expired", 1L).containsEntry("entries", 0);
+	}
+
+	@Test
+	void leastRecentlyUsedIsEvicted() {
+		LlmResponseCache cache = new LlmResponseCache(props(60_000, 2));
+		cache.put("a", "A");
+		cache.put("b", "B");
+		cache.get("a");          // "b" pasa a ser la menos usada
+		cache.put("c", "C");
+
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("a")).isEqualTo("A");
+		assertThat(cache.get("c")).isEqualTo("C");
+		assertThat(cache.evictions()).isEqualTo(1);
+	}
+
+	@Test
+	void diskCopySurvivesANewInstance() {
+		new LlmResponseCache(onDisk(1 << 20)).put("k", "línea 1\nlínea 2");
+
+		LlmResponseCache restarted = new LlmResponseCache(onDisk(1 << 20));
+		assertThat(restarted.stats()).containsEntry("diskEntries", 1).containsEntry("entries", 0);
+		assertThat(restarted.get("k")).isEqualTo("línea 1\nlínea 2");
+		assertThat(restarted.stats()).containsEntry("diskHits", 1L).containsEntry("entries", 1);
+	}
+
+	@Test
+	void diskIsCappedByBytesDroppingTheLeastUsed() throws IOException {
+		String text = "x".repeat(100);   // ~115 bytes con la cabecera
+		LlmResponseCache cache = new LlmResponseCache(onDisk(300));
+		cache.put("a", text);
+		cache.put("b", text);
+		cache.put("c", text);
+
+		assertThat(Files.exists(dir.resolve("a.txt"))).isFalse();
+		assertThat(Files.exists(dir.resolve("b.txt"))).isTrue();
+		assertThat(Files.exists(dir.resolve("c.txt"))).isTrue();
+		assertThat((long) cache.stats().get("diskBytes")).isLessThanOrEqualTo(300);
+		assertThat(cache.stats()).containsEntry("diskEvictions", 1L);
+
+		// al arrancar con un tope menor se recorta desde la más antigua
+		Files.setLastModifiedTime(dir.resolve("b.txt"), FileTime.fromMillis(System.currentTimeMillis() - 2_000));
+		LlmResponseCache smaller = new LlmResponseCache(onDisk(150));
+		assertThat(smaller.stats()).containsEntry("diskEntries", 1);
+		assertThat(Files.exists(dir.resolve("b.txt"))).isFalse();
+		assertThat(smaller.get("c")).isEqualTo(text);
+	}
+
+	@Test
+	void startupSweepDropsExpiredAndHalfWrittenFiles() throws IOException {
+		long old = System.currentTimeMillis() - 120_000;
+		Files.writeString(dir.resolve("viejo.txt"), old + "\nantigua");
+		Files.setLastModifiedTime(dir.resolve("viejo.txt"), FileTime.fromMillis(old));
+		Files.writeString(dir.resolve("nuevo.txt"), System.currentTimeMillis() + "\nreciente");
+		Files.writeString(dir.resolve("cortado.tmp"), "a medias");
+
+		LlmResponseCache cache = new LlmResponseCache(onDisk(1 << 20));   // TTL 60 s
+
+		assertThat(Files.exists(dir.resolve("viejo.txt"))).isFalse();
+		assertThat(Files.exists(dir.resolve("cortado.tmp"))).isFalse();
+		assertThat(cache.stats()).containsEntry("diskEntries", 1).containsEntry("expired", 1L);
+		assertThat(cache.get("nuevo")).isEqualTo("reciente");
+	}
+
+	@Test
+	void writesSweepExpiredFilesOncePerInterval() throws InterruptedException {
+		GeminiProperties p = onDisk(1 << 20);
+		p.getCache().setTtlMs(30);
+		p.getCache().setDiskSweepMs(0);
+		LlmResponseCache cache = new LlmResponseCache(p);
+		cache.put("a", "A");
+		Thread.sleep(60);
+
+		// nadie vuelve a pedir "a": la siguiente escritura la barre igualmente
+		cache.put("b", "B");
+		assertThat(Files.exists(dir.resolve("a.txt"))).isFalse();
+		assertThat(cache.stats()).containsEntry("diskEntries", 1);
+	}
+}
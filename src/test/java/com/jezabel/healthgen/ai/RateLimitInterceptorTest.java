@@ -0,0 +1,67 @@
+package com.jezabel.healthgen.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.DispatcherType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitInterceptorTest {
+
+	private RateLimitInterceptor interceptor;
+
+	@BeforeEach
+	void setUp() {
+		RateLimitProperties props = new RateLimitProperties();
+		props.getDefaults().setRequests(1);
+		props.getPolicies().put("chat", policy("/api/ai/chat/**", 2));
+		props.getPolicies().put("diagram", policy("/api/ai/diagram/**", 1));
+		interceptor = new RateLimitInterceptor(props, new ObjectMapper(), new SimpleMeterRegistry());
+	}
+
+	private static RateLimitProperties.Policy policy(String path, int requests) {
+		RateLimitProperties.Policy p = new RateLimitProperties.Policy();
+		p.setPath(path);
+		p.setRequests(requests);
+		p.setWindowMs(60_000);
+		return p;
+	}
+
+	private boolean call(String uri, DispatcherType type) throws Exception {
+		MockHttpServletRequest req = new MockHttpServletRequest("POST", uri);
+		req.setRemoteAddr("10.0.0.1");
+		req.setDispatcherType(type);
+		MockHttpServletResponse res = new MockHttpServletResponse();
+		boolean ok = interceptor.preHandle(req, res, new Object());
+		if (!ok) {
+			assertThat(res.getStatus()).isEqualTo(429);
+			assertThat(res.getHeader("Retry-After")).isNotBlank();
+		}
+		return ok;
+	}
+
+	@Test
+	void eachPolicyHasItsOwnBudget() throws Exception {
+		assertThat(call("/api/ai/chat", DispatcherType.REQUEST)).isTrue();
+		assertThat(call("/api/ai/chat/stream", DispatcherType.REQUEST)).isTrue();
+		assertThat(call("/api/ai/chat", DispatcherType.REQUEST)).isFalse();
+
+		// agotar el chat no afecta a diagramas ni al límite por defecto
+		assertThat(call("/api/ai/diagram", DispatcherType.REQUEST)).isTrue();
+		assertThat(call("/api/ai/diagram", DispatcherType.REQUEST)).isFalse();
+		assertThat(call("/api/ai/test", DispatcherType.REQUEST)).isTrue();
+		assertThat(call("/api/ai/test", DispatcherType.REQUEST)).isFalse();
+	}
+
+	@Test
+	void asyncDispatchDoesNotSpendAnotherToken() throws Exception {
+		assertThat(call("/api/ai/diagram", DispatcherType.REQUEST)).isTrue();
+		// Spring vuelve a pasar por el interceptor al entregar el CompletableFuture: no debe dar 429
+		assertThat(call("/api/ai/diagram", DispatcherType.ASYNC)).isTrue();
+		assertThat(call("/api/ai/diagram", DispatcherType.ASYNC)).isTrue();
+	}
+}
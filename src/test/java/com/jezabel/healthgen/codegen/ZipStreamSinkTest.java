@@ -0,0 +1,195 @@
+package com.jezabel.healthgen.codegen;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Lo que escribe ZipStreamSink se vuelve a leer con ZipInputStream (secuencial) y ZipFile (directorio central). */
+class ZipStreamSinkTest {
+
+	@TempDir
+	Path tmp;
+
+	private static CodegenProperties.Zip settings(int level) {
+		CodegenProperties.Zip z = new CodegenProperties.Zip();
+		z.setLevel(level);
+		z.setThreads(4);
+		z.setParallelMinBytes(1024);
+		return z;
+	}
+
+	/** Mezcla de tamaños: por debajo de storedBelow, texto repetitivo, texto no ASCII y datos que no comprimen. */
+	private static Map<String, String> files(int count) {
+		Map<String, String> out = new LinkedHashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < count; i++) {
+			String content = switch (i % 4) {
+				case 0 -> "x" + i;
+				case 1 -> "public class Entity" + i + " {\n    private Long id;\n}\n".repeat(50 + i);
+				case 2 -> "// comentario con acentos: áéíóú ñ ü — " + i + "\n".repeat(i % 7 + 1);
+				default -> {
+					StringBuilder sb = new StringBuilder();
+					for (int k = 0; k < 3_000; k++) sb.append((char) (33 + random.nextInt(90)));
+					yield sb.toString();
+				}
+			};
+			out.put("src/main/java/com/acme/dir" + (i % 3) + "/Archivo" + i + (i % 5 == 0 ? "ñ" : "") + ".java", content);
+		}
+		return out;
+	}
+
+	private static byte[] zip(Map<String, String> files, CodegenProperties.Zip settings, ExecutorService pool) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipStreamSink sink = new ZipStreamSink(bytes, settings, new BufferPool(1 << 20), pool)) {
+			for (Map.Entry<String, String> f : files.entrySet()) sink.write(f.getKey(), f.getValue());
+		}
+		return bytes.toByteArray();
+	}
+
+	private Map<String, String> readWithZipFile(byte[] zip) throws IOException {
+		Path file = Files.write(tmp.resolve("out.zip"), zip);
+		Map<String, String> out = new LinkedHashMap<>();
+		try (ZipFile zf = new ZipFile(file.toFile())) {
+			for (ZipEntry e : Collections.list(zf.entries())) {
+				out.put(e.getName(), new String(zf.getInputStream(e).readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+		return out;
+	}
+
+	private static Map<String, String> readWithZipInputStream(byte[] zip) throws IOException {
+		Map<String, String> out = new LinkedHashMap<>();
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			for (ZipEntry e; (e = in.getNextEntry()) != null; ) {
+				out.put(e.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+		return out;
+	}
+
+	private static Map<String, Integer> methods(byte[] zip) throws IOException {
+		Map<String, Integer> out = new LinkedHashMap<>();
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			for (ZipEntry e; (e = in.getNextEntry()) != null; ) out.put(e.getName(), e.getMethod());
+		}
+		return out;
+	}
+
+	@Test
+	void levelZeroStoresEverything() throws IOException {
+		Map<String, String> files = files(40);
+		byte[] zip = zip(files, settings(0), null);
+
+		assertThat(readWithZipInputStream(zip)).containsExactlyEntriesOf(files);
+		assertThat(readWithZipFile(zip)).containsExactlyEntriesOf(files);
+		assertThat(methods(zip).values()).containsOnly(ZipEntry.STORED);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 6, 9})
+	void deflateRoundTripsAtEveryLevel(int level) throws IOException {
+		Map<String, String> files = files(40);
+		byte[] zip = zip(files, settings(level), null);
+
+		assertThat(readWithZipInputStream(zip)).containsExactlyEntriesOf(files);
+		assertThat(readWithZipFile(zip)).containsExactlyEntriesOf(files);
+		Map<String, Integer> methods = methods(zip);
+		// lo diminuto va STORED y lo repetitivo DEFLATED
+		assertThat(methods.get("src/main/java/com/acme/dir0/Archivo0ñ.java")).isEqualTo(ZipEntry.STORED);
+		assertThat(methods.get("src/main/java/com/acme/dir1/Archivo1.java")).isEqualTo(ZipEntry.DEFLATED);
+	}
+
+	@Test
+	void parallelDeflateKeepsOrderAndContent() throws IOException {
+		Map<String, String> files = files(300);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			CodegenProperties.Zip parallel = settings(6);
+			parallel.setParallel(true);
+			byte[] zip = zip(files, parallel, pool);
+
+			assertThat(readWithZipInputStream(zip)).containsExactlyEntriesOf(files);
+			assertThat(readWithZipFile(zip)).containsExactlyEntriesOf(files);
+			// mismas decisiones STORED/DEFLATED y mismo tamaño que en un solo hilo
+			byte[] serial = zip(files, settings(6), null);
+			assertThat(methods(zip)).containsExactlyEntriesOf(methods(serial));
+			assertThat(zip).hasSameSizeAs(serial);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void storedBytesAreCopiedAsIs() throws IOException {
+		byte[] inner = zip(Map.of("a.txt", "hola"), settings(6), null);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipStreamSink sink = new ZipStreamSink(bytes)) {
+			sink.writeStored("proyecto.zip", inner);
+			sink.write("manifest.json", "{}");
+		}
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			ZipEntry e = in.getNextEntry();
+			assertThat(e.getName()).isEqualTo("proyecto.zip");
+			assertThat(e.getMethod()).isEqualTo(ZipEntry.STORED);
+			assertThat(in.readAllBytes()).isEqualTo(inner);
+		}
+	}
+
+	@Test
+	void zip64RecordsAppearAt65535Entries() throws IOException {
+		Map<String, String> files = new LinkedHashMap<>();
+		for (int i = 0; i < 0xFFFF; i++) files.put("f" + i, "");
+		byte[] zip = zip(files, settings(6), null);
+
+		assertThat(containsSignature(zip, 0x06064b50)).isTrue();
+		Path file = Files.write(tmp.resolve("big.zip"), zip);
+		try (ZipFile zf = new ZipFile(file.toFile())) {
+			assertThat(zf.size()).isEqualTo(0xFFFF);
+			assertThat(zf.getEntry("f65534")).isNotNull();
+		}
+		assertThat(readWithZipInputStream(zip)).hasSize(0xFFFF);
+
+		// una entrada menos: ZIP clásico, sin registros ZIP64
+		files.remove("f65534");
+		assertThat(containsSignature(zip(files, settings(6), null), 0x06064b50)).isFalse();
+	}
+
+	@Test
+	void writingAfterFinishFailsAndReleaseIsIdempotent() throws IOException {
+		ZipStreamSink sink = new ZipStreamSink(new ByteArrayOutputStream(), settings(6), new BufferPool(0), null);
+		sink.write("a.txt", "contenido ".repeat(100));
+		sink.finish();
+		sink.release();
+		sink.release();
+		assertThatThrownBy(() -> sink.write("b.txt", "x")).isInstanceOf(IOException.class);
+	}
+
+	// busca la firma en los últimos bytes (donde van los registros de fin de directorio)
+	private static boolean containsSignature(byte[] zip, int signature) {
+		for (int i = zip.length - 4; i >= Math.max(0, zip.length - 200); i--) {
+			int v = (zip[i] & 0xFF) | (zip[i + 1] & 0xFF) << 8 | (zip[i + 2] & 0xFF) << 16 | (zip[i + 3] & 0xFF) << 24;
+			if (v == signature) return true;
+		}
+		return false;
+	}
+}
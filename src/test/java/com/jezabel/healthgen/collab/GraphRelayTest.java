@@ -0,0 +1,73 @@
+package com.jezabel.healthgen.collab;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Rendezvous hashing: reparto estable y movimiento mínimo al cambiar los nodos. */
+class GraphRelayTest {
+
+	private static final List<String> NODES = List.of("a", "b", "c", "d");
+
+	private static List<String> docs(int n) {
+		List<String> out = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) out.add("doc-" + i);
+		return out;
+	}
+
+	private static Map<String, String> owners(List<String> docs, List<String> nodes) {
+		Map<String, String> out = new HashMap<>();
+		for (String d : docs) out.put(d, GraphRelay.rendezvous(d, nodes));
+		return out;
+	}
+
+	@Test
+	void ownershipIsStableAndIndependentOfNodeOrder() {
+		List<String> docs = docs(2_000);
+		Map<String, String> first = owners(docs, NODES);
+		assertThat(owners(docs, NODES)).isEqualTo(first);
+		assertThat(owners(docs, List.of("d", "b", "a", "c"))).isEqualTo(first);
+		// todos los nodos reciben una parte razonable
+		for (String node : NODES) {
+			assertThat(first.values().stream().filter(node::equals).count()).isBetween(300L, 700L);
+		}
+	}
+
+	@Test
+	void removingANodeMovesOnlyItsDocuments() {
+		List<String> docs = docs(2_000);
+		Map<String, String> before = owners(docs, NODES);
+		Map<String, String> after = owners(docs, List.of("a", "b", "d"));
+
+		for (String d : docs) {
+			if (before.get(d).equals("c")) assertThat(after.get(d)).isNotEqualTo("c");
+			else assertThat(after.get(d)).as(d).isEqualTo(before.get(d));
+		}
+	}
+
+	@Test
+	void addingANodeOnlyTakesDocumentsForItself() {
+		List<String> docs = docs(2_000);
+		Map<String, String> before = owners(docs, NODES);
+		Map<String, String> after = owners(docs, List.of("a", "b", "c", "d", "e"));
+
+		int moved = 0;
+		for (String d : docs) {
+			if (!after.get(d).equals(before.get(d))) {
+				assertThat(after.get(d)).isEqualTo("e");
+				moved++;
+			}
+		}
+		assertThat(moved).isPositive();
+	}
+
+	@Test
+	void singleNodeOwnsEverything() {
+		assertThat(GraphRelay.rendezvous("x", List.of("solo"))).isEqualTo("solo");
+	}
+}
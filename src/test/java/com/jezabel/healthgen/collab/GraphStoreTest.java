@@ -0,0 +1,100 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Un solo nodo, sin broker: carga desde el journal y descarte por inactividad. */
+class GraphStoreTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicInteger loads = new AtomicInteger();
+	private final ExecutorService threads = Executors.newCachedThreadPool();
+	private GraphStore store;
+
+	/** Journal cuya lectura de "lento" se queda esperando a {@link #release}. */
+	private final GraphJournal journal = new GraphJournal() {
+		@Override
+		public void append(String docId, Batch batch) { }
+
+		@Override
+		public void snapshot(String docId, long seq, List<ObjectNode> cells) { }
+
+		@Override
+		public Recovered load(String docId) {
+			if (!docId.equals("lento")) return null;
+			loads.incrementAndGet();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			ObjectNode cell = new ObjectMapper().createObjectNode().put("id", "c1");
+			return new Recovered(7, List.of(cell), List.of());
+		}
+	};
+
+	private GraphStore store(long idleMs) {
+		GraphProperties props = new GraphProperties();
+		props.setIdleMs(idleMs);
+		store = new GraphStore(new SimpMessagingTemplate((message, timeout) -> true), new ObjectMapper(), props,
+				LoopbackRelay.standalone("local"), journal);
+		return store;
+	}
+
+	@AfterEach
+	void stop() {
+		release.countDown();
+		threads.shutdownNow();
+		if (store != null) store.shutdown();
+	}
+
+	@Test
+	void slowJournalLoadDoesNotBlockOtherDocumentsAndRunsOnce() throws Exception {
+		GraphStore store = store(3_600_000);
+		List<CompletableFuture<Map<String, Object>>> waiting = List.of(
+				CompletableFuture.supplyAsync(() -> store.snapshot("lento"), threads),
+				CompletableFuture.supplyAsync(() -> store.snapshot("lento"), threads),
+				CompletableFuture.supplyAsync(() -> store.snapshot("lento"), threads));
+		while (loads.get() == 0) Thread.sleep(1);
+
+		// con la carga en marcha, el resto de documentos sigue respondiendo
+		CompletableFuture<Void> others = CompletableFuture.runAsync(() -> {
+			for (int i = 0; i < 500; i++) store.submit("doc-" + i, "{\"op\":\"add\",\"id\":\"c\"}");
+		}, threads);
+		others.get(5, TimeUnit.SECONDS);
+		assertThat(waiting).noneMatch(CompletableFuture::isDone);
+
+		release.countDown();
+		for (CompletableFuture<Map<String, Object>> f : waiting) {
+			assertThat(f.get(5, TimeUnit.SECONDS)).containsEntry("seq", 7L);
+		}
+		assertThat(loads.get()).isEqualTo(1);
+	}
+
+	@Test
+	void evictionDropsTheBinaryFlagWithTheDocument() throws Exception {
+		GraphStore store = store(0);
+		store.onRelay(RelayMessage.enableBinary("otro", "doc"));
+		assertThat(store.snapshot("doc")).containsKey("strings");
+
+		Thread.sleep(5);
+		store.evictIdle();
+		assertThat(store.stats()).containsEntry("documents", 0);
+		// vuelve a crearse sin la marca: nadie la ha pedido desde el descarte
+		assertThat(store.snapshot("doc")).doesNotContainKey("strings");
+	}
+}
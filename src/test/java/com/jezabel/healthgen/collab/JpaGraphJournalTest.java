@@ -0,0 +1,176 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jezabel.healthgen.domain.GraphPatchBatchEntity;
+import com.jezabel.healthgen.domain.GraphSessionEntity;
+import com.jezabel.healthgen.repository.GraphPatchBatchRepository;
+import com.jezabel.healthgen.repository.GraphSessionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Journal contra repositorios en memoria: reinicio y recuperación, y aislamiento de documentos que fallan. */
+class JpaGraphJournalTest {
+
+	private final ObjectMapper om = new ObjectMapper();
+
+	// "base de datos" que sobrevive al journal, como la real entre reinicios
+	private final Map<String, GraphSessionEntity> sessionRows = new HashMap<>();
+	private final List<GraphPatchBatchEntity> batchRows = new ArrayList<>();
+	private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+	private final GraphSessionRepository sessions = (GraphSessionRepository) Proxy.newProxyInstance(
+			getClass().getClassLoader(), new Class<?>[]{GraphSessionRepository.class}, (proxy, m, args) -> switch (m.getName()) {
+				case "findById" -> Optional.ofNullable(sessionRows.get((String) args[0]));
+				case "save" -> {
+					GraphSessionEntity s = (GraphSessionEntity) args[0];
+					sessionRows.put(s.getDocId(), s);
+					yield s;
+				}
+				default -> throw new UnsupportedOperationException(m.getName());
+			});
+
+	private final GraphPatchBatchRepository batches = (GraphPatchBatchRepository) Proxy.newProxyInstance(
+			getClass().getClassLoader(), new Class<?>[]{GraphPatchBatchRepository.class}, (proxy, m, args) -> switch (m.getName()) {
+				case "saveAll" -> {
+					@SuppressWarnings("unchecked")
+					List<GraphPatchBatchEntity> rows = (List<GraphPatchBatchEntity>) args[0];
+					for (GraphPatchBatchEntity b : rows) {
+						if (failing.contains(b.getDocId())) throw new IllegalStateException("fila rechazada: " + b.getDocId());
+					}
+					batchRows.addAll(rows);
+					yield rows;
+				}
+				case "findByDocIdAndToSeqGreaterThanOrderByFromSeqAsc" -> batchRows.stream()
+						.filter(b -> b.getDocId().equals(args[0]) && b.getToSeq() > (long) args[1])
+						.sorted(Comparator.comparingLong(GraphPatchBatchEntity::getFromSeq))
+						.toList();
+				case "deleteCovered" -> {
+					int before = batchRows.size();
+					batchRows.removeIf(b -> b.getDocId().equals(args[0]) && b.getToSeq() <= (long) args[1]);
+					yield before - batchRows.size();
+				}
+				default -> throw new UnsupportedOperationException(m.getName());
+			});
+
+	private final TransactionTemplate tx = new TransactionTemplate(new PlatformTransactionManager() {
+		@Override
+		public TransactionStatus getTransaction(TransactionDefinition definition) {
+			return new SimpleTransactionStatus();
+		}
+
+		@Override
+		public void commit(TransactionStatus status) { }
+
+		@Override
+		public void rollback(TransactionStatus status) { }
+	});
+
+	private JpaGraphJournal journal(int maxAttempts, int maxQueued) {
+		GraphProperties.Persist props = new GraphProperties.Persist();
+		props.setFlushMs(3_600_000);   // solo flush explícito
+		props.setMaxAttempts(maxAttempts);
+		props.setMaxQueued(maxQueued);
+		return new JpaGraphJournal(sessions, batches, tx, om, props);
+	}
+
+	private GraphJournal.Batch batch(long from, long to) {
+		List<JsonNode> patches = new ArrayList<>();
+		for (long s = from; s <= to; s++) patches.add(om.createObjectNode().put("seq", s).put("op", "move"));
+		return new GraphJournal.Batch(from, to, patches);
+	}
+
+	private ObjectNode cell(String id) {
+		return om.createObjectNode().put("id", id).put("type", "entity");
+	}
+
+	@Test
+	void recoversSnapshotAndLaterBatchesAfterRestart() {
+		JpaGraphJournal first = journal(5, 200_000);
+		first.append("doc-1", batch(1, 3));
+		first.append("doc-1", batch(4, 6));
+		first.snapshot("doc-1", 6, List.of(cell("a"), cell("b")));
+		first.append("doc-1", batch(7, 9));
+		first.append("doc-1", batch(10, 10));
+		first.close();
+
+		// los lotes cubiertos por el snapshot ya no están en la base
+		assertThat(batchRows).extracting(GraphPatchBatchEntity::getFromSeq).containsExactly(7L, 10L);
+
+		JpaGraphJournal restarted = journal(5, 200_000);
+		GraphJournal.Recovered r = restarted.load("doc-1");
+		restarted.close();
+
+		assertThat(r.snapshotSeq()).isEqualTo(6);
+		assertThat(r.cells()).extracting(c -> c.path("id").asText()).containsExactly("a", "b");
+		assertThat(r.batches()).extracting(GraphJournal.Batch::fromSeq).containsExactly(7L, 10L);
+		assertThat(r.batches().get(0).patches()).hasSize(3);
+		assertThat(r.batches().get(1).toSeq()).isEqualTo(10);
+		assertThat(restarted.load("otro")).isNull();
+	}
+
+	@Test
+	void failingDocumentDoesNotBlockOthersAndIsEventuallyDiscarded() {
+		failing.add("bad");
+		JpaGraphJournal journal = journal(3, 200_000);
+		for (int round = 0; round < 3; round++) {
+			journal.append("good", batch(round * 2L + 1, round * 2L + 2));
+			journal.append("bad", batch(round * 2L + 1, round * 2L + 2));
+			journal.flush();
+		}
+
+		// el bueno se escribió en cada ronda; el malo agotó los intentos y ya no ocupa memoria
+		assertThat(batchRows).extracting(GraphPatchBatchEntity::getDocId).containsOnly("good").hasSize(3);
+		assertThat(journal.stats()).containsEntry("discardedDocuments", 1L).containsEntry("pendingPatches", 0);
+		journal.close();
+	}
+
+	@Test
+	void databaseOutageKeepsEverythingQueued() {
+		failing.add("a");
+		failing.add("b");
+		JpaGraphJournal journal = journal(2, 200_000);
+		journal.append("a", batch(1, 2));
+		journal.append("b", batch(1, 2));
+		for (int i = 0; i < 5; i++) journal.flush();
+
+		// fallan todos: no es culpa de un documento y no se descarta nada
+		assertThat(journal.stats()).containsEntry("discardedDocuments", 0L).containsEntry("pendingPatches", 4);
+
+		failing.clear();
+		journal.flush();
+		assertThat(batchRows).hasSize(2);
+		assertThat(journal.stats()).containsEntry("pendingPatches", 0);
+		journal.close();
+	}
+
+	@Test
+	void pendingMemoryIsCapped() {
+		failing.add("doc");
+		JpaGraphJournal journal = journal(5, 10);
+		for (long s = 1; s <= 20; s += 2) journal.append("doc", batch(s, s + 1));
+
+		assertThat(journal.stats()).containsEntry("pendingPatches", 10).containsEntry("droppedPatches", 10L);
+		// lo que se guardó sigue siendo un tramo continuo desde el principio
+		assertThat(journal.load("doc").batches()).extracting(GraphJournal.Batch::toSeq).containsExactly(2L, 4L, 6L, 8L, 10L);
+		failing.clear();
+		journal.close();
+	}
+}
@@ -0,0 +1,142 @@
+package com.jezabel.healthgen.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Trama del servidor -> cliente y de cliente -> servidor: cada tipo de registro vuelve igual. */
+class PatchCodecTest {
+
+	private final ObjectMapper om = new ObjectMapper();
+	private final PatchCodec codec = new PatchCodec(om);
+
+	private List<JsonNode> patches(String... json) throws IOException {
+		List<JsonNode> out = new ArrayList<>();
+		for (String j : json) out.add(om.readTree(j));
+		return out;
+	}
+
+	// el decodificador escribe los enteros como long: se compara el JSON, no el tipo de nodo
+	private JsonNode json(List<JsonNode> patches) throws IOException {
+		return om.readTree(om.writeValueAsString(patches));
+	}
+
+	/** Codifica como el servidor: la posición base de cada MOVE es la del estado antes de aplicarlo. */
+	private byte[] encode(long fromSeq, List<JsonNode> patches, PatchCodec.StringTable table, Map<String, long[]> state) {
+		PatchCodec.FrameWriter w = codec.writer(fromSeq, patches.size(), table);
+		for (JsonNode p : patches) {
+			w.write(p, state::get);
+			String id = PatchCodec.cellIdOf(p);
+			if (id == null) continue;
+			if ("remove".equals(p.path("op").asText())) state.remove(id);
+			else if (p.has("position")) state.put(id, PatchCodec.integralPosition(p.get("position")));
+		}
+		return w.finish();
+	}
+
+	@Test
+	void everyRecordKindRoundTrips() throws IOException {
+		List<JsonNode> in = patches(
+				"{\"op\":\"add\",\"id\":\"c1\",\"type\":\"entity\",\"position\":{\"x\":10,\"y\":20}}",
+				"{\"op\":\"update\",\"id\":\"c1\",\"label\":\"Paciente ñ\"}",
+				"{\"op\":\"move\",\"id\":\"c1\",\"position\":{\"x\":13,\"y\":-5}}",
+				"{\"op\":\"move\",\"id\":\"c1\",\"position\":{\"x\":14,\"y\":-4}}",
+				"{\"op\":\"move\",\"id\":\"c2\",\"position\":{\"x\":1.5,\"y\":2}}",
+				"{\"op\":\"resize\",\"id\":\"c1\",\"size\":{\"w\":100,\"h\":40}}",
+				"{\"op\":\"remove\",\"id\":\"c1\"}",
+				"{\"type\":\"clear\"}",
+				"[1,2,3]");
+		PatchCodec.StringTable server = new PatchCodec.StringTable();
+		byte[] frame = encode(41, in, server, new HashMap<>());
+
+		PatchCodec.StringTable client = new PatchCodec.StringTable();
+		List<JsonNode> out = codec.decode(frame, client, true, id -> null);
+
+		assertThat(json(out)).isEqualTo(json(in));
+		assertThat(client.toList()).isEqualTo(server.toList()).contains("c1", "c2", "resize");
+	}
+
+	@Test
+	void repeatedIdsAreSentAsTableIndexes() throws IOException {
+		PatchCodec.StringTable server = new PatchCodec.StringTable();
+		PatchCodec.StringTable client = new PatchCodec.StringTable();
+		Map<String, long[]> serverState = new HashMap<>();
+		Map<String, long[]> clientState = new HashMap<>();
+		String longId = "entidad-con-un-identificador-bastante-largo";
+
+		List<JsonNode> first = patches("{\"op\":\"add\",\"id\":\"" + longId + "\",\"position\":{\"x\":100,\"y\":100}}");
+		byte[] f1 = encode(1, first, server, serverState);
+		assertThat(json(codec.decode(f1, client, true, clientState::get))).isEqualTo(json(first));
+		clientState.put(longId, new long[] {100, 100});
+
+		List<JsonNode> second = patches("{\"op\":\"move\",\"id\":\"" + longId + "\",\"position\":{\"x\":101,\"y\":99}}");
+		byte[] f2 = encode(2, second, server, serverState);
+		// cabecera + op + índice + dos deltas de un byte: el id ya no viaja
+		assertThat(f2.length).isLessThan(10);
+		assertThat(json(codec.decode(f2, client, true, clientState::get))).isEqualTo(json(second));
+	}
+
+	@Test
+	void clientFramesUseAbsolutePositionsAndDoNotExtendTheTable() throws IOException {
+		PatchCodec.StringTable table = new PatchCodec.StringTable();
+		encode(1, patches("{\"op\":\"add\",\"id\":\"known\"}"), table, new HashMap<>());
+
+		List<JsonNode> in = patches(
+				"{\"op\":\"move\",\"id\":\"known\",\"position\":{\"x\":7,\"y\":8}}",
+				"{\"op\":\"move\",\"id\":\"nuevo\",\"position\":{\"x\":-3,\"y\":0}}");
+		PatchCodec.FrameWriter w = codec.clientWriter(in.size(), table);
+		for (JsonNode p : in) w.write(p, id -> null);
+		byte[] frame = w.finish();
+
+		// el servidor las lee con base 0, igual que GraphStore
+		assertThat(json(codec.decode(frame, table, false, id -> null))).isEqualTo(json(in));
+		assertThat(table.toList()).containsExactly("known");
+	}
+
+	@Test
+	void truncatedFramesAreRejected() throws IOException {
+		List<JsonNode> in = patches(
+				"{\"op\":\"add\",\"id\":\"c1\",\"type\":\"entity\"}",
+				"{\"op\":\"move\",\"id\":\"c1\",\"position\":{\"x\":300,\"y\":-300}}",
+				"{\"op\":\"resize\",\"id\":\"c1\",\"w\":1}");
+		byte[] frame = encode(1, in, new PatchCodec.StringTable(), new HashMap<>());
+
+		for (int len = 0; len < frame.length; len++) {
+			byte[] cut = Arrays.copyOf(frame, len);
+			assertThatThrownBy(() -> codec.decode(cut, new PatchCodec.StringTable(), true, id -> null))
+					.as("%d de %d bytes", len, frame.length)
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test
+	void corruptFramesAreRejected() throws IOException {
+		byte[] frame = encode(1, patches("{\"op\":\"update\",\"id\":\"c1\",\"x\":1}"), new PatchCodec.StringTable(), new HashMap<>());
+
+		byte[] magic = frame.clone();
+		magic[0] = 'X';
+		byte[] version = frame.clone();
+		version[1] = 99;
+		// registro: cabecera de 4 bytes (G, versión, fromSeq, n) y luego el código de operación
+		byte[] op = frame.clone();
+		op[4] = 42;
+		byte[] unknownRef = {PatchCodec.MAGIC, PatchCodec.VERSION, 1, 1, 4, 2 << 1};
+		byte[] hugeCount = {PatchCodec.MAGIC, PatchCodec.VERSION, 1, (byte) 0xFF, (byte) 0xFF, 0x7F};
+		byte[] badJson = {PatchCodec.MAGIC, PatchCodec.VERSION, 1, 1, 0, 3, '{', 'x', '}'};
+
+		for (byte[] bad : List.of(magic, version, op, unknownRef, hugeCount, badJson)) {
+			assertThatThrownBy(() -> codec.decode(bad, new PatchCodec.StringTable(), true, id -> null))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.jezabel.healthgen.collab;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RelayMessageTest {
+
+	private static byte[] write(RelayMessage... messages) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (RelayMessage m : messages) m.writeTo(out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	void everyKindSurvivesTheWire() throws IOException {
+		List<RelayMessage> messages = List.of(
+				RelayMessage.patches("a", "doc-1", "[{\"op\":\"add\",\"id\":\"ñ\"}]"),
+				RelayMessage.binaryPatches("a", "doc-1", new byte[]{1, 2, 3, (byte) 0xFF}),
+				RelayMessage.enableBinary("b", "doc-2"),
+				RelayMessage.frame("b", "doc-2", 10, 14, "[]", new byte[0]),
+				RelayMessage.frame("b", "doc-2", 15, 15, "[]", null),
+				RelayMessage.sync("c", "doc_3"),
+				RelayMessage.snapshot("c", "doc_3", Long.MAX_VALUE, "{\"cells\":[]}"));
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(write(messages.toArray(RelayMessage[]::new))));
+		for (RelayMessage expected : messages) {
+			RelayMessage read = RelayMessage.readFrom(in);
+			assertThat(read.kind()).isEqualTo(expected.kind());
+			assertThat(read.origin()).isEqualTo(expected.origin());
+			assertThat(read.docId()).isEqualTo(expected.docId());
+			assertThat(read.fromSeq()).isEqualTo(expected.fromSeq());
+			assertThat(read.toSeq()).isEqualTo(expected.toSeq());
+			assertThat(read.json()).isEqualTo(expected.json());
+			assertThat(read.binary()).isEqualTo(expected.binary());
+		}
+		assertThat(in.read()).isEqualTo(-1);
+	}
+
+	@Test
+	void truncatedMessageFails() throws IOException {
+		byte[] full = write(RelayMessage.patches("a", "doc", "[1,2,3]"));
+		byte[] cut = Arrays.copyOf(full, full.length - 2);
+		assertThatThrownBy(() -> RelayMessage.readFrom(new DataInputStream(new ByteArrayInputStream(cut))))
+				.isInstanceOf(EOFException.class);
+	}
+
+	@Test
+	void unknownKindAndOversizedBlocksAreRejected() throws IOException {
+		byte[] bad = write(RelayMessage.sync("a", "doc"));
+		bad[0] = 99;
+		assertThatThrownBy(() -> RelayMessage.readFrom(new DataInputStream(new ByteArrayInputStream(bad))))
+				.isInstanceOf(IOException.class).hasMessageContaining("desconocido");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(RelayMessage.Kind.PATCHES.ordinal());
+		out.writeUTF("a");
+		out.writeUTF("doc");
+		out.writeLong(0);
+		out.writeLong(0);
+		out.writeInt(Integer.MAX_VALUE);
+		assertThatThrownBy(() -> RelayMessage.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))))
+				.isInstanceOf(IOException.class).hasMessageContaining("demasiado grande");
+	}
+}
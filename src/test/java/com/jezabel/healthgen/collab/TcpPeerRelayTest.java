@@ -0,0 +1,79 @@
+package com.jezabel.healthgen.collab;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** El puerto del relay solo atiende a los peers de graph.relay.nodes. */
+class TcpPeerRelayTest {
+
+	private final LinkedBlockingQueue<RelayMessage> delivered = new LinkedBlockingQueue<>();
+	private TcpPeerRelay relay;
+
+	@AfterEach
+	void close() {
+		if (relay != null) relay.close();
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket s = new ServerSocket(0)) {
+			return s.getLocalPort();
+		}
+	}
+
+	private int start(String... others) throws IOException {
+		int port = freePort();
+		List<String> nodes = new ArrayList<>(List.of("a@127.0.0.1:" + port));
+		nodes.addAll(List.of(others));
+		relay = new TcpPeerRelay("a", nodes, 500, 100);
+		relay.start(delivered::add);
+		return port;
+	}
+
+	private static void sendRaw(int port, RelayMessage... messages) throws IOException {
+		try (Socket s = new Socket("127.0.0.1", port);
+			 DataOutputStream out = new DataOutputStream(s.getOutputStream())) {
+			for (RelayMessage m : messages) m.writeTo(out);
+			out.flush();
+		}
+	}
+
+	@Test
+	void onlyMessagesFromKnownPeersAreDelivered() throws Exception {
+		// "c" es un peer, pero no está en esta máquina
+		int port = start("b@127.0.0.1:" + freePort(), "c@192.0.2.1:7703");
+		sendRaw(port,
+				RelayMessage.sync("intruso", "doc"),
+				RelayMessage.sync("c", "doc"),
+				RelayMessage.sync("a", "doc"),
+				RelayMessage.sync("b", "doc"));
+
+		RelayMessage m = delivered.poll(5, TimeUnit.SECONDS);
+		assertThat(m).isNotNull();
+		assertThat(m.origin()).isEqualTo("b");
+		assertThat(delivered.poll(200, TimeUnit.MILLISECONDS)).isNull();
+		assertThat(relay.stats()).containsEntry("received", 1L).containsEntry("rejected", 3L);
+	}
+
+	@Test
+	void connectionsFromUnknownAddressesAreClosed() throws Exception {
+		int port = start("b@192.0.2.1:7702");
+		try (Socket s = new Socket("127.0.0.1", port)) {
+			s.setSoTimeout(5_000);
+			// el relay cierra sin leer nada: EOF en vez de quedarse esperando
+			assertThat(s.getInputStream().read()).isEqualTo(-1);
+		}
+		assertThat(delivered).isEmpty();
+		assertThat(relay.stats()).containsEntry("received", 0L).containsEntry("rejected", 1L);
+	}
+}
@@ -0,0 +1,103 @@
+package com.jezabel.healthgen.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.template.CodegenTemplates;
+import com.jezabel.healthgen.domain.ModelSpecEntity;
+import com.jezabel.healthgen.exception.InvalidSpecException;
+import com.jezabel.healthgen.exception.ResourceNotFoundException;
+import com.jezabel.healthgen.repository.ModelSpecRepository;
+import com.jezabel.healthgen.service.CodegenService;
+import com.jezabel.healthgen.service.ModelSpecService;
+import com.jezabel.healthgen.spec.SpecProperties;
+import com.jezabel.healthgen.trace.TraceProperties;
+import com.jezabel.healthgen.trace.TraceRecord;
+import com.jezabel.healthgen.trace.Tracer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** GET /api/codegen/{id}/delta/files: mismos pasos, errores y traza que el ZIP del parche. */
+@SuppressWarnings("unchecked")
+class CodegenControllerTest {
+
+	private static final String PK = "{\"name\":\"id\",\"type\":\"Long\",\"pk\":true}";
+
+	private final Map<Long, ModelSpecEntity> rows = new HashMap<>();
+	private final ModelSpecRepository repo = (ModelSpecRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[]{ModelSpecRepository.class}, (proxy, m, args) -> switch (m.getName()) {
+				case "findById" -> Optional.ofNullable(rows.get(args[0]));
+				default -> throw new UnsupportedOperationException(m.getName());
+			});
+
+	private final ObjectMapper om = new ObjectMapper();
+	private final CodegenService codegen = new CodegenService(new CodegenProperties(), CodegenTemplates.defaults(),
+			new SimpleMeterRegistry());
+	private final Tracer tracer = tracer();
+	private final CodegenController controller = new CodegenController(
+			new ModelSpecService(repo, om, new SpecProperties(), new SimpleMeterRegistry()), codegen, null, null, om, tracer);
+
+	private static Tracer tracer() {
+		TraceProperties props = new TraceProperties();
+		props.setSampleRate(1.0);
+		return new Tracer(props, null);
+	}
+
+	@AfterEach
+	void stop() {
+		codegen.shutdown();
+	}
+
+	private void row(long id, String attributes) {
+		String json = "{\"name\":\"clinica\",\"packageBase\":\"com.acme\",\"entities\":["
+				+ "{\"name\":\"Paciente\",\"attributes\":[" + attributes + "]}]}";
+		rows.put(id, new ModelSpecEntity(id, "clinica", "1." + id, json, Instant.now()));
+	}
+
+	private List<String> spanNames(TraceRecord trace) {
+		Map<String, Object> root = (Map<String, Object>) trace.toMap().get("root");
+		return ((List<Map<String, Object>>) root.get("children")).stream().map(c -> (String) c.get("name")).toList();
+	}
+
+	@Test
+	void listsThePatchAndTracesEveryStep() throws Exception {
+		row(1, PK);
+		row(2, PK + ",{\"name\":\"nombre\",\"type\":\"String\"}");
+
+		Map<String, Object> delta = controller.deltaFiles(2L, 1L);
+
+		assertThat((List<String>) delta.get("modified")).containsExactly("src/main/java/com/acme/domain/Paciente.java");
+		assertThat(delta).containsEntry("from", 1L).containsEntry("to", 2L);
+		TraceRecord trace = tracer.recent(1).get(0);
+		assertThat(trace.name()).isEqualTo("codegen.delta.files");
+		assertThat(spanNames(trace)).containsExactly(
+				"spec.load", "spec.parse", "spec.load", "spec.parse", "codegen.validate", "codegen.diff");
+	}
+
+	@Test
+	void invalidNewVersionIsRejectedAndTraced() {
+		row(1, PK);
+		row(2, "{\"name\":\"nombre\",\"type\":\"String\"}");
+
+		assertThatThrownBy(() -> controller.deltaFiles(2L, 1L)).isInstanceOf(InvalidSpecException.class);
+		assertThat(tracer.recent(1).get(0).summary()).containsEntry("error", true);
+	}
+
+	@Test
+	void missingVersionIsNotFound() {
+		row(2, PK);
+
+		assertThatThrownBy(() -> controller.deltaFiles(2L, 1L)).isInstanceOf(ResourceNotFoundException.class);
+		assertThat(tracer.recent(1).get(0).summary()).containsEntry("error", true);
+	}
+}
@@ -0,0 +1,75 @@
+package com.jezabel.healthgen.controller;
+
+import com.jezabel.healthgen.job.Job;
+import com.jezabel.healthgen.job.JobProperties;
+import com.jezabel.healthgen.job.JobService;
+import com.jezabel.healthgen.job.JobStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** GET /api/jobs/{id}/artifact: 409 mientras no hay resultado, 200 con el archivo al terminar. */
+class JobControllerTest {
+
+	private final JobService jobs = new JobService(new SimpMessagingTemplate((message, timeout) -> true), new JobProperties());
+	private final JobController controller = new JobController(jobs, null, null, null);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@AfterEach
+	void stop() {
+		release.countDown();
+	}
+
+	private static void await(Job job) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!job.getStatus().isFinished()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(2);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void artifactIsConflictUntilTheJobIsDone() throws Exception {
+		Job job = jobs.submit("codegen", progress -> {
+			release.await(10, TimeUnit.SECONDS);
+			return new Job.Artifact(new byte[]{1, 2, 3}, "application/zip", "p.zip");
+		});
+
+		ResponseEntity<?> pending = controller.artifact(job.getId());
+		assertThat(pending.getStatusCode().value()).isEqualTo(409);
+		assertThat((Map<String, Object>) pending.getBody()).containsEntry("jobId", job.getId())
+				.containsKey("status").doesNotContainKey("filename");
+
+		release.countDown();
+		await(job);
+		ResponseEntity<?> ready = controller.artifact(job.getId());
+		assertThat(ready.getStatusCode().value()).isEqualTo(200);
+		assertThat((byte[]) ready.getBody()).containsExactly(1, 2, 3);
+		assertThat(ready.getHeaders().getContentType()).hasToString("application/zip");
+		assertThat(ready.getHeaders().getFirst("Content-Disposition")).isEqualTo("attachment; filename=p.zip");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void failedJobStaysConflictAndCarriesTheError() throws Exception {
+		Job job = jobs.submit("docs", progress -> {
+			throw new IOException("sin PDF");
+		});
+		await(job);
+
+		ResponseEntity<?> res = controller.artifact(job.getId());
+		assertThat(res.getStatusCode().value()).isEqualTo(409);
+		assertThat((Map<String, Object>) res.getBody()).containsEntry("status", JobStatus.FAILED)
+				.containsEntry("error", "sin PDF");
+		assertThat(controller.status(job.getId())).containsEntry("status", JobStatus.FAILED);
+	}
+}
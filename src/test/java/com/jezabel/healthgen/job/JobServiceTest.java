@@ -0,0 +1,220 @@
+package com.jezabel.healthgen.job;
+
+import com.jezabel.healthgen.exception.GlobalExceptionHandler;
+import com.jezabel.healthgen.exception.ResourceNotFoundException;
+import com.jezabel.healthgen.exception.ServiceBusyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Cola acotada, avance por STOMP con throttling, errores y purga de trabajos terminados. */
+class JobServiceTest {
+
+	/** Lo que se publicaría en el broker: destino y copia del payload. */
+	record Sent(String destination, Map<String, Object> payload) { }
+
+	private final List<Sent> sent = new CopyOnWriteArrayList<>();
+	private final SimpMessagingTemplate bus = new SimpMessagingTemplate((message, timeout) -> true) {
+		@Override
+		@SuppressWarnings("unchecked")
+		public void convertAndSend(String destination, Object payload) {
+			sent.add(new Sent(destination, (Map<String, Object>) payload));
+		}
+	};
+	private final List<JobService> services = new ArrayList<>();
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@AfterEach
+	void stop() {
+		release.countDown();
+		services.forEach(JobService::shutdown);
+	}
+
+	private JobService service(int threads, int queueCapacity) {
+		JobProperties props = new JobProperties();
+		props.setThreads(threads);
+		props.setQueueCapacity(queueCapacity);
+		return service(props);
+	}
+
+	private JobService service(JobProperties props) {
+		JobService s = new JobService(bus, props);
+		services.add(s);
+		return s;
+	}
+
+	private static Job.Artifact artifact(String name) {
+		return new Job.Artifact(name.getBytes(), "text/plain", name);
+	}
+
+	private JobService.Task blocked() {
+		return progress -> {
+			release.await(10, TimeUnit.SECONDS);
+			return artifact("x");
+		};
+	}
+
+	static void await(Job job) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!job.getStatus().isFinished()) {
+			assertThat(System.nanoTime()).as("trabajo %s sin terminar", job.getId()).isLessThan(deadline);
+			Thread.sleep(2);
+		}
+		// el último publish va justo después de marcar el estado
+		Thread.sleep(20);
+	}
+
+	@Test
+	void fullQueueIsRejectedWith503() throws Exception {
+		JobService jobs = service(1, 1);
+		Job running = jobs.submit("a", blocked());
+		while (running.getStatus() != JobStatus.RUNNING) Thread.sleep(1);
+		Job queued = jobs.submit("b", blocked());
+
+		assertThatThrownBy(() -> jobs.submit("c", blocked()))
+				.isInstanceOf(ServiceBusyException.class);
+		// el rechazado no queda retenido
+		assertThat(jobs.stats()).containsEntry("retained", 2).containsEntry("queued", 1);
+		assertThat(queued.getStatus()).isEqualTo(JobStatus.QUEUED);
+
+		ResponseEntity<?> res = new GlobalExceptionHandler().handleBusy(new ServiceBusyException("lleno"));
+		assertThat(res.getStatusCode().value()).isEqualTo(503);
+		assertThat(res.getHeaders().getFirst("Retry-After")).isEqualTo("5");
+
+		release.countDown();
+		await(queued);
+		assertThat(queued.getStatus()).isEqualTo(JobStatus.DONE);
+	}
+
+	@Test
+	void publishesEveryStageAndThrottlesRepeats() throws Exception {
+		JobProperties props = new JobProperties();
+		props.setProgressIntervalMs(60_000);
+		JobService jobs = service(props);
+
+		Job job = jobs.submit("codegen", progress -> {
+			progress.onProgress("parsed", 10, 10);
+			for (int i = 1; i <= 10; i++) progress.onProgress("render", i, 10);
+			progress.onProgress("zipped", 1, 1);
+			return artifact("p.zip");
+		});
+		await(job);
+
+		assertThat(sent).allSatisfy(s -> assertThat(s.destination()).isEqualTo("/topic/jobs." + job.getId()));
+		// etapa nueva siempre; la repetición solo si es la última (N == M) o pasó el intervalo
+		assertThat(sent).extracting(s -> s.payload().get("stage") + ":" + s.payload().get("done"))
+				.containsExactly("started:0", "parsed:10", "render:1", "render:10", "zipped:1", "done:1");
+		Map<String, Object> last = sent.get(sent.size() - 1).payload();
+		assertThat(last).containsEntry("status", JobStatus.DONE).containsEntry("filename", "p.zip")
+				.containsEntry("sizeBytes", 5);
+	}
+
+	@Test
+	void zeroIntervalPublishesEveryStep() throws Exception {
+		JobProperties props = new JobProperties();
+		props.setProgressIntervalMs(0);
+		JobService jobs = service(props);
+
+		Job job = jobs.submit("codegen", progress -> {
+			for (int i = 1; i <= 5; i++) progress.onProgress("render", i, 5);
+			return artifact("x");
+		});
+		await(job);
+
+		assertThat(sent).filteredOn(s -> "render".equals(s.payload().get("stage"))).hasSize(5);
+	}
+
+	@Test
+	void failingTaskEndsFailedWithItsMessage() throws Exception {
+		JobService jobs = service(1, 4);
+		Job failed = jobs.submit("docs", progress -> {
+			throw new IOException("Gemini no respondió");
+		});
+		Job noMessage = jobs.submit("docs", progress -> {
+			throw new IllegalStateException();
+		});
+		await(failed);
+		await(noMessage);
+
+		assertThat(failed.getStatus()).isEqualTo(JobStatus.FAILED);
+		assertThat(failed.getArtifact()).isNull();
+		assertThat(failed.toMap()).containsEntry("error", "Gemini no respondió");
+		assertThat(noMessage.toMap()).containsEntry("error", "IllegalStateException");
+		// el fallo también se publica
+		assertThat(sent).anySatisfy(s -> assertThat(s.payload())
+				.containsEntry("jobId", failed.getId()).containsEntry("status", JobStatus.FAILED));
+	}
+
+	@Test
+	void brokerFailureDoesNotFailTheJob() throws Exception {
+		JobService jobs = new JobService(new SimpMessagingTemplate((message, timeout) -> true) {
+			@Override
+			public void convertAndSend(String destination, Object payload) {
+				throw new IllegalStateException("broker caído");
+			}
+		}, new JobProperties());
+		services.add(jobs);
+
+		Job job = jobs.submit("codegen", progress -> artifact("ok"));
+		await(job);
+		assertThat(job.getStatus()).isEqualTo(JobStatus.DONE);
+	}
+
+	@Test
+	void finishedJobsArePurgedAfterRetention() throws Exception {
+		JobProperties props = new JobProperties();
+		props.setRetentionMs(30);
+		JobService jobs = service(props);
+
+		Job old = jobs.submit("a", progress -> artifact("a"));
+		await(old);
+		Job running = jobs.submit("b", blocked());
+		Thread.sleep(60);
+
+		// la purga corre al enviar otro trabajo; lo que sigue en marcha no se toca
+		jobs.submit("c", progress -> artifact("c"));
+		assertThatThrownBy(() -> jobs.get(old.getId())).isInstanceOf(ResourceNotFoundException.class);
+		assertThat(jobs.get(running.getId())).isSameAs(running);
+	}
+
+	@Test
+	void onlyTheNewestFinishedJobsAreKept() throws Exception {
+		JobProperties props = new JobProperties();
+		props.setThreads(1);
+		props.setMaxFinished(2);
+		JobService jobs = service(props);
+
+		List<Job> done = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Job j = jobs.submit("a", progress -> artifact("a"));
+			await(j);
+			done.add(j);
+			Thread.sleep(2);   // finishedAt distinto para cada uno
+		}
+		Job next = jobs.submit("b", blocked());
+
+		assertThatThrownBy(() -> jobs.get(done.get(0).getId())).isInstanceOf(ResourceNotFoundException.class);
+		assertThatThrownBy(() -> jobs.get(done.get(1).getId())).isInstanceOf(ResourceNotFoundException.class);
+		assertThat(jobs.get(done.get(2).getId())).isSameAs(done.get(2));
+		assertThat(jobs.get(done.get(3).getId())).isSameAs(done.get(3));
+		assertThat(jobs.get(next.getId())).isSameAs(next);
+	}
+
+	@Test
+	void unknownJobIsNotFound() {
+		JobService jobs = service(1, 1);
+		assertThatThrownBy(() -> jobs.get("nope")).isInstanceOf(ResourceNotFoundException.class);
+	}
+}
@@ -0,0 +1,108 @@
+package com.jezabel.healthgen.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.ai.DocsProperties;
+import com.jezabel.healthgen.ai.GeminiClient;
+import com.jezabel.healthgen.ai.GeminiProperties;
+import com.jezabel.healthgen.ai.LlmResponseCache;
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.template.CodegenTemplates;
+import com.jezabel.healthgen.exception.ServiceBusyException;
+import com.jezabel.healthgen.spec.ModelSpec;
+import com.jezabel.healthgen.trace.Tracer;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Documentación: listado de rutas sin generar el proyecto, Gemini (servidor local) → Markdown → PDF. */
+class AiDocServiceTest {
+
+	private HttpServer server;
+	private CodegenService codegen;
+	private AiDocService docs;
+	private final List<String> prompts = new CopyOnWriteArrayList<>();
+
+	@BeforeEach
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/models", ex -> {
+			prompts.add(new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+			byte[] msg = "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"# Clínica\\n\\nDocumentación.\"}]}}]}"
+					.getBytes(StandardCharsets.UTF_8);
+			ex.sendResponseHeaders(200, msg.length);
+			ex.getResponseBody().write(msg);
+			ex.close();
+		});
+		server.start();
+
+		GeminiProperties gp = new GeminiProperties();
+		gp.setApiKey("test");
+		gp.setModel("stub");
+		gp.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/models");
+		gp.getCache().setEnabled(false);
+		GeminiClient gemini = new GeminiClient(gp, new ObjectMapper(), new LlmResponseCache(gp), new SimpleMeterRegistry(),
+				Tracer.disabled());
+		codegen = new CodegenService(new CodegenProperties(), CodegenTemplates.defaults(), new SimpleMeterRegistry());
+
+		DocsProperties props = new DocsProperties();
+		props.setPdfThreads(1);
+		props.setPdfQueueCapacity(1);
+		docs = new AiDocService(null, codegen, gemini, new SimpleMeterRegistry(), Tracer.disabled(), props);
+	}
+
+	@AfterEach
+	void stop() {
+		docs.shutdown();
+		codegen.shutdown();
+		server.stop(0);
+	}
+
+	private static ModelSpec spec() {
+		ModelSpec.Builder b = ModelSpec.builder().name("clinica").packageBase("com.acme");
+		return b.entity("Paciente", List.of(b.attr("id", "LONG", true, "IDENTITY"))).build();
+	}
+
+	@Test
+	void rendersThePdfAsynchronously() throws Exception {
+		byte[] pdf = docs.generatePdfAsync(spec()).get(30, TimeUnit.SECONDS);
+		assertThat(new String(pdf, 0, 5, StandardCharsets.US_ASCII)).isEqualTo("%PDF-");
+	}
+
+	@Test
+	void renderIsRejectedWhenThePdfPoolIsGone() throws Exception {
+		// si el render usara el ForkJoinPool común, apagar el pool de docs no cambiaría nada
+		docs.shutdown();
+		CompletableFuture<byte[]> pdf = docs.generatePdfAsync(spec());
+		assertThatThrownBy(() -> pdf.get(30, TimeUnit.SECONDS))
+				.isInstanceOf(ExecutionException.class)
+				.hasCauseInstanceOf(ServiceBusyException.class);
+	}
+
+	@Test
+	void specWithoutPrimaryKeyIsStillDocumented() throws Exception {
+		// el ZIP lo rechazaría (422), pero para documentar solo hacen falta las rutas
+		ModelSpec.Builder b = ModelSpec.builder().name("borrador").packageBase("com.acme");
+		ModelSpec draft = b.entity("Paciente", List.of(b.attr("nombre", "STRING", false, null))).build();
+
+		byte[] pdf = docs.generatePdf(draft);
+		assertThat(new String(pdf, 0, 5, StandardCharsets.US_ASCII)).isEqualTo("%PDF-");
+		assertThat(prompts).singleElement().asString()
+				.contains("borrador")
+				.contains("src/main/java/com/acme/domain/Paciente.java")
+				.contains("src/main/java/com/acme/controller/PacienteController.java");
+	}
+}
@@ -0,0 +1,158 @@
+package com.jezabel.healthgen.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.template.CodegenTemplates;
+import com.jezabel.healthgen.domain.ModelSpecEntity;
+import com.jezabel.healthgen.exception.GlobalExceptionHandler;
+import com.jezabel.healthgen.repository.ModelSpecRepository;
+import com.jezabel.healthgen.spec.SpecProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Lote: un ZIP por spec + manifest.json con el estado de cada id, en el orden pedido. */
+@SuppressWarnings("unchecked")
+class CodegenBatchServiceTest {
+
+	private static final String VALID = "{\"name\":\"clinica\",\"packageBase\":\"com.acme\",\"entities\":["
+			+ "{\"name\":\"Paciente\",\"attributes\":[{\"name\":\"id\",\"type\":\"Long\",\"pk\":true}]}]}";
+	private static final String NO_PK = "{\"name\":\"borrador\",\"packageBase\":\"com.acme\",\"entities\":["
+			+ "{\"name\":\"Paciente\",\"attributes\":[{\"name\":\"nombre\",\"type\":\"String\"}]}]}";
+
+	private final Map<Long, ModelSpecEntity> rows = new HashMap<>();
+	private final List<List<Long>> queries = new ArrayList<>();
+	private final ModelSpecRepository repo = (ModelSpecRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[]{ModelSpecRepository.class}, (proxy, m, args) -> switch (m.getName()) {
+				case "findAllById" -> {
+					List<Long> ids = new ArrayList<>();
+					((Iterable<Long>) args[0]).forEach(ids::add);
+					queries.add(ids);
+					yield ids.stream().filter(rows::containsKey).map(rows::get).toList();
+				}
+				default -> throw new UnsupportedOperationException(m.getName());
+			});
+
+	private final ObjectMapper om = new ObjectMapper();
+	private final CodegenProperties props = new CodegenProperties();
+	private final CodegenService codegen = new CodegenService(props, CodegenTemplates.defaults(), new SimpleMeterRegistry());
+	private final CodegenBatchService batch;
+
+	CodegenBatchServiceTest() {
+		props.getBatch().setThreads(2);
+		props.getBatch().setMaxSpecs(5);
+		batch = new CodegenBatchService(new ModelSpecService(repo, om, new SpecProperties(), new SimpleMeterRegistry()),
+				codegen, new CodegenCache(codegen, om, props), om, props);
+	}
+
+	@AfterEach
+	void stop() {
+		batch.shutdown();
+		codegen.shutdown();
+	}
+
+	private void row(long id, String name, int revision, String json) {
+		ModelSpecEntity e = new ModelSpecEntity(id, name, "1." + revision, json, Instant.now());
+		e.setRevision(revision);
+		rows.put(id, e);
+	}
+
+	/** Entradas del ZIP exterior (nombre → bytes), en el orden en que se escribieron. */
+	private static Map<String, byte[]> unzip(byte[] zip) throws IOException {
+		Map<String, byte[]> out = new LinkedHashMap<>();
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			for (ZipEntry e; (e = in.getNextEntry()) != null; ) out.put(e.getName(), in.readAllBytes());
+		}
+		return out;
+	}
+
+	@Test
+	void manifestKeepsTheRequestedOrderWithEveryStatus() throws IOException {
+		row(1, "clinica", 1, VALID);
+		row(2, "borrador", 3, NO_PK);
+		row(3, "roto", 1, "{\"name\":\"roto\",\"entities\":[");
+		row(4, "clinica", 2, VALID.replace("Paciente", "Medico"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Map<String, Object> manifest = batch.write(batch.prepare(List.of(4L, 9L, 2L, 3L, 1L)), out);
+
+		List<Map<String, Object>> specs = (List<Map<String, Object>>) manifest.get("specs");
+		assertThat(specs).extracting(s -> s.get("id")).containsExactly(4L, 9L, 2L, 3L, 1L);
+		assertThat(specs).extracting(s -> s.get("status")).containsExactly("OK", "NOT_FOUND", "INVALID", "ERROR", "OK");
+		assertThat(manifest).containsEntry("count", 5).containsEntry("ok", 2).containsEntry("failed", 3);
+		assertThat(specs.get(2)).containsEntry("name", "borrador").containsEntry("revision", 3);
+		assertThat((List<?>) specs.get(2).get("errors")).isNotEmpty();
+		assertThat((String) specs.get(3).get("message")).startsWith("No se pudo leer el spec");
+
+		// los proyectos en el mismo orden y el manifiesto al final, igual que el que devuelve write()
+		Map<String, byte[]> entries = unzip(out.toByteArray());
+		assertThat(entries.keySet()).containsExactly("clinica-r2-4.zip", "clinica-r1-1.zip", CodegenBatchService.MANIFEST);
+		assertThat(om.readTree(entries.get(CodegenBatchService.MANIFEST))).isEqualTo(om.readTree(om.writeValueAsBytes(manifest)));
+	}
+
+	@Test
+	void everyNestedEntryIsAValidProjectZip() throws IOException {
+		row(1, "clinica", 1, VALID);
+		row(2, "clinica/../x", 2, VALID.replace("Paciente", "Cita"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Map<String, Object> manifest = batch.write(batch.prepare(List.of(1L, 2L)), out);
+		Map<String, byte[]> entries = unzip(out.toByteArray());
+
+		// el nombre de la fila no puede salirse del ZIP
+		assertThat(entries).containsKeys("clinica-r1-1.zip", "clinica_.._x-r2-2.zip");
+		for (Map<String, Object> s : (List<Map<String, Object>>) manifest.get("specs")) {
+			byte[] nested = entries.get((String) s.get("entry"));
+			Map<String, byte[]> project = unzip(nested);
+			assertThat(project).as((String) s.get("entry")).containsKey("pom.xml").hasSize((int) s.get("files"));
+			assertThat(nested).hasSize(((Number) s.get("bytes")).intValue());
+		}
+	}
+
+	@Test
+	void duplicateAndNullIdsCollapse() {
+		row(1, "clinica", 1, VALID);
+		row(2, "clinica", 2, VALID);
+
+		CodegenBatchService.Batch prepared = batch.prepare(Arrays.asList(2L, null, 1L, 2L, 1L, null));
+
+		assertThat(prepared.ids()).containsExactly(2L, 1L);
+		assertThat(prepared.rows()).containsOnlyKeys(1L, 2L);
+		// una sola consulta, ya sin repetidos
+		assertThat(queries).containsExactly(List.of(2L, 1L));
+	}
+
+	@Test
+	void tooManySpecsIsABadRequest() {
+		// el tope cuenta ids distintos: seis ids con uno repetido caben
+		assertThat(batch.prepare(List.of(1L, 2L, 3L, 4L, 5L, 5L)).ids()).hasSize(5);
+
+		assertThatThrownBy(() -> batch.prepare(List.of(1L, 2L, 3L, 4L, 5L, 6L)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("máximo 5")
+				.satisfies(e -> {
+					ResponseEntity<?> res = new GlobalExceptionHandler().handleIllegalArg((IllegalArgumentException) e);
+					assertThat(res.getStatusCode().value()).isEqualTo(400);
+				});
+		assertThatThrownBy(() -> batch.prepare(List.of())).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> batch.prepare(Arrays.asList(null, null))).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,117 @@
+package com.jezabel.healthgen.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.GeneratedArtifact;
+import com.jezabel.healthgen.codegen.template.CodegenTemplates;
+import com.jezabel.healthgen.spec.ModelSpec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** LRU en memoria, volcado a disco de lo desalojado y recarga tras reiniciar. */
+class CodegenCacheTest {
+
+	@TempDir
+	Path spillDir;
+
+	private final CodegenService codegen = new CodegenService(new CodegenProperties(), CodegenTemplates.defaults(),
+			new SimpleMeterRegistry());
+
+	@AfterEach
+	void stop() {
+		codegen.shutdown();
+	}
+
+	private CodegenCache cache(long maxBytes, long spillMaxBytes) {
+		CodegenProperties props = new CodegenProperties();
+		props.getCache().setMaxBytes(maxBytes);
+		props.getCache().setSpillDir(spillDir.toString());
+		props.getCache().setSpillMaxBytes(spillMaxBytes);
+		return new CodegenCache(codegen, new ObjectMapper(), props);
+	}
+
+	private static ModelSpec spec(int i) {
+		ModelSpec.Builder b = ModelSpec.builder().name("app" + i).packageBase("com.acme.app" + i);
+		return b.entity("Paciente", List.of(b.attr("id", "Long", true, null), b.attr("nombre" + i, "String", false, null)))
+				.build();
+	}
+
+	private List<String> spilledKeys() throws IOException {
+		try (Stream<Path> files = Files.list(spillDir)) {
+			return files.map(f -> f.getFileName().toString()).filter(n -> n.endsWith(".json"))
+					.map(n -> n.substring(0, n.length() - ".json".length())).sorted().toList();
+		}
+	}
+
+	@Test
+	void secondRequestIsAHitWithTheSameBytes() throws IOException {
+		CodegenCache cache = cache(64L << 20, 64L << 20);
+		GeneratedArtifact first = cache.get(spec(1));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GeneratedArtifact second = cache.writeZip(spec(1), out);
+
+		assertThat(second).isSameAs(first);
+		assertThat(out.toByteArray()).isEqualTo(first.zip());
+		assertThat(cache.hits()).isEqualTo(1);
+		assertThat(cache.misses()).isEqualTo(1);
+		assertThat(first.files()).isNotEmpty();
+	}
+
+	@Test
+	void evictedArtifactsAreReloadedFromDisk() throws IOException {
+		// cabe uno solo en memoria: cada nuevo desaloja al anterior
+		CodegenCache cache = cache(1, 64L << 20);
+		GeneratedArtifact a = cache.get(spec(1));
+		cache.get(spec(2));
+
+		assertThat(cache.evictions()).isEqualTo(1);
+		assertThat(spilledKeys()).containsExactly(a.key());
+		assertThat(spillDir.resolve(a.key() + ".zip")).hasBinaryContent(a.zip());
+
+		GeneratedArtifact reloaded = cache.get(spec(1));
+		assertThat(reloaded.zip()).isEqualTo(a.zip());
+		assertThat(reloaded.files()).isEqualTo(a.files());
+		assertThat(cache.stats()).containsEntry("spillHits", 1L);
+		assertThat(cache.misses()).isEqualTo(2);
+	}
+
+	@Test
+	void spillDirectorySurvivesRestartAndStaysBounded() throws IOException {
+		GeneratedArtifact probe = cache(64L << 20, 64L << 20).get(spec(0));
+		long perEntry = probe.zip().length + 2_000L;
+
+		CodegenCache cache = cache(1, perEntry * 2);
+		String[] keys = new String[5];
+		for (int i = 1; i <= 5; i++) keys[i - 1] = cache.get(spec(i)).key();
+
+		// en disco solo caben dos: quedan los dos desalojados más recientes
+		assertThat(spilledKeys()).containsExactlyInAnyOrder(keys[2], keys[3]);
+		assertThat((long) cache.stats().get("spilledBytes")).isLessThanOrEqualTo(perEntry * 2);
+
+		// restos de una escritura cortada: temporal y ZIP sin metadatos
+		Files.writeString(spillDir.resolve("x.zip123.tmp"), "basura");
+		Files.writeString(spillDir.resolve("huerfano.zip"), "basura");
+
+		CodegenCache restarted = cache(64L << 20, perEntry * 2);
+		assertThat(restarted.stats()).containsEntry("spilledEntries", 2);
+		assertThat(spillDir.resolve("x.zip123.tmp")).doesNotExist();
+		assertThat(spillDir.resolve("huerfano.zip")).doesNotExist();
+
+		GeneratedArtifact fromDisk = restarted.get(spec(4));
+		assertThat(fromDisk.key()).isEqualTo(keys[3]);
+		assertThat(restarted.stats()).containsEntry("spillHits", 1L);
+		assertThat(restarted.misses()).isZero();
+	}
+}
@@ -0,0 +1,265 @@
+package com.jezabel.healthgen.service;
+
+import com.jezabel.healthgen.codegen.CodegenProperties;
+import com.jezabel.healthgen.codegen.FileSink;
+import com.jezabel.healthgen.codegen.ProgressListener;
+import com.jezabel.healthgen.codegen.template.CodegenTemplates;
+import com.jezabel.healthgen.exception.InvalidSpecException;
+import com.jezabel.healthgen.spec.AttrSpec;
+import com.jezabel.healthgen.spec.ModelSpec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Validación una sola vez por petición; el parche incremental coincide con dos generaciones completas. */
+@SuppressWarnings("unchecked")
+class CodegenServiceTest {
+
+	private final SimpleMeterRegistry metrics = new SimpleMeterRegistry();
+	private final CodegenService codegen = new CodegenService(new CodegenProperties(), CodegenTemplates.defaults(), metrics);
+
+	@AfterEach
+	void stop() {
+		codegen.shutdown();
+	}
+
+	private long validations() {
+		return metrics.get("healthgen.codegen.stage").tag("stage", "validate").timer().count();
+	}
+
+	private static ModelSpec valid() {
+		ModelSpec.Builder b = ModelSpec.builder().name("app").packageBase("com.acme");
+		return b.entity("Paciente", List.of(b.attr("id", "LONG", true, "IDENTITY"))).build();
+	}
+
+	@Test
+	void generateZipValidatesOnce() throws IOException {
+		Path zip = codegen.generateZip(valid());
+		try {
+			assertThat(Files.size(zip)).isPositive();
+			assertThat(validations()).isEqualTo(1);
+		} finally {
+			Files.deleteIfExists(zip);
+		}
+	}
+
+	@Test
+	void writeZipValidatesOnce() throws IOException {
+		codegen.writeZip(valid(), new ByteArrayOutputStream());
+		assertThat(validations()).isEqualTo(1);
+	}
+
+	@Test
+	void invalidSpecFailsBeforeWritingAnything() {
+		ModelSpec.Builder b = ModelSpec.builder().name("app").packageBase("com.acme");
+		ModelSpec spec = b.entity("Paciente", List.of(b.attr("nombre", "STRING", false, null))).build();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		assertThatThrownBy(() -> codegen.writeZip(spec, out))
+				.isInstanceOf(InvalidSpecException.class)
+				.hasMessageContaining("clave primaria");
+		assertThat(out.size()).isZero();
+	}
+
+	// ===================== Delta =====================
+
+	private Map<String, String> full(ModelSpec spec) throws IOException {
+		Map<String, String> files = new LinkedHashMap<>();
+		codegen.generate(spec, files::put);
+		return files;
+	}
+
+	private static ModelSpec spec(String packageBase, Consumer<ModelSpec.Builder> body) {
+		ModelSpec.Builder b = ModelSpec.builder().name("app").packageBase(packageBase);
+		body.accept(b);
+		return b.build();
+	}
+
+	private static List<AttrSpec> attrs(ModelSpec.Builder b, String... extra) {
+		List<AttrSpec> out = new ArrayList<>(List.of(b.attr("id", "LONG", true, "IDENTITY")));
+		for (String name : extra) out.add(b.attr(name, "STRING", false, null));
+		return out;
+	}
+
+	/** Lo que cambia entre las dos generaciones completas es exactamente lo que trae el parche. */
+	private Map<String, Object> assertDeltaMatchesFullRegeneration(ModelSpec previous, ModelSpec current) throws IOException {
+		Map<String, String> before = full(previous), after = full(current);
+		List<String> expectedAdded = new ArrayList<>(), expectedModified = new ArrayList<>(), expectedRemoved = new ArrayList<>();
+		for (Map.Entry<String, String> e : after.entrySet()) {
+			String old = before.get(e.getKey());
+			if (old == null) expectedAdded.add(e.getKey());
+			else if (!old.equals(e.getValue())) expectedModified.add(e.getKey());
+		}
+		for (String path : before.keySet()) if (!after.containsKey(path)) expectedRemoved.add(path);
+
+		Map<String, String> written = new LinkedHashMap<>();
+		FileSink sink = written::put;
+		Map<String, Object> delta = codegen.writeDelta(previous, current, sink);
+
+		assertThat((List<String>) delta.get("added")).containsExactlyInAnyOrderElementsOf(expectedAdded);
+		assertThat((List<String>) delta.get("modified")).containsExactlyInAnyOrderElementsOf(expectedModified);
+		assertThat((List<String>) delta.get("removed")).containsExactlyInAnyOrderElementsOf(expectedRemoved);
+		// y con el mismo contenido que la generación completa
+		List<String> expectedWritten = new ArrayList<>(expectedAdded);
+		expectedWritten.addAll(expectedModified);
+		assertThat(written.keySet()).containsExactlyInAnyOrderElementsOf(expectedWritten);
+		written.forEach((path, content) -> assertThat(content).as(path).isEqualTo(after.get(path)));
+		return delta;
+	}
+
+	private static ModelSpec clinic(Consumer<ModelSpec.Builder> extra) {
+		return spec("com.acme", b -> {
+			b.entity("Paciente", attrs(b, "nombre")).entity("Cita", attrs(b, "fecha")).entity("Medico", attrs(b));
+			b.relation("association", "Paciente", "Cita", "1", "*");
+			b.relation("association", "Medico", "Cita", "1", "*");
+			extra.accept(b);
+		});
+	}
+
+	@Test
+	void identicalSpecsProduceAnEmptyDelta() throws IOException {
+		Map<String, Object> delta = assertDeltaMatchesFullRegeneration(clinic(b -> { }), clinic(b -> { }));
+		assertThat((List<?>) delta.get("modified")).isEmpty();
+		assertThat(delta).containsEntry("unchangedEntities", 3);
+	}
+
+	@Test
+	void addedEntityWithARelationAlsoRerendersTheOtherSide() throws IOException {
+		ModelSpec previous = clinic(b -> { });
+		ModelSpec current = clinic(b -> {
+			b.entity("Receta", attrs(b, "dosis"));
+			b.relation("composition", "Cita", "Receta", "1", "*");
+		});
+
+		Map<String, Object> delta = assertDeltaMatchesFullRegeneration(previous, current);
+		assertThat((List<String>) delta.get("modified")).containsExactly("src/main/java/com/acme/domain/Cita.java");
+	}
+
+	@Test
+	void removedEntityRerendersTheEntitiesThatPointedAtIt() throws IOException {
+		ModelSpec previous = clinic(b -> { });
+		ModelSpec current = spec("com.acme", b -> {
+			b.entity("Paciente", attrs(b, "nombre")).entity("Cita", attrs(b, "fecha"));
+			b.relation("association", "Paciente", "Cita", "1", "*");
+		});
+
+		Map<String, Object> delta = assertDeltaMatchesFullRegeneration(previous, current);
+		assertThat((List<String>) delta.get("removed")).hasSize(4);
+		assertThat((List<String>) delta.get("modified")).containsExactly("src/main/java/com/acme/domain/Cita.java");
+	}
+
+	@Test
+	void modifiedAttributeOnlyTouchesThatDomainClass() throws IOException {
+		ModelSpec previous = clinic(b -> { });
+		ModelSpec current = spec("com.acme", b -> {
+			b.entity("Paciente", attrs(b, "nombre", "apellido")).entity("Cita", attrs(b, "fecha")).entity("Medico", attrs(b));
+			b.relation("association", "Paciente", "Cita", "1", "*");
+			b.relation("association", "Medico", "Cita", "1", "*");
+		});
+
+		Map<String, Object> delta = assertDeltaMatchesFullRegeneration(previous, current);
+		assertThat((List<String>) delta.get("modified")).containsExactly("src/main/java/com/acme/domain/Paciente.java");
+		assertThat(delta).containsEntry("unchangedEntities", 2);
+	}
+
+	@Test
+	void changedMultiplicityRerendersBothEnds() throws IOException {
+		ModelSpec previous = clinic(b -> { });
+		ModelSpec current = spec("com.acme", b -> {
+			b.entity("Paciente", attrs(b, "nombre")).entity("Cita", attrs(b, "fecha")).entity("Medico", attrs(b));
+			b.relation("association", "Paciente", "Cita", "*", "*");
+			b.relation("association", "Medico", "Cita", "1", "*");
+		});
+
+		Map<String, Object> delta = assertDeltaMatchesFullRegeneration(previous, current);
+		assertThat((List<String>) delta.get("modified")).containsExactlyInAnyOrder(
+				"src/main/java/com/acme/domain/Paciente.java", "src/main/java/com/acme/domain/Cita.java");
+	}
+
+	@Test
+	void nonStructuralRelationDoesNotChangeAnyFile() throws IOException {
+		ModelSpec previous = clinic(b -> { });
+		ModelSpec current = clinic(b -> b.relation("dependency", "Medico", "Paciente", null, null));
+
+		Map<String, Object> delta = assertDeltaMatchesFullRegeneration(previous, current);
+		assertThat((List<?>) delta.get("modified")).isEmpty();
+	}
+
+	@Test
+	void packageAndNameChangesMatchToo() throws IOException {
+		ModelSpec previous = clinic(b -> { });
+		ModelSpec current = spec("org.salud", b -> {
+			b.name("clinica");
+			b.entity("Paciente", attrs(b, "nombre"));
+		});
+
+		assertDeltaMatchesFullRegeneration(previous, current);
+	}
+
+	@Test
+	void fileListMatchesWhatGenerateWrites() throws IOException {
+		ModelSpec spec = clinic(b -> { });
+		List<String> expected = (List<String>) codegen.generate(spec, (path, content) -> { }).get("files");
+		long before = validations();
+
+		assertThat(codegen.fileList(spec)).isEqualTo(expected);
+		assertThat(validations()).isEqualTo(before);
+	}
+
+	// ===================== Render paralelo =====================
+
+	/** Archivos en el orden en que llegan al sink, con su contenido. */
+	private static List<Map.Entry<String, String>> ordered(CodegenService service, ModelSpec spec, List<String> steps,
+													   Map<String, Object> result) throws IOException {
+		List<Map.Entry<String, String>> files = new ArrayList<>();
+		FileSink sink = (path, content) -> files.add(Map.entry(path, content));
+		ProgressListener progress = (stage, done, total) -> steps.add(stage + ":" + done + "/" + total);
+		result.putAll(service.generate(spec, sink, progress));
+		return files;
+	}
+
+	@Test
+	void parallelRenderIsIdenticalToSequential() throws IOException {
+		ModelSpec spec = spec("com.acme", b -> {
+			for (int i = 0; i < 40; i++) b.entity("Entidad" + i, attrs(b, "nombre", "codigo"));
+			for (int i = 1; i < 40; i++) b.relation(i % 3 == 0 ? "composition" : "association",
+					"Entidad" + (i - 1), "Entidad" + i, "1", i % 2 == 0 ? "*" : "1");
+		});
+		CodegenProperties props = new CodegenProperties();
+		props.getParallel().setEnabled(true);
+		props.getParallel().setThreads(4);
+		props.getParallel().setMinEntities(2);
+		CodegenService parallel = new CodegenService(props, CodegenTemplates.defaults(), new SimpleMeterRegistry());
+
+		try {
+			List<String> seqSteps = new ArrayList<>(), parSteps = new ArrayList<>();
+			Map<String, Object> seqResult = new LinkedHashMap<>(), parResult = new LinkedHashMap<>();
+			List<Map.Entry<String, String>> sequential = ordered(codegen, spec, seqSteps, seqResult);
+			List<Map.Entry<String, String>> inParallel = ordered(parallel, spec, parSteps, parResult);
+
+			// mismos archivos, en el mismo orden y con el mismo contenido
+			assertThat(inParallel).hasSize(40 * 4 + 3).containsExactlyElementsOf(sequential);
+			assertThat(parResult).isEqualTo(seqResult);
+			// el avance también sale en orden: render 1/40 … 40/40
+			assertThat(parSteps).isEqualTo(seqSteps).hasSize(40).endsWith("render:40/40");
+			// y de verdad pasó por el pool de render
+			assertThat(Thread.getAllStackTraces().keySet()).extracting(Thread::getName)
+					.anyMatch(name -> name.startsWith("codegen-render-"));
+		} finally {
+			parallel.shutdown();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package com.jezabel.healthgen.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jezabel.healthgen.domain.ModelSpecEntity;
+import com.jezabel.healthgen.repository.ModelSpecRepository;
+import com.jezabel.healthgen.spec.AttrSpec;
+import com.jezabel.healthgen.spec.SpecProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Versiones guardadas como snapshot + deltas, contra un repositorio en memoria con las claves únicas de la tabla. */
+class ModelSpecServiceTest {
+
+	private final ObjectMapper om = new ObjectMapper();
+	private final List<ModelSpecEntity> rows = new ArrayList<>();
+	// otro nodo que guarda justo antes de nuestro INSERT (una sola vez)
+	private Runnable interloper;
+
+	private final ModelSpecRepository repo = (ModelSpecRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[]{ModelSpecRepository.class}, (proxy, m, args) -> switch (m.getName()) {
+				case "save" -> {
+					ModelSpecEntity e = (ModelSpecEntity) args[0];
+					if (e.getId() == null) {
+						Runnable other = interloper;
+						interloper = null;
+						if (other != null) other.run();
+						boolean clash = rows.stream().anyMatch(r -> r.getName().equals(e.getName())
+								&& (Objects.equals(r.getRevision(), e.getRevision())
+								|| Objects.equals(r.getContentHash(), e.getContentHash())));
+						if (clash) throw new DataIntegrityViolationException("uk_model_spec");
+						e.setId((long) rows.size() + 1);
+						rows.add(e);
+					}
+					yield e;
+				}
+				case "findById" -> rows.stream().filter(e -> e.getId().equals(args[0])).findFirst();
+				case "findFirstByNameAndContentHash" -> rows.stream()
+						.filter(e -> e.getName().equals(args[0]) && Objects.equals(e.getContentHash(), args[1])).findFirst();
+				case "findFirstByNameOrderByIdDesc" -> rows.stream().filter(e -> e.getName().equals(args[0]))
+						.max(Comparator.comparing(ModelSpecEntity::getId));
+				case "countByName" -> rows.stream().filter(e -> e.getName().equals(args[0])).count();
+				default -> throw new UnsupportedOperationException(m.getName());
+			});
+
+	private ModelSpecService service(int snapshotEvery, int cachedTrees) {
+		SpecProperties props = new SpecProperties();
+		props.setSnapshotEvery(snapshotEvery);
+		props.setCachedTrees(cachedTrees);
+		return new ModelSpecService(repo, om, props, new SimpleMeterRegistry());
+	}
+
+	/** Spec con suficientes entidades para que un cambio pequeño compense como delta. */
+	private String specJson(int revision) throws IOException {
+		ObjectNode spec = om.createObjectNode().put("name", "clinica").put("version", "1." + revision);
+		ArrayNode entities = spec.putArray("entities");
+		for (int i = 0; i < 20; i++) {
+			ObjectNode e = entities.addObject().put("name", "Entidad" + i);
+			ArrayNode attrs = e.putArray("attributes");
+			attrs.addObject().put("name", "id").put("type", "Long").put("pk", true);
+			for (int k = 0; k < 6; k++) attrs.addObject().put("name", "campo" + k).put("type", "String");
+		}
+		// cada revisión añade un atributo a una entidad distinta
+		for (int r = 1; r <= revision; r++) {
+			((ArrayNode) entities.get(r % 20).get("attributes")).addObject().put("name", "extra" + r).put("type", "Integer");
+		}
+		spec.putArray("relations").addObject().put("type", "Association").put("source", "Entidad0").put("target", "Entidad1");
+		return om.writeValueAsString(spec);
+	}
+
+	@Test
+	void versionsAreRebuiltAcrossSnapshotBoundaries() throws IOException {
+		ModelSpecService writer = service(3, 32);
+		List<String> jsons = new ArrayList<>();
+		for (int r = 1; r <= 7; r++) {
+			jsons.add(specJson(r));
+			writer.save("clinica", "1." + r, jsons.get(r - 1));
+		}
+
+		// snapshot cada 3: profundidades 0,1,2,0,1,2,0
+		assertThat(rows).extracting(ModelSpecEntity::getDepth).containsExactly(0, 1, 2, 0, 1, 2, 0);
+		assertThat(rows).extracting(ModelSpecEntity::isDelta).containsExactly(false, true, true, false, true, true, false);
+		assertThat(rows.get(5).getBaseId()).isEqualTo(5L);
+		assertThat(rows).extracting(ModelSpecEntity::getRevision).containsExactly(1, 2, 3, 4, 5, 6, 7);
+
+		// otra instancia sin nada en memoria (como tras reiniciar): cada versión sale de su snapshot + deltas
+		ModelSpecService reader = service(3, 1);
+		for (int i = rows.size() - 1; i >= 0; i--) {
+			assertThat(reader.json(rows.get(i))).isEqualTo(jsons.get(i));
+			int revision = i + 1;
+			assertThat(reader.load(rows.get(i).getId()).entities().get(revision % 20).attributes())
+					.extracting(AttrSpec::name).contains("extra" + revision);
+		}
+	}
+
+	@Test
+	void identicalSavesAreDeduplicatedByHash() throws IOException {
+		ModelSpecService service = service(10, 32);
+		ModelSpecService.Saved first = service.save("clinica", "1.1", specJson(1));
+		ModelSpecService.Saved second = service.save("clinica", "1.2", specJson(2));
+		ModelSpecService.Saved again = service.save("clinica", "1.1-bis", specJson(1));
+
+		assertThat(first.duplicate()).isFalse();
+		assertThat(second.duplicate()).isFalse();
+		// vuelve a la misma fila aunque ya no sea la última
+		assertThat(again.duplicate()).isTrue();
+		assertThat(again.entity()).isSameAs(first.entity());
+		assertThat(rows).hasSize(2);
+
+		// el mismo JSON con otro nombre es otro diagrama
+		assertThat(service.save("otra", "1.1", specJson(1)).duplicate()).isFalse();
+		assertThat(rows).hasSize(3);
+		Optional<ModelSpecEntity> latest = rows.stream().filter(e -> e.getName().equals("clinica")).reduce((a, b) -> b);
+		assertThat(latest).get().extracting(ModelSpecEntity::getRevision).isEqualTo(2);
+	}
+
+	@Test
+	void keyOrderAndWhitespaceDoNotChangeTheHash() throws IOException {
+		ModelSpecService service = service(10, 32);
+		String json = specJson(1);
+		ModelSpecService.Saved first = service.save("clinica", "1.1", json);
+
+		// mismas claves en otro orden y con sangría: es el mismo spec
+		ObjectNode reordered = om.createObjectNode();
+		reordered.set("relations", om.readTree(json).get("relations"));
+		reordered.set("entities", om.readTree(json).get("entities"));
+		reordered.put("version", "1.1").put("name", "clinica");
+		String pretty = om.writerWithDefaultPrettyPrinter().writeValueAsString(reordered);
+
+		ModelSpecService.Saved again = service.save("clinica", "1.1", pretty);
+		assertThat(again.duplicate()).isTrue();
+		assertThat(again.entity()).isSameAs(first.entity());
+		assertThat(rows).hasSize(1);
+	}
+
+	@Test
+	void revisionTakenByAnotherNodeIsRetriedOnTopOfIt() throws IOException {
+		ModelSpecService node = service(10, 32);
+		ModelSpecService otherNode = service(10, 32);
+		node.save("clinica", "1.1", specJson(1));
+
+		// el otro nodo guarda la revisión 2 entre nuestra lectura de la última versión y el INSERT
+		String theirs = specJson(2);
+		interloper = () -> save(otherNode, "1.2", theirs);
+		ModelSpecService.Saved mine = node.save("clinica", "1.3", specJson(3));
+
+		assertThat(mine.duplicate()).isFalse();
+		assertThat(rows).extracting(ModelSpecEntity::getRevision).containsExactly(1, 2, 3);
+		// la cadena de deltas sigue lineal: la 3 se apoya en la 2 del otro nodo, no en la 1
+		assertThat(mine.entity().getBaseId()).isEqualTo(rows.get(1).getId());
+		assertThat(service(10, 1).json(mine.entity())).isEqualTo(specJson(3));
+	}
+
+	@Test
+	void sameContentSavedByAnotherNodeIsReturnedAsDuplicate() throws IOException {
+		ModelSpecService node = service(10, 32);
+		ModelSpecService otherNode = service(10, 32);
+		node.save("clinica", "1.1", specJson(1));
+
+		String same = specJson(2);
+		interloper = () -> save(otherNode, "1.2", same);
+		ModelSpecService.Saved mine = node.save("clinica", "1.2", same);
+
+		assertThat(mine.duplicate()).isTrue();
+		assertThat(mine.entity()).isSameAs(rows.get(1));
+		assertThat(rows).hasSize(2);
+	}
+
+	private static void save(ModelSpecService service, String version, String json) {
+		try {
+			service.save("clinica", version, json);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
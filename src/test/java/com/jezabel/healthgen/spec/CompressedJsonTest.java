@@ -0,0 +1,93 @@
+package com.jezabel.healthgen.spec;
+
+import com.jezabel.healthgen.domain.ModelSpecEntity;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompressedJsonTest {
+
+	private static final String SMALL = "{\"name\":\"a\"}";
+	private static final String LARGE = "{\"entities\":[" + "{\"name\":\"Paciente ñ\",\"attributes\":[{\"name\":\"id\"}]},".repeat(200)
+			+ "{\"name\":\"Fin\"}]}";
+
+	private static String read(InputStream in) throws IOException {
+		try (in) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	void smallJsonIsStoredRaw() throws IOException {
+		byte[] data = CompressedJson.encode(SMALL);
+		assertThat(data[0]).isEqualTo(CompressedJson.RAW);
+		assertThat(data).hasSize(SMALL.length() + 1);
+		assertThat(CompressedJson.decode(data)).isEqualTo(SMALL);
+		assertThat(read(CompressedJson.open(data))).isEqualTo(SMALL);
+	}
+
+	@Test
+	void largeJsonIsDeflated() throws IOException {
+		byte[] data = CompressedJson.encode(LARGE);
+		assertThat(data[0]).isEqualTo(CompressedJson.DEFLATE);
+		assertThat(data.length).isLessThan(LARGE.length() / 10);
+		assertThat(CompressedJson.decode(data)).isEqualTo(LARGE);
+		assertThat(read(CompressedJson.open(data))).isEqualTo(LARGE);
+	}
+
+	@Test
+	void compressionStartsAt256Bytes() throws IOException {
+		String below = "a".repeat(255);
+		String at = "a".repeat(256);
+		assertThat(CompressedJson.encode(below)[0]).isEqualTo(CompressedJson.RAW);
+		assertThat(CompressedJson.encode(at)[0]).isEqualTo(CompressedJson.DEFLATE);
+		assertThat(CompressedJson.decode(CompressedJson.encode(below))).isEqualTo(below);
+		assertThat(CompressedJson.decode(CompressedJson.encode(at))).isEqualTo(at);
+	}
+
+	@Test
+	void unknownVersionAndBrokenDataFail() {
+		byte[] future = CompressedJson.encode(SMALL);
+		future[0] = 7;
+		assertThatThrownBy(() -> CompressedJson.decode(future)).isInstanceOf(IOException.class).hasMessageContaining("desconocido: 7");
+		assertThatThrownBy(() -> CompressedJson.open(future)).isInstanceOf(IOException.class).hasMessageContaining("desconocido: 7");
+		assertThatThrownBy(() -> CompressedJson.decode(new byte[0])).isInstanceOf(IOException.class).hasMessageContaining("vacío");
+
+		byte[] packed = CompressedJson.encode(LARGE);
+		byte[] truncated = Arrays.copyOf(packed, packed.length / 2);
+		assertThatThrownBy(() -> CompressedJson.decode(truncated)).isInstanceOf(IOException.class).hasMessageContaining("truncado");
+		byte[] corrupt = packed.clone();
+		corrupt[1] = 0;
+		assertThatThrownBy(() -> CompressedJson.decode(corrupt)).isInstanceOf(IOException.class).hasMessageContaining("corrupto");
+	}
+
+	@Test
+	void legacyTextColumnIsStillReadAndMigratedOnSetJson() throws Exception {
+		// filas anteriores al formato binario: solo la columna json (LONGTEXT), como las deja JPA al cargarlas
+		ModelSpecEntity legacy = new ModelSpecEntity();
+		Field column = ModelSpecEntity.class.getDeclaredField("legacyJson");
+		column.setAccessible(true);
+		column.set(legacy, LARGE);
+
+		assertThat(legacy.hasLegacyJson()).isTrue();
+		assertThat(legacy.isDelta()).isFalse();
+		assertThat(legacy.getJson()).isEqualTo(LARGE);
+		assertThat(read(legacy.openJson())).isEqualTo(LARGE);
+
+		legacy.setJson(legacy.getJson());
+		assertThat(legacy.hasLegacyJson()).isFalse();
+		assertThat(CompressedJson.decode(legacy.getJsonData())).isEqualTo(LARGE);
+
+		ModelSpecEntity fresh = new ModelSpecEntity(1L, "a", "1", SMALL, Instant.now());
+		assertThat(fresh.hasLegacyJson()).isFalse();
+		assertThat(read(fresh.openJson())).isEqualTo(SMALL);
+	}
+}
@@ -0,0 +1,151 @@
+package com.jezabel.healthgen.spec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** apply(a, diff(a, b)) reproduce b, también el orden de los campos (el JSON guardado debe ser idéntico). */
+class JsonDeltaTest {
+
+	private final ObjectMapper om = new ObjectMapper();
+
+	private void assertRoundTrip(JsonNode a, JsonNode b) throws IOException {
+		String before = om.writeValueAsString(a);
+		JsonNode delta = JsonDelta.diff(a, b);
+		JsonNode applied = JsonDelta.apply(a, delta);
+
+		assertThat(om.writeValueAsString(applied)).isEqualTo(om.writeValueAsString(b));
+		// el delta sobrevive a guardarse como JSON
+		JsonNode stored = delta == null ? null : om.readTree(om.writeValueAsString(delta));
+		assertThat(om.writeValueAsString(JsonDelta.apply(a, stored))).isEqualTo(om.writeValueAsString(b));
+		// la base no se toca
+		assertThat(om.writeValueAsString(a)).isEqualTo(before);
+	}
+
+	private JsonNode json(String s) throws IOException {
+		return om.readTree(s.replace('\'', '"'));
+	}
+
+	@Test
+	void identicalTreesHaveNoDelta() throws IOException {
+		JsonNode a = json("{'name':'app','entities':[{'name':'A','attributes':[]}]}");
+		assertThat(JsonDelta.diff(a, a.deepCopy())).isNull();
+		assertThat(JsonDelta.apply(a, null)).isEqualTo(a).isNotSameAs(a);
+	}
+
+	@Test
+	void nestedObjectChanges() throws IOException {
+		JsonNode a = json("{'name':'app','meta':{'author':'ana','tags':{'x':1,'y':2}},'version':'1'}");
+		// cambiado en profundidad, borrado, añadido y reordenado
+		assertRoundTrip(a, json("{'name':'app','meta':{'author':'ana','tags':{'x':1,'y':3}},'version':'1'}"));
+		assertRoundTrip(a, json("{'name':'app','meta':{'tags':{'x':1}},'version':'2'}"));
+		assertRoundTrip(a, json("{'name':'app','meta':{'author':'ana','tags':{'x':1,'y':2,'z':[1,2]}},'version':'1','extra':null}"));
+		assertRoundTrip(a, json("{'version':'1','name':'app','meta':{'tags':{'y':2,'x':1},'author':'ana'}}"));
+		// cambio de tipo
+		assertRoundTrip(a, json("{'name':'app','meta':[1,2,3],'version':1}"));
+		assertRoundTrip(a, json("[]"));
+	}
+
+	@Test
+	void keyedArraysSendOnlyWhatChanged() throws IOException {
+		JsonNode a = json("{'entities':["
+				+ "{'name':'Paciente','attributes':[{'name':'id','type':'Long','pk':true},{'name':'nombre','type':'String'}]},"
+				+ "{'name':'Medico','attributes':[{'name':'id','type':'Long','pk':true}]},"
+				+ "{'name':'Cita','attributes':[{'name':'id','type':'Long','pk':true},{'name':'fecha','type':'Date'}]}]}");
+		JsonNode b = json("{'entities':["
+				+ "{'name':'Cita','attributes':[{'name':'id','type':'Long','pk':true},{'name':'fecha','type':'LocalDateTime'}]},"
+				+ "{'name':'Paciente','attributes':[{'name':'id','type':'Long','pk':true},{'name':'nombre','type':'String'},{'name':'dni','type':'String'}]},"
+				+ "{'name':'Sala','attributes':[]}]}");
+		assertRoundTrip(a, b);
+
+		JsonNode delta = JsonDelta.diff(a, b);
+		JsonNode changed = delta.path("o").path("entities").path("o");
+		// Medico se borra sin viajar, Paciente y Cita solo con lo suyo, Sala entera
+		assertThat(changed.has("Medico")).isFalse();
+		assertThat(changed.path("Sala").has("v")).isTrue();
+		JsonNode pacienteAttrs = changed.path("Paciente").path("o").path("attributes").path("o");
+		assertThat(pacienteAttrs.has("dni")).isTrue();
+		assertThat(pacienteAttrs.has("nombre")).isFalse();
+	}
+
+	@Test
+	void arraysWithoutUniqueNamesAreReplaced() throws IOException {
+		assertRoundTrip(json("{'l':[1,2,3]}"), json("{'l':[1,3]}"));
+		assertRoundTrip(json("{'l':[{'name':'a'},{'name':'a'}]}"), json("{'l':[{'name':'a'}]}"));
+		assertRoundTrip(json("{'l':[{'name':'a'},{'x':1}]}"), json("{'l':[{'x':1},{'name':'a'}]}"));
+		assertRoundTrip(json("{'l':[]}"), json("{'l':[{'name':'a'}]}"));
+		assertRoundTrip(json("{'l':[{'name':'a'}]}"), json("{'l':[]}"));
+	}
+
+	@Test
+	void randomEditsOfASpecRoundTrip() throws IOException {
+		Random random = new Random(7);
+		JsonNode current = spec(random, 8);
+		for (int i = 0; i < 500; i++) {
+			JsonNode next = mutate(current.deepCopy(), random);
+			assertRoundTrip(current, next);
+			current = next;
+		}
+	}
+
+	// ===================== Specs aleatorios =====================
+	private ObjectNode spec(Random random, int entities) {
+		ObjectNode spec = om.createObjectNode().put("name", "app").put("version", "1.0");
+		ArrayNode list = spec.putArray("entities");
+		for (int i = 0; i < entities; i++) list.add(entity(random, "E" + i));
+		ArrayNode rels = spec.putArray("relations");
+		rels.addObject().put("type", "Association").put("source", "E0").put("target", "E1");
+		return spec;
+	}
+
+	private ObjectNode entity(Random random, String name) {
+		ObjectNode e = om.createObjectNode().put("name", name);
+		ArrayNode attrs = e.putArray("attributes");
+		attrs.addObject().put("name", "id").put("type", "Long").put("pk", true);
+		for (int i = 0, n = random.nextInt(4); i < n; i++) attrs.addObject().put("name", "a" + i).put("type", "String");
+		return e;
+	}
+
+	private JsonNode mutate(JsonNode tree, Random random) {
+		ObjectNode spec = (ObjectNode) tree;
+		ArrayNode entities = (ArrayNode) spec.get("entities");
+		switch (random.nextInt(8)) {
+			case 0 -> entities.add(entity(random, "N" + random.nextInt(1_000_000)));
+			case 1 -> { if (entities.size() > 1) entities.remove(random.nextInt(entities.size())); }
+			case 2 -> {
+				List<JsonNode> shuffled = new ArrayList<>();
+				entities.forEach(shuffled::add);
+				Collections.shuffle(shuffled, random);
+				entities.removeAll();
+				entities.addAll(shuffled);
+			}
+			case 3 -> {
+				ArrayNode attrs = (ArrayNode) entities.get(random.nextInt(entities.size())).get("attributes");
+				attrs.addObject().put("name", "x" + random.nextInt(1_000_000)).put("type", "Integer");
+			}
+			case 4 -> {
+				ArrayNode attrs = (ArrayNode) entities.get(random.nextInt(entities.size())).get("attributes");
+				((ObjectNode) attrs.get(random.nextInt(attrs.size()))).put("type", random.nextBoolean() ? "Text" : "Long");
+			}
+			case 5 -> spec.put("version", "1." + random.nextInt(100));
+			case 6 -> {
+				ObjectNode e = (ObjectNode) entities.get(random.nextInt(entities.size()));
+				if (e.has("table")) e.remove("table");
+				else e.put("table", "t_" + random.nextInt(100));
+			}
+			default -> ((ArrayNode) spec.get("relations")).addObject()
+					.put("type", "Composition").put("source", "E0").put("target", "E" + random.nextInt(8));
+		}
+		return spec;
+	}
+}
@@ -0,0 +1,136 @@
+package com.jezabel.healthgen.spec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/** ModelSpecReader y ModelSpec.fromMap sobre el mismo JSON: mismo spec o el mismo error. */
+class ModelSpecReaderTest {
+
+	private final ObjectMapper om = new ObjectMapper();
+
+	private ModelSpec viaReader(String json) throws IOException {
+		try (JsonParser p = om.createParser(json)) {
+			return ModelSpecReader.read(p);
+		}
+	}
+
+	private ModelSpec viaMap(String json) throws IOException {
+		return ModelSpec.fromMap(om.readValue(json, new TypeReference<Map<String, Object>>() { }));
+	}
+
+	private void assertParity(String fixture) throws IOException {
+		String json = fixture.replace('\'', '"');
+		ModelSpec expected = null, actual = null;
+		Throwable expectedErr = null, actualErr = null;
+		try { expected = viaMap(json); } catch (IllegalArgumentException e) { expectedErr = e; }
+		try { actual = viaReader(json); } catch (IllegalArgumentException e) { actualErr = e; }
+
+		if (expectedErr != null) {
+			assertThat(actualErr).as(json).isNotNull().hasMessage(expectedErr.getMessage());
+			return;
+		}
+		assertThat(actualErr).as(json).isNull();
+		assertThat(actual.fingerprint()).as(json).isEqualTo(expected.fingerprint());
+		assertThat(actual.toMap()).isEqualTo(expected.toMap());
+		assertThat(actual.duplicateEntities()).isEqualTo(expected.duplicateEntities());
+		assertThat(actual.relations()).isEqualTo(expected.relations());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			// completo
+			"{'name':'app','version':'1.0','packageBase':'com.acme','entities':[{'name':'Paciente','attributes':"
+					+ "[{'name':'id','type':'Long','pk':true,'generated':'IDENTITY'},{'name':'nombre','type':'String'}]}]}",
+			// campos desconocidos en todos los niveles, con objetos y listas anidados
+			"{'x':{'a':[1,{'b':2}]},'name':'app','entities':[{'extra':[1,2],'name':'A','attributes':"
+					+ "[{'name':'id','type':'Long','ui':{'x':1,'y':2}}]}],'relations':[{'type':'association',"
+					+ "'source':'A','target':'A','style':{'color':'red'}}],'zz':null}",
+			// opcionales ausentes o nulos
+			"{}",
+			"{'entities':null,'relations':null}",
+			"{'name':null,'entities':[{'name':'A'}]}",
+			"{'entities':[{'name':'A','attributes':[{'name':'id'}]}]}",
+			// entidades y atributos sin nombre se ignoran
+			"{'entities':[{'attributes':[{'name':'id','type':1}]},{'name':' '},{'name':'B','attributes':[{'type':'Long'}]}]}",
+			// entidad repetida: gana la última, en la posición de la primera
+			"{'entities':[{'name':'A','attributes':[]},{'name':'B'},{'name':'A','attributes':[{'name':'x','type':'int'}]}]}",
+			// clave repetida: gana la última
+			"{'name':'uno','name':'dos','entities':[{'name':'A'}],'entities':[{'name':'B'}]}",
+			// pk solo cuenta si es true literal
+			"{'entities':[{'name':'A','attributes':[{'name':'a','type':'int','pk':'true'},{'name':'b','type':'int','pk':1}]}]}"
+	})
+	void parsesLikeFromMap(String fixture) throws IOException {
+		assertParity(fixture);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			// variantes de relación: tipos, multiplicidades ausentes, numéricas, booleanas y objeto
+			"{'entities':[{'name':'A'},{'name':'B'}],'relations':[{'type':'association','source':'A','target':'B',"
+					+ "'multSource':'1','multTarget':'*'}]}",
+			"{'entities':[{'name':'A'},{'name':'B'}],'relations':[{'type':'composition','source':'A','target':'B'}]}",
+			"{'entities':[{'name':'A'},{'name':'B'}],'relations':[{'type':'aggregation','source':'A','target':'B',"
+					+ "'multSource':'0..1','multTarget':'1..*'}]}",
+			"{'entities':[{'name':'A'},{'name':'B'}],'relations':[{'type':'inheritance','source':'B','target':'A'}]}",
+			"{'entities':[{'name':'A'}],'relations':[{'type':'association','source':'A','target':'A',"
+					+ "'multSource':1,'multTarget':2.5}]}",
+			"{'entities':[{'name':'A'}],'relations':[{'type':'association','source':'A','target':'A',"
+					+ "'multSource':true,'multTarget':{'min':0,'max':[1,2]}}]}",
+			// extremos nulos o ausentes: la relación se descarta
+			"{'entities':[{'name':'A'}],'relations':[{'type':'association','source':'A'},{'source':null,'target':'A'}]}",
+			// tipo desconocido o ausente
+			"{'entities':[{'name':'A'},{'name':'B'}],'relations':[{'type':'mystery','source':'A','target':'B'},"
+					+ "{'source':'B','target':'A'}]}",
+			// relaciones antes que entidades en el JSON
+			"{'relations':[{'type':'association','source':'A','target':'B'}],'entities':[{'name':'B'},{'name':'A'}]}"
+	})
+	void relationsLikeFromMap(String fixture) throws IOException {
+		assertParity(fixture);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"{'name':1}",
+			"{'version':[1]}",
+			"{'packageBase':{'a':1}}",
+			"{'entities':{}}",
+			"{'entities':[1]}",
+			"{'entities':[{'name':2}]}",
+			"{'entities':[{'name':'A','attributes':'x'}]}",
+			"{'entities':[{'name':'A','attributes':[[]]}]}",
+			"{'entities':[{'name':'A','attributes':[{'name':false,'type':'int'}]}]}",
+			"{'entities':[{'name':'A','attributes':[{'name':'id','type':3}]}]}",
+			"{'relations':'x'}",
+			"{'relations':[null]}",
+			"{'relations':[{'type':1,'source':'A','target':'B'}]}",
+			"{'relations':[{'type':'association','source':[],'target':'B'}]}",
+			"{'relations':[{'type':'association','source':'A','target':{}}]}",
+			// varios errores: se informa el mismo que fromMap aunque el orden del JSON sea otro
+			"{'relations':[{'type':1}],'entities':[{'name':3}],'packageBase':2,'name':1}",
+			"{'relations':[{'type':1}],'entities':[{'name':'A','attributes':[{'name':'x','type':9}]}]}",
+			"{'entities':[{'name':'A','attributes':[{'name':'x','type':9}]},{'name':7}]}",
+			// el error de una clave repetida desaparece si la última es válida
+			"{'name':1,'name':'ok','entities':[{'name':'A'}]}",
+			// entidad sin nombre: sus atributos no se validan
+			"{'entities':[{'name':null,'attributes':[{'name':'x','type':9}]}]}"
+	})
+	void reportsTheSameErrorAsFromMap(String fixture) throws IOException {
+		assertParity(fixture);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"[]", "1", "'x'"})
+	void rootMustBeAnObject(String fixture) {
+		Throwable t = catchThrowable(() -> viaReader(fixture.replace('\'', '"')));
+		assertThat(t).isInstanceOf(IOException.class).hasMessageContaining("objeto JSON");
+	}
+}
@@ -0,0 +1,169 @@
+package com.jezabel.healthgen.spec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Diagnósticos del validador: código, severidad y ruta de cada problema. */
+class SpecValidatorTest {
+
+	private static ModelSpec.Builder base() {
+		return ModelSpec.builder().name("app").version("1.0").packageBase("com.acme");
+	}
+
+	private static List<AttrSpec> idOnly(ModelSpec.Builder b) {
+		return List.of(b.attr("id", "LONG", true, "IDENTITY"));
+	}
+
+	private static List<String> codes(SpecValidator.Report r, SpecValidator.Severity severity) {
+		return r.diagnostics().stream().filter(d -> d.severity() == severity).map(SpecValidator.Diagnostic::code).toList();
+	}
+
+	private static SpecValidator.Diagnostic only(SpecValidator.Report r, String code) {
+		List<SpecValidator.Diagnostic> found = r.diagnostics().stream().filter(d -> d.code().equals(code)).toList();
+		assertThat(found).as(code).hasSize(1);
+		return found.get(0);
+	}
+
+	@Test
+	void validSpecHasNoDiagnostics() {
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("Paciente", idOnly(b)).entity("Cita", idOnly(b))
+				.relation("association", "Paciente", "Cita", "1", "*")
+				.relation("composition", "Paciente", "Paciente", "1", "*")
+				.build();
+
+		SpecValidator.Report r = SpecValidator.validate(spec);
+		assertThat(r.diagnostics()).isEmpty();
+		assertThat(r.valid()).isTrue();
+		assertThat(r.toMap()).containsEntry("valid", true).containsEntry("errors", 0L).containsEntry("warnings", 0L);
+	}
+
+	@Test
+	void duplicateEntityIsReportedOnce() {
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("A", idOnly(b)).entity("B", idOnly(b)).entity("A", idOnly(b)).entity("A", idOnly(b)).build();
+
+		SpecValidator.Report r = SpecValidator.validate(spec);
+		SpecValidator.Diagnostic d = only(r, "DUPLICATE_ENTITY");
+		assertThat(d.severity()).isEqualTo(SpecValidator.Severity.ERROR);
+		assertThat(d.path()).isEqualTo("entities[A]");
+		assertThat(r.valid()).isFalse();
+	}
+
+	@Test
+	void entitiesDifferingOnlyInCaseClash() {
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("Cita", idOnly(b)).entity("CITA", idOnly(b)).build();
+
+		assertThat(only(SpecValidator.validate(spec), "NAME_CLASH").path()).isEqualTo("entities[CITA]");
+	}
+
+	@Test
+	void duplicateAttributeIsAnError() {
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("A", List.of(b.attr("id", "LONG", true, null), b.attr("nombre", "STRING", false, null),
+				b.attr("nombre", "INT", false, null))).build();
+
+		SpecValidator.Diagnostic d = only(SpecValidator.validate(spec), "DUPLICATE_ATTRIBUTE");
+		assertThat(d.severity()).isEqualTo(SpecValidator.Severity.ERROR);
+		assertThat(d.path()).isEqualTo("entities[A].attributes[nombre]");
+	}
+
+	@Test
+	void danglingStructuralRelationIsAnError() {
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("A", idOnly(b))
+				.relation("association", "A", "Fantasma", "1", "*")
+				.relation("composition", "Nadie", "A", null, null)
+				.build();
+
+		SpecValidator.Report r = SpecValidator.validate(spec);
+		assertThat(codes(r, SpecValidator.Severity.ERROR)).containsExactly("UNKNOWN_ENTITY", "UNKNOWN_ENTITY");
+		assertThat(r.diagnostics()).extracting(SpecValidator.Diagnostic::path).containsExactly("relations[0]", "relations[1]");
+		assertThat(r.diagnostics().get(0).message()).contains("'Fantasma'");
+		assertThat(r.diagnostics().get(1).message()).contains("'Nadie'");
+	}
+
+	@Test
+	void danglingNonStructuralRelationIsOnlyAWarning() {
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("A", idOnly(b))
+				.relation("generalization", "A", "Base", null, null)
+				.relation("mystery", "A", "Otra", null, null)
+				.build();
+
+		SpecValidator.Report r = SpecValidator.validate(spec);
+		assertThat(r.valid()).isTrue();
+		assertThat(codes(r, SpecValidator.Severity.WARNING))
+				.containsExactly("UNKNOWN_ENTITY", "IGNORED_RELATION", "UNKNOWN_RELATION_TYPE");
+	}
+
+	@Test
+	void twoOneToManyRelationsBetweenTheSameEntitiesBreakMappedBy() {
+		// A tiene bs y bs2 con mappedBy="a", pero en B el segundo campo se llama a2
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("A", idOnly(b)).entity("B", idOnly(b))
+				.relation("association", "A", "B", "1", "*")
+				.relation("association", "A", "B", "1", "*")
+				.build();
+
+		SpecValidator.Report r = SpecValidator.validate(spec);
+		SpecValidator.Diagnostic d = only(r, "AMBIGUOUS_OWNER");
+		assertThat(d.path()).isEqualTo("relations[1]");
+		assertThat(d.message()).contains("mappedBy=\"a\"").contains("'a2'");
+		assertThat(only(r, "DUPLICATE_COLUMN").path()).isEqualTo("entities[B]");
+	}
+
+	@Test
+	void attributeNamedLikeTheRelationFieldBreaksMappedBy() {
+		// B ya tiene un atributo "a": la relación genera "a2" y el lado inverso sigue esperando "a"
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("A", idOnly(b))
+				.entity("B", List.of(b.attr("id", "LONG", true, null), b.attr("a", "STRING", false, null)))
+				.relation("association", "B", "A", "*", "1")
+				.build();
+
+		SpecValidator.Report r = SpecValidator.validate(spec);
+		SpecValidator.Diagnostic d = only(r, "AMBIGUOUS_OWNER");
+		assertThat(d.path()).isEqualTo("relations[0]");
+		assertThat(d.message()).contains("el campo en B se llama 'a2'");
+	}
+
+	@Test
+	void oneToOneOwnerIsTheAlphabeticallyFirstEntity() {
+		// dos 1-1 entre A y B: el dueño A tiene b y b2, el inverso B usa mappedBy "a" dos veces
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("B", idOnly(b)).entity("A", idOnly(b))
+				.relation("association", "A", "B", "1", "1")
+				.relation("association", "B", "A", "1", "1")
+				.build();
+
+		SpecValidator.Report r = SpecValidator.validate(spec);
+		assertThat(codes(r, SpecValidator.Severity.ERROR)).contains("AMBIGUOUS_OWNER");
+	}
+
+	@Test
+	void compositionCycleIsAnError() {
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("A", idOnly(b)).entity("B", idOnly(b)).entity("C", idOnly(b))
+				.relation("composition", "A", "B", null, null)
+				.relation("composition", "B", "C", null, null)
+				.relation("composition", "C", "A", null, null)
+				.build();
+
+		SpecValidator.Diagnostic d = only(SpecValidator.validate(spec), "COMPOSITION_CYCLE");
+		assertThat(d.message()).contains("→");
+	}
+
+	@Test
+	void reportIsComputedOncePerSpec() {
+		ModelSpec.Builder b = base();
+		ModelSpec spec = b.entity("A", idOnly(b)).build();
+
+		assertThat(spec.validation()).isSameAs(spec.validation());
+		assertThat(spec.validation().diagnostics()).isEqualTo(SpecValidator.validate(spec).diagnostics());
+	}
+}
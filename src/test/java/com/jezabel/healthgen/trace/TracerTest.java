@@ -0,0 +1,140 @@
+package com.jezabel.healthgen.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Spans padre/hijo a través de activate, ring buffer de trazas, tope de spans y muestreo. */
+@SuppressWarnings("unchecked")
+class TracerTest {
+
+	private static Tracer tracer(double sampleRate, int maxTraces, int maxSpans) {
+		TraceProperties props = new TraceProperties();
+		props.setSampleRate(sampleRate);
+		props.setMaxTraces(maxTraces);
+		props.setMaxSpansPerTrace(maxSpans);
+		return new Tracer(props, null);
+	}
+
+	private static Map<String, Span> byName(TraceRecord trace) {
+		Map<String, Span> out = new HashMap<>();
+		for (Span s : trace.spans()) out.put(s.name(), s);
+		return out;
+	}
+
+	@Test
+	void startSpanHangsFromTheActiveSpanAndScopesRestoreIt() {
+		Tracer tracer = tracer(1.0, 10, 100);
+		Span root = tracer.startSpan("http");
+		try (Tracer.Scope outer = tracer.activate(root)) {
+			Span service = tracer.startSpan("service");
+			try (Tracer.Scope inner = tracer.activate(service)) {
+				assertThat(tracer.current()).isSameAs(service);
+				tracer.startSpan("db").end();
+			}
+			// al cerrar el bloque vuelve el anterior
+			assertThat(tracer.current()).isSameAs(root);
+			service.end();
+			tracer.startSpan("render").end();
+		}
+		assertThat(tracer.current()).isSameAs(Span.NOOP);
+		root.end();
+
+		TraceRecord trace = tracer.recent(1).get(0);
+		Map<String, Span> spans = byName(trace);
+		assertThat(spans.keySet()).containsExactlyInAnyOrder("http", "service", "db", "render");
+		assertThat(spans.get("http").parentSpanId()).isNull();
+		assertThat(spans.values()).allSatisfy(s -> assertThat(s.traceId()).isEqualTo(root.traceId()));
+		assertThat(spans.get("service").parentSpanId()).isEqualTo(root.spanId());
+		assertThat(spans.get("db").parentSpanId()).isEqualTo(spans.get("service").spanId());
+		assertThat(spans.get("render").parentSpanId()).isEqualTo(root.spanId());
+
+		// el árbol de /api/traces refleja lo mismo
+		Map<String, Object> tree = (Map<String, Object>) trace.toMap().get("root");
+		List<Map<String, Object>> children = (List<Map<String, Object>>) tree.get("children");
+		assertThat(children).extracting(c -> c.get("name")).containsExactly("service", "render");
+		assertThat((List<Map<String, Object>>) children.get(0).get("children")).extracting(c -> c.get("name"))
+				.containsExactly("db");
+	}
+
+	@Test
+	void eachRootIsANewTrace() {
+		Tracer tracer = tracer(1.0, 10, 100);
+		Span a = tracer.startSpan("a");
+		Span b = tracer.startSpan("b");   // nada activo: otra raíz
+		a.end();
+		b.end();
+		b.end();                          // cerrar dos veces no la registra dos veces
+
+		assertThat(a.traceId()).isNotEqualTo(b.traceId());
+		assertThat(tracer.recent(10)).extracting(TraceRecord::name).containsExactly("b", "a");
+		assertThat(tracer.find(a.traceId())).get().extracting(TraceRecord::name).isEqualTo("a");
+	}
+
+	@Test
+	void recentIsNewestFirstAndWrapsAroundTheRing() {
+		Tracer tracer = tracer(1.0, 3, 100);
+		Span t1 = tracer.startSpan("t1");
+		t1.end();
+		for (int i = 2; i <= 5; i++) tracer.startSpan("t" + i).end();
+
+		assertThat(tracer.recent(10)).extracting(TraceRecord::name).containsExactly("t5", "t4", "t3");
+		assertThat(tracer.recent(2)).extracting(TraceRecord::name).containsExactly("t5", "t4");
+		assertThat(tracer.recent(0)).isEmpty();
+		assertThat(tracer.stats()).containsEntry("stored", 3).containsEntry("sampled", 5L);
+
+		// lo que salió del anillo ya no se encuentra
+		assertThat(tracer.find(t1.traceId())).isEmpty();
+		Span t6 = tracer.startSpan("t6");
+		t6.end();
+		assertThat(tracer.recent(3)).extracting(TraceRecord::name).containsExactly("t6", "t5", "t4");
+		assertThat(tracer.find(t6.traceId())).isPresent();
+	}
+
+	@Test
+	void spansBeyondTheCapAreDroppedAndCounted() {
+		Tracer tracer = tracer(1.0, 10, 4);
+		Span root = tracer.startSpan("big");
+		for (int i = 0; i < 10; i++) root.child("step" + i).end();
+		root.end();
+
+		TraceRecord trace = tracer.recent(1).get(0);
+		// el tope incluye la raíz, que siempre se guarda
+		assertThat(trace.spans()).hasSize(4).contains(root);
+		assertThat(trace.spans()).extracting(Span::name).containsExactly("step0", "step1", "step2", "big");
+		assertThat(trace.summary()).containsEntry("spans", 4).containsEntry("droppedSpans", 7);
+	}
+
+	@Test
+	void unsampledRequestsGetTheSharedNoopSpan() {
+		Tracer tracer = tracer(0.0, 10, 100);
+		Span root = tracer.startSpan("http");
+
+		assertThat(root).isSameAs(Span.NOOP);
+		assertThat(root.isSampled()).isFalse();
+		assertThat(root.child("db")).isSameAs(Span.NOOP);
+		assertThat(root.attr("k", "v").attr("n", 1L).error(new IllegalStateException())).isSameAs(Span.NOOP);
+		assertThat(Span.NOOP.attributes()).isEmpty();
+		assertThat(Span.NOOP.errorMessage()).isNull();
+
+		// activarlo no deja nada en el hilo
+		try (Tracer.Scope scope = tracer.activate(root)) {
+			assertThat(scope).isSameAs(Tracer.Scope.NOOP);
+			assertThat(tracer.startSpan("dentro")).isSameAs(Span.NOOP);
+		}
+		root.end();
+		assertThat(tracer.recent(10)).isEmpty();
+		assertThat(tracer.stats()).containsEntry("sampled", 0L).containsEntry("notSampled", 2L);
+	}
+
+	@Test
+	void disabledTracerNeverSamples() {
+		Tracer tracer = Tracer.disabled();
+		assertThat(tracer.startSpan("x")).isSameAs(Span.NOOP);
+		assertThat(tracer.current()).isSameAs(Span.NOOP);
+	}
+}